@@ -0,0 +1,49 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+/**
+ * Interface for the accumulated state of an estimator. Estimators supporting
+ * accumulation do not need the complete password list at once, instead the
+ * passwords are handed to the accumulator one by one and the metric is
+ * calculated from the accumulated state afterwards.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see MetricEstimatorI#createAccumulator(int[])
+ */
+public interface AccumulatorI<E> {
+
+	/**
+	 * Adds a password to the accumulated state
+	 *
+	 * @param password The password to add
+	 * @param weight How often the password is to be counted
+	 */
+	public void add(E password, int weight);
+
+	/**
+	 * Adds the state of another accumulator of the same estimator (and the
+	 * same parameters) to this one. Afterwards this accumulator holds the
+	 * same state as if all passwords of both had been added to it.
+	 *
+	 * @param other The other accumulator, which is left unchanged
+	 */
+	public void merge(AccumulatorI<E> other);
+
+}
@@ -0,0 +1,176 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.ClickPassword;
+
+/**
+ * The accumulator for estimators of graphical click-based passwords which
+ * operate on the tolerance grid. For each click-point position it counts
+ * how often each grid cell was chosen.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickGridHelper
+ */
+public class ClickGridAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 * 
+	 *  0: x-max
+	 *  1: y-max
+	 *  2: tolerance
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The counts for each position and each grid cell
+	 */
+	private int[][] grids=new int[0][];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	public ClickGridAccumulator(int[] parameters) {
+		this.parameters=parameters;
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		this.ensureLength(password.length());
+		
+		for ( int i=0; i<password.length(); i++ ) {
+			this.grids[i][ClickGridHelper.getCell(password.getClickPoint(i), this.parameters)] += weight;
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		ClickGridAccumulator acc=(ClickGridAccumulator)other;
+		this.ensureLength(acc.grids.length);
+		
+		for ( int i=0; i<acc.grids.length; i++ ) {
+			for ( int j=0; j<acc.grids[i].length; j++ ) this.grids[i][j] += acc.grids[i][j];
+		}
+	}
+	
+	/**
+	 * Makes sure there is a grid for each position up to the specified length
+	 * 
+	 * @param length The number of positions needed
+	 */
+	private void ensureLength(int length) {
+		
+		//new positions get their grid once the first password of this length is added
+		if ( length > this.grids.length ) {
+			int oldLength=this.grids.length;
+			this.grids=Arrays.copyOf(this.grids, length);
+			for ( int i=oldLength; i<this.grids.length; i++ ) {
+				this.grids[i]=new int[ClickGridHelper.getCellCount(this.parameters)];
+			}
+		}
+	}
+	
+	/**
+	 * @return The maximum length among the passwords
+	 */
+	public int getMaxLength() {
+		return this.grids.length;
+	}
+	
+	/**
+	 * Returns the counts of the grid cells for a click-point position
+	 * 
+	 * @param position The click-point position
+	 * @return The counts, indexed as by ClickGridHelper.getCell
+	 */
+	public int[] getGrid(int position) {
+		return this.grids[position];
+	}
+	
+	/**
+	 * @return The parameters as provided from the parser
+	 */
+	public int[] getParameters() {
+		return this.parameters;
+	}
+
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read. For each position only the cells chosen at least once are
+	 * written.
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.grids.length);
+		
+		for ( int[] grid : this.grids ) {
+			int amount=0;
+			for ( int count : grid ) if ( count != 0 ) amount++;
+			out.writeInt(amount);
+			for ( int j=0; j<grid.length; j++ ) {
+				if ( grid[j] == 0 ) continue;
+				out.writeInt(j);
+				out.writeInt(grid[j]);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	public static ClickGridAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		int length=in.readInt();
+		if ( length < 0 ) throw new IOException("Invalid number of positions: "+length);
+		
+		ClickGridAccumulator accumulator=new ClickGridAccumulator(parameters);
+		accumulator.ensureLength(length);
+		
+		int cells=ClickGridHelper.getCellCount(parameters);
+		for ( int[] grid : accumulator.grids ) {
+			int amount=in.readInt();
+			for ( int j=0; j<amount; j++ ) {
+				int cell=in.readInt();
+				if ( cell < 0 || cell >= cells ) throw new IOException("Grid cell out of range: "+cell);
+				grid[cell]=in.readInt();
+			}
+		}
+		
+		return accumulator;
+	}
+
+}
@@ -0,0 +1,160 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import main.passwords.ClickPassword;
+
+/**
+ * This class provides functions for all estimators which divide the
+ * coordinate space of graphical click-based passwords into grid cells
+ * with the size of the tolerance margin. The parameters are expected as
+ * provided by the parser:
+ *
+ *  0: x-max
+ *  1: y-max
+ *  2: tolerance
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class ClickGridHelper {
+
+	/**
+	 * Calculates the number of grid columns (including x-max)
+	 *
+	 * @param parameters The parameters
+	 * @return The number of columns
+	 */
+	public static int getColumns(int[] parameters) {
+		return parameters[0]/parameters[2]+1;
+	}
+
+	/**
+	 * Calculates the number of grid rows (including y-max)
+	 *
+	 * @param parameters The parameters
+	 * @return The number of rows
+	 */
+	public static int getRows(int[] parameters) {
+		return parameters[1]/parameters[2]+1;
+	}
+
+	/**
+	 * Calculates the overall number of grid cells
+	 *
+	 * @param parameters The parameters
+	 * @return The number of cells
+	 */
+	public static int getCellCount(int[] parameters) {
+		return getColumns(parameters)*getRows(parameters);
+	}
+
+	/**
+	 * Calculates the index of the grid cell a click-point lies in
+	 *
+	 * @param cp The click-point in the form [x,y]
+	 * @param parameters The parameters
+	 * @return The index of the cell
+	 */
+	public static int getCell(int[] cp, int[] parameters) {
+		return (cp[0]/parameters[2])*getRows(parameters) + cp[1]/parameters[2];
+	}
+
+	/**
+	 * Calculates the indices of the grid cells of all click-points of a password
+	 *
+	 * @param pwd The password
+	 * @param parameters The parameters
+	 * @return The indices of the cells
+	 */
+	public static int[] getCells(ClickPassword pwd, int[] parameters) {
+
+		int[] cells=new int[pwd.length()];
+
+		for ( int i=0; i<pwd.length(); i++ ) {
+			cells[i]=getCell(pwd.getClickPoint(i), parameters);
+		}
+
+		return cells;
+	}
+
+	/**
+	 * Calculates the number of bits needed to store one cell index
+	 *
+	 * @param parameters The parameters
+	 * @return The number of bits
+	 */
+	public static int getBitsPerCell(int[] parameters) {
+		return 32-Integer.numberOfLeadingZeros(getCellCount(parameters)-1);
+	}
+
+	/**
+	 * Creates a long key identifying a sequence of grid cells. If the cell
+	 * indices fit into 63 bits they are packed as by getCellTupleKey, so
+	 * equal keys mean equal sequences, otherwise a 64 bit hash is used.
+	 *
+	 * @param cells The indices of the cells
+	 * @param parameters The parameters
+	 * @return The key for the cell tuple
+	 */
+	public static long getCellTupleHash(int[] cells, int[] parameters) {
+
+		int bits=getBitsPerCell(parameters);
+
+		if ( bits*cells.length < 64 ) {
+			//the leading 1 separates tuples of different lengths
+			long key=1;
+			for ( int cell : cells ) key = (key<<bits) | cell;
+			return key;
+		}
+
+		return CommonHelper.hash64(cells);
+	}
+
+	/**
+	 * Creates a key identifying the sequence of grid cells of a password,
+	 * i.e. two passwords have equal keys if and only if their click-points
+	 * lie in the same cells. If the cell indices fit into 63 bits the key
+	 * is a packed Long, otherwise a String.
+	 *
+	 * @param pwd The password
+	 * @param parameters The parameters
+	 * @return The key for the cell tuple
+	 */
+	public static Object getCellTupleKey(ClickPassword pwd, int[] parameters) {
+
+		int bits=getBitsPerCell(parameters);
+
+		if ( bits*pwd.length() < 64 ) {
+			//the leading 1 separates passwords of different lengths
+			long key=1;
+			for ( int i=0; i<pwd.length(); i++ ) {
+				key = (key<<bits) | getCell(pwd.getClickPoint(i), parameters);
+			}
+			return key;
+		}
+
+		StringBuilder key=new StringBuilder();
+		for ( int i=0; i<pwd.length(); i++ ) {
+			if ( i>0 ) key.append(',');
+			key.append(getCell(pwd.getClickPoint(i), parameters));
+		}
+		return key.toString();
+	}
+
+}
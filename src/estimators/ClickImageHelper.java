@@ -0,0 +1,73 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+/**
+ * This class provides functions for all estimators of graphical click-based
+ * passwords with several images, e.g. CCP or PCCP, where each click-point 
+ * lies on one of the images. The parameters are expected as provided by the
+ * parser:
+ *
+ *  0: tolerance
+ *  1: number of images
+ *  2: x-max of image 0
+ *  3: y-max of image 0
+ *  4: x-max of image 1
+ *  ...
+ *
+ * Each image is divided into its own tolerance grid, see ClickGridHelper.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class ClickImageHelper {
+
+	/**
+	 * Returns the number of images
+	 *
+	 * @param parameters The parameters
+	 * @return The number of images
+	 */
+	public static int getImageCount(int[] parameters) {
+		return parameters[1];
+	}
+
+	/**
+	 * Returns the parameters of a single image as expected by ClickGridHelper
+	 *
+	 * @param parameters The parameters
+	 * @param image The id of the image
+	 * @return The parameters x-max, y-max and tolerance of the image
+	 */
+	public static int[] getImageParameters(int[] parameters, int image) {
+		return new int[]{parameters[2+2*image], parameters[3+2*image], parameters[0]};
+	}
+
+	/**
+	 * Calculates the index of the grid cell a click-point lies in on its image
+	 *
+	 * @param cp The click-point in the form [x,y,image]
+	 * @param parameters The parameters
+	 * @return The index of the cell
+	 */
+	public static int getCell(int[] cp, int[] parameters) {
+		int rows=parameters[3+2*cp[2]]/parameters[0]+1;
+		return (cp[0]/parameters[0])*rows + cp[1]/parameters[0];
+	}
+
+}
@@ -0,0 +1,218 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.CognometricGroupedPassword;
+
+/**
+ * This accumulator counts the groups and the elements chosen at each 
+ * position of cognometric grouped passwords. It is shared by the 
+ * estimators which only need the distribution of each position.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class CognometricGroupedAccumulator implements AccumulatorI<CognometricGroupedPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 * 
+	 *  0: number of groups
+	 *  1: number of elements in a group
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The counts for each position and each group
+	 */
+	private int[][] groups=new int[0][];
+	
+	/**
+	 * The counts for each position and each element
+	 */
+	private int[][] elements=new int[0][];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	public CognometricGroupedAccumulator(int[] parameters) {
+		this.parameters=parameters;
+	}
+	
+	@Override
+	public void add(CognometricGroupedPassword password, int weight) {
+		
+		this.ensureLength(password.length());
+		
+		for ( int i=0; i<password.length(); i++ ) {
+			this.groups[i][password.getGroupID(i)] += weight;
+			this.elements[i][password.getElementID(i)] += weight;
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<CognometricGroupedPassword> other) {
+		
+		CognometricGroupedAccumulator acc=(CognometricGroupedAccumulator)other;
+		this.ensureLength(acc.groups.length);
+		
+		for ( int i=0; i<acc.groups.length; i++ ) {
+			for ( int j=0; j<acc.groups[i].length; j++ ) this.groups[i][j] += acc.groups[i][j];
+			for ( int j=0; j<acc.elements[i].length; j++ ) this.elements[i][j] += acc.elements[i][j];
+		}
+	}
+	
+	/**
+	 * Makes sure there are counts for each position up to the specified length
+	 * 
+	 * @param length The number of positions needed
+	 */
+	private void ensureLength(int length) {
+		
+		//new positions get their counts once the first password of this length is added
+		if ( length > this.groups.length ) {
+			int oldLength=this.groups.length;
+			this.groups=Arrays.copyOf(this.groups, length);
+			this.elements=Arrays.copyOf(this.elements, length);
+			for ( int i=oldLength; i<length; i++ ) {
+				this.groups[i]=new int[this.parameters[0]];
+				this.elements[i]=new int[this.parameters[1]];
+			}
+		}
+	}
+	
+	/**
+	 * @return The maximum length among the passwords
+	 */
+	public int getMaxLength() {
+		return this.groups.length;
+	}
+	
+	/**
+	 * Returns the counts of the groups for a position
+	 * 
+	 * @param position The position, starting with 0
+	 * @return The counts, indexed by the group id
+	 */
+	public int[] getGroups(int position) {
+		return this.groups[position];
+	}
+	
+	/**
+	 * Returns the counts of the elements for a position
+	 * 
+	 * @param position The position, starting with 0
+	 * @return The counts, indexed by the element id
+	 */
+	public int[] getElements(int position) {
+		return this.elements[position];
+	}
+	
+	/**
+	 * @return The parameters as provided from the parser
+	 */
+	public int[] getParameters() {
+		return this.parameters;
+	}
+
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read. For each position only the groups and elements chosen at 
+	 * least once are written.
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.groups.length);
+		
+		for ( int i=0; i<this.groups.length; i++ ) {
+			writeCounts(this.groups[i], out);
+			writeCounts(this.elements[i], out);
+		}
+	}
+	
+	/**
+	 * Writes the non-zero counts of an array
+	 * 
+	 * @param counts The counts
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	private static void writeCounts(int[] counts, DataOutput out) throws IOException {
+		
+		int amount=0;
+		for ( int count : counts ) if ( count != 0 ) amount++;
+		out.writeInt(amount);
+		for ( int j=0; j<counts.length; j++ ) {
+			if ( counts[j] == 0 ) continue;
+			out.writeInt(j);
+			out.writeInt(counts[j]);
+		}
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	public static CognometricGroupedAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		int length=in.readInt();
+		if ( length < 0 ) throw new IOException("Invalid number of positions: "+length);
+		
+		CognometricGroupedAccumulator accumulator=new CognometricGroupedAccumulator(parameters);
+		accumulator.ensureLength(length);
+		
+		for ( int i=0; i<length; i++ ) {
+			readCounts(accumulator.groups[i], in);
+			readCounts(accumulator.elements[i], in);
+		}
+		
+		return accumulator;
+	}
+	
+	/**
+	 * Reads the counts written per writeCounts
+	 * 
+	 * @param counts The array receiving the counts
+	 * @param in The source
+	 * @throws IOException Is thrown if the source cannot be read or an id is out of range
+	 */
+	private static void readCounts(int[] counts, DataInput in) throws IOException {
+		
+		int amount=in.readInt();
+		for ( int j=0; j<amount; j++ ) {
+			int id=in.readInt();
+			if ( id < 0 || id >= counts.length ) throw new IOException("Id out of range: "+id);
+			counts[id]=in.readInt();
+		}
+	}
+
+}
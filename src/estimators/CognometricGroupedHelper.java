@@ -0,0 +1,86 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import main.passwords.CognometricGroupedPassword;
+
+/**
+ * This class provides functions for all estimators of cognometric grouped
+ * passwords. The parameters are expected as provided by the parser:
+ *
+ *  0: number of groups
+ *  1: number of elements in a group
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class CognometricGroupedHelper {
+
+	/**
+	 * Calculates the number of bits needed to store the group and the 
+	 * element id of one element
+	 *
+	 * @param parameters The parameters
+	 * @return The number of bits
+	 */
+	public static int getBitsPerElement(int[] parameters) {
+		return bits(parameters[0])+bits(parameters[1]);
+	}
+
+	/**
+	 * Calculates the number of bits needed to store the ids 0 to amount-1
+	 *
+	 * @param amount The number of ids
+	 * @return The number of bits
+	 */
+	private static int bits(int amount) {
+		return 32-Integer.numberOfLeadingZeros(Math.max(amount-1, 0));
+	}
+
+	/**
+	 * Creates a long key identifying the sequence of (group, element) tuples
+	 * of a password. If the ids fit into 63 bits they are packed, so equal
+	 * keys mean equal passwords, otherwise a 64 bit hash is used.
+	 *
+	 * @param pwd The password
+	 * @param parameters The parameters
+	 * @return The key for the password
+	 */
+	public static long getTupleKey(CognometricGroupedPassword pwd, int[] parameters) {
+
+		int elementBits=bits(parameters[1]);
+		int bits=getBitsPerElement(parameters);
+
+		if ( bits*pwd.length() < 64 ) {
+			//the leading 1 separates passwords of different lengths
+			long key=1;
+			for ( int i=0; i<pwd.length(); i++ ) {
+				key = (key<<bits) | ((long)pwd.getGroupID(i)<<elementBits) | pwd.getElementID(i);
+			}
+			return key;
+		}
+
+		int[] flat=new int[2*pwd.length()];
+		for ( int i=0; i<pwd.length(); i++ ) {
+			flat[2*i]=pwd.getGroupID(i);
+			flat[2*i+1]=pwd.getElementID(i);
+		}
+		return CommonHelper.hash64(flat);
+	}
+
+}
@@ -68,4 +68,53 @@ public class CommonHelper {
 		return total;
 	}
 
+	/**
+	 * Calculates a 64 bit hash of a character sequence (FNV-1a with a final
+	 * avalanche step, so all bits of the hash are usable)
+	 * 
+	 * @param s The character sequence
+	 * @return The hash
+	 */
+	public static long hash64(CharSequence s) {
+		long h=0xcbf29ce484222325L;
+		
+		for ( int i=0; i<s.length(); i++ ) {
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		
+		return mix64(h ^ s.length());
+	}
+
+	/**
+	 * Calculates a 64 bit hash of an integer array (FNV-1a with a final
+	 * avalanche step, so all bits of the hash are usable)
+	 * 
+	 * @param a The array
+	 * @return The hash
+	 */
+	public static long hash64(int[] a) {
+		long h=0xcbf29ce484222325L;
+		
+		for ( int i : a ) {
+			h = (h ^ i) * 0x100000001b3L;
+		}
+		
+		return mix64(h ^ a.length);
+	}
+
+	/**
+	 * Avalanche step of MurmurHash3, every input bit affects every output bit
+	 * 
+	 * @param h The value to mix
+	 * @return The mixed value
+	 */
+	public static long mix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
 }
@@ -0,0 +1,243 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A contingency table counting the co-occurrences of the values of two 
+ * random variables, e.g. the choices at two positions of the passwords. 
+ * Small tables are counted densely in an array of rows*columns counts,
+ * all others sparsely in a LongIntHashMap with the row and the column 
+ * packed into a long key, so the memory needed depends on the number of
+ * distinct pairs only.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class ContingencyTable {
+
+	/**
+	 * The largest number of counts of a dense table
+	 */
+	public static final int DENSE_LIMIT=1<<20;
+
+	/**
+	 * The number of rows of a dense table, 0 for a sparse one
+	 */
+	private final int rows;
+
+	/**
+	 * The number of columns of a dense table, 0 for a sparse one
+	 */
+	private final int columns;
+
+	/**
+	 * The counts of a dense table, null for a sparse one
+	 */
+	private final int[] dense;
+
+	/**
+	 * The counts of a sparse table, null for a dense one
+	 */
+	private final LongIntHashMap sparse;
+
+	/**
+	 * Creates a new empty table, which is dense if the number of counts 
+	 * does not exceed DENSE_LIMIT
+	 *
+	 * @param rows The number of values of the first variable
+	 * @param columns The number of values of the second variable
+	 */
+	public ContingencyTable(int rows, int columns) {
+		if ( (long)rows*columns <= DENSE_LIMIT ) {
+			this.rows=rows;
+			this.columns=columns;
+			this.dense=new int[rows*columns];
+			this.sparse=null;
+		} else {
+			this.rows=0;
+			this.columns=0;
+			this.dense=null;
+			this.sparse=new LongIntHashMap(1024);
+		}
+	}
+
+	/**
+	 * Creates a new empty sparse table for values of any range
+	 */
+	public ContingencyTable() {
+		this.rows=0;
+		this.columns=0;
+		this.dense=null;
+		this.sparse=new LongIntHashMap(1024);
+	}
+
+	/**
+	 * Adds to the count of a pair of values
+	 *
+	 * @param row The non-negative value of the first variable
+	 * @param column The non-negative value of the second variable
+	 * @param weight The amount added to the count
+	 */
+	public void add(int row, int column, int weight) {
+		if ( this.dense != null ) this.dense[row*this.columns+column] += weight;
+		else this.sparse.add(MutualInformationHelper.getKey(row, column), weight);
+	}
+
+	/**
+	 * Adds the counts of another table created with the same sizes
+	 *
+	 * @param other The other table
+	 */
+	public void merge(ContingencyTable other) {
+		if ( this.dense != null ) {
+			for ( int i=0; i<this.dense.length; i++ ) this.dense[i] += other.dense[i];
+		} else {
+			this.sparse.merge(other.sparse);
+		}
+	}
+
+	/**
+	 * @return Whether the counts are stored in an array
+	 */
+	public boolean isDense() {
+		return this.dense != null;
+	}
+
+	/**
+	 * Calculates the bias corrected mutual information of the two variables
+	 * as provided by the MutualInformationHelper
+	 *
+	 * @return The mutual information in bits
+	 */
+	public double getMutualInformation() {
+		return MutualInformationHelper.getMutualInformation(this.getKeys(), this.getCounts());
+	}
+
+	/**
+	 * Determines whether the table is undersampled as by the 
+	 * MutualInformationHelper, so the mutual information is unreliable
+	 *
+	 * @return Whether the table is undersampled
+	 */
+	public boolean isUndersampled() {
+		return MutualInformationHelper.isUndersampled(this.getCounts());
+	}
+
+	/**
+	 * @return The pairs which occurred, packed as by MutualInformationHelper.getKey
+	 */
+	private long[] getKeys() {
+
+		if ( this.dense == null ) return this.sparse.getKeys();
+
+		long[] keys=new long[this.getOccurred()];
+		int n=0;
+		for ( int i=0; i<this.dense.length; i++ ) {
+			if ( this.dense[i] != 0 ) keys[n++]=MutualInformationHelper.getKey(i/this.columns, i%this.columns);
+		}
+		return keys;
+	}
+
+	/**
+	 * @return The counts of the pairs which occurred, in the same order as getKeys
+	 */
+	private int[] getCounts() {
+
+		if ( this.dense == null ) return this.sparse.getCounts();
+
+		int[] counts=new int[this.getOccurred()];
+		int n=0;
+		for ( int count : this.dense ) {
+			if ( count != 0 ) counts[n++]=count;
+		}
+		return counts;
+	}
+
+	/**
+	 * @return The number of pairs which occurred in a dense table
+	 */
+	private int getOccurred() {
+		int amount=0;
+		for ( int count : this.dense ) {
+			if ( count != 0 ) amount++;
+		}
+		return amount;
+	}
+
+	/**
+	 * Writes the counts to a binary sink, so the table can be restored per read
+	 *
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+
+		out.writeBoolean(this.dense != null);
+		if ( this.dense == null ) {
+			this.sparse.write(out);
+			return;
+		}
+
+		//only the pairs which occurred are written
+		out.writeInt(this.rows);
+		out.writeInt(this.columns);
+		out.writeInt(this.getOccurred());
+		for ( int i=0; i<this.dense.length; i++ ) {
+			if ( this.dense[i] == 0 ) continue;
+			out.writeInt(i);
+			out.writeInt(this.dense[i]);
+		}
+	}
+
+	/**
+	 * Reads a table previously written per write
+	 *
+	 * @param in The source
+	 * @return The table
+	 * @throws IOException Is thrown if the source cannot be read
+	 */
+	public static ContingencyTable read(DataInput in) throws IOException {
+
+		if ( !in.readBoolean() ) {
+			ContingencyTable table=new ContingencyTable();
+			table.sparse.merge(LongIntHashMap.read(in));
+			return table;
+		}
+
+		int rows=in.readInt();
+		int columns=in.readInt();
+		if ( rows < 0 || columns < 0 || (long)rows*columns > DENSE_LIMIT ) {
+			throw new IOException("Invalid size of the table: "+rows+"x"+columns);
+		}
+
+		ContingencyTable table=new ContingencyTable(rows, columns);
+		int amount=in.readInt();
+		for ( int i=0; i<amount; i++ ) {
+			int index=in.readInt();
+			if ( index < 0 || index >= table.dense.length ) throw new IOException("Invalid index: "+index);
+			table.dense[index]=in.readInt();
+		}
+
+		return table;
+	}
+
+}
@@ -50,11 +50,11 @@ public class GuessworkHelper {
 	 */
 	public static int alphaWorkFactor(double[] X, double alpha) {
 
-		for ( int j=0; j<X.length; j++ ) {
+		double tempP=0;
 
-			double tempP=0;
+		for ( int j=0; j<X.length; j++ ) {
 
-			for ( int i=0; i<=j; i++ ) tempP += X[i];
+			tempP += X[j];
 
 			if ( tempP >= alpha ) return j+1;
 
@@ -72,11 +72,14 @@ public class GuessworkHelper {
 	 */
 	public static double alphaGuesswork(double[] X, double alpha) {
 
-		double first=(1-betaSuccessRate(X, alphaWorkFactor(X, alpha)))*alphaWorkFactor(X, alpha);
+		//the work factor is only calculated once, as it takes linear time
+		int workFactor=alphaWorkFactor(X, alpha);
+
+		double first=(1-betaSuccessRate(X, workFactor))*workFactor;
 
 		double second=0;
 
-		for ( int i=0; i<=alphaWorkFactor(X, alpha); i++ ) second += (i*X[i]);
+		for ( int i=0; i<=workFactor && i<X.length; i++ ) second += (i*X[i]);
 
 		return first+second;
 
@@ -92,7 +95,9 @@ public class GuessworkHelper {
 	 */
 	public static double alphaGuessworkBits(double[] X, double alpha) {
 
-		return CommonHelper.log2(2*alphaGuesswork(X, alpha)/betaSuccessRate(X, alphaWorkFactor(X, alpha))-1)+CommonHelper.log2(1/(2-betaSuccessRate(X, alphaWorkFactor(X, alpha))));
+		double successRate=betaSuccessRate(X, alphaWorkFactor(X, alpha));
+
+		return CommonHelper.log2(2*alphaGuesswork(X, alpha)/successRate-1)+CommonHelper.log2(1/(2-successRate));
 
 	}
 
@@ -0,0 +1,155 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A histogram counting the occurrences of non-negative integer values (e.g.
+ * lengths, positions or grid cells). The histogram grows with the largest
+ * value added, so it can be filled without knowing the range in advance.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class Histogram {
+
+	/**
+	 * The counts for each value
+	 */
+	private int[] counts;
+	
+	/**
+	 * The largest value added plus 1
+	 */
+	private int length=0;
+	
+	/**
+	 * Creates a new empty histogram
+	 */
+	public Histogram() {
+		this(16);
+	}
+	
+	/**
+	 * Creates a new empty histogram
+	 * 
+	 * @param capacity The number of values the histogram can hold without growing
+	 */
+	public Histogram(int capacity) {
+		this.counts=new int[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Counts a value
+	 * 
+	 * @param value The value
+	 * @param weight How often the value is counted
+	 */
+	public void add(int value, int weight) {
+		
+		if ( value >= this.counts.length ) {
+			this.counts=Arrays.copyOf(this.counts, Math.max(value+1, 2*this.counts.length));
+		}
+		
+		this.counts[value] += weight;
+		if ( value >= this.length ) this.length=value+1;
+	}
+	
+	/**
+	 * Returns the count of a value
+	 * 
+	 * @param value The value
+	 * @return How often the value was counted
+	 */
+	public int get(int value) {
+		return value < this.length ? this.counts[value] : 0;
+	}
+	
+	/**
+	 * @return The largest value counted plus 1
+	 */
+	public int length() {
+		return this.length;
+	}
+	
+	/**
+	 * @return The counts for the values 0 to length()-1
+	 */
+	public int[] getCounts() {
+		return Arrays.copyOf(this.counts, this.length);
+	}
+	
+	/**
+	 * Adds all counts of another histogram to this one
+	 * 
+	 * @param other The other histogram
+	 */
+	public void merge(Histogram other) {
+		
+		if ( other.length > this.counts.length ) {
+			this.counts=Arrays.copyOf(this.counts, other.length);
+		}
+		
+		for ( int i=0; i<other.length; i++ ) this.counts[i] += other.counts[i];
+		if ( other.length > this.length ) this.length=other.length;
+	}
+	
+	/**
+	 * @return The Shannon entropy of the counted values
+	 */
+	public double getEntropy() {
+		//the unused capacity only contains zeros and does not change the entropy
+		return ShannonEntropyHelper.getEntropy(this.counts);
+	}
+
+	/**
+	 * Writes the counts to a binary sink, so the histogram can be restored
+	 * per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.length);
+		for ( int i=0; i<this.length; i++ ) out.writeInt(this.counts[i]);
+	}
+	
+	/**
+	 * Reads a histogram previously written per write
+	 * 
+	 * @param in The source
+	 * @return The histogram
+	 * @throws IOException Is thrown if the source cannot be read
+	 */
+	public static Histogram read(DataInput in) throws IOException {
+		
+		int length=in.readInt();
+		if ( length < 0 ) throw new IOException("Invalid histogram length: "+length);
+		
+		Histogram histogram=new Histogram(length);
+		for ( int i=0; i<length; i++ ) histogram.counts[i]=in.readInt();
+		histogram.length=length;
+		
+		return histogram;
+	}
+
+}
@@ -0,0 +1,143 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+/**
+ * A hash set for long primitives. Compared to a HashSet of Longs this saves
+ * the boxing of each element, which matters for sets with millions of
+ * elements. The elements are stored with open addressing and linear probing.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class LongHashSet {
+
+	/**
+	 * The slots of the set, empty slots contain 0
+	 */
+	private long[] slots;
+	
+	/**
+	 * As 0 marks empty slots, it is stored separately
+	 */
+	private boolean containsZero=false;
+	
+	/**
+	 * The number of elements in the set
+	 */
+	private int size=0;
+	
+	/**
+	 * Creates a new empty set
+	 * 
+	 * @param expectedSize The number of elements expected, used for the initial capacity
+	 */
+	public LongHashSet(int expectedSize) {
+		this.slots=new long[Integer.highestOneBit(Math.max(expectedSize, 8)*2-1)*2];
+	}
+	
+	/**
+	 * Adds an element to the set
+	 * 
+	 * @param key The element
+	 * @return Whether the element was not already contained
+	 */
+	public boolean add(long key) {
+		
+		if ( key == 0 ) {
+			if ( this.containsZero ) return false;
+			this.containsZero=true;
+			this.size++;
+			return true;
+		}
+		
+		int mask=this.slots.length-1;
+		int i=(int)CommonHelper.mix64(key) & mask;
+		
+		while ( this.slots[i] != 0 ) {
+			if ( this.slots[i] == key ) return false;
+			i=(i+1) & mask;
+		}
+		
+		this.slots[i]=key;
+		this.size++;
+		
+		//keep the load factor below 0.5
+		if ( 2*this.size > this.slots.length ) this.rehash();
+		
+		return true;
+	}
+	
+	/**
+	 * Checks whether an element is contained in the set
+	 * 
+	 * @param key The element
+	 * @return Whether the element is contained
+	 */
+	public boolean contains(long key) {
+		
+		if ( key == 0 ) return this.containsZero;
+		
+		int mask=this.slots.length-1;
+		int i=(int)CommonHelper.mix64(key) & mask;
+		
+		while ( this.slots[i] != 0 ) {
+			if ( this.slots[i] == key ) return true;
+			i=(i+1) & mask;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * @return The number of elements in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * Adds all elements of another set to this set
+	 * 
+	 * @param other The other set
+	 */
+	public void addAll(LongHashSet other) {
+		if ( other.containsZero ) this.add(0);
+		for ( long key : other.slots ) {
+			if ( key != 0 ) this.add(key);
+		}
+	}
+	
+	/**
+	 * Doubles the number of slots
+	 */
+	private void rehash() {
+		
+		long[] old=this.slots;
+		this.slots=new long[old.length*2];
+		int mask=this.slots.length-1;
+		
+		for ( long key : old ) {
+			if ( key == 0 ) continue;
+			int i=(int)CommonHelper.mix64(key) & mask;
+			while ( this.slots[i] != 0 ) i=(i+1) & mask;
+			this.slots[i]=key;
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A hash map from long primitives to int counts, e.g. to count packed 
+ * tuples of grid cells. Compared to a HashMap of Longs and Integers this
+ * saves the boxing of each entry, which matters for maps with millions of
+ * entries. The entries are stored with open addressing and linear probing.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see LongHashSet
+ */
+public class LongIntHashMap {
+
+	/**
+	 * The keys of the map, empty slots contain 0
+	 */
+	private long[] keys;
+	
+	/**
+	 * The counts of the keys
+	 */
+	private int[] counts;
+	
+	/**
+	 * As 0 marks empty slots, its count is stored separately
+	 */
+	private int zeroCount=0;
+	
+	/**
+	 * The number of keys in the map
+	 */
+	private int size=0;
+	
+	/**
+	 * The sum of all counts
+	 */
+	private long total=0;
+	
+	/**
+	 * Creates a new empty map
+	 * 
+	 * @param expectedSize The number of keys expected, used for the initial capacity
+	 */
+	public LongIntHashMap(int expectedSize) {
+		int capacity=Integer.highestOneBit(Math.max(expectedSize, 8)*2-1)*2;
+		this.keys=new long[capacity];
+		this.counts=new int[capacity];
+	}
+	
+	/**
+	 * Adds to the count of a key, keys with a count of 0 are not contained
+	 * 
+	 * @param key The key
+	 * @param weight The amount added to the count
+	 */
+	public void add(long key, int weight) {
+		
+		if ( weight == 0 ) return;
+		this.total += weight;
+		
+		if ( key == 0 ) {
+			if ( this.zeroCount == 0 ) this.size++;
+			this.zeroCount += weight;
+			return;
+		}
+		
+		int mask=this.keys.length-1;
+		int i=(int)CommonHelper.mix64(key) & mask;
+		
+		while ( this.keys[i] != 0 ) {
+			if ( this.keys[i] == key ) {
+				this.counts[i] += weight;
+				return;
+			}
+			i=(i+1) & mask;
+		}
+		
+		this.keys[i]=key;
+		this.counts[i]=weight;
+		this.size++;
+		
+		//keep the load factor below 0.5
+		if ( 2*this.size > this.keys.length ) this.rehash();
+	}
+	
+	/**
+	 * Returns the count of a key
+	 * 
+	 * @param key The key
+	 * @return The count or 0 if the key is not contained
+	 */
+	public int get(long key) {
+		
+		if ( key == 0 ) return this.zeroCount;
+		
+		int mask=this.keys.length-1;
+		int i=(int)CommonHelper.mix64(key) & mask;
+		
+		while ( this.keys[i] != 0 ) {
+			if ( this.keys[i] == key ) return this.counts[i];
+			i=(i+1) & mask;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * @return The number of keys in the map
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	/**
+	 * @return The sum of all counts
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+	
+	/**
+	 * Returns the keys of the map, in the same order as getCounts as long 
+	 * as the map is not changed in between
+	 * 
+	 * @return The keys
+	 */
+	public long[] getKeys() {
+		
+		long[] all=new long[this.size];
+		int n=0;
+		if ( this.zeroCount != 0 ) all[n++]=0;
+		for ( long key : this.keys ) {
+			if ( key != 0 ) all[n++]=key;
+		}
+		
+		return all;
+	}
+	
+	/**
+	 * Returns the counts of the keys, in the same order as getKeys as long 
+	 * as the map is not changed in between
+	 * 
+	 * @return The counts
+	 */
+	public int[] getCounts() {
+		
+		int[] all=new int[this.size];
+		int n=0;
+		if ( this.zeroCount != 0 ) all[n++]=this.zeroCount;
+		for ( int i=0; i<this.keys.length; i++ ) {
+			if ( this.keys[i] != 0 ) all[n++]=this.counts[i];
+		}
+		
+		return all;
+	}
+	
+	/**
+	 * @return The Shannon entropy of the counts
+	 */
+	public double getEntropy() {
+		return ShannonEntropyHelper.getEntropy(this.getCounts());
+	}
+	
+	/**
+	 * Adds the counts of another map to this map
+	 * 
+	 * @param other The other map
+	 */
+	public void merge(LongIntHashMap other) {
+		this.add(0, other.zeroCount);
+		for ( int i=0; i<other.keys.length; i++ ) {
+			if ( other.keys[i] != 0 ) this.add(other.keys[i], other.counts[i]);
+		}
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the map can be restored per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.size);
+		if ( this.zeroCount != 0 ) {
+			out.writeLong(0);
+			out.writeInt(this.zeroCount);
+		}
+		for ( int i=0; i<this.keys.length; i++ ) {
+			if ( this.keys[i] == 0 ) continue;
+			out.writeLong(this.keys[i]);
+			out.writeInt(this.counts[i]);
+		}
+	}
+	
+	/**
+	 * Reads a map previously written per write
+	 * 
+	 * @param in The source
+	 * @return The map
+	 * @throws IOException Is thrown if the source cannot be read
+	 */
+	public static LongIntHashMap read(DataInput in) throws IOException {
+		
+		int amount=in.readInt();
+		if ( amount < 0 ) throw new IOException("Invalid number of keys: "+amount);
+		
+		LongIntHashMap map=new LongIntHashMap(amount);
+		for ( int i=0; i<amount; i++ ) {
+			long key=in.readLong();
+			map.add(key, in.readInt());
+		}
+		
+		return map;
+	}
+	
+	/**
+	 * Doubles the number of slots
+	 */
+	private void rehash() {
+		
+		long[] oldKeys=this.keys;
+		int[] oldCounts=this.counts;
+		this.keys=new long[oldKeys.length*2];
+		this.counts=new int[oldKeys.length*2];
+		int mask=this.keys.length-1;
+		
+		for ( int j=0; j<oldKeys.length; j++ ) {
+			if ( oldKeys[j] == 0 ) continue;
+			int i=(int)CommonHelper.mix64(oldKeys[j]) & mask;
+			while ( this.keys[i] != 0 ) i=(i+1) & mask;
+			this.keys[i]=oldKeys[j];
+			this.counts[i]=oldCounts[j];
+		}
+	}
+
+}
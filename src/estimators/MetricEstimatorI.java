@@ -18,6 +18,8 @@
  *=========================================================================*/
 package estimators;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
@@ -62,5 +64,108 @@ public abstract class MetricEstimatorI<E> {
 	 * @return The PasswordType, this estimator is designed for
 	 */
 	public abstract PasswordType getPasswordType();
+
+	/**
+	 * Returns whether this estimator can process the passwords one by one
+	 * through an accumulator instead of requiring the complete list.
+	 * Estimators supporting this need to override createAccumulator and
+	 * calculateMetric(AccumulatorI).
+	 *
+	 * @return Whether accumulation is supported
+	 */
+	public boolean supportsAccumulation() {
+		return false;
+	}
+
+	/**
+	 * Creates a new, empty accumulator for this estimator.
+	 *
+	 * @param parameters The parameters as provided by the parser
+	 * @return The accumulator
+	 */
+	public AccumulatorI<E> createAccumulator(int[] parameters) {
+		throw new UnsupportedOperationException("Estimator does not support accumulation.");
+	}
+
+	/**
+	 * Calculates the metric from an accumulator previously created by this
+	 * estimator. Afterwards the results can be printed as usual.
+	 *
+	 * @param accumulator The accumulated state
+	 * @return The calculated metric
+	 */
+	public Object calculateMetric(AccumulatorI<E> accumulator) {
+		throw new UnsupportedOperationException("Estimator does not support accumulation.");
+	}
+
+	/**
+	 * Returns whether this estimator can provide all of its results as a
+	 * vector of numbers. Estimators supporting this need to support
+	 * accumulation and override getResultLabels and getResults.
+	 *
+	 * @return Whether the results are available as vector
+	 */
+	public boolean supportsResultVector() {
+		return false;
+	}
+
+	/**
+	 * Returns the labels for the numbers returned by getResults for the
+	 * same accumulator.
+	 *
+	 * @param accumulator The accumulated state
+	 * @return The labels
+	 */
+	public String[] getResultLabels(AccumulatorI<E> accumulator) {
+		throw new UnsupportedOperationException("Estimator does not provide a result vector.");
+	}
+
+	/**
+	 * Calculates all results of this estimator from an accumulator. In
+	 * contrast to calculateMetric the state of the estimator is not
+	 * altered, so this may be called concurrently for different
+	 * accumulators.
+	 *
+	 * @param accumulator The accumulated state
+	 * @return The results
+	 */
+	public double[] getResults(AccumulatorI<E> accumulator) {
+		throw new UnsupportedOperationException("Estimator does not provide a result vector.");
+	}
+
+	/**
+	 * Returns whether the accumulators of this estimator can be written to
+	 * and restored from a binary representation, e.g. to continue the 
+	 * accumulation later on. Estimators supporting this need to support
+	 * accumulation and override writeState and readState.
+	 * 
+	 * @return Whether the state can be written
+	 */
+	public boolean supportsState() {
+		return false;
+	}
 	
+	/**
+	 * Writes the state of an accumulator created by this estimator
+	 * 
+	 * @param accumulator The accumulated state
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void writeState(AccumulatorI<E> accumulator, DataOutput out) throws IOException {
+		throw new UnsupportedOperationException("Estimator does not support writing its state.");
+	}
+	
+	/**
+	 * Restores an accumulator previously written per writeState
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters as provided by the parser
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or is malformed
+	 */
+	public AccumulatorI<E> readState(DataInput in, int[] parameters) throws IOException {
+		throw new UnsupportedOperationException("Estimator does not support writing its state.");
+	}
+
 }
@@ -0,0 +1,222 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class provides functions for estimating the mutual information of 
+ * two variables from the counts of their joint values, e.g. the grid cells
+ * of two click-points. The joint values are packed into long keys with 
+ * the first value in the upper and the second value in the lower 32 bits.
+ * 
+ * The plug-in estimate H(X) + H(Y) - H(X,Y) is strongly biased upwards if
+ * the joint values are undersampled: if most of them are seen only once,
+ * H(X,Y) is close to the logarithm of the number of observations and the
+ * estimate shows dependence even for independent variables. The bias is 
+ * corrected by subtracting the plug-in estimate for the same observations 
+ * with the second values shuffled, which destroys any dependence but 
+ * keeps the sample size and the marginals. The shuffles are seeded, so 
+ * the estimate only depends on the counts.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class MutualInformationHelper {
+
+	/**
+	 * The number of shuffles the baseline is averaged over
+	 */
+	private static final int SHUFFLES=4;
+	
+	/**
+	 * The seed of the first shuffle
+	 */
+	private static final long SEED=0x5DEECE66DL;
+	
+	/**
+	 * The largest number of observations shuffled, above this the bias is
+	 * negligible compared to the cost and the plug-in estimate is used
+	 */
+	private static final long MAX_SHUFFLED=1<<26;
+	
+	/**
+	 * Packs a pair of values into a key
+	 * 
+	 * @param first The non-negative first value
+	 * @param second The non-negative second value
+	 * @return The key
+	 */
+	public static long getKey(int first, int second) {
+		return ((long)first<<32) | second;
+	}
+	
+	/**
+	 * Calculates the plug-in estimate of the mutual information
+	 * 
+	 * @param keys The distinct joint values, packed as by getKey
+	 * @param counts The counts of the joint values
+	 * @return The mutual information in bits
+	 */
+	public static double getPlugInMutualInformation(long[] keys, int[] counts) {
+		return getMarginalEntropies(keys, counts)-ShannonEntropyHelper.getEntropy(counts);
+	}
+	
+	/**
+	 * Calculates the bias corrected estimate of the mutual information, 
+	 * i.e. the plug-in estimate minus the average plug-in estimate of the
+	 * shuffled observations
+	 * 
+	 * @param keys The distinct joint values, packed as by getKey
+	 * @param counts The counts of the joint values
+	 * @return The mutual information in bits, at least 0
+	 */
+	public static double getMutualInformation(long[] keys, int[] counts) {
+		
+		long total=0;
+		for ( int c : counts ) total += c;
+		
+		if ( total > MAX_SHUFFLED ) return Math.max(getPlugInMutualInformation(keys, counts), 0);
+		
+		//the marginals are not changed by shuffling, so only the joint entropies differ
+		double information=getShuffledJointEntropy(keys, counts, (int)total)-ShannonEntropyHelper.getEntropy(counts);
+		return Math.max(information, 0);
+	}
+	
+	/**
+	 * Determines whether the joint values are undersampled, i.e. the number
+	 * of distinct joint values is about the number of observations. The 
+	 * estimates are unreliable then even with the bias correction.
+	 * 
+	 * @param counts The counts of the joint values
+	 * @return Whether more than half of the observations are distinct joint values
+	 */
+	public static boolean isUndersampled(int[] counts) {
+		
+		long total=0;
+		for ( int c : counts ) total += c;
+		
+		return 2L*counts.length > total;
+	}
+	
+	/**
+	 * Calculates the average mutual information of all pairs of positions
+	 * of a symmetric position x position matrix
+	 * 
+	 * @param matrix The matrix, with the entropies on the diagonal
+	 * @return The average or 0 if there are no pairs
+	 */
+	public static double getAverage(double[][] matrix) {
+		
+		double sum=0;
+		int pairs=0;
+		for ( int i=0; i<matrix.length; i++ ) {
+			for ( int j=i+1; j<matrix.length; j++ ) {
+				sum += matrix[i][j];
+				pairs++;
+			}
+		}
+		
+		return pairs > 0 ? sum/pairs : 0;
+	}
+	
+	/**
+	 * Determines the pair of positions with the largest mutual information
+	 * of a symmetric position x position matrix
+	 * 
+	 * @param matrix The matrix, with the entropies on the diagonal
+	 * @return The first and the second position or null if there are no pairs
+	 */
+	public static int[] getMaximum(double[][] matrix) {
+		
+		int[] maximum=null;
+		for ( int i=0; i<matrix.length; i++ ) {
+			for ( int j=i+1; j<matrix.length; j++ ) {
+				if ( maximum == null || matrix[i][j] > matrix[maximum[0]][maximum[1]] ) maximum=new int[]{i, j};
+			}
+		}
+		
+		return maximum;
+	}
+	
+	/**
+	 * Calculates the sum of the plug-in entropies of the two marginals
+	 * 
+	 * @param keys The distinct joint values
+	 * @param counts The counts of the joint values
+	 * @return H(X) + H(Y) in bits
+	 */
+	private static double getMarginalEntropies(long[] keys, int[] counts) {
+		
+		LongIntHashMap first=new LongIntHashMap(1024);
+		LongIntHashMap second=new LongIntHashMap(1024);
+		for ( int i=0; i<keys.length; i++ ) {
+			first.add(keys[i]>>>32, counts[i]);
+			second.add(keys[i] & 0xFFFFFFFFL, counts[i]);
+		}
+		
+		return first.getEntropy()+second.getEntropy();
+	}
+	
+	/**
+	 * Calculates the average plug-in joint entropy of the observations with
+	 * the second values shuffled
+	 * 
+	 * @param keys The distinct joint values
+	 * @param counts The counts of the joint values
+	 * @param total The number of observations
+	 * @return The average joint entropy in bits
+	 */
+	private static double getShuffledJointEntropy(long[] keys, int[] counts, int total) {
+		
+		//the observations are expanded in the order of the keys, so the result does not depend on the order of a hash map
+		LongIntHashMap map=new LongIntHashMap(keys.length);
+		for ( int i=0; i<keys.length; i++ ) map.add(keys[i], counts[i]);
+		long[] sorted=keys.clone();
+		Arrays.sort(sorted);
+		
+		int[] firsts=new int[total];
+		int[] seconds=new int[total];
+		int n=0;
+		for ( long key : sorted ) {
+			for ( int c=map.get(key); c>0; c-- ) {
+				firsts[n]=(int)(key>>>32);
+				seconds[n]=(int)key;
+				n++;
+			}
+		}
+		
+		double entropy=0;
+		for ( int s=0; s<SHUFFLES; s++ ) {
+			Random random=new Random(SEED+s);
+			for ( int i=total-1; i>0; i-- ) {
+				int j=random.nextInt(i+1);
+				int t=seconds[i];
+				seconds[i]=seconds[j];
+				seconds[j]=t;
+			}
+			LongIntHashMap joint=new LongIntHashMap(Math.min(keys.length*2, total));
+			for ( int i=0; i<total; i++ ) joint.add(getKey(firsts[i], seconds[i]), 1);
+			entropy += joint.getEntropy();
+		}
+		
+		return entropy/SHUFFLES;
+	}
+
+}
@@ -52,6 +52,9 @@ public class ShannonEntropyHelper {
 	 */
 	public static double getEntropy(int[] frequencies) {
 		
+		//an empty distribution carries no entropy
+		if ( CommonHelper.getTotal(frequencies) == 0 ) return 0;
+		
 		double[] probs=getProbabilities(frequencies);
 		
 		double entropy=0;
@@ -63,5 +66,29 @@ public class ShannonEntropyHelper {
 		
 		return -1 * entropy;
 	}
+	
+	/**
+	 * Calculates the Shannon entropy from the frequencies with the 
+	 * Miller-Madow bias correction. The plug-in estimate of getEntropy 
+	 * underestimates the entropy if many values are seen only a few times,
+	 * the correction adds (K-1)/(2N ln 2) bits for K observed values and N
+	 * observations.
+	 * 
+	 * @param frequencies The frequencies
+	 * @return Corrected Shannon entropy
+	 */
+	public static double getMillerMadowEntropy(int[] frequencies) {
+		
+		long total=0;
+		int observed=0;
+		for ( int f : frequencies ) {
+			total += f;
+			if ( f != 0 ) observed++;
+		}
+		
+		if ( total == 0 ) return 0;
+		
+		return getEntropy(frequencies)+(observed-1)/(2*total*Math.log(2));
+	}
 
 }
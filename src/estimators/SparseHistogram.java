@@ -0,0 +1,217 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A histogram counting the occurrences of non-negative integer values from
+ * a large range of which only few occur, e.g. the Unicode code points of a
+ * password set. Small values are counted in an array, all others in a hash
+ * table with open addressing and linear probing, so the memory needed
+ * depends on the number of distinct values only.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class SparseHistogram {
+
+	/**
+	 * The values below this bound are counted in the array
+	 */
+	private static final int DENSE_LENGTH=128;
+
+	/**
+	 * The counts for the small values
+	 */
+	private final int[] dense=new int[DENSE_LENGTH];
+
+	/**
+	 * The larger values in the hash table, empty slots contain -1
+	 */
+	private int[] keys;
+
+	/**
+	 * The counts of the larger values in the hash table
+	 */
+	private int[] counts;
+
+	/**
+	 * The number of values in the hash table
+	 */
+	private int size=0;
+
+	/**
+	 * Creates a new empty histogram
+	 */
+	public SparseHistogram() {
+		this.keys=new int[16];
+		this.counts=new int[16];
+		Arrays.fill(this.keys, -1);
+	}
+
+	/**
+	 * Counts a value
+	 *
+	 * @param value The value
+	 * @param weight How often the value is counted
+	 */
+	public void add(int value, int weight) {
+
+		if ( value < DENSE_LENGTH ) {
+			this.dense[value] += weight;
+			return;
+		}
+
+		int mask=this.keys.length-1;
+		int i=(int)CommonHelper.mix64(value) & mask;
+
+		while ( this.keys[i] != -1 ) {
+			if ( this.keys[i] == value ) {
+				this.counts[i] += weight;
+				return;
+			}
+			i=(i+1) & mask;
+		}
+
+		this.keys[i]=value;
+		this.counts[i]=weight;
+		this.size++;
+
+		//keep the load factor below 0.5
+		if ( 2*this.size > this.keys.length ) this.grow();
+	}
+
+	/**
+	 * Doubles the capacity of the hash table
+	 */
+	private void grow() {
+
+		int[] oldKeys=this.keys;
+		int[] oldCounts=this.counts;
+
+		this.keys=new int[2*oldKeys.length];
+		this.counts=new int[2*oldKeys.length];
+		Arrays.fill(this.keys, -1);
+		this.size=0;
+
+		for ( int i=0; i<oldKeys.length; i++ ) {
+			if ( oldKeys[i] != -1 ) this.add(oldKeys[i], oldCounts[i]);
+		}
+	}
+
+	/**
+	 * Returns the count of a value
+	 *
+	 * @param value The value
+	 * @return How often the value was counted
+	 */
+	public int get(int value) {
+
+		if ( value < DENSE_LENGTH ) return this.dense[value];
+
+		int mask=this.keys.length-1;
+		int i=(int)CommonHelper.mix64(value) & mask;
+
+		while ( this.keys[i] != -1 ) {
+			if ( this.keys[i] == value ) return this.counts[i];
+			i=(i+1) & mask;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Adds all counts of another histogram to this one
+	 *
+	 * @param other The other histogram
+	 */
+	public void merge(SparseHistogram other) {
+
+		for ( int i=0; i<DENSE_LENGTH; i++ ) this.dense[i] += other.dense[i];
+
+		for ( int i=0; i<other.keys.length; i++ ) {
+			if ( other.keys[i] != -1 ) this.add(other.keys[i], other.counts[i]);
+		}
+	}
+
+	/**
+	 * @return The Shannon entropy of the counted values
+	 */
+	public double getEntropy() {
+
+		//the order of the counts does not matter for the entropy
+		int[] all=Arrays.copyOf(this.dense, DENSE_LENGTH+this.size);
+		int n=DENSE_LENGTH;
+		for ( int i=0; i<this.keys.length; i++ ) {
+			if ( this.keys[i] != -1 ) all[n++]=this.counts[i];
+		}
+
+		return ShannonEntropyHelper.getEntropy(all);
+	}
+
+	/**
+	 * Writes the counts to a binary sink, so the histogram can be restored
+	 * per read. Only the values counted at least once are written.
+	 *
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+
+		int amount=this.size;
+		for ( int count : this.dense ) if ( count != 0 ) amount++;
+
+		out.writeInt(amount);
+		for ( int i=0; i<DENSE_LENGTH; i++ ) {
+			if ( this.dense[i] == 0 ) continue;
+			out.writeInt(i);
+			out.writeInt(this.dense[i]);
+		}
+		for ( int i=0; i<this.keys.length; i++ ) {
+			if ( this.keys[i] == -1 ) continue;
+			out.writeInt(this.keys[i]);
+			out.writeInt(this.counts[i]);
+		}
+	}
+
+	/**
+	 * Reads a histogram previously written per write
+	 *
+	 * @param in The source
+	 * @return The histogram
+	 * @throws IOException Is thrown if the source cannot be read
+	 */
+	public static SparseHistogram read(DataInput in) throws IOException {
+
+		SparseHistogram histogram=new SparseHistogram();
+
+		int amount=in.readInt();
+		for ( int i=0; i<amount; i++ ) {
+			int value=in.readInt();
+			if ( value < 0 ) throw new IOException("Invalid histogram value: "+value);
+			histogram.add(value, in.readInt());
+		}
+
+		return histogram;
+	}
+
+}
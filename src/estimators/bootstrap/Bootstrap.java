@@ -0,0 +1,397 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.bootstrap;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+
+/**
+ * This class provides bootstrap confidence intervals for all results of an
+ * estimator supporting result vectors. The passwords are collected as 
+ * distinct passwords with their frequency. Instead of materializing 
+ * resampled password lists, each replicate draws a Poisson distributed
+ * weight for every distinct password (the Poisson bootstrap of Hanley and
+ * MacGibbon [1]), adds it with this weight to a fresh accumulator of the 
+ * estimator and recalculates the results. The replicates are independent
+ * and are calculated in parallel on a ForkJoinPool. The confidence 
+ * intervals are obtained with the percentile method. For plug-in estimates
+ * such as the entropy the replicates are biased as well, since a replicate
+ * contains fewer distinct passwords than the sample. The percentile 
+ * intervals are therefore shifted against the point estimate and may not 
+ * contain it.
+ * <br>
+ * Each replicate uses its own random number generator seeded from the seed
+ * and the index of the replicate, so the results are reproducible for a
+ * given seed regardless of the number of threads.
+ * 
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>J. A. Hanley and B. MacGibbon. Creating non-parametric bootstrap samples using Poisson frequencies. Computer Methods and Programs in Biomedicine, 83(1), pages 57-62, 2006.</td>
+ * </tr>
+ * </table>
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class Bootstrap<E> implements AccumulatorI<E> {
+
+	/**
+	 * The default confidence level of the intervals
+	 */
+	public static final double DEFAULT_CONFIDENCE=0.95;
+	
+	/**
+	 * The estimator the results are calculated with
+	 */
+	private final MetricEstimatorI<E> estimator;
+	
+	/**
+	 * The parameters as provided by the parser
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The distinct passwords and their frequencies
+	 */
+	private final Map<E, Integer> frequencies=new HashMap<E, Integer>();
+	
+	/**
+	 * The labels of the results
+	 */
+	private String[] labels;
+	
+	/**
+	 * The results calculated from the original password set
+	 */
+	private double[] pointEstimates;
+	
+	/**
+	 * The results of each replicate: [replicate][result]
+	 */
+	private double[][] replicates;
+	
+	/**
+	 * The confidence level of the intervals
+	 */
+	private double confidence=DEFAULT_CONFIDENCE;
+	
+	/**
+	 * The seed the replicates were calculated with
+	 */
+	private long seed;
+	
+	/**
+	 * Creates a new bootstrap
+	 * 
+	 * @param estimator The estimator, needs to support result vectors
+	 * @param parameters The parameters as provided by the parser
+	 */
+	public Bootstrap(MetricEstimatorI<E> estimator, int[] parameters) {
+		
+		if ( !estimator.supportsResultVector() ) throw new IllegalArgumentException("Estimator does not provide a result vector.");
+		
+		this.estimator=estimator;
+		this.parameters=parameters;
+	}
+	
+	@Override
+	public void add(E password, int weight) {
+		Integer frequency=this.frequencies.get(password);
+		this.frequencies.put(password, frequency == null ? weight : frequency+weight);
+	}
+	
+	@Override
+	public void merge(AccumulatorI<E> other) {
+		for ( Map.Entry<E, Integer> e : ((Bootstrap<E>)other).frequencies.entrySet() ) {
+			this.add(e.getKey(), e.getValue());
+		}
+	}
+	
+	/**
+	 * Creates an accumulator of the estimator containing all passwords added
+	 * so far, i.e. the original password set.
+	 * 
+	 * @return The accumulator
+	 */
+	public AccumulatorI<E> createAccumulator() {
+		
+		AccumulatorI<E> accumulator=this.estimator.createAccumulator(this.parameters);
+		
+		for ( Map.Entry<E, Integer> e : this.frequencies.entrySet() ) {
+			accumulator.add(e.getKey(), e.getValue());
+		}
+		
+		return accumulator;
+	}
+	
+	/**
+	 * Calculates the replicates
+	 * 
+	 * @param amount The number of replicates
+	 * @param seed The seed for the random number generators
+	 * @param pool The pool the replicates are calculated on
+	 */
+	public void run(int amount, long seed, ForkJoinPool pool) {
+		
+		this.seed=seed;
+		
+		/*
+		 * 1. Results from the original password set
+		 */
+		AccumulatorI<E> original=this.createAccumulator();
+		this.labels=this.estimator.getResultLabels(original);
+		this.pointEstimates=this.estimator.getResults(original);
+		
+		/*
+		 * 2. The distinct passwords in a fixed order
+		 */
+		List<E> passwords=new ArrayList<E>(this.frequencies.size());
+		int[] counts=new int[this.frequencies.size()];
+		for ( Map.Entry<E, Integer> e : this.frequencies.entrySet() ) {
+			counts[passwords.size()]=e.getValue();
+			passwords.add(e.getKey());
+		}
+		
+		/*
+		 * 3. The replicates
+		 */
+		this.replicates=new double[amount][];
+		pool.invoke(new ReplicateTask(passwords, counts, 0, amount));
+	}
+	
+	/**
+	 * Sets the confidence level of the intervals
+	 * 
+	 * @param confidence The confidence level between 0 and 1
+	 */
+	public void setConfidence(double confidence) {
+		this.confidence=confidence;
+	}
+	
+	/**
+	 * Calculates the confidence intervals for all results with the percentile method
+	 * 
+	 * @return The intervals: [result][0: lower, 1: upper]
+	 */
+	public double[][] getConfidenceIntervals() {
+		
+		double[][] intervals=new double[this.pointEstimates.length][2];
+		double[] values=new double[this.replicates.length];
+		
+		for ( int i=0; i<this.pointEstimates.length; i++ ) {
+			
+			for ( int r=0; r<this.replicates.length; r++ ) {
+				//replicates can miss positions of rare lengths entirely
+				values[r]=i < this.replicates[r].length ? this.replicates[r][i] : Double.NaN;
+			}
+			Arrays.sort(values);
+			
+			intervals[i][0]=percentile(values, (1-this.confidence)/2);
+			intervals[i][1]=percentile(values, 1-(1-this.confidence)/2);
+		}
+		
+		return intervals;
+	}
+	
+	/**
+	 * Prints all results with their confidence intervals
+	 * 
+	 * @param outWriter The sink to write the results to
+	 */
+	public void printResult(Writer outWriter) throws IOException {
+		
+		double[][] intervals=this.getConfidenceIntervals();
+		
+		outWriter.write("Bootstrap replicates: "+this.replicates.length+"\n");
+		outWriter.write("Bootstrap seed: "+this.seed+"\n");
+		outWriter.write("Confidence level: "+this.confidence+"\n");
+		outWriter.write("-------------------------------\n");
+		
+		for ( int i=0; i<this.pointEstimates.length; i++ ) {
+			outWriter.write(this.labels[i]+": "+this.pointEstimates[i]+" ["+intervals[i][0]+", "+intervals[i][1]+"]\n");
+		}
+		
+		outWriter.write("-------------------------------\n");
+	}
+	
+	/**
+	 * Returns the percentile of sorted values by linear interpolation,
+	 * undefined values (NaN) are sorted last and ignored
+	 * 
+	 * @param sorted The sorted values
+	 * @param p The percentile between 0 and 1
+	 * @return The percentile
+	 */
+	private static double percentile(double[] sorted, double p) {
+		
+		int n=sorted.length;
+		while ( n > 0 && Double.isNaN(sorted[n-1]) ) n--;
+		if ( n == 0 ) return Double.NaN;
+		
+		double index=p*(n-1);
+		int lower=(int)Math.floor(index);
+		int upper=Math.min(lower+1, n-1);
+		
+		return sorted[lower]+(index-lower)*(sorted[upper]-sorted[lower]);
+	}
+	
+	/**
+	 * Draws a Poisson distributed random number. For small means the 
+	 * multiplication method of Knuth is used, for large means the 
+	 * transformed rejection method of H&ouml;rmann [1].
+	 * 
+	 * <table border="0">
+	 * <tr>
+	 * <td valign="top">[1]</td>
+	 * <td>W. H&ouml;rmann. The transformed rejection method for generating Poisson random variables. Insurance: Mathematics and Economics, 12(1), pages 39-45, 1993.</td>
+	 * </tr>
+	 * </table>
+	 * 
+	 * @param mean The mean
+	 * @param random The random number generator
+	 * @return The random number
+	 */
+	static int poisson(double mean, Random random) {
+		
+		if ( mean < 30 ) {
+			double limit=Math.exp(-mean);
+			double p=random.nextDouble();
+			int k=0;
+			while ( p > limit ) {
+				k++;
+				p *= random.nextDouble();
+			}
+			return k;
+		}
+		
+		double sqrtMean=Math.sqrt(mean);
+		double logMean=Math.log(mean);
+		double b=0.931+2.53*sqrtMean;
+		double a=-0.059+0.02483*b;
+		double invAlpha=1.1239+1.1328/(b-3.4);
+		double vr=0.9277-3.6224/(b-2);
+		
+		while ( true ) {
+			double u=random.nextDouble()-0.5;
+			double v=random.nextDouble();
+			double us=0.5-Math.abs(u);
+			long k=(long)Math.floor((2*a/us+b)*u+mean+0.43);
+			
+			if ( us >= 0.07 && v <= vr ) return (int)k;
+			if ( k < 0 || (us < 0.013 && v > us) ) continue;
+			if ( Math.log(v)+Math.log(invAlpha)-Math.log(a/(us*us)+b) <= -mean+k*logMean-logFactorial(k) ) return (int)k;
+		}
+	}
+	
+	/**
+	 * Calculates log(k!) exactly for small k and with the Stirling series otherwise
+	 * 
+	 * @param k The argument
+	 * @return log(k!)
+	 */
+	private static double logFactorial(long k) {
+		
+		if ( k < 10 ) {
+			double f=1;
+			for ( int i=2; i<=k; i++ ) f *= i;
+			return Math.log(f);
+		}
+		
+		double x=k+1;
+		return (x-0.5)*Math.log(x)-x+0.5*Math.log(2*Math.PI)+1/(12*x)-1/(360*x*x*x);
+	}
+	
+	/**
+	 * The task calculating a range of replicates, split until a single
+	 * replicate remains
+	 */
+	private class ReplicateTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The distinct passwords
+		 */
+		private final List<E> passwords;
+		
+		/**
+		 * The frequencies of the distinct passwords
+		 */
+		private final int[] counts;
+		
+		/**
+		 * The first replicate of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The replicate after the last one of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param passwords The distinct passwords
+		 * @param counts The frequencies of the distinct passwords
+		 * @param from The first replicate of the range
+		 * @param to The replicate after the last one of the range
+		 */
+		ReplicateTask(List<E> passwords, int[] counts, int from, int to) {
+			this.passwords=passwords;
+			this.counts=counts;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new ReplicateTask(this.passwords, this.counts, this.from, middle),
+						new ReplicateTask(this.passwords, this.counts, middle, this.to));
+				return;
+			}
+			
+			Random random=new Random(Bootstrap.this.seed+this.from*0x9E3779B97F4A7C15L);
+			AccumulatorI<E> accumulator=Bootstrap.this.estimator.createAccumulator(Bootstrap.this.parameters);
+			
+			for ( int i=0; i<this.counts.length; i++ ) {
+				int weight=poisson(this.counts[i], random);
+				if ( weight > 0 ) accumulator.add(this.passwords.get(i), weight);
+			}
+			
+			Bootstrap.this.replicates[this.from]=Bootstrap.this.estimator.getResults(accumulator);
+		}
+		
+	}
+
+}
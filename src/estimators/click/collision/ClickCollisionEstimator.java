@@ -0,0 +1,436 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.collision;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.ClickGridHelper;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides an estimator for the collisions of graphical click-based
+ * passwords under the tolerance of the scheme, e.g. PassPoints. Two 
+ * passwords collide if they have the same length and each click-point of 
+ * one lies within the tolerance square of the respective click-point of 
+ * the other, i.e. both accounts accept each other's password. The 
+ * following results are reported:
+ * 
+ * <ul>
+ * <li>The number of colliding pairs of passwords</li>
+ * <li>The collision degree of the passwords, i.e. the number of other
+ * passwords accepted, as summary and distribution</li>
+ * <li>The largest connected components of the collision graph, i.e. the
+ * largest groups of passwords connected by collisions</li>
+ * </ul>
+ * 
+ * Instead of comparing all pairs, the passwords are hashed into the cells
+ * of the tolerance grid by their first click-point. Colliding passwords 
+ * lie in the same or in neighbouring cells, so only the passwords of 
+ * these cells are compared completely. The comparisons run in parallel
+ * over the passwords.
+ * 
+ * The collisions need all passwords at once, as a password read later may
+ * collide with any password read before. Hence there is no accumulator and
+ * the estimator is not available for state files, workers and the pipeline.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class ClickCollisionEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The number of largest components printed
+	 */
+	private static final int LARGEST_COMPONENTS=10;
+	
+	/**
+	 * The number of passwords handled by a single task
+	 */
+	private static final int TASK_SIZE=1024;
+	
+	/**
+	 * The pool the comparisons run on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The number of passwords of the last calculation
+	 */
+	private int passwords;
+	
+	/**
+	 * The number of colliding pairs of the last calculation
+	 */
+	private long collisions;
+	
+	/**
+	 * The collision degree of each password of the last calculation
+	 */
+	private int[] degrees;
+	
+	/**
+	 * The sizes of the components with at least two passwords in decreasing order
+	 */
+	private int[] components;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		int n=passwords.size();
+		int tolerance=parameters[2];
+		int rows=ClickGridHelper.getRows(parameters);
+		int cellCount=ClickGridHelper.getCellCount(parameters);
+		int maxLength=ClickPassword.getMaxLength(passwords);
+		
+		//the click-points of all passwords packed as x,y pairs
+		int[] starts=new int[n+1];
+		for ( int p=0; p<n; p++ ) starts[p+1]=starts[p]+2*passwords.get(p).length();
+		int[] coordinates=new int[starts[n]];
+		int[] buckets=new int[n];
+		for ( int p=0; p<n; p++ ) {
+			ClickPassword pwd=passwords.get(p);
+			for ( int i=0; i<pwd.length(); i++ ) {
+				coordinates[starts[p]+2*i]=pwd.getClickPoint(i)[0];
+				coordinates[starts[p]+2*i+1]=pwd.getClickPoint(i)[1];
+			}
+			//passwords of different lengths never collide, so they use separate cells
+			int cell=pwd.length() > 0 ? ClickGridHelper.getCell(pwd.getClickPoint(0), parameters) : 0;
+			buckets[p]=pwd.length()*cellCount+cell;
+		}
+		
+		//the passwords ordered by bucket with counting sort
+		int[] bucketStarts=new int[(maxLength+1)*cellCount+1];
+		for ( int bucket : buckets ) bucketStarts[bucket+1]++;
+		for ( int b=0; b+1<bucketStarts.length; b++ ) bucketStarts[b+1] += bucketStarts[b];
+		int[] order=new int[n];
+		int[] next=Arrays.copyOf(bucketStarts, bucketStarts.length-1);
+		for ( int p=0; p<n; p++ ) order[next[buckets[p]]++]=p;
+		
+		this.degrees=new int[n];
+		CollisionTask task=new CollisionTask(coordinates, starts, buckets, bucketStarts, order, this.degrees, tolerance, rows, cellCount, 0, n);
+		long[] edges=ForkJoinTask.inForkJoinPool() ? task.invoke() : POOL.invoke(task);
+		
+		this.passwords=n;
+		this.collisions=edges.length;
+		this.components=getComponents(edges, n);
+		
+		return this.collisions;
+	}
+	
+	/**
+	 * Calculates the connected components of the collision graph with a 
+	 * union-find structure
+	 * 
+	 * @param edges The colliding pairs, packed as first<<32|second
+	 * @param n The number of passwords
+	 * @return The sizes of the components with at least two passwords in decreasing order
+	 */
+	private static int[] getComponents(long[] edges, int n) {
+		
+		int[] parents=new int[n];
+		int[] sizes=new int[n];
+		for ( int p=0; p<n; p++ ) {
+			parents[p]=p;
+			sizes[p]=1;
+		}
+		
+		for ( long edge : edges ) {
+			int a=find(parents, (int)(edge>>>32));
+			int b=find(parents, (int)edge);
+			if ( a == b ) continue;
+			//the smaller component is attached to the larger one
+			if ( sizes[a] < sizes[b] ) {
+				int swap=a;
+				a=b;
+				b=swap;
+			}
+			parents[b]=a;
+			sizes[a] += sizes[b];
+		}
+		
+		int amount=0;
+		for ( int p=0; p<n; p++ ) {
+			if ( parents[p] == p && sizes[p] > 1 ) sizes[amount++]=sizes[p];
+		}
+		int[] components=Arrays.copyOf(sizes, amount);
+		Arrays.sort(components);
+		for ( int i=0; i<amount/2; i++ ) {
+			int swap=components[i];
+			components[i]=components[amount-1-i];
+			components[amount-1-i]=swap;
+		}
+		
+		return components;
+	}
+	
+	/**
+	 * Finds the root of the component of a password with path halving
+	 * 
+	 * @param parents The parent of each password
+	 * @param p The password
+	 * @return The root of the component
+	 */
+	private static int find(int[] parents, int p) {
+		while ( parents[p] != p ) {
+			parents[p]=parents[parents[p]];
+			p=parents[p];
+		}
+		return p;
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.degrees==null ) return;
+		
+		this.printSummary(outWriter);
+		
+		outWriter.write("Collision degree\tPasswords\n");
+		int[] sorted=this.degrees.clone();
+		Arrays.sort(sorted);
+		for ( int i=0; i<sorted.length; ) {
+			int j=i;
+			while ( j < sorted.length && sorted[j] == sorted[i] ) j++;
+			outWriter.write(sorted[i]+"\t"+(j-i)+"\n");
+			i=j;
+		}
+		outWriter.write("Component size\tComponents\n");
+		for ( int i=0; i<this.components.length; ) {
+			int j=i;
+			while ( j < this.components.length && this.components[j] == this.components[i] ) j++;
+			outWriter.write(this.components[i]+"\t"+(j-i)+"\n");
+			i=j;
+		}
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.degrees==null ) return;
+		
+		this.printSummary(outWriter);
+		outWriter.close();
+	}
+	
+	/**
+	 * Prints the number of collisions, the summary of the collision degrees
+	 * and the largest components
+	 * 
+	 * @param outWriter The sink to write the results to
+	 * @throws IOException Is thrown if the results cannot be written
+	 */
+	private void printSummary(Writer outWriter) throws IOException {
+		
+		int colliding=0;
+		int maxDegree=0;
+		for ( int degree : this.degrees ) {
+			if ( degree > 0 ) colliding++;
+			maxDegree=Math.max(maxDegree, degree);
+		}
+		
+		outWriter.write("Passwords: "+this.passwords+"\n");
+		outWriter.write("Colliding pairs: "+this.collisions+"\n");
+		outWriter.write("Passwords with collisions: "+colliding+" ("+((double)colliding/this.passwords)+")\n");
+		outWriter.write("Mean collision degree: "+(2.0*this.collisions/this.passwords)+"\n");
+		outWriter.write("Maximum collision degree: "+maxDegree+"\n");
+		outWriter.write("Components with collisions: "+this.components.length+"\n");
+		outWriter.write("Largest components:");
+		for ( int i=0; i<Math.min(LARGEST_COMPONENTS, this.components.length); i++ ) outWriter.write(" "+this.components[i]);
+		outWriter.write("\n");
+	}
+	
+	/**
+	 * The task comparing a range of the ordered passwords with the passwords 
+	 * of the same and the neighbouring cells, split until at most TASK_SIZE
+	 * passwords remain. It fills in the collision degrees of its passwords
+	 * and returns the colliding pairs with a larger second password, packed
+	 * as first<<32|second.
+	 */
+	private static class CollisionTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The click-points of all passwords packed as x,y pairs
+		 */
+		private final int[] coordinates;
+		
+		/**
+		 * The index of the first coordinate of each password, followed by the end
+		 */
+		private final int[] starts;
+		
+		/**
+		 * The bucket of each password, i.e. length*cells+cell of the first click-point
+		 */
+		private final int[] buckets;
+		
+		/**
+		 * The index of the first password of each bucket in the order, followed by the end
+		 */
+		private final int[] bucketStarts;
+		
+		/**
+		 * The passwords ordered by bucket
+		 */
+		private final int[] order;
+		
+		/**
+		 * The collision degree of each password, filled by the tasks
+		 */
+		private final int[] degrees;
+		
+		/**
+		 * The tolerance
+		 */
+		private final int tolerance;
+		
+		/**
+		 * The number of rows of the tolerance grid
+		 */
+		private final int rows;
+		
+		/**
+		 * The number of cells of the tolerance grid
+		 */
+		private final int cellCount;
+		
+		/**
+		 * The first position in the order
+		 */
+		private final int from;
+		
+		/**
+		 * The position after the last position in the order
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param coordinates The click-points of all passwords packed as x,y pairs
+		 * @param starts The index of the first coordinate of each password
+		 * @param buckets The bucket of each password
+		 * @param bucketStarts The index of the first password of each bucket in the order
+		 * @param order The passwords ordered by bucket
+		 * @param degrees The array receiving the collision degrees
+		 * @param tolerance The tolerance
+		 * @param rows The number of rows of the tolerance grid
+		 * @param cellCount The number of cells of the tolerance grid
+		 * @param from The first position in the order
+		 * @param to The position after the last position in the order
+		 */
+		CollisionTask(int[] coordinates, int[] starts, int[] buckets, int[] bucketStarts, int[] order, int[] degrees, int tolerance, int rows, int cellCount, int from, int to) {
+			this.coordinates=coordinates;
+			this.starts=starts;
+			this.buckets=buckets;
+			this.bucketStarts=bucketStarts;
+			this.order=order;
+			this.degrees=degrees;
+			this.tolerance=tolerance;
+			this.rows=rows;
+			this.cellCount=cellCount;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected long[] compute() {
+			
+			if ( this.to-this.from > TASK_SIZE ) {
+				int middle=(this.from+this.to)>>>1;
+				CollisionTask left=new CollisionTask(this.coordinates, this.starts, this.buckets, this.bucketStarts, this.order, this.degrees, this.tolerance, this.rows, this.cellCount, this.from, middle);
+				CollisionTask right=new CollisionTask(this.coordinates, this.starts, this.buckets, this.bucketStarts, this.order, this.degrees, this.tolerance, this.rows, this.cellCount, middle, this.to);
+				left.fork();
+				long[] edges=right.compute();
+				long[] other=left.join();
+				long[] all=Arrays.copyOf(other, other.length+edges.length);
+				System.arraycopy(edges, 0, all, other.length, edges.length);
+				return all;
+			}
+			
+			long[] edges=new long[16];
+			int amount=0;
+			int columns=this.cellCount/this.rows;
+			
+			for ( int k=this.from; k<this.to; k++ ) {
+				
+				int p=this.order[k];
+				int bucket=this.buckets[p];
+				int cell=bucket%this.cellCount;
+				int column=cell/this.rows;
+				int row=cell%this.rows;
+				int degree=0;
+				
+				//colliding first click-points lie at most one cell apart
+				for ( int c=Math.max(0, column-1); c<=Math.min(columns-1, column+1); c++ ) {
+					for ( int r=Math.max(0, row-1); r<=Math.min(this.rows-1, row+1); r++ ) {
+						
+						int b=bucket-cell+c*this.rows+r;
+						for ( int j=this.bucketStarts[b]; j<this.bucketStarts[b+1]; j++ ) {
+							int q=this.order[j];
+							if ( q == p || !this.collide(p, q) ) continue;
+							degree++;
+							if ( q > p ) {
+								if ( amount == edges.length ) edges=Arrays.copyOf(edges, 2*amount);
+								edges[amount++]=((long)p<<32) | q;
+							}
+						}
+					}
+				}
+				
+				this.degrees[p]=degree;
+			}
+			
+			return Arrays.copyOf(edges, amount);
+		}
+		
+		/**
+		 * Checks whether two passwords of the same length collide
+		 * 
+		 * @param p The first password
+		 * @param q The second password
+		 * @return Whether all click-points lie within the tolerance of each other
+		 */
+		private boolean collide(int p, int q) {
+			int offset=this.starts[q]-this.starts[p];
+			for ( int i=this.starts[p]; i<this.starts[p+1]; i++ ) {
+				if ( Math.abs(this.coordinates[i]-this.coordinates[i+offset]) > this.tolerance ) return false;
+			}
+			return true;
+		}
+		
+	}
+
+}
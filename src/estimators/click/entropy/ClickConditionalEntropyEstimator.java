@@ -0,0 +1,367 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridHelper;
+import estimators.LongIntHashMap;
+import estimators.MetricEstimatorI;
+import estimators.MutualInformationHelper;
+import estimators.ShannonEntropyHelper;
+
+/**
+ * This provides an estimator for the conditional entropy of each 
+ * click-point given the previous one, H(cp_i | cp_i-1), on the tolerance
+ * grid. Unlike the pooled entropy of gp_click_entropy_dep it captures how
+ * users chain their click-points. For each pair of consecutive positions
+ * the conditional entropy and the mutual information 
+ * I(cp_i-1; cp_i) = H(cp_i-1) + H(cp_i) - H(cp_i-1, cp_i) are reported,
+ * both calculated from the passwords long enough for the pair. The overall
+ * entropy H(cp_1) + H(cp_2 | cp_1) + ... is the entropy of the passwords
+ * if each click-point depends on the previous one only.
+ * 
+ * The transitions between cells are counted sparsely, as most of the 
+ * cells^2 transitions never occur. The pairs of positions are calculated
+ * in parallel.
+ * 
+ * For realistic sample sizes most transitions are seen only once, which 
+ * makes plug-in estimates of the mutual information far too large and the
+ * conditional entropies far too small. Therefore the entropies are 
+ * Miller-Madow corrected and the mutual information is corrected by a 
+ * shuffled-pairs baseline as provided by the MutualInformationHelper. If 
+ * the transitions are still undersampled, i.e. about as many transitions
+ * are observed as there are passwords, a warning is printed and the 
+ * overall entropy is reported as an undersampled lower bound.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickTransitionAccumulator
+ */
+public class ClickConditionalEntropyEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The pool the pairs of positions are calculated on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The entropy of the first click-point of the last calculation
+	 */
+	private double firstEntropy;
+	
+	/**
+	 * The results of the last calculation: [position-1][conditional entropy, mutual information, 1 if undersampled]
+	 */
+	private double[][] results;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickTransitionAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickTransitionAccumulator acc=(ClickTransitionAccumulator)accumulator;
+		this.firstEntropy=getFirstEntropy(acc);
+		this.results=calculateResults(acc);
+		
+		double overall=this.firstEntropy;
+		for ( double[] res : this.results ) overall += res[0];
+		return overall;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickTransitionAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickTransitionAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int steps=Math.max(((ClickTransitionAccumulator)accumulator).getGrids().getMaxLength()-1, 0);
+		String[] labels=new String[2*steps+3];
+		
+		labels[0]="Click-point 1 entropy";
+		for ( int i=0; i<steps; i++ ) {
+			labels[2*i+1]="Click-point "+(i+2)+" conditional entropy";
+			labels[2*i+2]="Click-points "+(i+1)+"-"+(i+2)+" mutual information";
+		}
+		labels[2*steps+1]="Overall entropy";
+		labels[2*steps+2]="Overall mutual information";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickTransitionAccumulator acc=(ClickTransitionAccumulator)accumulator;
+		double[][] res=calculateResults(acc);
+		double[] flat=new double[2*res.length+3];
+		
+		flat[0]=getFirstEntropy(acc);
+		flat[2*res.length+1]=flat[0];
+		for ( int i=0; i<res.length; i++ ) {
+			flat[2*i+1]=res[i][0];
+			flat[2*i+2]=res[i][1];
+			flat[2*res.length+1] += res[i][0];
+			flat[2*res.length+2] += res[i][1];
+		}
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the entropy of the first click-point
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The entropy or 0 if there are no click-points
+	 */
+	private static double getFirstEntropy(ClickTransitionAccumulator accumulator) {
+		if ( accumulator.getGrids().getMaxLength() == 0 ) return 0;
+		return ShannonEntropyHelper.getMillerMadowEntropy(accumulator.getGrids().getGrid(0));
+	}
+	
+	/**
+	 * Calculates the conditional entropy and the mutual information of each
+	 * pair of consecutive positions in parallel
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The results: [position-1][conditional entropy, mutual information, 1 if undersampled]
+	 */
+	private static double[][] calculateResults(ClickTransitionAccumulator accumulator) {
+		
+		double[][] res=new double[Math.max(accumulator.getGrids().getMaxLength()-1, 0)][];
+		int cells=ClickGridHelper.getCellCount(accumulator.getGrids().getParameters());
+		
+		PairTask task=new PairTask(accumulator, cells, res, 0, res.length);
+		if ( ForkJoinTask.inForkJoinPool() ) task.invoke();
+		else POOL.invoke(task);
+		
+		return res;
+	}
+	
+	/**
+	 * Calculates the conditional entropy and the mutual information of the
+	 * transitions into a position
+	 * 
+	 * @param transitions The counts of the transitions
+	 * @param cells The number of cells of the tolerance grid
+	 * @return The conditional entropy, the mutual information and 1 if the transitions are undersampled, 0 otherwise
+	 */
+	private static double[] calculatePair(LongIntHashMap transitions, int cells) {
+		
+		long[] keys=transitions.getKeys();
+		int[] counts=transitions.getCounts();
+		
+		//the marginal of the passwords long enough for the pair
+		int[] current=new int[cells];
+		for ( int j=0; j<keys.length; j++ ) current[(int)keys[j]] += counts[j];
+		
+		//H(cp_i | cp_i-1) = H(cp_i) - I(cp_i-1; cp_i), both bias corrected
+		double information=MutualInformationHelper.getMutualInformation(keys, counts);
+		double conditional=Math.max(ShannonEntropyHelper.getMillerMadowEntropy(current)-information, 0);
+		
+		return new double[]{conditional, information, MutualInformationHelper.isUndersampled(counts) ? 1 : 0};
+	}
+	
+	/**
+	 * Determines whether the transitions into any position are undersampled
+	 * 
+	 * @param results The results of calculateResults
+	 * @return Whether any position is undersampled
+	 */
+	private static boolean isUndersampled(double[][] results) {
+		for ( double[] res : results ) {
+			if ( res[2] != 0 ) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes the warning and the overall results
+	 * 
+	 * @param overall The overall entropy
+	 * @param information The overall mutual information
+	 * @param undersampled Whether the transitions are undersampled
+	 * @param outWriter The writer
+	 * @throws IOException Is thrown if the writer fails
+	 */
+	private static void writeOverall(double overall, double information, boolean undersampled, Writer outWriter) throws IOException {
+		if ( undersampled ) {
+			outWriter.write("Warning: about as many transitions as passwords were observed, the estimates are unreliable.\n");
+			outWriter.write("Overall entropy (undersampled lower bound): "+overall+"\n");
+		} else {
+			outWriter.write("Overall entropy: "+overall+"\n");
+		}
+		outWriter.write("Overall mutual information: "+information+"\n");
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		double overall=this.firstEntropy, information=0;
+		outWriter.write("Click-point: 1\n");
+		outWriter.write("Click-point entropy: "+this.firstEntropy+"\n");
+		outWriter.write("-------------------------------\n");
+		for ( int i=0; i<this.results.length; i++ ) {
+			outWriter.write("Click-point: "+(i+2)+"\n");
+			outWriter.write("Conditional entropy: "+this.results[i][0]+"\n");
+			outWriter.write("Mutual information: "+this.results[i][1]+"\n");
+			if ( this.results[i][2] != 0 ) outWriter.write("Undersampled: yes\n");
+			outWriter.write("-------------------------------\n");
+			overall += this.results[i][0];
+			information += this.results[i][1];
+		}
+		writeOverall(overall, information, isUndersampled(this.results), outWriter);
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		double overall=this.firstEntropy, information=0;
+		for ( double[] res : this.results ) {
+			overall += res[0];
+			information += res[1];
+		}
+		writeOverall(overall, information, isUndersampled(this.results), outWriter);
+		outWriter.close();
+	}
+	
+	/**
+	 * The task calculating a range of pairs of positions, split until a 
+	 * single pair remains
+	 */
+	private static class PairTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The accumulator
+		 */
+		private final ClickTransitionAccumulator accumulator;
+		
+		/**
+		 * The number of cells of the tolerance grid
+		 */
+		private final int cells;
+		
+		/**
+		 * The array receiving the results
+		 */
+		private final double[][] results;
+		
+		/**
+		 * The first pair of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The pair after the last pair of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param accumulator The accumulator
+		 * @param cells The number of cells of the tolerance grid
+		 * @param results The array receiving the results
+		 * @param from The first pair of the range
+		 * @param to The pair after the last pair of the range
+		 */
+		PairTask(ClickTransitionAccumulator accumulator, int cells, double[][] results, int from, int to) {
+			this.accumulator=accumulator;
+			this.cells=cells;
+			this.results=results;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new PairTask(this.accumulator, this.cells, this.results, this.from, middle),
+						new PairTask(this.accumulator, this.cells, this.results, middle, this.to));
+				return;
+			}
+			
+			for ( int i=this.from; i<this.to; i++ ) {
+				this.results[i]=calculatePair(this.accumulator.getTransitions(i+1), this.cells);
+			}
+		}
+		
+	}
+
+}
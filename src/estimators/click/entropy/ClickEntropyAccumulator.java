@@ -0,0 +1,95 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.ClickPassword;
+import estimators.ClickGridAccumulator;
+
+/**
+ * The accumulator of the ClickEntropyEstimator. In contrast to the other 
+ * estimators on the tolerance grid, Dirik et al. assign a coordinate c to
+ * the cell ceil(c/tolerance), i.e. the cells are closed at their upper 
+ * bound. To keep the results of the estimator, the click-points are 
+ * shifted by tolerance-1 before they are counted on the regular grid, 
+ * which gives the same partition of the image. The grid is extended by 
+ * the shift, so click-points on x-max or y-max fit into it.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickEntropyEstimator
+ */
+class ClickEntropyAccumulator extends ClickGridAccumulator {
+
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	ClickEntropyAccumulator(int[] parameters) {
+		super(getShiftedParameters(parameters));
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		int shift=this.getParameters()[2]-1;
+		ClickPassword shifted=new ClickPassword();
+		for ( int i=0; i<password.length(); i++ ) {
+			int[] cp=password.getClickPoint(i);
+			shifted.addClickPoint(cp[0]+shift, cp[1]+shift);
+		}
+		
+		super.add(shifted, weight);
+	}
+	
+	/**
+	 * Extends the grid by the shift of the click-points
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 * @return The parameters of the shifted grid
+	 */
+	private static int[] getShiftedParameters(int[] parameters) {
+		
+		int[] shifted=Arrays.copyOf(parameters, parameters.length);
+		shifted[0] += parameters[2]-1;
+		shifted[1] += parameters[2]-1;
+		
+		return shifted;
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters as provided from the parser
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	public static ClickEntropyAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		ClickEntropyAccumulator accumulator=new ClickEntropyAccumulator(parameters);
+		accumulator.merge(ClickGridAccumulator.read(in, accumulator.getParameters()));
+		
+		return accumulator;
+	}
+
+}
@@ -20,9 +20,12 @@ package estimators.click.entropy;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
 
 import main.passwords.ClickPassword;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
 import estimators.CommonHelper;
 import estimators.ShannonEntropyHelper;
 
@@ -83,8 +86,7 @@ class ClickEntropyEstimator {
 	private double[] results;
 	
 	/**
-	 * This method executes the actual entropy calculation. It will delete all processed
-	 * entries from the original password list to memorize the used memory space. 
+	 * This method executes the actual entropy calculation.
 	 * 
 	 * @param passwords The password list
 	 * @param dependent Whether the click-points are dependent
@@ -92,52 +94,94 @@ class ClickEntropyEstimator {
 	 */
 	public double calculateEstimate(List<ClickPassword> passwords, int[] parameters, final boolean dependent) {
 		
+		ClickGridAccumulator accumulator=new ClickEntropyAccumulator(parameters);
+		
+		for ( ClickPassword cpw : passwords ) accumulator.add(cpw, 1);
+		
+		return this.calculateEstimate(accumulator, dependent);
+	}
+	
+	/**
+	 * This method executes the actual entropy calculation from the grid cells
+	 * counted by an accumulator.
+	 * 
+	 * @param accumulator The accumulator
+	 * @param dependent Whether the click-points are dependent
+	 * @return Entropy estimate
+	 */
+	public double calculateEstimate(ClickGridAccumulator accumulator, final boolean dependent) {
+		
 		/*
 		 * 1. Make the supplied parameters available for further processing
 		 */
-		this.parameters=parameters;
+		this.parameters=accumulator.getParameters();
+		this.maxLength=accumulator.getMaxLength();
 		
 		/*
-		 * 2. Get some more configuration data
+		 * 2. Calculate the entropies, for the independent case the overall entropy is not kept
 		 */
-		this.maxLength=ClickPassword.getMaxLength(passwords);
-		if (!dependent) this.results=new double[this.maxLength];
-		else this.results=new double[this.maxLength*2];
+		double[] res=this.getResults(accumulator, dependent);
+		this.results=dependent ? res : Arrays.copyOf(res, this.maxLength);
 		
-		/*
-		 * 5. Create buckets
-		 */
-		int[][] buckets=new int[0][0];
-		int[][] depbuckets=new int[0][0];
+		this.calculated=true;
 		
-		// The depbuckets need only be instantiated once as all cps are congregated in them
-		if (dependent) depbuckets=new int[(int)Math.ceil((double)this.parameters[0]/this.parameters[2])][(int)Math.ceil((double)this.parameters[1]/this.parameters[2])];
+		if (dependent) return this.results[this.results.length-1];
+		else return CommonHelper.getTotal(this.results);
+	}
+	
+	/**
+	 * Calculates the entropies from the grid cells counted by an accumulator
+	 * without altering the state of this estimator.
+	 * 
+	 * @param accumulator The accumulator
+	 * @param dependent Whether the click-points are dependent
+	 * @return The entropy of each click-point followed by the cumulated 
+	 * entropies if dependent or the overall entropy if independent
+	 */
+	public double[] getResults(ClickGridAccumulator accumulator, final boolean dependent) {
 		
-		/*
-		 * 6. Iterate over all click-points
-		 */
-		for ( int i=0; i<this.maxLength; i++ ) {
+		int length=accumulator.getMaxLength();
+		double[] res=new double[dependent ? 2*length : length+1];
+		
+		// The depbuckets congregate all cps up to the current one
+		int[] depbuckets=new int[ClickGridHelper.getCellCount(accumulator.getParameters())];
+		
+		for ( int i=0; i<length; i++ ) {
 			
-			//New bucktes for each click point
-			buckets=new int[(int)Math.ceil((double)this.parameters[0]/this.parameters[2])][(int)Math.ceil((double)this.parameters[1]/this.parameters[2])];
+			int[] buckets=accumulator.getGrid(i);
+			res[i]=ShannonEntropyHelper.getEntropy(buckets);
 			
-			for ( ClickPassword cpw : passwords ) {
-				int x=(int)Math.ceil((double)cpw.getClickPoint(i)[0]/this.parameters[2]);
-				int y=(int)Math.ceil((double)cpw.getClickPoint(i)[1]/this.parameters[2]);
-				
-				buckets[x][y]++;
-				if (dependent) depbuckets[x][y]++;
+			if (dependent) {
+				for ( int j=0; j<buckets.length; j++ ) depbuckets[j] += buckets[j];
+				res[length+i]=ShannonEntropyHelper.getEntropy(depbuckets);
 			}
-			
-			this.results[i]=ShannonEntropyHelper.getEntropy(this.convertToOneDim(buckets));
-			if (dependent) this.results[this.maxLength+i]=ShannonEntropyHelper.getEntropy(this.convertToOneDim(depbuckets));
-			
 		}
 		
-		this.calculated=true;
+		if (!dependent) res[length]=CommonHelper.getTotal(Arrays.copyOf(res, length));
 		
-		if (dependent) return this.results[this.results.length-1];
-		else return CommonHelper.getTotal(this.results);
+		return res;
+	}
+	
+	/**
+	 * Returns the labels for the results of getResults
+	 * 
+	 * @param accumulator The accumulator
+	 * @param dependent Whether the click-points are dependent
+	 * @return The labels
+	 */
+	public String[] getResultLabels(ClickGridAccumulator accumulator, final boolean dependent) {
+		
+		int length=accumulator.getMaxLength();
+		String[] labels=new String[dependent ? 2*length : length+1];
+		
+		for ( int i=0; i<length; i++ ) {
+			labels[i]="Click-point "+(i+1)+" entropy";
+			if (dependent) labels[length+i]="Overall entropy (click-points 1-"+(i+1)+")";
+		}
+		
+		if (!dependent) labels[length]="Overall entropy";
+		
+		return labels;
 	}
 
 	/**
@@ -170,29 +214,6 @@ class ClickEntropyEstimator {
 		
 	}
 	
-	/**
-	 * Converts a two-dimensional array into a one-dimensional array. The
-	 * new two dimensional array is constructed by appending the arrays 
-	 * from the original one, first to last.
-	 * 
-	 * @param array The two-dimensional array
-	 * @return The new one-dimensional array
-	 */
-	private int[] convertToOneDim(int[][] array) {
-		
-		int[] newArray=new int[array.length*array[0].length];
-		
-		
-		for ( int i=0; i<array.length; i++ ) {
-			for ( int j=0; j<array[0].length; j++ ) {
-				newArray[i*array[0].length+j]=array[i][j];
-			}
-		}
-		
-		return newArray;
-		
-	}
-	
 	public void printSummary(Writer outWriter, boolean dependent) {
 		
 		if ( !calculated ) {
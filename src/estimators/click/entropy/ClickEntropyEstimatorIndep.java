@@ -18,12 +18,16 @@
  *=========================================================================*/
 package estimators.click.entropy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 
 import main.passwords.ClickPassword;
 import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
 import estimators.MetricEstimatorI;
 /**
  * This class provides a wrapper for the estimation method implemented in DirikEstimator
@@ -45,6 +49,51 @@ public class ClickEntropyEstimatorIndep extends MetricEstimatorI<ClickPassword>
 	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
 		return this.estimator.calculateEstimate(passwords, parameters, false);
 	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickEntropyAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		return this.estimator.calculateEstimate((ClickGridAccumulator)accumulator, false);
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickGridAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickEntropyAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		return this.estimator.getResultLabels((ClickGridAccumulator)accumulator, false);
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		return this.estimator.getResults((ClickGridAccumulator)accumulator, false);
+	}
 
 	@Override
 	public void verbosePrintResult(Writer outWriter) throws IOException {
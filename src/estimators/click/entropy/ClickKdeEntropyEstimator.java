@@ -0,0 +1,356 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
+import estimators.CommonHelper;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides an estimator for the entropy of the click-points of 
+ * graphical click-based passwords from a kernel density estimate instead
+ * of the counts of the tolerance grid cells, so the result does not depend
+ * on where the grid lands. For each position the click-points are counted
+ * per pixel and smoothed with a Gaussian kernel. The convolution is 
+ * calculated by multiplying the Fourier transform of the counts with the
+ * one of the kernel, so it takes O(P log P) time for P pixels regardless of
+ * the number of click-points. The counts are padded by four bandwidths, so
+ * the density does not wrap around, and the density leaving the image is 
+ * cut off.
+ * 
+ * Two entropies of the smoothed density are reported for each position:
+ * the differential entropy in bits relative to the area of a pixel, and 
+ * the entropy of the density discretized to the tolerance grid, which is
+ * comparable to the one of gp_click_entropy_indep. The overall entropies 
+ * are the sums over the positions, i.e. the click-points are assumed to 
+ * be independent.
+ * 
+ * The bandwidth is given in pixels or chosen for each position by Scott's
+ * rule, i.e. the standard deviation of the click-points times n^(-1/6).
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see Fft
+ */
+public class ClickKdeEntropyEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The number of bandwidths the counts are padded by
+	 */
+	private static final int PADDING=4;
+	
+	/**
+	 * The smallest bandwidth, so single pixels are smoothed as well
+	 */
+	private static final double MIN_BANDWIDTH=0.5;
+	
+	/**
+	 * The bandwidth in pixels, 0 to choose it by Scott's rule
+	 */
+	private final double bandwidth;
+	
+	/**
+	 * The tolerance of the grid the density is discretized to
+	 */
+	private int tolerance=1;
+	
+	/**
+	 * The results of the last calculation: [position][points, bandwidth, differential entropy, entropy]
+	 */
+	private double[][] results;
+	
+	/**
+	 * Creates a new estimator
+	 * 
+	 * @param bandwidth The bandwidth in pixels, 0 to choose it by Scott's rule
+	 */
+	public ClickKdeEntropyEstimator(double bandwidth) {
+		this.bandwidth=bandwidth;
+	}
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		this.tolerance=parameters[2];
+		return new ClickGridAccumulator(getPixelParameters(parameters));
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		this.results=this.calculateResults((ClickGridAccumulator)accumulator);
+		
+		double overall=0;
+		for ( double[] res : this.results ) overall += res[3];
+		return overall;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickGridAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		this.tolerance=parameters[2];
+		return ClickGridAccumulator.read(in, getPixelParameters(parameters));
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int length=((ClickGridAccumulator)accumulator).getMaxLength();
+		String[] labels=new String[2*length+2];
+		
+		for ( int i=0; i<length; i++ ) {
+			labels[2*i]="Click-point "+(i+1)+" differential entropy";
+			labels[2*i+1]="Click-point "+(i+1)+" entropy";
+		}
+		labels[2*length]="Overall differential entropy";
+		labels[2*length+1]="Overall entropy";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		double[][] res=this.calculateResults((ClickGridAccumulator)accumulator);
+		double[] flat=new double[2*res.length+2];
+		
+		for ( int i=0; i<res.length; i++ ) {
+			flat[2*i]=res[i][2];
+			flat[2*i+1]=res[i][3];
+			flat[2*res.length] += res[i][2];
+			flat[2*res.length+1] += res[i][3];
+		}
+		
+		return flat;
+	}
+	
+	/**
+	 * The click-points are counted per pixel, i.e. on a grid with a 
+	 * tolerance of 1
+	 * 
+	 * @param parameters The parameters as provided by the parser
+	 * @return The parameters of the pixel grid
+	 */
+	private static int[] getPixelParameters(int[] parameters) {
+		return new int[]{parameters[0], parameters[1], 1};
+	}
+	
+	/**
+	 * Calculates the entropies for each click-point position
+	 * 
+	 * @param accumulator The accumulator counting the pixels
+	 * @return The results: [position][points, bandwidth, differential entropy, entropy]
+	 */
+	private double[][] calculateResults(ClickGridAccumulator accumulator) {
+		
+		double[][] res=new double[accumulator.getMaxLength()][];
+		
+		for ( int i=0; i<res.length; i++ ) {
+			res[i]=this.calculatePosition(accumulator.getGrid(i), accumulator.getParameters());
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Smoothes the click-points of one position and calculates the entropies
+	 * 
+	 * @param counts The counts of the pixels
+	 * @param parameters The parameters of the pixel grid
+	 * @return The points, the bandwidth, the differential entropy and the entropy on the tolerance grid
+	 */
+	private double[] calculatePosition(int[] counts, int[] parameters) {
+		
+		int columns=ClickGridHelper.getColumns(parameters);
+		int rows=ClickGridHelper.getRows(parameters);
+		
+		//the moments of the click-points for Scott's rule
+		double n=0, sumX=0, sumY=0, sumXX=0, sumYY=0;
+		for ( int cell=0; cell<counts.length; cell++ ) {
+			if ( counts[cell] == 0 ) continue;
+			int x=cell/rows;
+			int y=cell%rows;
+			n += counts[cell];
+			sumX += (double)counts[cell]*x;
+			sumY += (double)counts[cell]*y;
+			sumXX += (double)counts[cell]*x*x;
+			sumYY += (double)counts[cell]*y*y;
+		}
+		if ( n == 0 ) return new double[]{0, Double.NaN, Double.NaN, Double.NaN};
+		
+		double sigma=this.bandwidth;
+		if ( sigma <= 0 ) {
+			double variance=(sumXX/n-sumX*sumX/(n*n)+sumYY/n-sumY*sumY/(n*n))/2;
+			sigma=Math.sqrt(Math.max(variance, 0))*Math.pow(n, -1.0/6);
+		}
+		sigma=Math.max(sigma, MIN_BANDWIDTH);
+		
+		//the counts padded by some bandwidths, so the density does not wrap around
+		int padding=(int)Math.ceil(PADDING*sigma);
+		Fft columnFft=new Fft(Fft.getLength(columns+padding));
+		Fft rowFft=new Fft(Fft.getLength(rows+padding));
+		int width=Fft.getLength(rows+padding);
+		int height=Fft.getLength(columns+padding);
+		double[] re=new double[width*height];
+		double[] im=new double[width*height];
+		for ( int cell=0; cell<counts.length; cell++ ) re[(cell/rows)*width+cell%rows]=counts[cell];
+		
+		//the Fourier transform of the Gaussian kernel is a Gaussian as well
+		Fft.transform2d(re, im, rowFft, columnFft, false);
+		double[] kernelX=getKernelTransform(height, sigma);
+		double[] kernelY=getKernelTransform(width, sigma);
+		for ( int u=0; u<height; u++ ) {
+			for ( int v=0; v<width; v++ ) {
+				double factor=kernelX[u]*kernelY[v];
+				re[u*width+v] *= factor;
+				im[u*width+v] *= factor;
+			}
+		}
+		Fft.transform2d(re, im, rowFft, columnFft, true);
+		
+		//the density within the image, negative values are rounding errors
+		double total=0;
+		for ( int x=0; x<columns; x++ ) {
+			for ( int y=0; y<rows; y++ ) {
+				double d=Math.max(re[x*width+y], 0);
+				re[x*width+y]=d;
+				total += d;
+			}
+		}
+		
+		double differential=0;
+		double[] cells=new double[ClickGridHelper.getCellCount(new int[]{parameters[0], parameters[1], this.tolerance})];
+		int cellRows=parameters[1]/this.tolerance+1;
+		for ( int x=0; x<columns; x++ ) {
+			for ( int y=0; y<rows; y++ ) {
+				double p=re[x*width+y]/total;
+				if ( p > 0 ) differential -= p*CommonHelper.log2(p);
+				cells[(x/this.tolerance)*cellRows+y/this.tolerance] += p;
+			}
+		}
+		double entropy=0;
+		for ( double p : cells ) {
+			if ( p > 0 ) entropy -= p*CommonHelper.log2(p);
+		}
+		
+		return new double[]{n, sigma, differential, entropy};
+	}
+	
+	/**
+	 * Calculates the discrete Fourier transform of a one-dimensional 
+	 * Gaussian kernel, which is real and symmetric
+	 * 
+	 * @param length The length of the transform
+	 * @param sigma The bandwidth
+	 * @return The transform
+	 */
+	private static double[] getKernelTransform(int length, double sigma) {
+		
+		double[] kernel=new double[length];
+		
+		for ( int k=0; k<length; k++ ) {
+			double frequency=(k <= length/2 ? k : k-length)/(double)length;
+			//the inverse transform is not scaled, so the scaling is included here
+			kernel[k]=Math.exp(-2*Math.PI*Math.PI*sigma*sigma*frequency*frequency)/length;
+		}
+		
+		return kernel;
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		double differential=0, entropy=0;
+		for ( int i=0; i<this.results.length; i++ ) {
+			outWriter.write("Click-point: "+(i+1)+"\n");
+			outWriter.write("Click-points: "+(long)this.results[i][0]+"\n");
+			outWriter.write("Bandwidth: "+this.results[i][1]+"\n");
+			outWriter.write("Click-point differential entropy: "+this.results[i][2]+"\n");
+			outWriter.write("Click-point entropy: "+this.results[i][3]+"\n");
+			outWriter.write("-------------------------------\n");
+			differential += this.results[i][2];
+			entropy += this.results[i][3];
+		}
+		outWriter.write("Overall differential entropy: "+differential+"\n");
+		outWriter.write("Overall entropy: "+entropy+"\n");
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		double differential=0, entropy=0;
+		for ( double[] res : this.results ) {
+			differential += res[2];
+			entropy += res[3];
+		}
+		outWriter.write("Overall differential entropy: "+differential+"\n");
+		outWriter.write("Overall entropy: "+entropy+"\n");
+		outWriter.close();
+	}
+
+}
@@ -0,0 +1,385 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+import estimators.MutualInformationHelper;
+import estimators.ShannonEntropyHelper;
+
+/**
+ * This provides an estimator for the mutual information between all pairs
+ * of click-point positions on the tolerance grid, I(cp_i; cp_j) = 
+ * H(cp_i) + H(cp_j) - H(cp_i, cp_j). Unlike gp_click_entropy_cond, which 
+ * only relates consecutive click-points, it shows the dependence between
+ * any two choices as a position x position matrix with the entropy of each
+ * position on the diagonal. The mutual information of a pair is calculated
+ * from the passwords long enough for the pair. As the cells of pairs of 
+ * click-points are heavily undersampled in realistic studies, the 
+ * entropies are Miller-Madow corrected and the mutual information is 
+ * corrected by a shuffled-pairs baseline as provided by the 
+ * MutualInformationHelper. Pairs which are still undersampled are counted
+ * and reported with a warning.
+ * 
+ * All pairs are counted in a single pass over the passwords in sparse 
+ * contingency tables. The passwords are counted in parallel with a table
+ * for each thread, which are merged at the end, and the pairs are 
+ * calculated in parallel.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickPairAccumulator
+ */
+public class ClickMutualInformationEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The pool the passwords and pairs are calculated on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The minimal number of passwords counted by a thread
+	 */
+	private static final int MIN_PASSWORDS=4096;
+	
+	/**
+	 * The matrix of the last calculation, with the entropies on the diagonal
+	 */
+	private double[][] results;
+	
+	/**
+	 * The number of undersampled pairs of positions of the last calculation
+	 */
+	private int undersampled;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulateTask task=new AccumulateTask(passwords, parameters, 0, passwords.size(), 
+				Math.max(MIN_PASSWORDS, passwords.size()/POOL.getParallelism()+1));
+		
+		return this.calculateMetric(ForkJoinTask.inForkJoinPool() ? task.invoke() : POOL.invoke(task));
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickPairAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		this.results=calculateResults((ClickPairAccumulator)accumulator);
+		this.undersampled=getUndersampled((ClickPairAccumulator)accumulator);
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickPairAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickPairAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int length=((ClickPairAccumulator)accumulator).getGrids().getMaxLength();
+		String[] labels=new String[length*(length-1)/2+1];
+		
+		int n=0;
+		for ( int i=0; i<length; i++ ) {
+			for ( int j=i+1; j<length; j++ ) labels[n++]="Click-points "+(i+1)+"-"+(j+1)+" mutual information";
+		}
+		labels[n]="Average mutual information";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		double[][] matrix=calculateResults((ClickPairAccumulator)accumulator);
+		double[] flat=new double[matrix.length*(matrix.length-1)/2+1];
+		
+		int n=0;
+		for ( int i=0; i<matrix.length; i++ ) {
+			for ( int j=i+1; j<matrix.length; j++ ) flat[n++]=matrix[i][j];
+		}
+		flat[n]=MutualInformationHelper.getAverage(matrix);
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the matrix of the mutual information with the pairs of 
+	 * positions in parallel
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The symmetric matrix with the entropies on the diagonal
+	 */
+	private static double[][] calculateResults(ClickPairAccumulator accumulator) {
+		
+		int length=accumulator.getGrids().getMaxLength();
+		double[][] matrix=new double[length][length];
+		
+		PairTask task=new PairTask(accumulator, matrix, 0, length*length);
+		if ( ForkJoinTask.inForkJoinPool() ) task.invoke();
+		else POOL.invoke(task);
+		
+		return matrix;
+	}
+	
+	/**
+	 * Counts the pairs of positions whose tables are undersampled
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The number of undersampled pairs
+	 */
+	private static int getUndersampled(ClickPairAccumulator accumulator) {
+		
+		int length=accumulator.getGrids().getMaxLength(), undersampled=0;
+		for ( int i=0; i<length; i++ ) {
+			for ( int j=i+1; j<length; j++ ) {
+				if ( accumulator.getPair(i, j).isUndersampled() ) undersampled++;
+			}
+		}
+		
+		return undersampled;
+	}
+	
+	/**
+	 * Writes a warning if pairs of positions are undersampled
+	 * 
+	 * @param outWriter The writer
+	 * @throws IOException Is thrown if the writer fails
+	 */
+	private void writeWarning(Writer outWriter) throws IOException {
+		if ( this.undersampled > 0 ) {
+			int length=this.results.length;
+			outWriter.write("Warning: "+this.undersampled+" of "+(length*(length-1)/2)
+					+" pairs of click-points are undersampled, their mutual information is unreliable.\n");
+		}
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		outWriter.write("Mutual information between the click-points (entropy on the diagonal):\n");
+		for ( double[] row : this.results ) {
+			for ( int j=0; j<row.length; j++ ) outWriter.write((j > 0 ? "\t" : "")+row[j]);
+			outWriter.write("\n");
+		}
+		outWriter.write("-------------------------------\n");
+		this.writeWarning(outWriter);
+		outWriter.write("Average mutual information: "+MutualInformationHelper.getAverage(this.results)+"\n");
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		int[] maximum=MutualInformationHelper.getMaximum(this.results);
+		
+		this.writeWarning(outWriter);
+		outWriter.write("Average mutual information: "+MutualInformationHelper.getAverage(this.results)+"\n");
+		if ( maximum != null ) {
+			outWriter.write("Maximum mutual information: "+this.results[maximum[0]][maximum[1]]
+					+" (click-points "+(maximum[0]+1)+"-"+(maximum[1]+1)+")\n");
+		}
+		outWriter.close();
+	}
+	
+	/**
+	 * The task counting a range of the passwords in its own accumulator, 
+	 * split until the range is small enough for a single thread
+	 */
+	private static class AccumulateTask extends RecursiveTask<ClickPairAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The passwords
+		 */
+		private final List<ClickPassword> passwords;
+		
+		/**
+		 * The parameters as provided from the parser
+		 */
+		private final int[] parameters;
+		
+		/**
+		 * The first password of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The password after the last password of the range
+		 */
+		private final int to;
+		
+		/**
+		 * The largest range counted without splitting
+		 */
+		private final int chunk;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param passwords The passwords
+		 * @param parameters The parameters as provided from the parser
+		 * @param from The first password of the range
+		 * @param to The password after the last password of the range
+		 * @param chunk The largest range counted without splitting
+		 */
+		AccumulateTask(List<ClickPassword> passwords, int[] parameters, int from, int to, int chunk) {
+			this.passwords=passwords;
+			this.parameters=parameters;
+			this.from=from;
+			this.to=to;
+			this.chunk=chunk;
+		}
+		
+		@Override
+		protected ClickPairAccumulator compute() {
+			
+			if ( this.to-this.from > this.chunk ) {
+				int middle=(this.from+this.to)>>>1;
+				AccumulateTask left=new AccumulateTask(this.passwords, this.parameters, this.from, middle, this.chunk);
+				left.fork();
+				ClickPairAccumulator accumulator=new AccumulateTask(this.passwords, this.parameters, middle, this.to, this.chunk).compute();
+				accumulator.merge(left.join());
+				return accumulator;
+			}
+			
+			ClickPairAccumulator accumulator=new ClickPairAccumulator(this.parameters);
+			for ( int i=this.from; i<this.to; i++ ) accumulator.add(this.passwords.get(i), 1);
+			return accumulator;
+		}
+		
+	}
+	
+	/**
+	 * The task calculating a range of the cells of the matrix, split until 
+	 * a single cell remains. Only the cells on and above the diagonal are 
+	 * calculated, the others are mirrored.
+	 */
+	private static class PairTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The accumulator
+		 */
+		private final ClickPairAccumulator accumulator;
+		
+		/**
+		 * The matrix receiving the results
+		 */
+		private final double[][] matrix;
+		
+		/**
+		 * The first cell of the range, row*length+column
+		 */
+		private final int from;
+		
+		/**
+		 * The cell after the last cell of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param accumulator The accumulator
+		 * @param matrix The matrix receiving the results
+		 * @param from The first cell of the range
+		 * @param to The cell after the last cell of the range
+		 */
+		PairTask(ClickPairAccumulator accumulator, double[][] matrix, int from, int to) {
+			this.accumulator=accumulator;
+			this.matrix=matrix;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new PairTask(this.accumulator, this.matrix, this.from, middle),
+						new PairTask(this.accumulator, this.matrix, middle, this.to));
+				return;
+			}
+			
+			for ( int n=this.from; n<this.to; n++ ) {
+				int i=n/this.matrix.length, j=n%this.matrix.length;
+				if ( i > j ) continue;
+				if ( i == j ) {
+					this.matrix[i][i]=ShannonEntropyHelper.getMillerMadowEntropy(this.accumulator.getGrids().getGrid(i));
+				} else {
+					this.matrix[i][j]=this.accumulator.getPair(i, j).getMutualInformation();
+					this.matrix[j][i]=this.matrix[i][j];
+				}
+			}
+		}
+		
+	}
+
+}
@@ -0,0 +1,161 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
+import estimators.ContingencyTable;
+
+/**
+ * The accumulator of the ClickMutualInformationEstimator. Besides the 
+ * tolerance grid cells of each position it counts the cells of each pair
+ * of positions in a contingency table. As most of the cells^2 pairs never
+ * occur, the tables are sparse.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickMutualInformationEstimator
+ */
+class ClickPairAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The counts of the cells of each position
+	 */
+	private final ClickGridAccumulator grids;
+	
+	/**
+	 * The tables of the pairs of positions: [second position][first position]
+	 */
+	private ContingencyTable[][] pairs=new ContingencyTable[0][];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	ClickPairAccumulator(int[] parameters) {
+		this.grids=new ClickGridAccumulator(parameters);
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		this.grids.add(password, weight);
+		this.ensureLength(password.length());
+		
+		int[] cells=ClickGridHelper.getCells(password, this.grids.getParameters());
+		for ( int j=1; j<cells.length; j++ ) {
+			for ( int i=0; i<j; i++ ) this.pairs[j][i].add(cells[i], cells[j], weight);
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		ClickPairAccumulator acc=(ClickPairAccumulator)other;
+		this.grids.merge(acc.grids);
+		this.ensureLength(acc.pairs.length);
+		
+		for ( int j=0; j<acc.pairs.length; j++ ) {
+			for ( int i=0; i<j; i++ ) this.pairs[j][i].merge(acc.pairs[j][i]);
+		}
+	}
+	
+	/**
+	 * Makes sure the pairs of positions of passwords of a length can be counted
+	 * 
+	 * @param length The length of the passwords
+	 */
+	private void ensureLength(int length) {
+		
+		int old=this.pairs.length;
+		if ( length <= old ) return;
+		
+		this.pairs=Arrays.copyOf(this.pairs, length);
+		for ( int j=old; j<length; j++ ) {
+			this.pairs[j]=new ContingencyTable[j];
+			for ( int i=0; i<j; i++ ) this.pairs[j][i]=new ContingencyTable();
+		}
+	}
+	
+	/**
+	 * @return The counts of the cells of each position
+	 */
+	ClickGridAccumulator getGrids() {
+		return this.grids;
+	}
+	
+	/**
+	 * Returns the table of a pair of positions
+	 * 
+	 * @param first The first position, starting with 0
+	 * @param second The second position, greater than the first
+	 * @return The table
+	 */
+	ContingencyTable getPair(int first, int second) {
+		return this.pairs[second][first];
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		
+		this.grids.write(out);
+		out.writeInt(this.pairs.length);
+		for ( int j=0; j<this.pairs.length; j++ ) {
+			for ( int i=0; i<j; i++ ) this.pairs[j][i].write(out);
+		}
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	static ClickPairAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		ClickPairAccumulator accumulator=new ClickPairAccumulator(parameters);
+		accumulator.grids.merge(ClickGridAccumulator.read(in, parameters));
+		
+		int length=in.readInt();
+		if ( length < 0 ) throw new IOException("Invalid number of positions: "+length);
+		accumulator.pairs=new ContingencyTable[length][];
+		for ( int j=0; j<length; j++ ) {
+			accumulator.pairs[j]=new ContingencyTable[j];
+			for ( int i=0; i<j; i++ ) accumulator.pairs[j][i]=ContingencyTable.read(in);
+		}
+		
+		return accumulator;
+	}
+
+}
@@ -0,0 +1,163 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
+import estimators.LongIntHashMap;
+
+/**
+ * The accumulator of the ClickConditionalEntropyEstimator. Besides the 
+ * tolerance grid cells of each position it counts the transitions from the
+ * cell of each click-point to the cell of the next one. As most of the 
+ * cells^2 transitions never occur, they are counted sparsely with the
+ * cells packed into a long key.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickConditionalEntropyEstimator
+ */
+class ClickTransitionAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The counts of the cells of each position
+	 */
+	private final ClickGridAccumulator grids;
+	
+	/**
+	 * The counts of the transitions into each position, starting with the second
+	 */
+	private LongIntHashMap[] transitions=new LongIntHashMap[0];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	ClickTransitionAccumulator(int[] parameters) {
+		this.grids=new ClickGridAccumulator(parameters);
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		this.grids.add(password, weight);
+		this.ensureLength(password.length());
+		
+		int[] parameters=this.grids.getParameters();
+		for ( int i=1; i<password.length(); i++ ) {
+			long previous=ClickGridHelper.getCell(password.getClickPoint(i-1), parameters);
+			this.transitions[i-1].add(getKey(previous, ClickGridHelper.getCell(password.getClickPoint(i), parameters)), weight);
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		ClickTransitionAccumulator acc=(ClickTransitionAccumulator)other;
+		this.grids.merge(acc.grids);
+		this.ensureLength(acc.transitions.length+1);
+		
+		for ( int i=0; i<acc.transitions.length; i++ ) this.transitions[i].merge(acc.transitions[i]);
+	}
+	
+	/**
+	 * Packs a transition into a key
+	 * 
+	 * @param previous The cell of the previous click-point
+	 * @param cell The cell of the click-point
+	 * @return The key
+	 */
+	static long getKey(long previous, int cell) {
+		return (previous<<32) | cell;
+	}
+	
+	/**
+	 * Makes sure the transitions of passwords of a length can be counted
+	 * 
+	 * @param length The length of the passwords
+	 */
+	private void ensureLength(int length) {
+		
+		int old=this.transitions.length;
+		if ( length-1 <= old ) return;
+		
+		this.transitions=Arrays.copyOf(this.transitions, length-1);
+		for ( int i=old; i<length-1; i++ ) this.transitions[i]=new LongIntHashMap(1024);
+	}
+	
+	/**
+	 * @return The counts of the cells of each position
+	 */
+	ClickGridAccumulator getGrids() {
+		return this.grids;
+	}
+	
+	/**
+	 * Returns the counts of the transitions into a position
+	 * 
+	 * @param position The position, starting with 1
+	 * @return The counts, keyed as by getKey
+	 */
+	LongIntHashMap getTransitions(int position) {
+		return this.transitions[position-1];
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		
+		this.grids.write(out);
+		out.writeInt(this.transitions.length);
+		for ( LongIntHashMap map : this.transitions ) map.write(out);
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	static ClickTransitionAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		ClickTransitionAccumulator accumulator=new ClickTransitionAccumulator(parameters);
+		accumulator.grids.merge(ClickGridAccumulator.read(in, parameters));
+		
+		int steps=in.readInt();
+		if ( steps < 0 ) throw new IOException("Invalid number of transitions: "+steps);
+		accumulator.transitions=new LongIntHashMap[steps];
+		for ( int i=0; i<steps; i++ ) accumulator.transitions[i]=LongIntHashMap.read(in);
+		
+		return accumulator;
+	}
+
+}
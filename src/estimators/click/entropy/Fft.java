@@ -0,0 +1,157 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.entropy;
+
+/**
+ * A radix-2 fast Fourier transform of complex data given as separate
+ * arrays of real and imaginary parts. The transform is done in place with 
+ * the iterative Cooley-Tukey algorithm, the twiddle factors are computed 
+ * once for the length. Two-dimensional data is transformed row by row and
+ * column by column.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class Fft {
+
+	/**
+	 * The length of the transformed data, a power of two
+	 */
+	private final int length;
+	
+	/**
+	 * The cosines of the twiddle factors
+	 */
+	private final double[] cos;
+	
+	/**
+	 * The sines of the twiddle factors
+	 */
+	private final double[] sin;
+	
+	/**
+	 * Creates a new transform for a length
+	 * 
+	 * @param length The length of the data, a power of two
+	 */
+	Fft(int length) {
+		
+		if ( Integer.bitCount(length) != 1 ) throw new IllegalArgumentException("The length needs to be a power of two: "+length);
+		
+		this.length=length;
+		this.cos=new double[length/2];
+		this.sin=new double[length/2];
+		for ( int k=0; k<length/2; k++ ) {
+			this.cos[k]=Math.cos(2*Math.PI*k/length);
+			this.sin[k]=Math.sin(2*Math.PI*k/length);
+		}
+	}
+	
+	/**
+	 * Calculates the smallest power of two not below a value
+	 * 
+	 * @param value The value
+	 * @return The power of two
+	 */
+	static int getLength(int value) {
+		return value <= 1 ? 1 : Integer.highestOneBit(value-1)<<1;
+	}
+	
+	/**
+	 * Transforms data in place. The inverse transform is not scaled, i.e.
+	 * the data needs to be divided by the length afterwards.
+	 * 
+	 * @param re The real parts
+	 * @param im The imaginary parts
+	 * @param offset The index of the first element
+	 * @param inverse Whether to calculate the inverse transform
+	 */
+	void transform(double[] re, double[] im, int offset, boolean inverse) {
+		
+		int n=this.length;
+		
+		//bit reversal permutation
+		for ( int i=1, j=0; i<n; i++ ) {
+			int bit=n>>1;
+			for ( ; (j & bit) != 0; bit >>= 1 ) j ^= bit;
+			j ^= bit;
+			if ( i < j ) {
+				double t=re[offset+i];
+				re[offset+i]=re[offset+j];
+				re[offset+j]=t;
+				t=im[offset+i];
+				im[offset+i]=im[offset+j];
+				im[offset+j]=t;
+			}
+		}
+		
+		double sign=inverse ? 1 : -1;
+		for ( int size=2; size<=n; size <<= 1 ) {
+			int half=size>>1;
+			int step=n/size;
+			for ( int start=offset; start<offset+n; start+=size ) {
+				for ( int k=0; k<half; k++ ) {
+					double wr=this.cos[k*step];
+					double wi=sign*this.sin[k*step];
+					int a=start+k;
+					int b=a+half;
+					double tr=re[b]*wr-im[b]*wi;
+					double ti=re[b]*wi+im[b]*wr;
+					re[b]=re[a]-tr;
+					im[b]=im[a]-ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Transforms two-dimensional data in place, stored row by row. The 
+	 * inverse transform is not scaled.
+	 * 
+	 * @param re The real parts
+	 * @param im The imaginary parts
+	 * @param rows The transform for the rows, i.e. for the number of columns
+	 * @param columns The transform for the columns, i.e. for the number of rows
+	 * @param inverse Whether to calculate the inverse transform
+	 */
+	static void transform2d(double[] re, double[] im, Fft rows, Fft columns, boolean inverse) {
+		
+		int width=rows.length;
+		int height=columns.length;
+		
+		for ( int r=0; r<height; r++ ) rows.transform(re, im, r*width, inverse);
+		
+		//the columns are copied, so they are transformed in contiguous memory
+		double[] columnRe=new double[height];
+		double[] columnIm=new double[height];
+		for ( int c=0; c<width; c++ ) {
+			for ( int r=0; r<height; r++ ) {
+				columnRe[r]=re[r*width+c];
+				columnIm[r]=im[r*width+c];
+			}
+			columns.transform(columnRe, columnIm, 0, inverse);
+			for ( int r=0; r<height; r++ ) {
+				re[r*width+c]=columnRe[r];
+				im[r*width+c]=columnIm[r];
+			}
+		}
+	}
+	
+}
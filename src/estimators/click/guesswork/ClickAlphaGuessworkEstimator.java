@@ -18,6 +18,8 @@
  *=========================================================================*/
 package estimators.click.guesswork;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.Arrays;
@@ -25,6 +27,8 @@ import java.util.List;
 
 import main.passwords.ClickPassword;
 import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
 import estimators.GuessworkHelper;
 import estimators.MetricEstimatorI;
 
@@ -55,28 +59,101 @@ public class ClickAlphaGuessworkEstimator extends MetricEstimatorI<ClickPassword
 	@Override
 	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
 
-		int maxLength=ClickPassword.getMaxLength(passwords);
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
 		
-		/*
-		 * Initialize buckets: One bucket of length (x/margin)*(y/margin) for each click point
-		 */
-		double[][] buckets=new double[maxLength][(int)Math.ceil(parameters[0]/parameters[2]) * (int)Math.ceil(parameters[1]/parameters[2])];
-
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
 		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
 		/*
-		 * Process each click point position
+		 * The accumulator holds the buckets: One bucket of length (x/margin)*(y/margin) for each click point
 		 */
-		for ( int pos=0; pos<maxLength; pos++ ) {
-
-			//for each password sort into bucket
-			for ( int pwd=0; pwd<passwords.size(); pwd++ ) {
-				buckets[pos][(int)(passwords.get(pwd).getClickPoint(pos)[0]/parameters[2])*(int)Math.ceil(parameters[1]/parameters[2]) + (int)(passwords.get(pwd).getClickPoint(pos)[1]/parameters[2])]++;
+		return new ClickGridAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		this.results=this.calculateResults((ClickGridAccumulator)accumulator);
+		
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickGridAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickGridAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int maxLength=((ClickGridAccumulator)accumulator).getMaxLength();
+		String[] labels=new String[maxLength*99];
+		
+		for ( int i=0; i<maxLength; i++ ) {
+			for ( int alpha=1; alpha<100; alpha++ ) {
+				labels[i*99+alpha-1]="Click-point "+i+", alpha "+(((double)alpha)/100);
 			}
-
 		}
-
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		double[][] res=this.calculateResults((ClickGridAccumulator)accumulator);
+		double[] flat=new double[res.length*99];
+		
+		for ( int i=0; i<res.length; i++ ) {
+			System.arraycopy(res[i], 1, flat, i*99, 99);
+		}
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the alpha-guesswork for each click-point position and each 
+	 * alpha from the buckets counted by an accumulator.
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The alpha-guesswork: [position][alpha in percent]
+	 */
+	private double[][] calculateResults(ClickGridAccumulator accumulator) {
+		
+		int maxLength=accumulator.getMaxLength();
+		double[][] buckets=new double[maxLength][];
+		
 		//Sort all the buckets
 		for ( int z=0; z<maxLength; z++ ) {
+			
+			int[] counts=accumulator.getGrid(z);
+			buckets[z]=new double[counts.length];
+			for ( int i=0; i<counts.length; i++ ) buckets[z][i]=counts[i];
+			
 			Arrays.sort(buckets[z]);
 			//Now the first element is in last position, so we to reverse the array
 			
@@ -87,26 +164,28 @@ public class ClickAlphaGuessworkEstimator extends MetricEstimatorI<ClickPassword
 				buckets[z][i]=buckets[z][buckets[z].length-1-i]/sum;
 				buckets[z][buckets[z].length-1-i]=temp;
 			}
+			//with an odd number of buckets the middle one still needs to be normalized
+			if ( buckets[z].length%2 == 1 ) buckets[z][buckets[z].length/2] /= sum;
 
 		}
 
 		/*
 		 * Actual alpha-guesswork calculation
 		 */
-		this.results=new double[maxLength][100];
+		double[][] res=new double[maxLength][100];
 		int alpha=1;
 		while ( alpha < 100 ) {
 			
 			//for each of the click-point positions
-			for ( int i=0; i<this.results.length; i++ ) {
-				this.results[i][(int)(alpha)]=GuessworkHelper.alphaGuessworkBits(buckets[i], ((double)alpha)/100);
+			for ( int i=0; i<res.length; i++ ) {
+				res[i][(int)(alpha)]=GuessworkHelper.alphaGuessworkBits(buckets[i], ((double)alpha)/100);
 			}
 			
 			//Increase alpha by 1%
 			alpha += 1;
 		}
 
-		return this.results;
+		return res;
 	}
 
 	@Override
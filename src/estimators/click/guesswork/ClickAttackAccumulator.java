@@ -0,0 +1,153 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.guesswork;
+
+import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
+import estimators.CommonHelper;
+import estimators.LongIntHashMap;
+
+/**
+ * The accumulator of the ClickAttackEstimator. Each password is assigned
+ * to the training split, whose tolerance grid cells are counted per 
+ * position, or to the test split, whose cell tuples are counted as packed
+ * keys. The assignment is decided by a hash of the seed and the click-points
+ * of the password, so it does not depend on which accumulator sees the
+ * password, and all occurrences of a password end up in the same split.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickAttackEstimator
+ */
+class ClickAttackAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The probability of a password to be assigned to the training split
+	 */
+	private final double trainingFraction;
+	
+	/**
+	 * The seed of the assignment
+	 */
+	private final long seed;
+	
+	/**
+	 * The cell counts of the training split
+	 */
+	private final ClickGridAccumulator training;
+	
+	/**
+	 * The number of passwords in the training split
+	 */
+	private long trainingPasswords=0;
+	
+	/**
+	 * The cell tuples of the test split
+	 */
+	private final LongIntHashMap test=new LongIntHashMap(1024);
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 * @param trainingFraction The probability of a password to be assigned to the training split
+	 * @param seed The seed of the assignment
+	 */
+	ClickAttackAccumulator(int[] parameters, double trainingFraction, long seed) {
+		this.parameters=parameters;
+		this.trainingFraction=trainingFraction;
+		this.seed=seed;
+		this.training=new ClickGridAccumulator(parameters);
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		if ( this.isTraining(password) ) {
+			this.training.add(password, weight);
+			this.trainingPasswords += weight;
+		} else {
+			this.test.add(ClickGridHelper.getCellTupleHash(ClickGridHelper.getCells(password, this.parameters), this.parameters), weight);
+		}
+	}
+	
+	/**
+	 * Decides whether a password belongs to the training split
+	 * 
+	 * @param password The password
+	 * @return True if the password belongs to the training split
+	 */
+	private boolean isTraining(ClickPassword password) {
+		
+		int[] values=new int[3*password.length()];
+		for ( int i=0; i<password.length(); i++ ) {
+			int[] cp=password.getClickPoint(i);
+			values[3*i]=cp[0];
+			values[3*i+1]=cp[1];
+			values[3*i+2]=password.getImage(i);
+		}
+		
+		//the upper 53 bits give a uniform double in [0,1)
+		long hash=CommonHelper.mix64(CommonHelper.hash64(values) ^ this.seed);
+		return (hash >>> 11)*0x1.0p-53 < this.trainingFraction;
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		ClickAttackAccumulator acc=(ClickAttackAccumulator)other;
+		this.training.merge(acc.training);
+		this.trainingPasswords += acc.trainingPasswords;
+		this.test.merge(acc.test);
+	}
+	
+	/**
+	 * @return The parameters as provided from the parser
+	 */
+	int[] getParameters() {
+		return this.parameters;
+	}
+	
+	/**
+	 * @return The cell counts of the training split
+	 */
+	ClickGridAccumulator getTraining() {
+		return this.training;
+	}
+	
+	/**
+	 * @return The number of passwords in the training split
+	 */
+	long getTrainingPasswords() {
+		return this.trainingPasswords;
+	}
+	
+	/**
+	 * @return The counts of the cell tuples of the test split
+	 */
+	LongIntHashMap getTest() {
+		return this.test;
+	}
+
+}
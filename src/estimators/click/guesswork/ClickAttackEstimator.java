@@ -0,0 +1,409 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.guesswork;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
+import estimators.LongIntHashMap;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides a simulation of an attacker guessing click-based passwords
+ * with hotspots learned from human data. The password set is split into a
+ * training and a test split by a seeded hash of each password, so the split
+ * is the same for the pipeline, the workers and a single pass. From the training split the probability
+ * of each tolerance grid cell is learned per position, and the guessing 
+ * dictionary is ordered by the product of these probabilities, i.e. assuming
+ * independent click-points as for PCCP. The dictionary is then replayed
+ * against the test split and the fraction of cracked test passwords is
+ * reported after 1, 10, 100, ... guesses.
+ * 
+ * The dictionary is not enumerated completely but generated lazily in 
+ * decreasing order with a priority queue: starting from the tuple of the 
+ * most frequent cells, each tuple taken from the queue adds its successors,
+ * which use the next less frequent cell at one position. The state of a 
+ * tuple is packed into a long, so at most 2^(58/length) cells per position
+ * are considered, which covers all cells of common canvas sizes. The
+ * guesses are looked up in batches in a hash map of the packed cell tuples
+ * of the test split.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class ClickAttackEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The default percentage of passwords assigned to the training split
+	 */
+	public static final int DEFAULT_TRAINING_PERCENTAGE=50;
+	
+	/**
+	 * The default maximum number of guesses
+	 */
+	public static final long DEFAULT_GUESSES=10000000L;
+	
+	/**
+	 * The number of guesses generated before they are looked up
+	 */
+	private static final int BATCH_SIZE=4096;
+	
+	/**
+	 * The number of bits of the packed state holding the indices
+	 */
+	private static final int INDEX_BITS=58;
+	
+	/**
+	 * The probability of a password to be assigned to the training split
+	 */
+	private final double trainingFraction;
+	
+	/**
+	 * The seed of the split
+	 */
+	private final long seed;
+	
+	/**
+	 * The maximum number of guesses
+	 */
+	private final long maxGuesses;
+	
+	/**
+	 * The number of passwords in the training split of the last calculation
+	 */
+	private long trainingPasswords;
+	
+	/**
+	 * The number of passwords in the test split of the last calculation
+	 */
+	private long testPasswords;
+	
+	/**
+	 * The number of hotspot cells considered per position
+	 */
+	private int[] hotspots;
+	
+	/**
+	 * The numbers of guesses the cracked passwords were recorded at
+	 */
+	private long[] guesses;
+	
+	/**
+	 * The numbers of cracked test passwords after the guesses
+	 */
+	private long[] cracked;
+	
+	/**
+	 * Whether the dictionary was exhausted before the maximum number of guesses
+	 */
+	private boolean exhausted;
+	
+	/**
+	 * Creates a new estimator
+	 * 
+	 * @param trainingPercentage The percentage of passwords assigned to the training split
+	 * @param seed The seed of the split
+	 * @param maxGuesses The maximum number of guesses
+	 */
+	public ClickAttackEstimator(int trainingPercentage, long seed, long maxGuesses) {
+		this.trainingFraction=trainingPercentage/100.0;
+		this.seed=seed;
+		this.maxGuesses=maxGuesses;
+	}
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickAttackAccumulator(parameters, this.trainingFraction, this.seed);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickAttackAccumulator acc=(ClickAttackAccumulator)accumulator;
+		this.trainingPasswords=acc.getTrainingPasswords();
+		this.testPasswords=acc.getTest().getTotal();
+		this.replay(acc.getTraining(), acc.getTest(), acc.getParameters());
+		
+		return this.cracked;
+	}
+	
+	/**
+	 * Generates the dictionary from the training split and replays it 
+	 * against the test split
+	 * 
+	 * @param training The cell counts of the training split
+	 * @param test The cell tuples of the test split
+	 * @param parameters The parameters as provided from the parser
+	 */
+	private void replay(ClickGridAccumulator training, LongIntHashMap test, int[] parameters) {
+		
+		int length=training.getMaxLength();
+		List<Long> recordedGuesses=new ArrayList<Long>();
+		List<Long> recordedCracked=new ArrayList<Long>();
+		this.hotspots=new int[length];
+		this.exhausted=true;
+		
+		if ( length > 0 && length <= INDEX_BITS ) {
+			
+			//the cells of each position ordered by decreasing frequency
+			int bits=Math.min(31, INDEX_BITS/length);
+			int[][] cells=new int[length][];
+			double[][] logs=new double[length][];
+			for ( int i=0; i<length; i++ ) {
+				this.sortCells(training.getGrid(i), 1<<bits, i, cells, logs);
+				this.hotspots[i]=cells[i].length;
+			}
+			
+			GuessQueue queue=new GuessQueue();
+			double score=0;
+			for ( int i=0; i<length; i++ ) score += logs[i][0];
+			queue.push(score, 0L);
+			
+			long[] batch=new long[BATCH_SIZE];
+			int[] tuple=new int[length];
+			long mask=(1L<<bits)-1;
+			long guessed=0;
+			long crackedSoFar=0;
+			long checkpoint=1;
+			
+			while ( guessed < this.maxGuesses && !queue.isEmpty() ) {
+				
+				//generate a batch of guesses in decreasing order of probability
+				int amount=0;
+				while ( amount < BATCH_SIZE && guessed+amount < this.maxGuesses && !queue.isEmpty() ) {
+					
+					score=queue.peekScore();
+					long state=queue.pop();
+					int last=(int)(state>>>INDEX_BITS);
+					
+					for ( int i=0; i<length; i++ ) tuple[i]=cells[i][(int)((state>>>(i*bits)) & mask)];
+					batch[amount++]=ClickGridHelper.getCellTupleHash(tuple, parameters);
+					
+					//the successors use the next cell at the last changed position or after it, so each tuple is generated once
+					for ( int i=last; i<length; i++ ) {
+						int index=(int)((state>>>(i*bits)) & mask);
+						if ( index+1 >= cells[i].length ) continue;
+						long successor=((state+(1L<<(i*bits))) & ((1L<<INDEX_BITS)-1)) | ((long)i<<INDEX_BITS);
+						queue.push(score-logs[i][index]+logs[i][index+1], successor);
+					}
+				}
+				
+				//look up the batch in the test split
+				for ( int j=0; j<amount; j++ ) {
+					crackedSoFar += test.get(batch[j]);
+					if ( guessed+j+1 == checkpoint ) {
+						recordedGuesses.add(checkpoint);
+						recordedCracked.add(crackedSoFar);
+						checkpoint *= 10;
+					}
+				}
+				guessed += amount;
+			}
+			
+			this.exhausted=queue.isEmpty();
+			if ( recordedGuesses.isEmpty() || recordedGuesses.get(recordedGuesses.size()-1) != guessed ) {
+				recordedGuesses.add(guessed);
+				recordedCracked.add(crackedSoFar);
+			}
+		}
+		
+		this.guesses=new long[recordedGuesses.size()];
+		this.cracked=new long[recordedCracked.size()];
+		for ( int i=0; i<this.guesses.length; i++ ) {
+			this.guesses[i]=recordedGuesses.get(i);
+			this.cracked[i]=recordedCracked.get(i);
+		}
+	}
+	
+	/**
+	 * Orders the chosen cells of a position by decreasing frequency
+	 * 
+	 * @param grid The cell counts of the position
+	 * @param limit The maximum number of cells to keep
+	 * @param position The position
+	 * @param cells Receives the indices of the cells
+	 * @param logs Receives the logarithms of the probabilities of the cells
+	 */
+	private void sortCells(int[] grid, int limit, int position, int[][] cells, double[][] logs) {
+		
+		long total=0;
+		int chosen=0;
+		for ( int count : grid ) {
+			total += count;
+			if ( count > 0 ) chosen++;
+		}
+		
+		//the count is kept in the upper bits, so sorting orders by count
+		long[] order=new long[chosen];
+		for ( int j=0, k=0; j<grid.length; j++ ) {
+			if ( grid[j] > 0 ) order[k++]=((long)grid[j]<<32) | j;
+		}
+		Arrays.sort(order);
+		
+		int amount=Math.min(chosen, limit);
+		cells[position]=new int[amount];
+		logs[position]=new double[amount];
+		for ( int k=0; k<amount; k++ ) {
+			long entry=order[order.length-1-k];
+			cells[position][k]=(int)entry;
+			logs[position][k]=Math.log((entry>>>32)/(double)total);
+		}
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		this.shortPrintRestult(outWriter);
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.cracked==null ) return;
+		
+		outWriter.write("Training passwords: "+this.trainingPasswords+" (seed "+this.seed+")\n");
+		outWriter.write("Test passwords: "+this.testPasswords+"\n");
+		outWriter.write("Hotspot cells per click-point:");
+		for ( int h : this.hotspots ) outWriter.write(" "+h);
+		outWriter.write("\n");
+		outWriter.write("Guesses\tCracked\tCracked fraction\n");
+		for ( int i=0; i<this.guesses.length; i++ ) {
+			outWriter.write(this.guesses[i]+"\t"+this.cracked[i]+"\t"+((double)this.cracked[i]/this.testPasswords)+"\n");
+		}
+		if ( this.exhausted ) outWriter.write("Dictionary exhausted after "+this.guesses[this.guesses.length-1]+" guesses\n");
+		outWriter.close();
+	}
+	
+	/**
+	 * A priority queue of packed tuple states ordered by decreasing score,
+	 * implemented as binary heap on primitive arrays
+	 */
+	private static class GuessQueue {
+		
+		/**
+		 * The scores of the states in heap order
+		 */
+		private double[] scores=new double[1024];
+		
+		/**
+		 * The packed states in heap order
+		 */
+		private long[] states=new long[1024];
+		
+		/**
+		 * The number of states in the queue
+		 */
+		private int size=0;
+		
+		/**
+		 * @return Whether the queue is empty
+		 */
+		boolean isEmpty() {
+			return this.size == 0;
+		}
+		
+		/**
+		 * Adds a state to the queue
+		 * 
+		 * @param score The score of the state
+		 * @param state The packed state
+		 */
+		void push(double score, long state) {
+			
+			if ( this.size == this.scores.length ) {
+				this.scores=Arrays.copyOf(this.scores, 2*this.size);
+				this.states=Arrays.copyOf(this.states, 2*this.size);
+			}
+			
+			int i=this.size++;
+			while ( i > 0 ) {
+				int parent=(i-1)>>>1;
+				if ( this.scores[parent] >= score ) break;
+				this.scores[i]=this.scores[parent];
+				this.states[i]=this.states[parent];
+				i=parent;
+			}
+			this.scores[i]=score;
+			this.states[i]=state;
+		}
+		
+		/**
+		 * @return The score of the state with the highest score
+		 */
+		double peekScore() {
+			return this.scores[0];
+		}
+		
+		/**
+		 * Removes the state with the highest score
+		 * 
+		 * @return The packed state
+		 */
+		long pop() {
+			
+			long top=this.states[0];
+			double score=this.scores[--this.size];
+			long state=this.states[this.size];
+			
+			int i=0;
+			while ( true ) {
+				int child=2*i+1;
+				if ( child >= this.size ) break;
+				if ( child+1 < this.size && this.scores[child+1] > this.scores[child] ) child++;
+				if ( this.scores[child] <= score ) break;
+				this.scores[i]=this.scores[child];
+				this.states[i]=this.states[child];
+				i=child;
+			}
+			this.scores[i]=score;
+			this.states[i]=state;
+			
+			return top;
+		}
+		
+	}
+
+}
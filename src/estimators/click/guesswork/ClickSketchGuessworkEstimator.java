@@ -0,0 +1,135 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.guesswork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridHelper;
+import estimators.MetricEstimatorI;
+import estimators.sketch.SketchGuessworkEstimator;
+import estimators.sketch.SketchGuessworkEstimator.KeyFunction;
+import estimators.sketch.SketchGuessworkEstimator.SketchAccumulator;
+
+/**
+ * This class provides a wrapper for the estimation method implemented in
+ * SketchGuessworkEstimator for graphical click-based passwords. Two
+ * passwords are counted as equal if all their click-points lie in the same
+ * cells of the tolerance grid, so the sketch operates on the cell tuples of
+ * the passwords.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see SketchGuessworkEstimator
+ */
+public class ClickSketchGuessworkEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The actual estimator all calculations are delegated to
+	 */
+	private SketchGuessworkEstimator estimator=new SketchGuessworkEstimator();
+	
+	/**
+	 * The number of cell tuples monitored by the sketch
+	 */
+	private final int sketchSize;
+	
+	/**
+	 * Creates a new estimator
+	 * 
+	 * @param sketchSize The number of cell tuples monitored by the sketch
+	 */
+	public ClickSketchGuessworkEstimator(int sketchSize) {
+		this.sketchSize=sketchSize;
+	}
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return this.estimator.createAccumulator(this.sketchSize, this.getKeyFunction(parameters));
+	}
+	
+	/**
+	 * @param parameters The parameters as provided by the parser
+	 * @return The function extracting the key of a password
+	 */
+	private KeyFunction<ClickPassword> getKeyFunction(final int[] parameters) {
+		return new KeyFunction<ClickPassword>() {
+			@Override
+			public Object getKey(ClickPassword password) {
+				return ClickGridHelper.getCellTupleKey(password, parameters);
+			}
+		};
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		return this.estimator.calculateEstimate((SketchAccumulator<ClickPassword>)accumulator);
+	}
+
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		this.estimator.writeState((SketchAccumulator<ClickPassword>)accumulator, out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return this.estimator.readState(in, this.getKeyFunction(parameters));
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		this.estimator.printResult(outWriter, "cell tuples");
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		this.estimator.printSummary(outWriter);
+	}
+
+}
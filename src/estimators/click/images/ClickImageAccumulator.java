@@ -0,0 +1,282 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.images;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
+import estimators.ClickGridHelper;
+import estimators.ClickImageHelper;
+
+/**
+ * The accumulator for estimators of graphical click-based passwords with
+ * several images. For each image it counts how often each cell of the 
+ * image's tolerance grid was chosen, regardless of the position of the
+ * click-point in the password. The counts are indexed by the image id and
+ * only allocated for images chosen at least once. The images are 
+ * calculated in parallel.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickImageHelper
+ */
+class ClickImageAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The pool the images are calculated on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The parameters as provided from the parser, see ClickImageHelper
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The counts of the grid cells of each image, null for images not chosen
+	 */
+	private final int[][] grids;
+	
+	/**
+	 * The number of passwords
+	 */
+	private long passwords=0;
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	ClickImageAccumulator(int[] parameters) {
+		this.parameters=parameters;
+		this.grids=new int[ClickImageHelper.getImageCount(parameters)][];
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		this.passwords += weight;
+		
+		for ( int i=0; i<password.length(); i++ ) {
+			this.getGrid(password.getImage(i), true)[ClickImageHelper.getCell(password.getClickPoint(i), this.parameters)] += weight;
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		ClickImageAccumulator acc=(ClickImageAccumulator)other;
+		this.passwords += acc.passwords;
+		
+		for ( int image=0; image<acc.grids.length; image++ ) {
+			if ( acc.grids[image] == null ) continue;
+			int[] grid=this.getGrid(image, true);
+			for ( int j=0; j<grid.length; j++ ) grid[j] += acc.grids[image][j];
+		}
+	}
+	
+	/**
+	 * Returns the counts of the grid cells of an image
+	 * 
+	 * @param image The id of the image
+	 * @param create Whether to allocate the counts if the image was not chosen yet
+	 * @return The counts, indexed as by ClickImageHelper.getCell, or null
+	 */
+	int[] getGrid(int image, boolean create) {
+		if ( this.grids[image] == null && create ) {
+			this.grids[image]=new int[ClickGridHelper.getCellCount(ClickImageHelper.getImageParameters(this.parameters, image))];
+		}
+		return this.grids[image];
+	}
+	
+	/**
+	 * @return The number of passwords
+	 */
+	long getPasswords() {
+		return this.passwords;
+	}
+	
+	/**
+	 * @return The number of images
+	 */
+	int getImageCount() {
+		return this.grids.length;
+	}
+	
+	/**
+	 * @return The parameters as provided from the parser
+	 */
+	int[] getParameters() {
+		return this.parameters;
+	}
+	
+	/**
+	 * Applies a calculation to the counts of each image chosen at least 
+	 * once, the images are calculated in parallel
+	 * 
+	 * @param calculation The calculation
+	 * @return The results of each image, null for images not chosen
+	 */
+	double[][] calculate(ImageCalculation calculation) {
+		
+		double[][] results=new double[this.grids.length][];
+		
+		ImageTask task=new ImageTask(calculation, results, 0, results.length);
+		if ( ForkJoinTask.inForkJoinPool() ) task.invoke();
+		else POOL.invoke(task);
+		
+		return results;
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read. For each image only the cells chosen at least once are
+	 * written.
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		
+		out.writeLong(this.passwords);
+		out.writeInt(this.grids.length);
+		
+		for ( int[] grid : this.grids ) {
+			int amount=0;
+			if ( grid != null ) for ( int count : grid ) if ( count != 0 ) amount++;
+			out.writeInt(amount);
+			for ( int j=0; amount>0 && j<grid.length; j++ ) {
+				if ( grid[j] == 0 ) continue;
+				out.writeInt(j);
+				out.writeInt(grid[j]);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	static ClickImageAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		ClickImageAccumulator accumulator=new ClickImageAccumulator(parameters);
+		accumulator.passwords=in.readLong();
+		
+		int images=in.readInt();
+		if ( images != accumulator.grids.length ) throw new IOException("Number of images does not match: "+images);
+		
+		for ( int image=0; image<images; image++ ) {
+			int amount=in.readInt();
+			for ( int j=0; j<amount; j++ ) {
+				int[] grid=accumulator.getGrid(image, true);
+				int cell=in.readInt();
+				if ( cell < 0 || cell >= grid.length ) throw new IOException("Grid cell out of range: "+cell);
+				grid[cell]=in.readInt();
+			}
+		}
+		
+		return accumulator;
+	}
+	
+	/**
+	 * A calculation applied to the counts of each image
+	 */
+	interface ImageCalculation {
+		
+		/**
+		 * Calculates the results of an image, may be called concurrently
+		 * 
+		 * @param counts The counts of the grid cells of the image
+		 * @return The results
+		 */
+		double[] calculate(int[] counts);
+		
+	}
+	
+	/**
+	 * The task applying a calculation to a range of images, split until a
+	 * single image remains
+	 */
+	private class ImageTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The calculation
+		 */
+		private final ImageCalculation calculation;
+		
+		/**
+		 * The array receiving the results
+		 */
+		private final double[][] results;
+		
+		/**
+		 * The first image of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The image after the last image of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param calculation The calculation
+		 * @param results The array receiving the results
+		 * @param from The first image of the range
+		 * @param to The image after the last image of the range
+		 */
+		ImageTask(ImageCalculation calculation, double[][] results, int from, int to) {
+			this.calculation=calculation;
+			this.results=results;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new ImageTask(this.calculation, this.results, this.from, middle),
+						new ImageTask(this.calculation, this.results, middle, this.to));
+				return;
+			}
+			
+			for ( int image=this.from; image<this.to; image++ ) {
+				int[] grid=ClickImageAccumulator.this.grids[image];
+				if ( grid != null ) this.results[image]=this.calculation.calculate(grid);
+			}
+		}
+		
+	}
+
+}
@@ -0,0 +1,206 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.images;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.CommonHelper;
+import estimators.MetricEstimatorI;
+import estimators.ShannonEntropyHelper;
+import estimators.click.images.ClickImageAccumulator.ImageCalculation;
+
+/**
+ * This provides an estimator for the entropy of graphical click-based 
+ * passwords with a different image for each click-point, e.g. CCP or PCCP.
+ * The entropy of the click-points on each image is calculated on the 
+ * image's tolerance grid as by gp_click_entropy_indep. The results are 
+ * aggregated over the images weighted by their number of click-points, 
+ * which gives the entropy of a click-point if its image is known. The
+ * overall entropy is this entropy times the mean number of click-points 
+ * per password, i.e. the click-points are assumed to be independent.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickImageAccumulator
+ */
+public class ClickImageEntropyEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The results of the last calculation: [image][click-points, entropy], null for images not chosen
+	 */
+	private double[][] results;
+	
+	/**
+	 * The number of passwords of the last calculation
+	 */
+	private long passwords;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickImageAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickImageAccumulator acc=(ClickImageAccumulator)accumulator;
+		this.results=calculateResults(acc);
+		this.passwords=acc.getPasswords();
+		
+		return getAggregate(this.results, this.passwords)[1];
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickImageAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickImageAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int images=((ClickImageAccumulator)accumulator).getImageCount();
+		String[] labels=new String[images+2];
+		
+		for ( int image=0; image<images; image++ ) labels[image]="Image "+image+" entropy";
+		labels[images]="Click-point entropy";
+		labels[images+1]="Overall entropy";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickImageAccumulator acc=(ClickImageAccumulator)accumulator;
+		double[][] res=calculateResults(acc);
+		double[] flat=new double[res.length+2];
+		
+		for ( int image=0; image<res.length; image++ ) flat[image]=res[image] == null ? Double.NaN : res[image][1];
+		double[] aggregate=getAggregate(res, acc.getPasswords());
+		flat[res.length]=aggregate[0];
+		flat[res.length+1]=aggregate[1];
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the number of click-points and the entropy of each image
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The results: [image][click-points, entropy], null for images not chosen
+	 */
+	private static double[][] calculateResults(ClickImageAccumulator accumulator) {
+		return accumulator.calculate(new ImageCalculation() {
+			@Override
+			public double[] calculate(int[] counts) {
+				return new double[]{CommonHelper.getTotal(counts), ShannonEntropyHelper.getEntropy(counts)};
+			}
+		});
+	}
+	
+	/**
+	 * Aggregates the entropies of the images
+	 * 
+	 * @param results The results of the images
+	 * @param passwords The number of passwords
+	 * @return The entropy of a click-point with known image and the overall entropy
+	 */
+	private static double[] getAggregate(double[][] results, long passwords) {
+		
+		double clicks=0, entropy=0;
+		for ( double[] res : results ) {
+			if ( res == null ) continue;
+			clicks += res[0];
+			entropy += res[0]*res[1];
+		}
+		if ( clicks == 0 ) return new double[]{0, 0};
+		
+		return new double[]{entropy/clicks, entropy/passwords};
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		for ( int image=0; image<this.results.length; image++ ) {
+			if ( this.results[image] == null ) continue;
+			outWriter.write("Image: "+image+"\n");
+			outWriter.write("Click-points: "+(long)this.results[image][0]+"\n");
+			outWriter.write("Image entropy: "+this.results[image][1]+"\n");
+			outWriter.write("-------------------------------\n");
+		}
+		this.shortPrintRestult(outWriter);
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK_IMAGES;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		double[] aggregate=getAggregate(this.results, this.passwords);
+		outWriter.write("Click-point entropy: "+aggregate[0]+"\n");
+		outWriter.write("Overall entropy: "+aggregate[1]+"\n");
+		outWriter.close();
+	}
+
+}
@@ -0,0 +1,227 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.images;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.GuessworkHelper;
+import estimators.MetricEstimatorI;
+import estimators.click.images.ClickImageAccumulator.ImageCalculation;
+
+/**
+ * This provides an estimator for the alpha-guesswork metric according to 
+ * Bonneau of graphical click-based passwords with a different image for 
+ * each click-point, e.g. CCP or PCCP. The guesswork of the click-points on
+ * each image is calculated on the image's tolerance grid as by 
+ * gp_click_guesswork. The results are aggregated over the images weighted
+ * by their number of click-points, which gives the guesswork of a 
+ * click-point if its image is known.
+ * The metric is calculated for alpha between 0.01 and 0.99 in steps of 0.01.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ClickImageAccumulator
+ */
+public class ClickImageGuessworkEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The number of alphas the metric is calculated for
+	 */
+	private static final int ALPHAS=99;
+	
+	/**
+	 * The results of the last calculation: [image][click-points, guesswork for alpha 0.01, ...], null for images not chosen
+	 */
+	private double[][] results;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickImageAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		this.results=calculateResults((ClickImageAccumulator)accumulator);
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickImageAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickImageAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		int images=((ClickImageAccumulator)accumulator).getImageCount();
+		String[] labels=new String[(images+1)*ALPHAS];
+		
+		for ( int image=0; image<=images; image++ ) {
+			String prefix=image < images ? "Image "+image : "Click-point";
+			for ( int alpha=1; alpha<=ALPHAS; alpha++ ) {
+				labels[image*ALPHAS+alpha-1]=prefix+", alpha "+(((double)alpha)/100);
+			}
+		}
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		double[][] res=calculateResults((ClickImageAccumulator)accumulator);
+		double[] flat=new double[(res.length+1)*ALPHAS];
+		
+		for ( int image=0; image<res.length; image++ ) {
+			if ( res[image] == null ) Arrays.fill(flat, image*ALPHAS, (image+1)*ALPHAS, Double.NaN);
+			else System.arraycopy(res[image], 1, flat, image*ALPHAS, ALPHAS);
+		}
+		System.arraycopy(getAggregate(res), 0, flat, res.length*ALPHAS, ALPHAS);
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the number of click-points and the alpha-guesswork of each image
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The results: [image][click-points, guesswork for alpha 0.01, ...], null for images not chosen
+	 */
+	private static double[][] calculateResults(ClickImageAccumulator accumulator) {
+		return accumulator.calculate(new ImageCalculation() {
+			@Override
+			public double[] calculate(int[] counts) {
+				
+				//the probabilities of the cells in decreasing order
+				double sum=0;
+				double[] probabilities=new double[counts.length];
+				for ( int j=0; j<counts.length; j++ ) {
+					probabilities[j]=-counts[j];
+					sum += counts[j];
+				}
+				Arrays.sort(probabilities);
+				for ( int j=0; j<probabilities.length; j++ ) probabilities[j] /= -sum;
+				
+				double[] res=new double[ALPHAS+1];
+				res[0]=sum;
+				for ( int alpha=1; alpha<=ALPHAS; alpha++ ) {
+					res[alpha]=GuessworkHelper.alphaGuessworkBits(probabilities, ((double)alpha)/100);
+				}
+				return res;
+			}
+		});
+	}
+	
+	/**
+	 * Aggregates the alpha-guesswork of the images
+	 * 
+	 * @param results The results of the images
+	 * @return The guesswork of a click-point with known image for alpha 0.01, ...
+	 */
+	private static double[] getAggregate(double[][] results) {
+		
+		double clicks=0;
+		double[] aggregate=new double[ALPHAS];
+		for ( double[] res : results ) {
+			if ( res == null ) continue;
+			clicks += res[0];
+			for ( int alpha=1; alpha<=ALPHAS; alpha++ ) aggregate[alpha-1] += res[0]*res[alpha];
+		}
+		for ( int alpha=0; alpha<ALPHAS; alpha++ ) aggregate[alpha] /= clicks;
+		
+		return aggregate;
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		for ( int image=0; image<this.results.length; image++ ) {
+			if ( this.results[image] == null ) continue;
+			outWriter.write("-------------------------------\n");
+			outWriter.write("Image: "+image+"\n");
+			for ( int alpha=1; alpha<=ALPHAS; alpha++ ) outWriter.write(this.results[image][alpha]+"\n");
+		}
+		outWriter.write("-------------------------------\n");
+		outWriter.write("Click-point:\n");
+		for ( double g : getAggregate(this.results) ) outWriter.write(g+"\n");
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK_IMAGES;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		//the metric is monotonically increasing, so the first and the last alpha give the range
+		for ( int image=0; image<this.results.length; image++ ) {
+			if ( this.results[image] == null ) continue;
+			outWriter.write("Image "+image+": "+this.results[image][1]+" - "+this.results[image][ALPHAS]+"\n");
+		}
+		double[] aggregate=getAggregate(this.results);
+		outWriter.write("Click-point: "+aggregate[0]+" - "+aggregate[ALPHAS-1]+"\n");
+		outWriter.close();
+	}
+
+}
@@ -0,0 +1,136 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.spatial;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
+
+/**
+ * The accumulator of the ChiassonEstimator. It classifies each password on
+ * adding and only keeps the number of passwords of each combination of 
+ * patterns, so its size does not depend on the number of passwords.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ChiassonEstimator
+ */
+class ChiassonAccumulator implements AccumulatorI<ClickPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The number of passwords of each combination of patterns
+	 */
+	private final int[] combinations=new int[1<<ChiassonEstimator.PATTERNS.length];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	ChiassonAccumulator(int[] parameters) {
+		this.parameters=parameters;
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		
+		int[] coordinates=new int[2*password.length()];
+		for ( int i=0; i<password.length(); i++ ) {
+			coordinates[2*i]=password.getClickPoint(i)[0];
+			coordinates[2*i+1]=password.getClickPoint(i)[1];
+		}
+		
+		this.combinations[ChiassonEstimator.classify(coordinates, 0, coordinates.length, this.parameters)] += weight;
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		int[] counts=((ChiassonAccumulator)other).combinations;
+		for ( int c=0; c<counts.length; c++ ) this.combinations[c] += counts[c];
+	}
+	
+	/**
+	 * Adds the counts of the combinations, e.g. as classified in parallel
+	 * 
+	 * @param counts The number of passwords of each combination of patterns
+	 */
+	void addCombinations(int[] counts) {
+		for ( int c=0; c<counts.length; c++ ) this.combinations[c] += counts[c];
+	}
+	
+	/**
+	 * @return The number of passwords of each combination of patterns
+	 */
+	int[] getCombinations() {
+		return this.combinations;
+	}
+	
+	/**
+	 * @return The number of passwords
+	 */
+	int getPasswords() {
+		int passwords=0;
+		for ( int count : this.combinations ) passwords += count;
+		return passwords;
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.combinations.length);
+		for ( int count : this.combinations ) out.writeInt(count);
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or is malformed
+	 */
+	static ChiassonAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		ChiassonAccumulator accumulator=new ChiassonAccumulator(parameters);
+		
+		int length=in.readInt();
+		if ( length != accumulator.combinations.length ) throw new IOException("Invalid number of pattern combinations: "+length);
+		for ( int c=0; c<length; c++ ) {
+			accumulator.combinations[c]=in.readInt();
+			if ( accumulator.combinations[c] < 0 ) throw new IOException("Invalid number of passwords: "+accumulator.combinations[c]);
+		}
+		
+		return accumulator;
+	}
+
+}
@@ -0,0 +1,417 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.spatial;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ShannonEntropyHelper;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides an estimator for the geometric patterns of graphical 
+ * click-based passwords as described by Chiasson et al. [1]. Each step
+ * from one click-point to the next is reduced to a direction vector whose
+ * components are -1, 0 or 1, where differences within the tolerance count
+ * as 0. A password of at least two click-points is classified as:
+ * 
+ * <ul>
+ * <li>HOR: a horizontal line, no step leaves the tolerance vertically</li>
+ * <li>VER: a vertical line, no step leaves the tolerance horizontally</li>
+ * <li>DIAG: a diagonal line, all steps lead into the same diagonal direction</li>
+ * <li>LR, RL, TB, BT: ordered left to right, right to left, top to bottom
+ * or bottom to top, no step leads into the opposite direction</li>
+ * <li>CLUSTER: localized, all click-points lie within a box of an eighth 
+ * of the width and height of the image</li>
+ * </ul>
+ * 
+ * The patterns may overlap, e.g. a horizontal line is mostly ordered left
+ * to right as well. Besides the distribution of the patterns the entropy 
+ * of the combination of patterns is reported. As the combination is a 
+ * function of the password, this is the entropy an attacker gains by 
+ * knowing the pattern of a password, i.e. the reduction of the entropy of
+ * the password set. 
+ * 
+ * For a list of passwords the click-points are packed into one array and
+ * classified in parallel. When accumulating, each password is classified 
+ * on adding and only the counts of the combinations are kept, so the 
+ * estimator supports state files, workers, the pipeline, bootstrapping and
+ * grouping.
+ * 
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>S. Chiasson, A. Forget, R. Biddle and P. C. van Oorschot, User Interface Design Affects Security: Patterns in Click-Based Graphical Passwords, International Journal of Information Security, vol. 8, no. 6, pp. 387-398, 2009.</td>
+ * </tr>
+ * </table>
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see ChiassonAccumulator
+ */
+public class ChiassonEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The names of the patterns in the order of their bits
+	 */
+	static final String[] PATTERNS={"HOR", "VER", "DIAG", "LR", "RL", "TB", "BT", "CLUSTER"};
+	
+	/**
+	 * The bits of the patterns
+	 */
+	private static final int HOR=1, VER=2, DIAG=4, LR=8, RL=16, TB=32, BT=64, CLUSTER=128;
+	
+	/**
+	 * The fraction of the image side a cluster may extend over
+	 */
+	private static final int CLUSTER_DIVISOR=8;
+	
+	/**
+	 * The number of passwords handled by a single task
+	 */
+	private static final int TASK_SIZE=4096;
+	
+	/**
+	 * The pool the classification runs on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The number of passwords of each combination of patterns of the last calculation
+	 */
+	private int[] combinations;
+	
+	/**
+	 * The number of passwords of the last calculation
+	 */
+	private int passwords;
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		int n=passwords.size();
+		
+		//the click-points of all passwords packed as x,y pairs
+		int[] starts=new int[n+1];
+		for ( int p=0; p<n; p++ ) starts[p+1]=starts[p]+2*passwords.get(p).length();
+		int[] coordinates=new int[starts[n]];
+		for ( int p=0; p<n; p++ ) {
+			ClickPassword pwd=passwords.get(p);
+			for ( int i=0; i<pwd.length(); i++ ) {
+				coordinates[starts[p]+2*i]=pwd.getClickPoint(i)[0];
+				coordinates[starts[p]+2*i+1]=pwd.getClickPoint(i)[1];
+			}
+		}
+		
+		PatternTask task=new PatternTask(coordinates, starts, parameters, 0, n);
+		ChiassonAccumulator accumulator=new ChiassonAccumulator(parameters);
+		accumulator.addCombinations(ForkJoinTask.inForkJoinPool() ? task.invoke() : POOL.invoke(task));
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ChiassonAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		ChiassonAccumulator acc=(ChiassonAccumulator)accumulator;
+		this.combinations=acc.getCombinations().clone();
+		this.passwords=acc.getPasswords();
+		
+		return this.combinations;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ChiassonAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ChiassonAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		String[] labels=new String[PATTERNS.length+2];
+		for ( int j=0; j<PATTERNS.length; j++ ) labels[j]=PATTERNS[j]+" fraction";
+		labels[PATTERNS.length]="Any pattern fraction";
+		labels[PATTERNS.length+1]="Entropy reduction by the pattern";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		ChiassonAccumulator acc=(ChiassonAccumulator)accumulator;
+		int[] counts=acc.getCombinations();
+		int total=acc.getPasswords();
+		
+		double[] results=new double[PATTERNS.length+2];
+		for ( int j=0; j<PATTERNS.length; j++ ) results[j]=(double)getPatternCount(counts, j)/total;
+		results[PATTERNS.length]=(double)(total-counts[0])/total;
+		results[PATTERNS.length+1]=ShannonEntropyHelper.getEntropy(counts);
+		
+		return results;
+	}
+	
+	/**
+	 * Counts the passwords showing a pattern
+	 * 
+	 * @param combinations The number of passwords of each combination of patterns
+	 * @param pattern The index of the pattern
+	 * @return The number of passwords whose combination contains the pattern
+	 */
+	private static int getPatternCount(int[] combinations, int pattern) {
+		
+		int amount=0;
+		for ( int c=0; c<combinations.length; c++ ) {
+			if ( (c & (1<<pattern)) != 0 ) amount += combinations[c];
+		}
+		return amount;
+	}
+	
+	/**
+	 * Classifies a password
+	 * 
+	 * @param coordinates The click-points of all passwords packed as x,y pairs
+	 * @param from The index of the first coordinate of the password
+	 * @param to The index after the last coordinate of the password
+	 * @param parameters The parameters as provided from the parser
+	 * @return The bits of the patterns of the password
+	 */
+	static int classify(int[] coordinates, int from, int to, int[] parameters) {
+		
+		//a single click-point does not form a pattern
+		if ( to-from < 4 ) return 0;
+		
+		int tolerance=parameters[2];
+		int patterns=HOR|VER|DIAG|LR|RL|TB|BT;
+		int minX=coordinates[from], maxX=minX, minY=coordinates[from+1], maxY=minY;
+		int diagonal=0;
+		
+		for ( int i=from+2; i<to; i+=2 ) {
+			
+			int x=coordinates[i];
+			int y=coordinates[i+1];
+			int dx=x-coordinates[i-2];
+			int dy=y-coordinates[i-1];
+			int sx=dx > tolerance ? 1 : dx < -tolerance ? -1 : 0;
+			int sy=dy > tolerance ? 1 : dy < -tolerance ? -1 : 0;
+			
+			if ( sy != 0 ) patterns &= ~HOR;
+			if ( sx != 0 ) patterns &= ~VER;
+			if ( sx < 0 ) patterns &= ~LR;
+			if ( sx > 0 ) patterns &= ~RL;
+			if ( sy < 0 ) patterns &= ~TB;
+			if ( sy > 0 ) patterns &= ~BT;
+			
+			//the direction of the first step is encoded as 1..9, all others need to equal it
+			int direction=3*(sx+1)+sy+2;
+			if ( sx == 0 || sy == 0 || (diagonal != 0 && direction != diagonal) ) patterns &= ~DIAG;
+			diagonal=direction;
+			
+			minX=Math.min(minX, x);
+			maxX=Math.max(maxX, x);
+			minY=Math.min(minY, y);
+			maxY=Math.max(maxY, y);
+		}
+		
+		//lines and orderings need at least one step leaving the tolerance
+		if ( maxX-minX <= tolerance ) patterns &= ~(HOR|LR|RL);
+		if ( maxY-minY <= tolerance ) patterns &= ~(VER|TB|BT);
+		if ( maxX-minX <= parameters[0]/CLUSTER_DIVISOR && maxY-minY <= parameters[1]/CLUSTER_DIVISOR ) patterns |= CLUSTER;
+		
+		return patterns;
+	}
+	
+	/**
+	 * Creates the name of a combination of patterns
+	 * 
+	 * @param combination The bits of the patterns
+	 * @return The names of the patterns joined with +, or NONE
+	 */
+	private static String getName(int combination) {
+		
+		if ( combination == 0 ) return "NONE";
+		
+		StringBuilder name=new StringBuilder();
+		for ( int j=0; j<PATTERNS.length; j++ ) {
+			if ( (combination & (1<<j)) == 0 ) continue;
+			if ( name.length() > 0 ) name.append('+');
+			name.append(PATTERNS[j]);
+		}
+		return name.toString();
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.combinations==null ) return;
+		
+		this.printSummary(outWriter);
+		
+		outWriter.write("Combination\tPasswords\tFraction\n");
+		for ( int c=0; c<this.combinations.length; c++ ) {
+			if ( this.combinations[c] == 0 ) continue;
+			outWriter.write(getName(c)+"\t"+this.combinations[c]+"\t"+((double)this.combinations[c]/this.passwords)+"\n");
+		}
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.combinations==null ) return;
+		
+		this.printSummary(outWriter);
+		outWriter.close();
+	}
+	
+	/**
+	 * Prints the distribution of the patterns and the entropy reduction
+	 * 
+	 * @param outWriter The sink to write the results to
+	 * @throws IOException Is thrown if the results cannot be written
+	 */
+	private void printSummary(Writer outWriter) throws IOException {
+		
+		outWriter.write("Passwords: "+this.passwords+"\n");
+		outWriter.write("Pattern\tPasswords\tFraction\n");
+		for ( int j=0; j<PATTERNS.length; j++ ) {
+			int amount=getPatternCount(this.combinations, j);
+			outWriter.write(PATTERNS[j]+"\t"+amount+"\t"+((double)amount/this.passwords)+"\n");
+		}
+		int any=this.passwords-this.combinations[0];
+		outWriter.write("Any pattern\t"+any+"\t"+((double)any/this.passwords)+"\n");
+		outWriter.write("Entropy reduction by the pattern: "+ShannonEntropyHelper.getEntropy(this.combinations)+" bits\n");
+	}
+	
+	/**
+	 * The task classifying a range of passwords, split until at most 
+	 * TASK_SIZE passwords remain. It returns the number of passwords of 
+	 * each combination of patterns.
+	 */
+	private static class PatternTask extends RecursiveTask<int[]> {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The click-points of all passwords packed as x,y pairs
+		 */
+		private final int[] coordinates;
+		
+		/**
+		 * The index of the first coordinate of each password, followed by the end
+		 */
+		private final int[] starts;
+		
+		/**
+		 * The parameters as provided from the parser
+		 */
+		private final int[] parameters;
+		
+		/**
+		 * The first password of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The password after the last password of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param coordinates The click-points of all passwords packed as x,y pairs
+		 * @param starts The index of the first coordinate of each password
+		 * @param parameters The parameters as provided from the parser
+		 * @param from The first password of the range
+		 * @param to The password after the last password of the range
+		 */
+		PatternTask(int[] coordinates, int[] starts, int[] parameters, int from, int to) {
+			this.coordinates=coordinates;
+			this.starts=starts;
+			this.parameters=parameters;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected int[] compute() {
+			
+			if ( this.to-this.from > TASK_SIZE ) {
+				int middle=(this.from+this.to)>>>1;
+				PatternTask left=new PatternTask(this.coordinates, this.starts, this.parameters, this.from, middle);
+				PatternTask right=new PatternTask(this.coordinates, this.starts, this.parameters, middle, this.to);
+				left.fork();
+				int[] counts=right.compute();
+				int[] other=left.join();
+				for ( int c=0; c<counts.length; c++ ) counts[c] += other[c];
+				return counts;
+			}
+			
+			int[] counts=new int[1<<PATTERNS.length];
+			for ( int p=this.from; p<this.to; p++ ) {
+				counts[classify(this.coordinates, this.starts[p], this.starts[p+1], this.parameters)]++;
+			}
+			
+			return counts;
+		}
+		
+	}
+
+}
@@ -0,0 +1,140 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.spatial;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides the export of the click-points of graphical click-based
+ * passwords as point patterns, one for each click-point position, instead
+ * of estimating a metric. The patterns are streamed to the output, so 
+ * they can be analyzed with other tools, e.g. the R package spatstat. 
+ * Binary point files are not written to a Writer but per writeBinary.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see PointPatternCreator
+ */
+public class ClickPointPatternEstimator extends MetricEstimatorI<ClickPassword> {
+
+	/**
+	 * The format of the export
+	 */
+	private final PointPatternCreator.Format format;
+	
+	/**
+	 * The point patterns of the last calculation
+	 */
+	private PointPatternCreator pattern;
+	
+	/**
+	 * Creates a new estimator
+	 * 
+	 * @param format The format of the export
+	 */
+	public ClickPointPatternEstimator(PointPatternCreator.Format format) {
+		this.format=format;
+	}
+	
+	/**
+	 * @return The format of the export
+	 */
+	public PointPatternCreator.Format getFormat() {
+		return this.format;
+	}
+	
+	@Override
+	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new PointPatternCreator(parameters[0], parameters[1]);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		this.pattern=(PointPatternCreator)accumulator;
+		return this.pattern;
+	}
+	
+	/**
+	 * Writes the point patterns as binary point file and deletes the 
+	 * temporary files afterwards
+	 * 
+	 * @param channel The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void writeBinary(WritableByteChannel channel) throws IOException {
+		
+		// prevent writing before calculation
+		if ( this.pattern==null ) return;
+		
+		try {
+			this.pattern.writeBinary(channel);
+		} finally {
+			this.pattern.delete();
+		}
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		this.shortPrintRestult(outWriter);
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.pattern==null ) return;
+		
+		try {
+			if ( this.format == PointPatternCreator.Format.CSV ) this.pattern.writeCSV(outWriter);
+			else if ( this.format == PointPatternCreator.Format.R ) this.pattern.writeR(outWriter);
+			else throw new IllegalStateException("Binary point files are written per writeBinary.");
+		} finally {
+			this.pattern.delete();
+		}
+		outWriter.close();
+	}
+
+}
@@ -18,42 +18,491 @@
  *=========================================================================*/
 package estimators.click.spatial;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import main.passwords.ClickPassword;
 import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.ClickGridAccumulator;
+import estimators.ClickGridHelper;
 import estimators.MetricEstimatorI;
 
 /**
+ * This provides an estimator for the spatial distribution of the click-points
+ * of graphical click-based passwords, separately for each click-point 
+ * position. The click-points are analyzed as point pattern in the window
+ * [0,x-max]x[0,y-max] with the following statistics:
  * 
+ * <ul>
+ * <li>The distribution of the nearest neighbour distances: mean, median and
+ * the function G(r), the fraction of points with a neighbour within r</li>
+ * <li>The Clark-Evans ratio [1] of the mean nearest neighbour distance to 
+ * the one expected under complete spatial randomness, with the edge 
+ * correction by Donnelly [2], and its z-score. Values below 1 indicate 
+ * clustering, values above 1 regularity.</li>
+ * <li>Ripley's K-function [3] and the L-function, given as L(r)-r, which is
+ * 0 under complete spatial randomness and positive for clustering</li>
+ * </ul>
+ * 
+ * G(r) and K(r) are edge corrected with the border method, i.e. only points
+ * with a distance of at least r to the border of the window are counted as
+ * centers. The functions are evaluated at ten equidistant radii up to a 
+ * quarter of the shorter side of the window. As the click-points lie on 
+ * the pixel grid, points at the same pixel have the distance 0, so for 
+ * dense patterns the Clark-Evans ratio drops below 1 even without clustering.
+ * 
+ * The click-points are counted per pixel, so memory does not depend on the
+ * number of passwords. The nearest neighbours are found with a k-d tree 
+ * over the chosen pixels and the neighbours within a radius are counted
+ * with a grid index, both queried in parallel.
+ * 
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>P. J. Clark and F. C. Evans, Distance to Nearest Neighbor as a Measure of Spatial Relationships in Populations, Ecology, vol. 35, no. 4, pp. 445-453, 1954.</td>
+ * </tr>
+ * <tr>
+ * <td valign="top">[2]</td>
+ * <td>K. P. Donnelly, Simulations to Determine the Variance and Edge Effect of Total Nearest-Neighbour Distance, Simulation Methods in Archaeology, Cambridge University Press, pp. 91-95, 1978.</td>
+ * </tr>
+ * <tr>
+ * <td valign="top">[3]</td>
+ * <td>B. D. Ripley, Modelling Spatial Patterns, Journal of the Royal Statistical Society, Series B, vol. 39, no. 2, pp. 172-212, 1977.</td>
+ * </tr>
+ * </table>
  * 
  * @author Peter Mayer | peter.mayer@cased.de
  */
 public class ClickSpatialEstimator extends MetricEstimatorI<ClickPassword> {
 
+	/**
+	 * The number of radii the functions G, K and L are evaluated at
+	 */
+	static final int RADII=10;
+	
+	/**
+	 * The number of statistics before the functions in the results of a position
+	 */
+	private static final int SUMMARY=5;
+	
+	/**
+	 * The number of pixels handled by a single task
+	 */
+	private static final int TASK_SIZE=1024;
+	
+	/**
+	 * The pool the queries run on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The radii of the last calculation
+	 */
+	private int[] radii;
+	
+	/**
+	 * The results of the last calculation: [position][statistic], see getResultLabels
+	 */
+	private double[][] results;
+	
 	@Override
 	public Object calculateMetric(List<ClickPassword> passwords, int[] parameters) {
-		// TODO Auto-generated method stub
-		return 0;
+		
+		AccumulatorI<ClickPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( ClickPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> createAccumulator(int[] parameters) {
+		return new ClickGridAccumulator(getPixelParameters(parameters));
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickGridAccumulator acc=(ClickGridAccumulator)accumulator;
+		this.radii=getRadii(acc.getParameters());
+		this.results=this.calculateResults(acc);
+		
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<ClickPassword> accumulator, DataOutput out) throws IOException {
+		((ClickGridAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<ClickPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return ClickGridAccumulator.read(in, getPixelParameters(parameters));
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<ClickPassword> accumulator) {
+		
+		ClickGridAccumulator acc=(ClickGridAccumulator)accumulator;
+		int[] r=getRadii(acc.getParameters());
+		int size=SUMMARY+3*r.length;
+		String[] labels=new String[acc.getMaxLength()*size];
+		
+		for ( int i=0; i<acc.getMaxLength(); i++ ) {
+			String prefix="Click-point "+i+", ";
+			labels[i*size]=prefix+"points";
+			labels[i*size+1]=prefix+"mean nearest neighbour distance";
+			labels[i*size+2]=prefix+"median nearest neighbour distance";
+			labels[i*size+3]=prefix+"Clark-Evans ratio";
+			labels[i*size+4]=prefix+"Clark-Evans z-score";
+			for ( int k=0; k<r.length; k++ ) {
+				labels[i*size+SUMMARY+k]=prefix+"G("+r[k]+")";
+				labels[i*size+SUMMARY+r.length+k]=prefix+"K("+r[k]+")";
+				labels[i*size+SUMMARY+2*r.length+k]=prefix+"L("+r[k]+")-"+r[k];
+			}
+		}
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<ClickPassword> accumulator) {
+		
+		double[][] res=this.calculateResults((ClickGridAccumulator)accumulator);
+		int size=res.length == 0 ? 0 : res[0].length;
+		double[] flat=new double[res.length*size];
+		
+		for ( int i=0; i<res.length; i++ ) {
+			System.arraycopy(res[i], 0, flat, i*size, size);
+		}
+		
+		return flat;
+	}
+	
+	/**
+	 * The click-points are counted per pixel, i.e. on a grid with a 
+	 * tolerance of 1
+	 * 
+	 * @param parameters The parameters as provided by the parser
+	 * @return The parameters of the pixel grid
+	 */
+	private static int[] getPixelParameters(int[] parameters) {
+		return new int[]{parameters[0], parameters[1], 1};
+	}
+	
+	/**
+	 * Determines the radii the functions are evaluated at: integer multiples
+	 * of a step, so the largest radius is about a quarter of the shorter 
+	 * side of the window
+	 * 
+	 * @param parameters The parameters of the pixel grid
+	 * @return The radii
+	 */
+	static int[] getRadii(int[] parameters) {
+		
+		int step=Math.max(1, Math.round(Math.min(parameters[0], parameters[1])/(4f*RADII)));
+		
+		int[] r=new int[RADII];
+		for ( int k=0; k<RADII; k++ ) r[k]=(k+1)*step;
+		
+		return r;
+	}
+	
+	/**
+	 * Calculates the statistics for each click-point position
+	 * 
+	 * @param accumulator The accumulator counting the pixels
+	 * @return The statistics: [position][statistic]
+	 */
+	private double[][] calculateResults(ClickGridAccumulator accumulator) {
+		
+		int[] parameters=accumulator.getParameters();
+		int[] r=getRadii(parameters);
+		double[][] res=new double[accumulator.getMaxLength()][];
+		
+		for ( int i=0; i<res.length; i++ ) {
+			res[i]=this.calculatePosition(accumulator.getGrid(i), parameters, r);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Calculates the statistics for the click-points of one position
+	 * 
+	 * @param counts The counts of the pixels
+	 * @param parameters The parameters of the pixel grid
+	 * @param r The radii
+	 * @return The statistics, see getResultLabels
+	 */
+	private double[] calculatePosition(int[] counts, int[] parameters, int[] r) {
+		
+		int columns=ClickGridHelper.getColumns(parameters);
+		int rows=ClickGridHelper.getRows(parameters);
+		
+		//the chosen pixels, each one stands for count points at the same location
+		int pixels=0;
+		long n=0;
+		for ( int count : counts ) {
+			if ( count == 0 ) continue;
+			pixels++;
+			n += count;
+		}
+		int[] xs=new int[pixels];
+		int[] ys=new int[pixels];
+		int[] weights=new int[pixels];
+		for ( int cell=0, j=0; cell<counts.length; cell++ ) {
+			if ( counts[cell] == 0 ) continue;
+			xs[j]=cell/rows;
+			ys[j]=cell%rows;
+			weights[j++]=counts[cell];
+		}
+		
+		double[] res=new double[SUMMARY+3*r.length];
+		Arrays.fill(res, Double.NaN);
+		res[0]=n;
+		if ( n < 2 ) return res;
+		
+		SpatialTask task=new SpatialTask(new KdTree(xs, ys), new GridIndex(counts, columns, rows), xs, ys, weights, parameters, r, new long[pixels], 0, pixels);
+		double[] sums=ForkJoinTask.inForkJoinPool() ? task.invoke() : POOL.invoke(task);
+		long[] nearest=task.nearest;
+		
+		//nearest neighbour distances
+		double area=(double)parameters[0]*parameters[1];
+		double perimeter=2.0*(parameters[0]+parameters[1]);
+		double mean=sums[0]/n;
+		res[1]=mean;
+		res[2]=weightedMedian(nearest, weights, n);
+		
+		//Clark-Evans ratio with Donnelly's edge correction
+		double expected=0.5*Math.sqrt(area/n)+(0.0514+0.041/Math.sqrt(n))*perimeter/n;
+		double variance=0.0703*area/((double)n*n)+0.037*perimeter*Math.sqrt(area/Math.pow(n, 5));
+		res[3]=mean/expected;
+		res[4]=(mean-expected)/Math.sqrt(variance);
+		
+		//border corrected G-, K- and L-function
+		double intensity=n/area;
+		for ( int k=0; k<r.length; k++ ) {
+			double centers=sums[1+3*k];
+			if ( centers == 0 ) continue;
+			res[SUMMARY+k]=sums[2+3*k]/centers;
+			res[SUMMARY+r.length+k]=sums[3+3*k]/centers/intensity;
+			res[SUMMARY+2*r.length+k]=Math.sqrt(res[SUMMARY+r.length+k]/Math.PI)-r[k];
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Determines the median of the nearest neighbour distances of all points
+	 * 
+	 * @param nearest The squared nearest neighbour distance of each pixel
+	 * @param weights The number of points of each pixel
+	 * @param n The number of points
+	 * @return The median
+	 */
+	private static double weightedMedian(long[] nearest, int[] weights, long n) {
+		
+		//the squared distances fit into 32 bits, the pixel is kept in the lower bits
+		long[] order=new long[nearest.length];
+		for ( int j=0; j<order.length; j++ ) order[j]=(nearest[j]<<32) | j;
+		Arrays.sort(order);
+		
+		long seen=0;
+		for ( long entry : order ) {
+			seen += weights[(int)entry];
+			if ( 2*seen >= n ) return Math.sqrt(entry>>>32);
+		}
+		
+		return Double.NaN;
 	}
 
 	@Override
 	public void verbosePrintResult(Writer outWriter) throws IOException {
-		// TODO Auto-generated method stub
+
+		// prevent printing before calculation
+		if ( this.results==null ) return;
 		
+		for ( int i=0; i<this.results.length; i++ ) {
+			double[] res=this.results[i];
+			outWriter.write("-------------------------------\n");
+			outWriter.write("Click-point: "+i+"\n");
+			outWriter.write("Points: "+(long)res[0]+"\n");
+			outWriter.write("Mean nearest neighbour distance: "+res[1]+"\n");
+			outWriter.write("Median nearest neighbour distance: "+res[2]+"\n");
+			outWriter.write("Clark-Evans ratio: "+res[3]+" (z-score "+res[4]+")\n");
+			outWriter.write("r\tG(r)\tK(r)\tL(r)-r\n");
+			for ( int k=0; k<this.radii.length; k++ ) {
+				outWriter.write(this.radii[k]+"\t"+res[SUMMARY+k]+"\t"+res[SUMMARY+this.radii.length+k]+"\t"+res[SUMMARY+2*this.radii.length+k]+"\n");
+			}
+		}
+		outWriter.close();
 	}
 
 	@Override
 	public PasswordType getPasswordType() {
-		// TODO Auto-generated method stub
-		return null;
+		return PasswordType.GRAPHICAL_CLICK;
 	}
 
 	@Override
 	public void shortPrintRestult(Writer outWriter) throws IOException {
-		// TODO Auto-generated method stub
+		
+		for ( int i=0; i<this.results.length; i++ ) {
+			outWriter.write("Click-point "+i+": Clark-Evans ratio "+this.results[i][3]+" (z-score "+this.results[i][4]+"), mean nearest neighbour distance "+this.results[i][1]+"\n");
+		}
+		outWriter.close();
+	}
+	
+	/**
+	 * The task querying the nearest neighbours and the neighbours within the
+	 * radii for a range of pixels, split until at most TASK_SIZE pixels 
+	 * remain. The result contains the sum of the nearest neighbour distances
+	 * and for each radius the number of centers (points far enough from the
+	 * border), of centers with their nearest neighbour within the radius
+	 * and of the pairs of a center and a neighbour within the radius.
+	 */
+	private static class SpatialTask extends RecursiveTask<double[]> {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The tree over the chosen pixels
+		 */
+		private final KdTree tree;
+		
+		/**
+		 * The index over the counts of the pixels
+		 */
+		private final GridIndex index;
+		
+		/**
+		 * The x-coordinates of the pixels
+		 */
+		private final int[] xs;
+		
+		/**
+		 * The y-coordinates of the pixels
+		 */
+		private final int[] ys;
+		
+		/**
+		 * The number of points of each pixel
+		 */
+		private final int[] weights;
+		
+		/**
+		 * The parameters of the pixel grid
+		 */
+		private final int[] parameters;
+		
+		/**
+		 * The radii
+		 */
+		private final int[] radii;
+		
+		/**
+		 * The squared nearest neighbour distance of each pixel, filled by the tasks
+		 */
+		final long[] nearest;
+		
+		/**
+		 * The first pixel of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The pixel after the last pixel of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param tree The tree over the chosen pixels
+		 * @param index The index over the counts of the pixels
+		 * @param xs The x-coordinates of the pixels
+		 * @param ys The y-coordinates of the pixels
+		 * @param weights The number of points of each pixel
+		 * @param parameters The parameters of the pixel grid
+		 * @param radii The radii
+		 * @param nearest The array receiving the squared nearest neighbour distances
+		 * @param from The first pixel of the range
+		 * @param to The pixel after the last pixel of the range
+		 */
+		SpatialTask(KdTree tree, GridIndex index, int[] xs, int[] ys, int[] weights, int[] parameters, int[] radii, long[] nearest, int from, int to) {
+			this.tree=tree;
+			this.index=index;
+			this.xs=xs;
+			this.ys=ys;
+			this.weights=weights;
+			this.parameters=parameters;
+			this.radii=radii;
+			this.nearest=nearest;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected double[] compute() {
+			
+			if ( this.to-this.from > TASK_SIZE ) {
+				int middle=(this.from+this.to)>>>1;
+				SpatialTask left=new SpatialTask(this.tree, this.index, this.xs, this.ys, this.weights, this.parameters, this.radii, this.nearest, this.from, middle);
+				SpatialTask right=new SpatialTask(this.tree, this.index, this.xs, this.ys, this.weights, this.parameters, this.radii, this.nearest, middle, this.to);
+				left.fork();
+				double[] sums=right.compute();
+				double[] other=left.join();
+				for ( int j=0; j<sums.length; j++ ) sums[j] += other[j];
+				return sums;
+			}
+			
+			double[] sums=new double[1+3*this.radii.length];
+			for ( int j=this.from; j<this.to; j++ ) {
+				
+				int x=this.xs[j];
+				int y=this.ys[j];
+				int weight=this.weights[j];
+				
+				//points sharing a pixel are each other's nearest neighbours
+				long d2=weight > 1 ? 0 : this.tree.nearestOther(x, y);
+				this.nearest[j]=d2;
+				double distance=Math.sqrt(d2);
+				sums[0] += weight*distance;
+				
+				int border=Math.min(Math.min(x, this.parameters[0]-x), Math.min(y, this.parameters[1]-y));
+				for ( int k=0; k<this.radii.length && this.radii[k] <= border; k++ ) {
+					sums[1+3*k] += weight;
+					if ( d2 <= (long)this.radii[k]*this.radii[k] ) sums[2+3*k] += weight;
+					//each point of the pixel is paired with all other points within the radius
+					sums[3+3*k] += (double)weight*(this.index.countWithin(x, y, this.radii[k])-1);
+				}
+			}
+			
+			return sums;
+		}
 		
 	}
 
@@ -0,0 +1,100 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.spatial;
+
+/**
+ * A uniform grid index over the click-points of one position, with one grid
+ * cell per pixel of the canvas. For each column the cumulative counts along
+ * the y-axis are stored, so the number of points within a circle is summed
+ * column by column in O(r) regardless of the number of points.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class GridIndex {
+
+	/**
+	 * The number of columns (x-max + 1)
+	 */
+	private final int columns;
+	
+	/**
+	 * The number of rows (y-max + 1)
+	 */
+	private final int rows;
+	
+	/**
+	 * The cumulative counts, for column x the number of points with
+	 * y-coordinates below y is stored at x*(rows+1)+y
+	 */
+	private final long[] sums;
+	
+	/**
+	 * Creates the index from the counts of the pixels
+	 * 
+	 * @param counts The counts, the pixel x,y is stored at x*rows+y
+	 * @param columns The number of columns
+	 * @param rows The number of rows
+	 */
+	GridIndex(int[] counts, int columns, int rows) {
+		
+		this.columns=columns;
+		this.rows=rows;
+		this.sums=new long[columns*(rows+1)];
+		
+		for ( int x=0; x<columns; x++ ) {
+			for ( int y=0; y<rows; y++ ) {
+				this.sums[x*(rows+1)+y+1]=this.sums[x*(rows+1)+y]+counts[x*rows+y];
+			}
+		}
+	}
+	
+	/**
+	 * Counts the points within a circle, including the points at the center
+	 * 
+	 * @param x The x-coordinate of the center
+	 * @param y The y-coordinate of the center
+	 * @param radius The radius
+	 * @return The number of points with a distance of at most radius to the center
+	 */
+	long countWithin(int x, int y, int radius) {
+		
+		long r2=(long)radius*radius;
+		long count=0;
+		
+		for ( int dx=-radius; dx<=radius; dx++ ) {
+			
+			int column=x+dx;
+			if ( column < 0 || column >= this.columns ) continue;
+			
+			//the half height of the circle in this column, corrected for rounding errors
+			long rest=r2-(long)dx*dx;
+			int h=(int)Math.sqrt(rest);
+			while ( (long)h*h > rest ) h--;
+			while ( (long)(h+1)*(h+1) <= rest ) h++;
+			
+			int from=Math.max(0, y-h);
+			int to=Math.min(this.rows-1, y+h);
+			if ( from > to ) continue;
+			count += this.sums[column*(this.rows+1)+to+1]-this.sums[column*(this.rows+1)+from];
+		}
+		
+		return count;
+	}
+
+}
@@ -0,0 +1,181 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.click.spatial;
+
+/**
+ * A two-dimensional k-d tree over points with integer coordinates, used to
+ * find the nearest neighbour of a point. The tree is stored implicitly in
+ * the coordinate arrays: the median of a range is its root, the points 
+ * before it form the left subtree and the points after it the right one.
+ * Building takes O(n log n) and a query O(log n) on average. The tree is
+ * not modified by queries, so it may be queried concurrently.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class KdTree {
+
+	/**
+	 * The x-coordinates of the points in tree order
+	 */
+	private final int[] xs;
+	
+	/**
+	 * The y-coordinates of the points in tree order
+	 */
+	private final int[] ys;
+	
+	/**
+	 * Builds a tree over the points, the arrays are left unchanged
+	 * 
+	 * @param xs The x-coordinates of the points
+	 * @param ys The y-coordinates of the points
+	 */
+	KdTree(int[] xs, int[] ys) {
+		this.xs=xs.clone();
+		this.ys=ys.clone();
+		this.build(0, this.xs.length, true);
+	}
+	
+	/**
+	 * @return The number of points in the tree
+	 */
+	int size() {
+		return this.xs.length;
+	}
+	
+	/**
+	 * Arranges a range of points as subtree, split alternately along the
+	 * x- and the y-axis
+	 * 
+	 * @param lo The first point of the range
+	 * @param hi The point after the last point of the range
+	 * @param splitX Whether the range is split along the x-axis
+	 */
+	private void build(int lo, int hi, boolean splitX) {
+		
+		while ( hi-lo > 1 ) {
+			int mid=(lo+hi)>>>1;
+			this.select(lo, hi-1, mid, splitX);
+			//the smaller subtree is built recursively, so the depth of the recursion stays logarithmic
+			if ( mid-lo < hi-mid-1 ) {
+				this.build(lo, mid, !splitX);
+				lo=mid+1;
+			} else {
+				this.build(mid+1, hi, !splitX);
+				hi=mid;
+			}
+			splitX=!splitX;
+		}
+	}
+	
+	/**
+	 * Moves the k-th smallest point along an axis to position k, with no
+	 * greater point before and no smaller point after it (Hoare's selection)
+	 * 
+	 * @param l The first point of the range
+	 * @param r The last point of the range
+	 * @param k The position to select
+	 * @param splitX Whether the points are compared along the x-axis
+	 */
+	private void select(int l, int r, int k, boolean splitX) {
+		
+		int[] keys=splitX ? this.xs : this.ys;
+		
+		while ( l < r ) {
+			int pivot=keys[k];
+			int i=l;
+			int j=r;
+			do {
+				while ( keys[i] < pivot ) i++;
+				while ( pivot < keys[j] ) j--;
+				if ( i <= j ) {
+					this.swap(i, j);
+					i++;
+					j--;
+				}
+			} while ( i <= j );
+			if ( j < k ) l=i;
+			if ( k < i ) r=j;
+		}
+	}
+	
+	/**
+	 * Swaps two points
+	 * 
+	 * @param i The position of the first point
+	 * @param j The position of the second point
+	 */
+	private void swap(int i, int j) {
+		int x=this.xs[i];
+		this.xs[i]=this.xs[j];
+		this.xs[j]=x;
+		int y=this.ys[i];
+		this.ys[i]=this.ys[j];
+		this.ys[j]=y;
+	}
+	
+	/**
+	 * Finds the nearest point which does not lie at the query location,
+	 * i.e. the nearest neighbour of a point of the tree if all points lie
+	 * at distinct locations
+	 * 
+	 * @param x The x-coordinate of the query location
+	 * @param y The y-coordinate of the query location
+	 * @return The squared distance to the nearest point or Long.MAX_VALUE if there is none
+	 */
+	long nearestOther(int x, int y) {
+		return this.nearestOther(0, this.xs.length, true, x, y, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Searches a subtree for the nearest point, the subtree on the side of
+	 * the query location first and the other one only if it may contain a
+	 * nearer point
+	 * 
+	 * @param lo The first point of the subtree
+	 * @param hi The point after the last point of the subtree
+	 * @param splitX Whether the subtree is split along the x-axis
+	 * @param x The x-coordinate of the query location
+	 * @param y The y-coordinate of the query location
+	 * @param best The squared distance to the nearest point found so far
+	 * @return The squared distance to the nearest point found
+	 */
+	private long nearestOther(int lo, int hi, boolean splitX, int x, int y, long best) {
+		
+		if ( lo >= hi ) return best;
+		
+		int mid=(lo+hi)>>>1;
+		long dx=this.xs[mid]-x;
+		long dy=this.ys[mid]-y;
+		long distance=dx*dx+dy*dy;
+		if ( distance > 0 && distance < best ) best=distance;
+		
+		long diff=splitX ? dx : dy;
+		if ( diff > 0 ) {
+			best=this.nearestOther(lo, mid, !splitX, x, y, best);
+			if ( diff*diff < best ) best=this.nearestOther(mid+1, hi, !splitX, x, y, best);
+		} else {
+			best=this.nearestOther(mid+1, hi, !splitX, x, y, best);
+			if ( diff*diff < best ) best=this.nearestOther(lo, mid, !splitX, x, y, best);
+		}
+		
+		return best;
+	}
+
+}
@@ -18,18 +18,77 @@
  *=========================================================================*/
 package estimators.click.spatial;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
 import main.passwords.ClickPassword;
+import estimators.AccumulatorI;
 
 /**
- * This class provides a factory of the point pattern type ppp for use with the R package
- * spatstat. At instantiation time a password set is loaded into the factory and 
- * from this set PointPatterns for any position in the password or all positions can 
- * be created
+ * This class exports the click-points of a password set as point patterns,
+ * one for each click-point position, e.g. as ppp for use with the R package
+ * spatstat. The passwords are added one by one and their click-points are
+ * spilled to a temporary file per position, so memory does not depend on
+ * the number of passwords. The patterns are streamed position by position
+ * to a Writer or a channel in linear time. The temporary files need to be
+ * deleted per delete afterwards, the files of merged patterns are deleted
+ * on exit. The streams of a merged pattern are closed after its click-points
+ * were copied and only reopened if further click-points are added to it.
+ * 
+ * The following formats are available:
+ * <ul>
+ * <li>R: An R script creating a ppp object cp0, cp1, ... for each position
+ * and the superimposed pattern cp of all positions, marked with the position.</li>
+ * <li>CSV: One line position,x,y for each click-point.</li>
+ * <li>BINARY: A header (magic number, version, x-max, y-max, number of 
+ * positions and bytes per coordinate), followed by the number of click-points
+ * (long) and the interleaved coordinates of each position. The coordinates
+ * are stored as unsigned shorts if the canvas allows it and as ints otherwise,
+ * all numbers in big-endian byte order.</li>
+ * </ul>
  * 
  * @author Peter Mayer | peter.mayer@cased.de
  *
  */
-public class PointPatternCreator {
+public class PointPatternCreator implements AccumulatorI<ClickPassword> {
+	
+	/**
+	 * The formats a point pattern can be exported in
+	 */
+	public enum Format {
+		R, CSV, BINARY
+	}
+	
+	/**
+	 * Identifies a binary point file ("EnEP")
+	 */
+	static final int MAGIC=0x456E4550;
+	
+	/**
+	 * The version of the binary point file format
+	 */
+	static final int VERSION=1;
+	
+	/**
+	 * The number of coordinates per line of the R script
+	 */
+	private static final int LINE_LENGTH=1000;
+	
+	/**
+	 * The size of the buffers of the temporary files and of the binary output
+	 */
+	private static final int BUFFER_SIZE=1<<16;
 	
 	/**
 	 * The maximum x value
@@ -42,50 +101,311 @@ public class PointPatternCreator {
 	private final int y;
 	
 	/**
-	 * The passwords to create the pattern from
+	 * The temporary file of each position
+	 */
+	private File[] files=new File[0];
+	
+	/**
+	 * The streams to the temporary files, null while closed
+	 */
+	private FileOutputStream[] streams=new FileOutputStream[0];
+	
+	/**
+	 * The buffered sinks writing to the streams, null while closed
 	 */
-	private final ClickPassword[] pwds;
+	private DataOutputStream[] outs=new DataOutputStream[0];
 	
 	/**
-	 * Creates a new factory instance
+	 * The number of click-points of each position
+	 */
+	private long[] counts=new long[0];
+	
+	/**
+	 * Creates a new empty point pattern
 	 * 
-	 * @param passwords The password set
 	 * @param x The maximum value for x
 	 * @param y The maximum value for y
 	 */
-	public PointPatternCreator(ClickPassword[] passwords, int x, int y) {
-		
+	public PointPatternCreator(int x, int y) {
 		this.x=x;
 		this.y=y;
-		this.pwds=passwords;
+	}
+	
+	@Override
+	public void add(ClickPassword password, int weight) {
+		try {
+			this.ensureLength(password.length());
+			for ( int i=0; i<password.length(); i++ ) {
+				int[] cp=password.getClickPoint(i);
+				DataOutputStream out=this.getOut(i);
+				for ( int w=0; w<weight; w++ ) {
+					out.writeInt(cp[0]);
+					out.writeInt(cp[1]);
+				}
+				this.counts[i] += weight;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Click-points could not be written to the temporary file: "+e.getMessage(), e);
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<ClickPassword> other) {
+		
+		PointPatternCreator pattern=(PointPatternCreator)other;
+		try {
+			this.ensureLength(pattern.counts.length);
+			for ( int i=0; i<pattern.counts.length; i++ ) {
+				pattern.close(i);
+				this.getOut(i).flush();
+				//the click-points of the other pattern are appended to the temporary file
+				FileChannel target=this.streams[i].getChannel();
+				FileInputStream in=new FileInputStream(pattern.files[i]);
+				try {
+					FileChannel source=in.getChannel();
+					long transferred=0;
+					while ( transferred < source.size() ) transferred += source.transferTo(transferred, source.size()-transferred, target);
+				} finally {
+					in.close();
+				}
+				this.counts[i] += pattern.counts[i];
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Click-points could not be written to the temporary file: "+e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Makes sure there is a temporary file for each position up to the specified length
+	 * 
+	 * @param length The number of positions needed
+	 * @throws IOException Is thrown if a temporary file cannot be created
+	 */
+	private void ensureLength(int length) throws IOException {
+		
+		if ( length <= this.counts.length ) return;
+		
+		int oldLength=this.counts.length;
+		this.files=Arrays.copyOf(this.files, length);
+		this.streams=Arrays.copyOf(this.streams, length);
+		this.outs=Arrays.copyOf(this.outs, length);
+		this.counts=Arrays.copyOf(this.counts, length);
+		for ( int i=oldLength; i<length; i++ ) {
+			this.files[i]=File.createTempFile("enes-points", ".bin");
+			this.files[i].deleteOnExit();
+			this.streams[i]=new FileOutputStream(this.files[i]);
+			this.outs[i]=new DataOutputStream(new BufferedOutputStream(this.streams[i], BUFFER_SIZE));
+		}
+	}
+	
+	/**
+	 * Returns the sink of a position, the temporary file is reopened for
+	 * appending if it was closed
+	 * 
+	 * @param position The click-point position
+	 * @return The sink
+	 * @throws IOException Is thrown if the temporary file cannot be opened
+	 */
+	private DataOutputStream getOut(int position) throws IOException {
+		
+		if ( this.outs[position] == null ) {
+			this.streams[position]=new FileOutputStream(this.files[position], true);
+			this.outs[position]=new DataOutputStream(new BufferedOutputStream(this.streams[position], BUFFER_SIZE));
+		}
 		
+		return this.outs[position];
 	}
 	
 	/**
-	 * Creates a ppp type from the password set for the specified position or for all positions
-	 * if 0 is specified as position.
+	 * Flushes and closes the sink of a position, the click-points remain in
+	 * the temporary file
 	 * 
-	 * @param position The position to create the ppp
-	 * @return The ppp as String
+	 * @param position The click-point position
+	 * @throws IOException Is thrown if the temporary file cannot be written
 	 */
-	public String getPointPattern(final int position) {
+	private void close(int position) throws IOException {
 		
-		String x="";
-		String y="";
+		if ( this.outs[position] == null ) return;
 		
-		for ( ClickPassword pwd : this.pwds ) {
-			for ( int i=(position==0)?0:position; i<((position==0)?pwd.length():(position+1)); i++ ) {
-				x += pwd.getClickPoint(i)[0];
-				y += pwd.getClickPoint(i)[1];
-				
-				if ( i<((position==0)?(pwd.length()-1):position) ) {
-					x += ",";
-					y += ",";
+		try {
+			this.outs[position].close();
+		} finally {
+			this.outs[position]=null;
+			this.streams[position]=null;
+		}
+	}
+	
+	/**
+	 * @return The maximum length among the passwords
+	 */
+	public int getMaxLength() {
+		return this.counts.length;
+	}
+	
+	/**
+	 * Returns the number of click-points of a position
+	 * 
+	 * @param position The click-point position
+	 * @return The number of click-points
+	 */
+	public long getCount(int position) {
+		return this.counts[position];
+	}
+	
+	/**
+	 * Writes the point patterns as R script, which creates a ppp object for
+	 * each position and one for all positions
+	 * 
+	 * @param outWriter The sink
+	 * @throws IOException Is thrown if a temporary file cannot be read or the sink cannot be written
+	 */
+	public void writeR(Writer outWriter) throws IOException {
+		
+		String window="owin(c(0,"+this.x+"), c(0,"+this.y+"))";
+		outWriter.write("library(spatstat)\n");
+		
+		for ( int i=0; i<this.counts.length; i++ ) {
+			//the temporary file is read twice, for the x- and the y-coordinates
+			outWriter.write("cp"+i+" <- ppp(x=c(");
+			this.writeCoordinates(i, 0, outWriter);
+			outWriter.write("),\n  y=c(");
+			this.writeCoordinates(i, 1, outWriter);
+			outWriter.write("),\n  window="+window+")\n");
+		}
+		
+		if ( this.counts.length == 0 ) return;
+		outWriter.write("cp <- superimpose(");
+		for ( int i=0; i<this.counts.length; i++ ) outWriter.write((i > 0 ? ", " : "")+"'"+i+"'=cp"+i);
+		outWriter.write(", W="+window+")\n");
+	}
+	
+	/**
+	 * Writes one coordinate of the click-points of a position as comma
+	 * separated list
+	 * 
+	 * @param position The click-point position
+	 * @param axis 0 for the x-coordinates, 1 for the y-coordinates
+	 * @param outWriter The sink
+	 * @throws IOException Is thrown if the temporary file cannot be read or the sink cannot be written
+	 */
+	private void writeCoordinates(int position, int axis, Writer outWriter) throws IOException {
+		
+		DataInputStream in=this.openPoints(position);
+		try {
+			for ( long j=0; j<this.counts[position]; j++ ) {
+				int cx=in.readInt();
+				int cy=in.readInt();
+				if ( j > 0 ) outWriter.write(j%LINE_LENGTH == 0 ? ",\n    " : ",");
+				outWriter.write(Integer.toString(axis == 0 ? cx : cy));
+			}
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Writes the point patterns as CSV with the columns position, x and y
+	 * 
+	 * @param outWriter The sink
+	 * @throws IOException Is thrown if a temporary file cannot be read or the sink cannot be written
+	 */
+	public void writeCSV(Writer outWriter) throws IOException {
+		
+		outWriter.write("position,x,y\n");
+		
+		for ( int i=0; i<this.counts.length; i++ ) {
+			DataInputStream in=this.openPoints(i);
+			try {
+				String prefix=i+",";
+				for ( long j=0; j<this.counts[i]; j++ ) {
+					int cx=in.readInt();
+					int cy=in.readInt();
+					outWriter.write(prefix+cx+","+cy+"\n");
 				}
+			} finally {
+				in.close();
 			}
 		}
+	}
+	
+	/**
+	 * Writes the point patterns as binary point file
+	 * 
+	 * @param channel The sink
+	 * @throws IOException Is thrown if a temporary file cannot be read or the sink cannot be written
+	 */
+	public void writeBinary(WritableByteChannel channel) throws IOException {
+		
+		boolean shorts=this.x <= 0xFFFF && this.y <= 0xFFFF;
+		ByteBuffer buffer=ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(this.x);
+		buffer.putInt(this.y);
+		buffer.putInt(this.counts.length);
+		buffer.putInt(shorts ? 2 : 4);
 		
-		return "ppp(c("+x+"), c("+y+"), c(1,"+this.x+"), c(1,"+this.y+"))";
+		for ( int i=0; i<this.counts.length; i++ ) {
+			if ( buffer.remaining() < 8 ) flush(buffer, channel);
+			buffer.putLong(this.counts[i]);
+			DataInputStream in=this.openPoints(i);
+			try {
+				for ( long j=0; j<this.counts[i]; j++ ) {
+					if ( buffer.remaining() < 8 ) flush(buffer, channel);
+					int cx=in.readInt();
+					int cy=in.readInt();
+					if ( shorts ) {
+						buffer.putShort((short)cx);
+						buffer.putShort((short)cy);
+					} else {
+						buffer.putInt(cx);
+						buffer.putInt(cy);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		}
+		flush(buffer, channel);
+	}
+	
+	/**
+	 * Writes the contents of a buffer to a channel and clears it
+	 * 
+	 * @param buffer The buffer
+	 * @param channel The channel
+	 * @throws IOException Is thrown if the channel cannot be written
+	 */
+	private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while ( buffer.hasRemaining() ) channel.write(buffer);
+		buffer.clear();
+	}
+	
+	/**
+	 * Opens the temporary file of a position for reading
+	 * 
+	 * @param position The click-point position
+	 * @return The source of the click-points
+	 * @throws IOException Is thrown if the temporary file cannot be read
+	 */
+	private DataInputStream openPoints(int position) throws IOException {
+		if ( this.outs[position] != null ) this.outs[position].flush();
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(this.files[position]), BUFFER_SIZE));
+	}
+	
+	/**
+	 * Deletes the temporary files, afterwards the pattern can not be used anymore
+	 */
+	public void delete() {
+		for ( int i=0; i<this.counts.length; i++ ) {
+			try {
+				this.close(i);
+			} catch (IOException e) {
+				//the file is deleted anyway
+			}
+			this.files[i].delete();
+		}
 	}
 
 }
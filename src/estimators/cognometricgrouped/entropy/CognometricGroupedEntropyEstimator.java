@@ -18,12 +18,16 @@
  *=========================================================================*/
 package estimators.cognometricgrouped.entropy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 
 import main.passwords.CognometricGroupedPassword;
 import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.CognometricGroupedAccumulator;
 import estimators.MetricEstimatorI;
 import estimators.ShannonEntropyHelper;
 
@@ -34,8 +38,10 @@ import estimators.ShannonEntropyHelper;
  * values are however only calculated for the distribution of the password
  * elements (in the groups) since the distribution of the groups does not
  * add to the strength of the password against offline guessing attacks.
+ * The overall element entropy assumes the positions to be independent.
  * 
  * @author Peter Mayer | peter.mayer@cased.de
+ * @see CognometricGroupedAccumulator
  */
 public class CognometricGroupedEntropyEstimator extends MetricEstimatorI<CognometricGroupedPassword> {
 
@@ -45,43 +51,90 @@ public class CognometricGroupedEntropyEstimator extends MetricEstimatorI<Cognome
 	@Override
 	public Object calculateMetric(List<CognometricGroupedPassword> passwords, int[] parameters) {
 
-		/*
-		 * First we create the buckets for each group and each element in the groups
-		 */
-		int maxLength=CognometricGroupedPassword.getMaxLength(passwords);
-		int[][] groupBuckets=new int[maxLength][parameters[0]];
-		int[][] elementBuckets=new int[maxLength][parameters[1]];
+		AccumulatorI<CognometricGroupedPassword> accumulator=this.createAccumulator(parameters);
+
+		for ( CognometricGroupedPassword pwd : passwords ) accumulator.add(pwd, 1);
+
+		return this.calculateMetric(accumulator);
+	}
+
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> createAccumulator(int[] parameters) {
+		return new CognometricGroupedAccumulator(parameters);
+	}
+
+	@Override
+	public Object calculateMetric(AccumulatorI<CognometricGroupedPassword> accumulator) {
+
+		double[] res=this.getResults(accumulator);
+		int length=(res.length-1)/2;
 
 		/*
-		 * Then we iterate over all the passwords
+		 * The results contain the group entropies followed by the element
+		 * entropies of each position and the overall element entropy
 		 */
-		for ( int i=0; i<passwords.size(); i++ ) {
-			//and for each password over all elements
-			for ( int j=0; j<passwords.get(i).length(); j++ ) {
+		this.groupEntropies=new double[length];
+		this.elementEntropies=new double[length];
+		System.arraycopy(res, 0, this.groupEntropies, 0, length);
+		System.arraycopy(res, length, this.elementEntropies, 0, length);
+
+		return res[2*length];
+	}
+
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
 
-				//sort in the group
-				groupBuckets[j][passwords.get(i).getElement(j)[0]]++;
+	@Override
+	public void writeState(AccumulatorI<CognometricGroupedPassword> accumulator, DataOutput out) throws IOException {
+		((CognometricGroupedAccumulator)accumulator).write(out);
+	}
 
-				//sort in the element
-				elementBuckets[j][passwords.get(i).getElement(j)[1]]++;
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return CognometricGroupedAccumulator.read(in, parameters);
+	}
+
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
 
-			}
+	@Override
+	public String[] getResultLabels(AccumulatorI<CognometricGroupedPassword> accumulator) {
+
+		int length=((CognometricGroupedAccumulator)accumulator).getMaxLength();
+		String[] labels=new String[2*length+1];
+
+		for ( int i=0; i<length; i++ ) {
+			labels[i]="Position "+(i+1)+" entropy (groups)";
+			labels[length+i]="Position "+(i+1)+" entropy (elements)";
 		}
+		labels[2*length]="Overall element entropy";
+
+		return labels;
+	}
 
+	@Override
+	public double[] getResults(AccumulatorI<CognometricGroupedPassword> accumulator) {
 
-		/*
-		 * Now we calculate the entropy for the groups and the elements
-		 */
-		this.groupEntropies=new double[maxLength];
-		this.elementEntropies=new double[maxLength];
+		CognometricGroupedAccumulator acc=(CognometricGroupedAccumulator)accumulator;
+		int length=acc.getMaxLength();
+		double[] res=new double[2*length+1];
 
-		for ( int i=0; i<maxLength; i++ ) {
-			this.groupEntropies[i]=ShannonEntropyHelper.getEntropy(groupBuckets[i]);
-			this.elementEntropies[i]=ShannonEntropyHelper.getEntropy(elementBuckets[i]);
+		for ( int i=0; i<length; i++ ) {
+			res[i]=ShannonEntropyHelper.getEntropy(acc.getGroups(i));
+			res[length+i]=ShannonEntropyHelper.getEntropy(acc.getElements(i));
+			res[2*length] += res[length+i];
 		}
 
-		//TODO These return values need to be replaced
-		return new double[][]{this.groupEntropies,this.elementEntropies};
+		return res;
 	}
 
 	@Override
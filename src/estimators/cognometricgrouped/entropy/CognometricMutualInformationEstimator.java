@@ -0,0 +1,416 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.cognometricgrouped.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import main.passwords.CognometricGroupedPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+import estimators.MutualInformationHelper;
+import estimators.ShannonEntropyHelper;
+
+/**
+ * This class provides an estimator for the mutual information between all 
+ * pairs of positions of cognometric grouped passwords, e.g. Passfaces. 
+ * While the CognometricGroupedEntropyEstimator assumes the positions to be
+ * independent, this estimator shows how much the choice at one position 
+ * reveals about the choice at another one. Two position x position 
+ * matrices are calculated, one for the elements and one for the groups, 
+ * with the entropy of each position on the diagonal. The mutual 
+ * information of a pair is calculated from the passwords long enough for
+ * the pair. The entropies are Miller-Madow corrected and the mutual 
+ * information is corrected by a shuffled-pairs baseline as provided by the
+ * MutualInformationHelper. Pairs which are still undersampled are counted
+ * and reported with a warning.
+ * 
+ * All pairs are counted in a single pass over the passwords in contingency
+ * tables of size groups^2 and elements^2. The passwords are counted in 
+ * parallel with tables for each thread, which are merged at the end, and 
+ * the pairs are calculated in parallel.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see CognometricPairAccumulator
+ */
+public class CognometricMutualInformationEstimator extends MetricEstimatorI<CognometricGroupedPassword> {
+
+	/**
+	 * The pool the passwords and pairs are calculated on unless called from a pool already
+	 */
+	private static final ForkJoinPool POOL=new ForkJoinPool();
+	
+	/**
+	 * The minimal number of passwords counted by a thread
+	 */
+	private static final int MIN_PASSWORDS=4096;
+	
+	/**
+	 * The matrices of the last calculation: [0 for the elements, 1 for the groups][position][position]
+	 */
+	private double[][][] results;
+	
+	/**
+	 * The number of undersampled pairs of positions of the last calculation
+	 */
+	private int undersampled;
+	
+	@Override
+	public Object calculateMetric(List<CognometricGroupedPassword> passwords, int[] parameters) {
+		
+		AccumulateTask task=new AccumulateTask(passwords, parameters, 0, passwords.size(), 
+				Math.max(MIN_PASSWORDS, passwords.size()/POOL.getParallelism()+1));
+		
+		return this.calculateMetric(ForkJoinTask.inForkJoinPool() ? task.invoke() : POOL.invoke(task));
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> createAccumulator(int[] parameters) {
+		return new CognometricPairAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		this.results=calculateResults((CognometricPairAccumulator)accumulator);
+		this.undersampled=getUndersampled((CognometricPairAccumulator)accumulator);
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<CognometricGroupedPassword> accumulator, DataOutput out) throws IOException {
+		((CognometricPairAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return CognometricPairAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		
+		int length=((CognometricPairAccumulator)accumulator).getMaxLength();
+		int pairs=length*(length-1)/2;
+		String[] labels=new String[2*pairs+2];
+		
+		int n=0;
+		for ( int i=0; i<length; i++ ) {
+			for ( int j=i+1; j<length; j++ ) {
+				labels[n]="Positions "+(i+1)+"-"+(j+1)+" mutual information (elements)";
+				labels[pairs+1+n]="Positions "+(i+1)+"-"+(j+1)+" mutual information (groups)";
+				n++;
+			}
+		}
+		labels[pairs]="Average mutual information (elements)";
+		labels[2*pairs+1]="Average mutual information (groups)";
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		
+		double[][][] matrices=calculateResults((CognometricPairAccumulator)accumulator);
+		int length=matrices[0].length;
+		int pairs=length*(length-1)/2;
+		double[] flat=new double[2*pairs+2];
+		
+		for ( int m=0; m<2; m++ ) {
+			int n=m*(pairs+1);
+			for ( int i=0; i<length; i++ ) {
+				for ( int j=i+1; j<length; j++ ) flat[n++]=matrices[m][i][j];
+			}
+			flat[n]=MutualInformationHelper.getAverage(matrices[m]);
+		}
+		
+		return flat;
+	}
+	
+	/**
+	 * Calculates the matrices of the mutual information with the pairs of 
+	 * positions in parallel
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The symmetric matrices of the elements and the groups with the entropies on the diagonal
+	 */
+	private static double[][][] calculateResults(CognometricPairAccumulator accumulator) {
+		
+		int length=accumulator.getMaxLength();
+		double[][][] matrices=new double[2][length][length];
+		
+		PairTask task=new PairTask(accumulator, matrices, 0, 2*length*length);
+		if ( ForkJoinTask.inForkJoinPool() ) task.invoke();
+		else POOL.invoke(task);
+		
+		return matrices;
+	}
+	
+	/**
+	 * Counts the pairs of positions whose element or group tables are undersampled
+	 * 
+	 * @param accumulator The accumulator
+	 * @return The number of undersampled pairs
+	 */
+	private static int getUndersampled(CognometricPairAccumulator accumulator) {
+		
+		int length=accumulator.getMaxLength(), undersampled=0;
+		for ( int i=0; i<length; i++ ) {
+			for ( int j=i+1; j<length; j++ ) {
+				if ( accumulator.getPair(i, j, false).isUndersampled() || accumulator.getPair(i, j, true).isUndersampled() ) undersampled++;
+			}
+		}
+		
+		return undersampled;
+	}
+	
+	/**
+	 * Writes a warning if pairs of positions are undersampled
+	 * 
+	 * @param outWriter The writer
+	 * @throws IOException Is thrown if the writer fails
+	 */
+	private void writeWarning(Writer outWriter) throws IOException {
+		if ( this.undersampled > 0 ) {
+			int length=this.results[0].length;
+			outWriter.write("Warning: "+this.undersampled+" of "+(length*(length-1)/2)
+					+" pairs of positions are undersampled, their mutual information is unreliable.\n");
+		}
+	}
+	
+	/**
+	 * Writes a matrix with tab separated columns
+	 * 
+	 * @param matrix The matrix
+	 * @param outWriter The writer
+	 * @throws IOException Is thrown if the writer fails
+	 */
+	private static void writeMatrix(double[][] matrix, Writer outWriter) throws IOException {
+		for ( double[] row : matrix ) {
+			for ( int j=0; j<row.length; j++ ) outWriter.write((j > 0 ? "\t" : "")+row[j]);
+			outWriter.write("\n");
+		}
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		outWriter.write("Mutual information between the positions (elements, entropy on the diagonal):\n");
+		writeMatrix(this.results[0], outWriter);
+		outWriter.write("-------------------------------\n");
+		outWriter.write("Mutual information between the positions (groups, entropy on the diagonal):\n");
+		writeMatrix(this.results[1], outWriter);
+		outWriter.write("-------------------------------\n");
+		this.writeWarning(outWriter);
+		outWriter.write("Average mutual information (elements): "+MutualInformationHelper.getAverage(this.results[0])+"\n");
+		outWriter.write("Average mutual information (groups): "+MutualInformationHelper.getAverage(this.results[1])+"\n");
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_COGNOMETRIC_GROUP;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		this.writeWarning(outWriter);
+		String[] names={"elements", "groups"};
+		for ( int m=0; m<2; m++ ) {
+			double[][] matrix=this.results[m];
+			int[] maximum=MutualInformationHelper.getMaximum(matrix);
+			
+			outWriter.write("Average mutual information ("+names[m]+"): "+MutualInformationHelper.getAverage(matrix)+"\n");
+			if ( maximum != null ) {
+				outWriter.write("Maximum mutual information ("+names[m]+"): "+matrix[maximum[0]][maximum[1]]
+						+" (positions "+(maximum[0]+1)+"-"+(maximum[1]+1)+")\n");
+			}
+		}
+		outWriter.close();
+	}
+	
+	/**
+	 * The task counting a range of the passwords in its own accumulator, 
+	 * split until the range is small enough for a single thread
+	 */
+	private static class AccumulateTask extends RecursiveTask<CognometricPairAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The passwords
+		 */
+		private final List<CognometricGroupedPassword> passwords;
+		
+		/**
+		 * The parameters as provided from the parser
+		 */
+		private final int[] parameters;
+		
+		/**
+		 * The first password of the range
+		 */
+		private final int from;
+		
+		/**
+		 * The password after the last password of the range
+		 */
+		private final int to;
+		
+		/**
+		 * The largest range counted without splitting
+		 */
+		private final int chunk;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param passwords The passwords
+		 * @param parameters The parameters as provided from the parser
+		 * @param from The first password of the range
+		 * @param to The password after the last password of the range
+		 * @param chunk The largest range counted without splitting
+		 */
+		AccumulateTask(List<CognometricGroupedPassword> passwords, int[] parameters, int from, int to, int chunk) {
+			this.passwords=passwords;
+			this.parameters=parameters;
+			this.from=from;
+			this.to=to;
+			this.chunk=chunk;
+		}
+		
+		@Override
+		protected CognometricPairAccumulator compute() {
+			
+			if ( this.to-this.from > this.chunk ) {
+				int middle=(this.from+this.to)>>>1;
+				AccumulateTask left=new AccumulateTask(this.passwords, this.parameters, this.from, middle, this.chunk);
+				left.fork();
+				CognometricPairAccumulator accumulator=new AccumulateTask(this.passwords, this.parameters, middle, this.to, this.chunk).compute();
+				accumulator.merge(left.join());
+				return accumulator;
+			}
+			
+			CognometricPairAccumulator accumulator=new CognometricPairAccumulator(this.parameters);
+			for ( int i=this.from; i<this.to; i++ ) accumulator.add(this.passwords.get(i), 1);
+			return accumulator;
+		}
+		
+	}
+	
+	/**
+	 * The task calculating a range of the cells of the matrices, split until
+	 * a single cell remains. Only the cells on and above the diagonal are 
+	 * calculated, the others are mirrored.
+	 */
+	private static class PairTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The accumulator
+		 */
+		private final CognometricPairAccumulator accumulator;
+		
+		/**
+		 * The matrices receiving the results
+		 */
+		private final double[][][] matrices;
+		
+		/**
+		 * The first cell of the range, (matrix*length+row)*length+column
+		 */
+		private final int from;
+		
+		/**
+		 * The cell after the last cell of the range
+		 */
+		private final int to;
+		
+		/**
+		 * Creates a new task
+		 * 
+		 * @param accumulator The accumulator
+		 * @param matrices The matrices receiving the results
+		 * @param from The first cell of the range
+		 * @param to The cell after the last cell of the range
+		 */
+		PairTask(CognometricPairAccumulator accumulator, double[][][] matrices, int from, int to) {
+			this.accumulator=accumulator;
+			this.matrices=matrices;
+			this.from=from;
+			this.to=to;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new PairTask(this.accumulator, this.matrices, this.from, middle),
+						new PairTask(this.accumulator, this.matrices, middle, this.to));
+				return;
+			}
+			
+			int length=this.accumulator.getMaxLength();
+			for ( int n=this.from; n<this.to; n++ ) {
+				int m=n/(length*length), i=n/length%length, j=n%length;
+				if ( i > j ) continue;
+				double[][] matrix=this.matrices[m];
+				if ( i == j ) {
+					matrix[i][i]=ShannonEntropyHelper.getMillerMadowEntropy(this.accumulator.getCounts(i, m == 1));
+				} else {
+					matrix[i][j]=this.accumulator.getPair(i, j, m == 1).getMutualInformation();
+					matrix[j][i]=matrix[i][j];
+				}
+			}
+		}
+		
+	}
+
+}
@@ -0,0 +1,215 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.cognometricgrouped.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import main.passwords.CognometricGroupedPassword;
+import estimators.AccumulatorI;
+import estimators.ContingencyTable;
+
+/**
+ * The accumulator of the CognometricMutualInformationEstimator. Besides 
+ * the groups and elements of each position it counts the groups and the
+ * elements of each pair of positions in contingency tables, which are 
+ * dense, i.e. of size groups^2 and elements^2, unless they become too 
+ * large.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see CognometricMutualInformationEstimator
+ */
+class CognometricPairAccumulator implements AccumulatorI<CognometricGroupedPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 * 
+	 *  0: number of groups
+	 *  1: number of elements in a group
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The counts of the groups of each position
+	 */
+	private int[][] groups=new int[0][];
+	
+	/**
+	 * The counts of the elements of each position
+	 */
+	private int[][] elements=new int[0][];
+	
+	/**
+	 * The group tables of the pairs of positions: [second position][first position]
+	 */
+	private ContingencyTable[][] groupPairs=new ContingencyTable[0][];
+	
+	/**
+	 * The element tables of the pairs of positions: [second position][first position]
+	 */
+	private ContingencyTable[][] elementPairs=new ContingencyTable[0][];
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	CognometricPairAccumulator(int[] parameters) {
+		this.parameters=parameters;
+	}
+	
+	@Override
+	public void add(CognometricGroupedPassword password, int weight) {
+		
+		this.ensureLength(password.length());
+		
+		for ( int j=0; j<password.length(); j++ ) {
+			int group=password.getGroupID(j), element=password.getElementID(j);
+			this.groups[j][group] += weight;
+			this.elements[j][element] += weight;
+			for ( int i=0; i<j; i++ ) {
+				this.groupPairs[j][i].add(password.getGroupID(i), group, weight);
+				this.elementPairs[j][i].add(password.getElementID(i), element, weight);
+			}
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<CognometricGroupedPassword> other) {
+		
+		CognometricPairAccumulator acc=(CognometricPairAccumulator)other;
+		this.ensureLength(acc.groups.length);
+		
+		for ( int j=0; j<acc.groups.length; j++ ) {
+			for ( int k=0; k<this.groups[j].length; k++ ) this.groups[j][k] += acc.groups[j][k];
+			for ( int k=0; k<this.elements[j].length; k++ ) this.elements[j][k] += acc.elements[j][k];
+			for ( int i=0; i<j; i++ ) {
+				this.groupPairs[j][i].merge(acc.groupPairs[j][i]);
+				this.elementPairs[j][i].merge(acc.elementPairs[j][i]);
+			}
+		}
+	}
+	
+	/**
+	 * Makes sure the positions of passwords of a length can be counted
+	 * 
+	 * @param length The length of the passwords
+	 */
+	private void ensureLength(int length) {
+		
+		int old=this.groups.length;
+		if ( length <= old ) return;
+		
+		this.groups=Arrays.copyOf(this.groups, length);
+		this.elements=Arrays.copyOf(this.elements, length);
+		this.groupPairs=Arrays.copyOf(this.groupPairs, length);
+		this.elementPairs=Arrays.copyOf(this.elementPairs, length);
+		for ( int j=old; j<length; j++ ) {
+			this.groups[j]=new int[this.parameters[0]];
+			this.elements[j]=new int[this.parameters[1]];
+			this.groupPairs[j]=new ContingencyTable[j];
+			this.elementPairs[j]=new ContingencyTable[j];
+			for ( int i=0; i<j; i++ ) {
+				this.groupPairs[j][i]=new ContingencyTable(this.parameters[0], this.parameters[0]);
+				this.elementPairs[j][i]=new ContingencyTable(this.parameters[1], this.parameters[1]);
+			}
+		}
+	}
+	
+	/**
+	 * @return The maximum length among the passwords
+	 */
+	int getMaxLength() {
+		return this.groups.length;
+	}
+	
+	/**
+	 * Returns the counts of the groups or the elements of a position
+	 * 
+	 * @param position The position, starting with 0
+	 * @param group Whether the groups or the elements are returned
+	 * @return The counts
+	 */
+	int[] getCounts(int position, boolean group) {
+		return group ? this.groups[position] : this.elements[position];
+	}
+	
+	/**
+	 * Returns the table of the groups or the elements of a pair of positions
+	 * 
+	 * @param first The first position, starting with 0
+	 * @param second The second position, greater than the first
+	 * @param group Whether the groups or the elements are returned
+	 * @return The table
+	 */
+	ContingencyTable getPair(int first, int second, boolean group) {
+		return group ? this.groupPairs[second][first] : this.elementPairs[second][first];
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored
+	 * per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.groups.length);
+		for ( int j=0; j<this.groups.length; j++ ) {
+			for ( int count : this.groups[j] ) out.writeInt(count);
+			for ( int count : this.elements[j] ) out.writeInt(count);
+			for ( int i=0; i<j; i++ ) {
+				this.groupPairs[j][i].write(out);
+				this.elementPairs[j][i].write(out);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters the accumulator was created with
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or does not match the parameters
+	 */
+	static CognometricPairAccumulator read(DataInput in, int[] parameters) throws IOException {
+		
+		int length=in.readInt();
+		if ( length < 0 ) throw new IOException("Invalid number of positions: "+length);
+		
+		CognometricPairAccumulator accumulator=new CognometricPairAccumulator(parameters);
+		accumulator.ensureLength(length);
+		
+		for ( int j=0; j<length; j++ ) {
+			for ( int k=0; k<parameters[0]; k++ ) accumulator.groups[j][k]=in.readInt();
+			for ( int k=0; k<parameters[1]; k++ ) accumulator.elements[j][k]=in.readInt();
+			for ( int i=0; i<j; i++ ) {
+				accumulator.groupPairs[j][i]=ContingencyTable.read(in);
+				accumulator.elementPairs[j][i]=ContingencyTable.read(in);
+			}
+		}
+		
+		return accumulator;
+	}
+
+}
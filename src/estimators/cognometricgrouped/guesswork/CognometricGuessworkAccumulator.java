@@ -0,0 +1,109 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.cognometricgrouped.guesswork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import main.passwords.CognometricGroupedPassword;
+import estimators.AccumulatorI;
+import estimators.CognometricGroupedHelper;
+import estimators.LongIntHashMap;
+
+/**
+ * The accumulator of the CognometricGuessworkEstimator. It counts the 
+ * passwords as a whole, i.e. the sequence of their (group, element) tuples,
+ * packed into a long key as provided by the CognometricGroupedHelper.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see CognometricGuessworkEstimator
+ */
+class CognometricGuessworkAccumulator implements AccumulatorI<CognometricGroupedPassword> {
+
+	/**
+	 * The parameters as provided from the parser
+	 */
+	private final int[] parameters;
+	
+	/**
+	 * The counts of the passwords
+	 */
+	private LongIntHashMap passwords;
+	
+	/**
+	 * Creates a new empty accumulator
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 */
+	CognometricGuessworkAccumulator(int[] parameters) {
+		this(parameters, new LongIntHashMap(1024));
+	}
+	
+	/**
+	 * Creates a new accumulator with the given counts
+	 * 
+	 * @param parameters The parameters as provided from the parser
+	 * @param passwords The counts of the passwords
+	 */
+	private CognometricGuessworkAccumulator(int[] parameters, LongIntHashMap passwords) {
+		this.parameters=parameters;
+		this.passwords=passwords;
+	}
+	
+	@Override
+	public void add(CognometricGroupedPassword password, int weight) {
+		this.passwords.add(CognometricGroupedHelper.getTupleKey(password, this.parameters), weight);
+	}
+	
+	@Override
+	public void merge(AccumulatorI<CognometricGroupedPassword> other) {
+		this.passwords.merge(((CognometricGuessworkAccumulator)other).passwords);
+	}
+	
+	/**
+	 * @return The counts of the distinct passwords
+	 */
+	int[] getCounts() {
+		return this.passwords.getCounts();
+	}
+	
+	/**
+	 * Writes the counts to a binary sink, so the accumulator can be restored per read
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	void write(DataOutput out) throws IOException {
+		this.passwords.write(out);
+	}
+	
+	/**
+	 * Reads an accumulator previously written per write
+	 * 
+	 * @param in The source
+	 * @param parameters The parameters as provided from the parser
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read
+	 */
+	static CognometricGuessworkAccumulator read(DataInput in, int[] parameters) throws IOException {
+		return new CognometricGuessworkAccumulator(parameters, LongIntHashMap.read(in));
+	}
+
+}
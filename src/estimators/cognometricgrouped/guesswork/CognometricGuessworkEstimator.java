@@ -0,0 +1,161 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.cognometricgrouped.guesswork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import main.passwords.CognometricGroupedPassword;
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.GuessworkHelper;
+import estimators.MetricEstimatorI;
+
+/**
+ * This provides an estimator for the alpha-guesswork metric according to 
+ * Bonneau of cognometric grouped passwords, e.g. Passfaces. In contrast to
+ * the entropy per position the passwords are guessed as a whole, i.e. the
+ * joint distribution of the (group, element) tuples of all positions is 
+ * used. The metric is calculated for alpha between 0.01 and 0.99 in steps
+ * of 0.01.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see CognometricGuessworkAccumulator
+ */
+public class CognometricGuessworkEstimator extends MetricEstimatorI<CognometricGroupedPassword> {
+
+	/**
+	 * The number of alphas the metric is calculated for
+	 */
+	private static final int ALPHAS=99;
+	
+	/**
+	 * The results of the last calculation: guesswork for alpha 0.01, ...
+	 */
+	private double[] results;
+	
+	@Override
+	public Object calculateMetric(List<CognometricGroupedPassword> passwords, int[] parameters) {
+		
+		AccumulatorI<CognometricGroupedPassword> accumulator=this.createAccumulator(parameters);
+		
+		for ( CognometricGroupedPassword pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> createAccumulator(int[] parameters) {
+		return new CognometricGuessworkAccumulator(parameters);
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		this.results=this.getResults(accumulator);
+		return this.results;
+	}
+	
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<CognometricGroupedPassword> accumulator, DataOutput out) throws IOException {
+		((CognometricGuessworkAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<CognometricGroupedPassword> readState(DataInput in, int[] parameters) throws IOException {
+		return CognometricGuessworkAccumulator.read(in, parameters);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		
+		String[] labels=new String[ALPHAS];
+		for ( int alpha=1; alpha<=ALPHAS; alpha++ ) labels[alpha-1]="alpha "+(((double)alpha)/100);
+		
+		return labels;
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<CognometricGroupedPassword> accumulator) {
+		
+		int[] counts=((CognometricGuessworkAccumulator)accumulator).getCounts();
+		
+		//the probabilities of the passwords in decreasing order
+		double sum=0;
+		double[] probabilities=new double[counts.length];
+		for ( int i=0; i<counts.length; i++ ) {
+			probabilities[i]=-counts[i];
+			sum += counts[i];
+		}
+		Arrays.sort(probabilities);
+		for ( int i=0; i<probabilities.length; i++ ) probabilities[i] /= -sum;
+		
+		double[] res=new double[ALPHAS];
+		for ( int alpha=1; alpha<=ALPHAS; alpha++ ) {
+			res[alpha-1]=GuessworkHelper.alphaGuessworkBits(probabilities, ((double)alpha)/100);
+		}
+		
+		return res;
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		for ( double g : this.results ) outWriter.write(g+"\n");
+		outWriter.close();
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_COGNOMETRIC_GROUP;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		
+		// prevent printing before calculation
+		if ( this.results==null ) return;
+		
+		//the metric is monotonically increasing, so the first and the last alpha give the range
+		outWriter.write(this.results[0]+" - "+this.results[ALPHAS-1]+"\n");
+		outWriter.close();
+	}
+
+}
@@ -0,0 +1,299 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.groupby;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+
+/**
+ * This class calculates the results of an estimator supporting result
+ * vectors separately for the segments of a labelled password set, e.g.
+ * for the passwords of different sites or cohorts.
+ * <br>
+ * Each label is assigned a consecutive integer id when it first occurs.
+ * The accumulators of the segments are kept in an array indexed by this
+ * id, so apart from the lookup of the label each password costs no more
+ * than in an ungrouped run. Since labelled exports are often sorted by
+ * label, the id of the previous label is reused without lookup. After
+ * the single pass over the password file the results of all segments are
+ * calculated in parallel on a ForkJoinPool.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class GroupBy<E> {
+
+	/**
+	 * The estimator the results are calculated with
+	 */
+	private final MetricEstimatorI<E> estimator;
+
+	/**
+	 * The parameters as provided by the parser
+	 */
+	private final int[] parameters;
+
+	/**
+	 * The ids of the labels
+	 */
+	private final Map<String, Integer> ids=new HashMap<String, Integer>();
+
+	/**
+	 * The labels by their id
+	 */
+	private final List<String> labels=new ArrayList<String>();
+
+	/**
+	 * The accumulators of the segments by their id
+	 */
+	private AccumulatorI<E>[] accumulators;
+
+	/**
+	 * The number of passwords of the segments by their id
+	 */
+	private long[] sizes;
+
+	/**
+	 * The label of the previously added password
+	 */
+	private String lastLabel=null;
+
+	/**
+	 * The id of the previously added password's label
+	 */
+	private int lastId=-1;
+
+	/**
+	 * The labels of the results of each segment, available after calculation
+	 */
+	private String[][] resultLabels;
+
+	/**
+	 * The results of each segment, available after calculation
+	 */
+	private double[][] results;
+
+	/**
+	 * Creates a new grouping
+	 *
+	 * @param estimator The estimator, needs to support result vectors
+	 * @param parameters The parameters as provided by the parser
+	 */
+	@SuppressWarnings("unchecked")
+	public GroupBy(MetricEstimatorI<E> estimator, int[] parameters) {
+
+		if ( !estimator.supportsResultVector() ) throw new IllegalArgumentException("Estimator does not provide a result vector.");
+
+		this.estimator=estimator;
+		this.parameters=parameters;
+		this.accumulators=(AccumulatorI<E>[])new AccumulatorI<?>[16];
+		this.sizes=new long[16];
+	}
+
+	/**
+	 * Adds a password to the accumulator of its segment
+	 *
+	 * @param label The label of the segment
+	 * @param password The password to add
+	 * @param weight How often the password is to be counted
+	 */
+	public void add(String label, E password, int weight) {
+
+		int id=this.getId(label);
+
+		this.accumulators[id].add(password, weight);
+		this.sizes[id] += weight;
+	}
+
+	/**
+	 * Adds all segments of another grouping of the same estimator (and the
+	 * same parameters) to this one
+	 *
+	 * @param other The other grouping, which is left unchanged
+	 */
+	public void merge(GroupBy<E> other) {
+		for ( int i=0; i<other.labels.size(); i++ ) {
+			int id=this.getId(other.labels.get(i));
+			this.accumulators[id].merge(other.accumulators[i]);
+			this.sizes[id] += other.sizes[i];
+		}
+	}
+
+	/**
+	 * Returns the id of a label, a new segment is created for unknown labels
+	 *
+	 * @param label The label
+	 * @return The id
+	 */
+	@SuppressWarnings("unchecked")
+	private int getId(String label) {
+
+		if ( label.equals(this.lastLabel) ) return this.lastId;
+
+		Integer id=this.ids.get(label);
+		if ( id == null ) {
+			id=this.labels.size();
+			if ( id == this.accumulators.length ) {
+				this.accumulators=Arrays.copyOf(this.accumulators, 2*id);
+				this.sizes=Arrays.copyOf(this.sizes, 2*id);
+			}
+			this.accumulators[id]=this.estimator.createAccumulator(this.parameters);
+			this.ids.put(label, id);
+			this.labels.add(label);
+		}
+
+		this.lastLabel=label;
+		this.lastId=id;
+		return id;
+	}
+
+	/**
+	 * @return The number of segments
+	 */
+	public int size() {
+		return this.labels.size();
+	}
+
+	/**
+	 * Calculates the results of all segments
+	 *
+	 * @param pool The pool the segments are calculated on
+	 */
+	public void calculate(ForkJoinPool pool) {
+
+		this.resultLabels=new String[this.labels.size()][];
+		this.results=new double[this.labels.size()][];
+
+		if ( this.labels.size() > 0 ) pool.invoke(new SegmentTask(0, this.labels.size()));
+	}
+
+	/**
+	 * Prints the results as CSV with one row for each segment in the order
+	 * of the labels. The first column contains the label, the second one
+	 * the number of passwords in the segment and the remaining ones the
+	 * results of the estimator. Results not available for a segment (e.g.
+	 * positions only present in other segments) are left empty.
+	 *
+	 * @param outWriter The sink to write the results to
+	 */
+	public void printCSV(Writer outWriter) throws IOException {
+
+		//the columns are the union of the result labels of all segments
+		Map<String, Integer> columns=new LinkedHashMap<String, Integer>();
+		for ( String[] segmentLabels : this.resultLabels ) {
+			for ( String label : segmentLabels ) {
+				if ( !columns.containsKey(label) ) columns.put(label, columns.size());
+			}
+		}
+
+		outWriter.write("group,passwords");
+		for ( String label : columns.keySet() ) outWriter.write(","+quote(label));
+		outWriter.write("\n");
+
+		Integer[] order=new Integer[this.labels.size()];
+		for ( int i=0; i<order.length; i++ ) order[i]=i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return GroupBy.this.labels.get(a).compareTo(GroupBy.this.labels.get(b));
+			}
+		});
+
+		for ( int id : order ) {
+
+			String[] row=new String[columns.size()];
+			for ( int j=0; j<this.resultLabels[id].length; j++ ) {
+				row[columns.get(this.resultLabels[id][j])]=String.valueOf(this.results[id][j]);
+			}
+
+			outWriter.write(quote(this.labels.get(id))+","+this.sizes[id]);
+			for ( String value : row ) outWriter.write(","+(value == null ? "" : value));
+			outWriter.write("\n");
+		}
+
+		outWriter.close();
+	}
+
+	/**
+	 * Quotes a value for CSV
+	 *
+	 * @param value The value
+	 * @return The quoted value
+	 */
+	private static String quote(String value) {
+		return "\""+value.replace("\"", "\"\"")+"\"";
+	}
+
+	/**
+	 * The task calculating the results of a range of segments, split until
+	 * a single segment remains
+	 */
+	private class SegmentTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The id of the first segment of the range
+		 */
+		private final int from;
+
+		/**
+		 * The id after the last segment of the range
+		 */
+		private final int to;
+
+		/**
+		 * Creates a new task
+		 *
+		 * @param from The id of the first segment of the range
+		 * @param to The id after the last segment of the range
+		 */
+		SegmentTask(int from, int to) {
+			this.from=from;
+			this.to=to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if ( this.to-this.from > 1 ) {
+				int middle=(this.from+this.to)>>>1;
+				invokeAll(new SegmentTask(this.from, middle), new SegmentTask(middle, this.to));
+				return;
+			}
+
+			AccumulatorI<E> accumulator=GroupBy.this.accumulators[this.from];
+			GroupBy.this.resultLabels[this.from]=GroupBy.this.estimator.getResultLabels(accumulator);
+			GroupBy.this.results[this.from]=GroupBy.this.estimator.getResults(accumulator);
+		}
+
+	}
+
+}
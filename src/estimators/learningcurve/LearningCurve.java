@@ -0,0 +1,226 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.learningcurve;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+
+/**
+ * This class calculates learning curves for an estimator supporting result
+ * vectors, i.e. its results for nested random subsets of growing size of
+ * the password set. This shows whether the estimates have converged. 
+ * <br>
+ * Each password is assigned a random rank between 0 and 1 once when it is
+ * added. A subset for the checkpoint c contains all passwords with a rank
+ * smaller than c, so the subsets are nested and the subset for the 
+ * checkpoint 1 contains all passwords. Since the size of the password set
+ * is not known in advance, the passwords are added to one accumulator per
+ * interval between two checkpoints. Afterwards these accumulators are 
+ * merged one after the other, so the results for all checkpoints are
+ * obtained with a single pass over the password file.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class LearningCurve<E> implements AccumulatorI<E> {
+
+	/**
+	 * The default checkpoints
+	 */
+	public static final double[] DEFAULT_CHECKPOINTS=new double[]{0.01, 0.05, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
+	
+	/**
+	 * The estimator the results are calculated with
+	 */
+	private final MetricEstimatorI<E> estimator;
+	
+	/**
+	 * The checkpoints in ascending order, the last one is always 1
+	 */
+	private final double[] checkpoints;
+	
+	/**
+	 * The accumulators for the passwords with a rank between two checkpoints
+	 */
+	private final AccumulatorI<E>[] intervals;
+	
+	/**
+	 * The number of passwords with a rank between two checkpoints
+	 */
+	private final long[] sizes;
+	
+	/**
+	 * The random number generator for the ranks
+	 */
+	private final Random random;
+	
+	/**
+	 * The accumulator containing all passwords, available after calculation
+	 */
+	private AccumulatorI<E> all;
+	
+	/**
+	 * The labels of the results, available after calculation
+	 */
+	private String[] labels;
+	
+	/**
+	 * The results for each checkpoint: [checkpoint][result]
+	 */
+	private double[][] results;
+	
+	/**
+	 * Creates a new learning curve
+	 * 
+	 * @param estimator The estimator, needs to support result vectors
+	 * @param parameters The parameters as provided by the parser
+	 * @param checkpoints The checkpoints, fractions between 0 (exclusive) and 1 (inclusive) in ascending order
+	 * @param seed The seed for the random ranks
+	 */
+	@SuppressWarnings("unchecked")
+	public LearningCurve(MetricEstimatorI<E> estimator, int[] parameters, double[] checkpoints, long seed) {
+		
+		if ( !estimator.supportsResultVector() ) throw new IllegalArgumentException("Estimator does not provide a result vector.");
+		
+		for ( int i=0; i<checkpoints.length; i++ ) {
+			if ( checkpoints[i] <= 0 || checkpoints[i] > 1 || (i > 0 && checkpoints[i] <= checkpoints[i-1]) ) {
+				throw new IllegalArgumentException("Checkpoints must be ascending fractions between 0 and 1.");
+			}
+		}
+		
+		this.estimator=estimator;
+		
+		//the complete password set is always a checkpoint
+		if ( checkpoints.length == 0 || checkpoints[checkpoints.length-1] != 1 ) {
+			this.checkpoints=new double[checkpoints.length+1];
+			System.arraycopy(checkpoints, 0, this.checkpoints, 0, checkpoints.length);
+			this.checkpoints[checkpoints.length]=1;
+		} else {
+			this.checkpoints=checkpoints.clone();
+		}
+		
+		this.intervals=(AccumulatorI<E>[])new AccumulatorI<?>[this.checkpoints.length];
+		for ( int i=0; i<this.intervals.length; i++ ) this.intervals[i]=estimator.createAccumulator(parameters);
+		this.sizes=new long[this.checkpoints.length];
+		this.random=new Random(seed);
+	}
+	
+	@Override
+	public void add(E password, int weight) {
+		
+		//each occurrence of the password gets its own rank
+		for ( int w=0; w<weight; w++ ) {
+			
+			double rank=this.random.nextDouble();
+			
+			int i=0;
+			while ( rank >= this.checkpoints[i] ) i++;
+			
+			this.intervals[i].add(password, 1);
+			this.sizes[i]++;
+		}
+	}
+	
+	@Override
+	public void merge(AccumulatorI<E> other) {
+		
+		LearningCurve<E> curve=(LearningCurve<E>)other;
+		
+		for ( int i=0; i<this.intervals.length; i++ ) {
+			this.intervals[i].merge(curve.intervals[i]);
+			this.sizes[i] += curve.sizes[i];
+		}
+	}
+	
+	/**
+	 * Calculates the results for all checkpoints. Afterwards the added 
+	 * passwords are still available in the accumulators, but further
+	 * passwords can not be added.
+	 * 
+	 * @return The accumulator containing all passwords
+	 */
+	public AccumulatorI<E> calculate() {
+		
+		this.results=new double[this.checkpoints.length][];
+		
+		//the first interval serves as accumulator for the nested subsets
+		this.all=this.intervals[0];
+		for ( int i=0; i<this.checkpoints.length; i++ ) {
+			if ( i > 0 ) {
+				this.all.merge(this.intervals[i]);
+				this.sizes[i] += this.sizes[i-1];
+			}
+			this.results[i]=this.estimator.getResults(this.all);
+		}
+		
+		this.labels=this.estimator.getResultLabels(this.all);
+		
+		return this.all;
+	}
+	
+	/**
+	 * Prints the results as CSV with one row for each checkpoint. The first 
+	 * column contains the checkpoint, the second one the number of passwords
+	 * in the subset and the remaining ones the results of the estimator.
+	 * Results not available for a subset (e.g. positions only present in 
+	 * larger subsets) are left empty.
+	 * 
+	 * @param outWriter The sink to write the results to
+	 */
+	public void printCSV(Writer outWriter) throws IOException {
+		
+		outWriter.write("fraction,passwords");
+		for ( String label : this.labels ) outWriter.write(",\""+label.replace("\"", "\"\"")+"\"");
+		outWriter.write("\n");
+		
+		for ( int i=0; i<this.checkpoints.length; i++ ) {
+			outWriter.write(this.checkpoints[i]+","+this.sizes[i]);
+			for ( int j=0; j<this.labels.length; j++ ) {
+				outWriter.write(",");
+				if ( j < this.results[i].length ) outWriter.write(String.valueOf(this.results[i][j]));
+			}
+			outWriter.write("\n");
+		}
+		
+		outWriter.close();
+	}
+	
+	/**
+	 * Parses a comma separated list of percentages into checkpoints
+	 * 
+	 * @param percentages The percentages, e.g. "1,5,10,50"
+	 * @return The checkpoints as fractions
+	 * @throws NumberFormatException Is thrown if a percentage is not a number
+	 */
+	public static double[] parseCheckpoints(String percentages) {
+		
+		String[] parts=percentages.split(",");
+		double[] checkpoints=new double[parts.length];
+		
+		for ( int i=0; i<parts.length; i++ ) {
+			checkpoints[i]=Double.parseDouble(parts[i].trim())/100;
+		}
+		
+		return checkpoints;
+	}
+
+}
@@ -0,0 +1,169 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.sketch;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import estimators.LongHashSet;
+
+/**
+ * This class counts the distinct passwords in a password set. The passwords
+ * are offered as 64 bit hashes. As long as the number of distinct passwords
+ * stays below a threshold they are counted exactly, afterwards the count is
+ * estimated with a HyperLogLog sketch, so memory stays constant regardless
+ * of the size of the password set.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see HyperLogLog
+ */
+public class DistinctCounter {
+
+	/**
+	 * The default number of distinct passwords up to which is counted exactly
+	 */
+	public static final int DEFAULT_EXACT_THRESHOLD=1<<20;
+	
+	/**
+	 * The default precision of the HyperLogLog sketch
+	 */
+	public static final int DEFAULT_PRECISION=14;
+	
+	/**
+	 * The hashes seen so far, null once the threshold has been exceeded
+	 */
+	private LongHashSet exact;
+	
+	/**
+	 * The number of distinct passwords up to which is counted exactly
+	 */
+	private final int threshold;
+	
+	/**
+	 * The sketch used once the threshold has been exceeded
+	 */
+	private final HyperLogLog sketch;
+	
+	/**
+	 * The total number of passwords offered
+	 */
+	private long total=0;
+	
+	/**
+	 * Creates a new counter with the default threshold and precision
+	 */
+	public DistinctCounter() {
+		this(DEFAULT_EXACT_THRESHOLD, DEFAULT_PRECISION);
+	}
+	
+	/**
+	 * Creates a new counter
+	 * 
+	 * @param threshold The number of distinct passwords up to which is counted exactly
+	 * @param precision The precision of the HyperLogLog sketch
+	 */
+	public DistinctCounter(int threshold, int precision) {
+		this.threshold=threshold;
+		this.exact=new LongHashSet(Math.min(threshold, 1024));
+		this.sketch=new HyperLogLog(precision);
+	}
+	
+	/**
+	 * Counts a password
+	 * 
+	 * @param hash The 64 bit hash of the password
+	 */
+	public void offer(long hash) {
+		
+		this.total++;
+		this.sketch.offer(hash);
+		
+		if ( this.exact != null ) {
+			this.exact.add(hash);
+			if ( this.exact.size() > this.threshold ) this.exact=null;
+		}
+	}
+	
+	/**
+	 * Merges another counter into this counter, e.g. the counter of another
+	 * password file. Counting stays exact only if both counters are exact
+	 * and the merged number of distinct passwords stays below the threshold.
+	 * 
+	 * @param other The other counter, which needs to have the same precision
+	 */
+	public void merge(DistinctCounter other) {
+		
+		this.total += other.total;
+		this.sketch.merge(other.sketch);
+		
+		if ( this.exact != null ) {
+			if ( other.exact == null ) this.exact=null;
+			else {
+				this.exact.addAll(other.exact);
+				if ( this.exact.size() > this.threshold ) this.exact=null;
+			}
+		}
+	}
+	
+	/**
+	 * @return The total number of passwords counted
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+	
+	/**
+	 * @return Whether the number of distinct passwords is exact
+	 */
+	public boolean isExact() {
+		return this.exact != null;
+	}
+	
+	/**
+	 * @return The (estimated) number of distinct passwords
+	 */
+	public double getDistinctCount() {
+		if ( this.exact != null ) return this.exact.size();
+		//the estimate can never exceed the number of passwords
+		return Math.min(this.sketch.cardinality(), this.total);
+	}
+	
+	/**
+	 * @return The ratio of distinct passwords to all passwords
+	 */
+	public double getUniquenessRatio() {
+		return this.getDistinctCount()/this.total;
+	}
+	
+	/**
+	 * Prints the statistics
+	 * 
+	 * @param outWriter The sink to write the statistics to
+	 */
+	public void printStatistics(Writer outWriter) throws IOException {
+		
+		outWriter.write("Passwords: "+this.total+"\n");
+		if ( this.isExact() ) outWriter.write("Distinct passwords: "+(long)this.getDistinctCount()+"\n");
+		else outWriter.write("Distinct passwords (estimate, standard error "+this.sketch.getStandardError()+"): "+Math.round(this.getDistinctCount())+"\n");
+		outWriter.write("Uniqueness ratio: "+this.getUniquenessRatio()+"\n");
+		outWriter.write("Duplicate passwords: "+Math.round(this.total-this.getDistinctCount())+"\n");
+		outWriter.write("-------------------------------\n");
+	}
+
+}
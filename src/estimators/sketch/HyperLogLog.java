@@ -0,0 +1,125 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.sketch;
+
+/**
+ * This class provides the HyperLogLog algorithm of Flajolet et al. [1] for
+ * estimating the number of distinct elements in a stream with constant
+ * memory. The elements are offered as 64 bit hashes. With 2^precision
+ * registers the relative standard error of the estimate is about
+ * 1.04/sqrt(2^precision). For small cardinalities linear counting is used
+ * instead of the raw estimate. 
+ * 
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>P. Flajolet, E. Fusy, O. Gandouet, and F. Meunier. HyperLogLog: the analysis of a near-optimal cardinality estimation algorithm. In AofA '07: Proceedings of the 2007 International Conference on Analysis of Algorithms, pages 127-146, 2007.</td>
+ * </tr>
+ * </table>
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class HyperLogLog {
+
+	/**
+	 * The number of hash bits used to select the register
+	 */
+	private final int precision;
+	
+	/**
+	 * The registers, each holding the maximum rank observed
+	 */
+	private final byte[] registers;
+	
+	/**
+	 * Creates a new sketch
+	 * 
+	 * @param precision The number of hash bits used to select the register (4 to 18)
+	 */
+	public HyperLogLog(int precision) {
+		
+		if ( precision < 4 || precision > 18 ) throw new IllegalArgumentException("Precision must be between 4 and 18.");
+		
+		this.precision=precision;
+		this.registers=new byte[1<<precision];
+	}
+	
+	/**
+	 * Adds an element to the sketch
+	 * 
+	 * @param hash The 64 bit hash of the element
+	 */
+	public void offer(long hash) {
+		
+		int index=(int)(hash>>>(64-this.precision));
+		
+		//the set bit guarantees termination if all remaining bits are 0
+		long remaining=(hash<<this.precision) | (1L<<(this.precision-1));
+		byte rank=(byte)(Long.numberOfLeadingZeros(remaining)+1);
+		
+		if ( rank > this.registers[index] ) this.registers[index]=rank;
+	}
+	
+	/**
+	 * Estimates the number of distinct elements offered
+	 * 
+	 * @return The estimate
+	 */
+	public double cardinality() {
+		
+		double m=this.registers.length;
+		double sum=0;
+		int zeros=0;
+		
+		for ( byte r : this.registers ) {
+			sum += 1.0/(1L<<r);
+			if ( r == 0 ) zeros++;
+		}
+		
+		double estimate=(0.7213/(1+1.079/m))*m*m/sum;
+		
+		//small range correction
+		if ( estimate <= 2.5*m && zeros > 0 ) return m*Math.log(m/zeros);
+		
+		return estimate;
+	}
+	
+	/**
+	 * Merges another sketch into this sketch, afterwards this sketch estimates
+	 * the number of distinct elements offered to either sketch
+	 * 
+	 * @param other The other sketch, which needs to have the same precision
+	 */
+	public void merge(HyperLogLog other) {
+		
+		if ( other.precision != this.precision ) throw new IllegalArgumentException("Sketches with different precisions can not be merged.");
+		
+		for ( int i=0; i<this.registers.length; i++ ) {
+			if ( other.registers[i] > this.registers[i] ) this.registers[i]=other.registers[i];
+		}
+	}
+	
+	/**
+	 * @return The relative standard error of the estimate
+	 */
+	public double getStandardError() {
+		return 1.04/Math.sqrt(this.registers.length);
+	}
+
+}
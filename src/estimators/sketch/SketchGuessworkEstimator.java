@@ -0,0 +1,327 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+
+import estimators.AccumulatorI;
+import estimators.GuessworkHelper;
+
+/**
+ * This class provides an approximate estimator for the beta-success-rate
+ * and the alpha-guesswork metric according to Bonneau [1] for password sets
+ * too large to be held in memory. The passwords are streamed through a
+ * Space-Saving sketch which monitors only the most frequent passwords.
+ * Since the metrics for small alpha only depend on the most frequent
+ * passwords, they can be bounded from the sketch:
+ * <ul>
+ * <li>The upper bounds use the counts of the monitored passwords, which
+ * are never lower than the true frequencies. As unmonitored passwords are
+ * never more frequent than the least frequent monitored one, the sum of
+ * the beta largest counts bounds the true beta-success-rate.</li>
+ * <li>The lower bounds use the guaranteed counts, i.e. the counts minus
+ * their errors.</li>
+ * </ul>
+ * The guesswork is only reported for those alpha for which the guaranteed
+ * counts of the monitored passwords are sufficient, larger alpha require a
+ * larger sketch. This class is not intended to be used directly. Instead
+ * the classes TextSketchGuessworkEstimator and ClickSketchGuessworkEstimator
+ * provide the public interface for text and click-based passwords.
+ *
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>J. Bonneau, The Science of Guessing: Analyzing an Anonymized Corpus of 70 Million Passwords, 2012 IEEE Symposium on Security and Privacy (SP), pp. 538-552, 2012.</td>
+ * </tr>
+ * </table>
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class SketchGuessworkEstimator {
+
+	/**
+	 * The default number of passwords monitored by the sketch
+	 */
+	public static final int DEFAULT_SKETCH_SIZE=10000;
+
+	/**
+	 * The alpha values printed in the summary (in percent)
+	 */
+	private static final int[] SUMMARY_ALPHAS=new int[]{1, 5, 10, 25, 50};
+
+	/**
+	 * Whether the calculation has finished
+	 */
+	private boolean calculated=false;
+
+	/**
+	 * The sketch the metrics were calculated from
+	 */
+	private SpaceSavingSketch<Object> sketch;
+
+	/**
+	 * The beta values for which the beta-success-rate was calculated
+	 */
+	private int[] betas;
+
+	/**
+	 * The bounds of the beta-success-rate: [beta index][0: lower, 1: upper]
+	 */
+	private double[][] successRates;
+
+	/**
+	 * The bounds of the alpha-work-factor: [alpha in percent][0: lower, 1: upper]
+	 */
+	private int[][] workFactors;
+
+	/**
+	 * The bounds of the alpha-guesswork in bits: [alpha in percent][0: lower, 1: upper]
+	 */
+	private double[][] guesswork;
+
+	/**
+	 * The largest alpha (in percent) resolvable with the sketch
+	 */
+	private int maxAlpha=0;
+
+	/**
+	 * Creates a new accumulator streaming the keys of the passwords into
+	 * a Space-Saving sketch
+	 *
+	 * @param sketchSize The number of monitored keys
+	 * @param keys The function extracting the key of a password
+	 * @return The accumulator
+	 */
+	public <E> SketchAccumulator<E> createAccumulator(int sketchSize, KeyFunction<E> keys) {
+		return new SketchAccumulator<E>(new SpaceSavingSketch<Object>(sketchSize), keys);
+	}
+
+	/**
+	 * Writes the sketch of an accumulator to a binary sink
+	 *
+	 * @param accumulator The accumulator
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written
+	 */
+	public void writeState(SketchAccumulator<?> accumulator, DataOutput out) throws IOException {
+		accumulator.sketch.write(out);
+	}
+
+	/**
+	 * Restores an accumulator previously written per writeState. The sketch
+	 * keeps the size it was written with.
+	 *
+	 * @param in The source
+	 * @param keys The function extracting the key of a password
+	 * @return The accumulator
+	 * @throws IOException Is thrown if the source cannot be read or is malformed
+	 */
+	public <E> SketchAccumulator<E> readState(DataInput in, KeyFunction<E> keys) throws IOException {
+		return new SketchAccumulator<E>(SpaceSavingSketch.<Object>read(in), keys);
+	}
+
+	/**
+	 * Calculates the bounds of the metrics from the sketch
+	 *
+	 * @param accumulator The accumulator holding the sketch
+	 * @return The bounds of the alpha-guesswork in bits
+	 */
+	public double[][] calculateEstimate(SketchAccumulator<?> accumulator) {
+
+		this.sketch=accumulator.sketch;
+
+		double total=this.sketch.getTotal();
+		long[] upperCounts=this.sketch.getUpperCounts();
+		long[] lowerCounts=this.sketch.getLowerCounts();
+
+		/*
+		 * 1. Convert the counts to (partial) distributions, the additional zero
+		 * at the end is accessed by the GuessworkHelper
+		 */
+		double[] upper=new double[upperCounts.length+1];
+		double[] lower=new double[lowerCounts.length+1];
+		for ( int i=0; i<upperCounts.length; i++ ) {
+			upper[i]=upperCounts[i]/total;
+			lower[i]=lowerCounts[i]/total;
+		}
+
+		/*
+		 * 2. Beta-success-rate for beta = 1, 10, 100, ... up to the number of monitored passwords
+		 */
+		int amountBetas=0;
+		for ( int beta=1; beta<=upperCounts.length && beta>0; beta*=10 ) amountBetas++;
+		this.betas=new int[amountBetas];
+		this.successRates=new double[amountBetas][2];
+		for ( int i=0, beta=1; i<amountBetas; i++, beta*=10 ) {
+			this.betas[i]=beta;
+			this.successRates[i][0]=GuessworkHelper.betaSuccessRate(lower, beta);
+			this.successRates[i][1]=GuessworkHelper.betaSuccessRate(upper, beta);
+		}
+
+		/*
+		 * 3. Alpha-work-factor and alpha-guesswork as long as the guaranteed counts suffice
+		 */
+		this.workFactors=new int[100][2];
+		this.guesswork=new double[100][2];
+		this.maxAlpha=0;
+		for ( int alpha=1; alpha<100; alpha++ ) {
+
+			if ( GuessworkHelper.alphaWorkFactor(lower, alpha/100.0) == -1 ) break;
+
+			this.workFactors[alpha][0]=GuessworkHelper.alphaWorkFactor(upper, alpha/100.0);
+			this.workFactors[alpha][1]=GuessworkHelper.alphaWorkFactor(lower, alpha/100.0);
+
+			double a=GuessworkHelper.alphaGuessworkBits(upper, alpha/100.0);
+			double b=GuessworkHelper.alphaGuessworkBits(lower, alpha/100.0);
+			this.guesswork[alpha][0]=Math.min(a, b);
+			this.guesswork[alpha][1]=Math.max(a, b);
+
+			this.maxAlpha=alpha;
+		}
+
+		this.calculated=true;
+
+		return this.guesswork;
+	}
+
+	/**
+	 * Prints all calculated bounds
+	 *
+	 * @param outWriter The sink to write the results to
+	 * @param itemName The name of the counted items used in the output
+	 */
+	public void printResult(Writer outWriter, String itemName) throws IOException {
+
+		if ( !calculated ) {
+			System.err.println("Can't print: calculation not finished.");
+			return;
+		}
+
+		outWriter.write("Processed "+itemName+": "+this.sketch.getTotal()+"\n");
+		outWriter.write("Sketch size: "+this.sketch.getCapacity()+"\n");
+		outWriter.write("Monitored "+itemName+": "+this.sketch.size()+"\n");
+		outWriter.write("Maximum count of unmonitored "+itemName+": "+this.sketch.getUnmonitoredBound()+"\n");
+
+		outWriter.write("-------------------------------\n");
+
+		for ( int i=0; i<this.betas.length; i++ ) {
+			outWriter.write("Beta-success-rate (beta="+this.betas[i]+"): ["+this.successRates[i][0]+", "+this.successRates[i][1]+"]\n");
+		}
+
+		for ( int alpha=1; alpha<=this.maxAlpha; alpha++ ) {
+			outWriter.write("-------------------------------\n");
+			outWriter.write("Alpha: "+(alpha/100.0)+"\n");
+			outWriter.write("Alpha-work-factor: ["+this.workFactors[alpha][0]+", "+this.workFactors[alpha][1]+"]\n");
+			outWriter.write("Alpha-guesswork: ["+this.guesswork[alpha][0]+", "+this.guesswork[alpha][1]+"]\n");
+		}
+
+		outWriter.write("-------------------------------\n");
+		this.printResolution(outWriter);
+
+		outWriter.close();
+	}
+
+	/**
+	 * Prints the bounds of the alpha-guesswork for some selected alpha
+	 *
+	 * @param outWriter The sink to write the results to
+	 */
+	public void printSummary(Writer outWriter) throws IOException {
+
+		if ( !calculated ) {
+			System.err.println("Can't print: calculation not finished.");
+			return;
+		}
+
+		for ( int alpha : SUMMARY_ALPHAS ) {
+			if ( alpha > this.maxAlpha ) break;
+			outWriter.write("Alpha-guesswork (alpha="+(alpha/100.0)+"): ["+this.guesswork[alpha][0]+", "+this.guesswork[alpha][1]+"]\n");
+		}
+		this.printResolution(outWriter);
+
+		outWriter.close();
+	}
+
+	/**
+	 * Prints up to which alpha the sketch was sufficient
+	 *
+	 * @param outWriter The sink to write the results to
+	 */
+	private void printResolution(Writer outWriter) throws IOException {
+		if ( this.maxAlpha < 99 ) {
+			outWriter.write("Alpha > "+(this.maxAlpha/100.0)+" not resolvable, increase the sketch size.\n");
+		}
+	}
+
+	/**
+	 * Extracts the key by which passwords are counted in the sketch. This
+	 * interface exists only due to the lack of the function type in current
+	 * Java.
+	 */
+	public interface KeyFunction<E> {
+
+		/**
+		 * @return The key of the password
+		 */
+		public Object getKey(E password);
+
+	}
+
+	/**
+	 * The accumulator streaming the passwords into the sketch
+	 */
+	public static class SketchAccumulator<E> implements AccumulatorI<E> {
+
+		/**
+		 * The sketch
+		 */
+		private final SpaceSavingSketch<Object> sketch;
+
+		/**
+		 * The function extracting the keys
+		 */
+		private final KeyFunction<E> keys;
+
+		/**
+		 * Creates a new accumulator
+		 *
+		 * @param sketch The sketch
+		 * @param keys The function extracting the keys
+		 */
+		SketchAccumulator(SpaceSavingSketch<Object> sketch, KeyFunction<E> keys) {
+			this.sketch=sketch;
+			this.keys=keys;
+		}
+
+		@Override
+		public void add(E password, int weight) {
+			this.sketch.offer(this.keys.getKey(password), weight);
+		}
+		
+		@Override
+		public void merge(AccumulatorI<E> other) {
+			this.sketch.merge(((SketchAccumulator<E>)other).sketch);
+		}
+
+	}
+
+}
@@ -0,0 +1,467 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.sketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * This class provides the Space-Saving algorithm of Metwally et al. [1] for
+ * finding the most frequent items in a stream with bounded memory. At most
+ * capacity items are monitored. Each monitored item has a count, which
+ * overestimates its true frequency by at most its error. Every item with a
+ * true frequency greater than total/capacity is guaranteed to be monitored.
+ * <br>
+ * The monitored items are kept in a min-heap ordered by their count, so an
+ * update costs O(log capacity).
+ *
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>A. Metwally, D. Agrawal, and A. El Abbadi. Efficient Computation of Frequent and Top-k Elements in Data Streams. In ICDT '05: Proceedings of the 10th International Conference on Database Theory, pages 398-412. Springer, 2005.</td>
+ * </tr>
+ * </table>
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class SpaceSavingSketch<K> {
+
+	/**
+	 * The type tags of the items in the binary representation
+	 */
+	private static final byte KEY_LONG=0, KEY_STRING=1;
+	
+	/**
+	 * The encoding of String items in the binary representation
+	 */
+	private static final Charset UTF8=Charset.forName("UTF-8");
+
+	/**
+	 * The maximum number of monitored items
+	 */
+	private final int capacity;
+
+	/**
+	 * The monitored items, organized as min-heap over counts
+	 */
+	private final Object[] keys;
+
+	/**
+	 * The (over-estimated) counts of the monitored items
+	 */
+	private final long[] counts;
+
+	/**
+	 * The maximum over-estimation of the counts
+	 */
+	private final long[] errors;
+
+	/**
+	 * The position of each monitored item in the heap
+	 */
+	private final HashMap<K, Integer> positions;
+
+	/**
+	 * The number of monitored items
+	 */
+	private int size=0;
+
+	/**
+	 * The total weight of all offered items
+	 */
+	private long total=0;
+
+	/**
+	 * Creates a new sketch
+	 *
+	 * @param capacity The maximum number of monitored items
+	 */
+	public SpaceSavingSketch(int capacity) {
+
+		if ( capacity <= 0 ) throw new IllegalArgumentException("Sketch size must be greater than 0.");
+
+		this.capacity=capacity;
+		this.keys=new Object[capacity];
+		this.counts=new long[capacity];
+		this.errors=new long[capacity];
+		this.positions=new HashMap<K, Integer>(2*capacity);
+	}
+
+	/**
+	 * Adds an item to the sketch
+	 *
+	 * @param key The item
+	 * @param weight How often the item occurred
+	 */
+	public void offer(K key, long weight) {
+
+		this.total += weight;
+
+		Integer pos=this.positions.get(key);
+
+		//already monitored: simply increase the count
+		if ( pos != null ) {
+			this.counts[pos] += weight;
+			this.siftDown(pos);
+			return;
+		}
+
+		//still space left: monitor with exact count
+		if ( this.size < this.capacity ) {
+			this.keys[this.size]=key;
+			this.counts[this.size]=weight;
+			this.errors[this.size]=0;
+			this.positions.put(key, this.size);
+			this.siftUp(this.size);
+			this.size++;
+			return;
+		}
+
+		//otherwise the item with the minimum count is replaced
+		this.positions.remove(this.keys[0]);
+		this.keys[0]=key;
+		this.errors[0]=this.counts[0];
+		this.counts[0] += weight;
+		this.positions.put(key, 0);
+		this.siftDown(0);
+	}
+
+	/**
+	 * Adds all items of another sketch to this one as proposed by Agarwal et
+	 * al. [2] for mergeable summaries: The counts and errors of items monitored
+	 * by only one sketch are increased by the bound for unmonitored items of
+	 * the other sketch, afterwards only the items with the largest counts are
+	 * kept. The bounds of the individual sketches remain valid for the merged
+	 * one.
+	 * 
+	 * <table border="0">
+	 * <tr>
+	 * <td valign="top">[2]</td>
+	 * <td>P. K. Agarwal, G. Cormode, Z. Huang, J. M. Phillips, Z. Wei, and K. Yi. Mergeable Summaries. ACM Transactions on Database Systems, 38(4), 2013.</td>
+	 * </tr>
+	 * </table>
+	 * 
+	 * @param other The other sketch, which is left unchanged
+	 */
+	@SuppressWarnings("unchecked")
+	public void merge(SpaceSavingSketch<K> other) {
+		
+		long thisBound=this.getUnmonitoredBound();
+		long otherBound=other.getUnmonitoredBound();
+		
+		HashMap<Object, long[]> merged=new HashMap<Object, long[]>(2*(this.size+other.size));
+		for ( int i=0; i<this.size; i++ ) {
+			merged.put(this.keys[i], new long[]{this.counts[i]+otherBound, this.errors[i]+otherBound});
+		}
+		for ( int i=0; i<other.size; i++ ) {
+			long[] entry=merged.get(other.keys[i]);
+			if ( entry == null ) {
+				merged.put(other.keys[i], new long[]{other.counts[i]+thisBound, other.errors[i]+thisBound});
+			} else {
+				//monitored by both, so the bound of the other sketch was added unnecessarily
+				entry[0] += other.counts[i]-otherBound;
+				entry[1] += other.errors[i]-otherBound;
+			}
+		}
+		
+		Entry[] entries=new Entry[merged.size()];
+		int n=0;
+		for ( java.util.Map.Entry<Object, long[]> e : merged.entrySet() ) {
+			entries[n++]=new Entry(e.getKey(), e.getValue()[0], e.getValue()[1]);
+		}
+		Arrays.sort(entries);
+		
+		//rebuild the heap from the largest counts, a list sorted in descending order is reversed to a valid min-heap
+		this.positions.clear();
+		this.size=Math.min(this.capacity, entries.length);
+		for ( int i=0; i<this.size; i++ ) {
+			Entry e=entries[this.size-1-i];
+			this.keys[i]=e.key;
+			this.counts[i]=e.count;
+			this.errors[i]=e.error;
+			this.positions.put((K)e.key, i);
+		}
+		
+		this.total += other.total;
+	}
+	
+	/**
+	 * Writes the sketch to a binary sink, so it can be restored per read.
+	 * Only String and Long items are supported.
+	 * 
+	 * @param out The sink
+	 * @throws IOException Is thrown if the sink cannot be written or an item is of another type
+	 */
+	public void write(DataOutput out) throws IOException {
+		
+		out.writeInt(this.capacity);
+		out.writeLong(this.total);
+		out.writeInt(this.size);
+		
+		for ( int i=0; i<this.size; i++ ) {
+			if ( this.keys[i] instanceof Long ) {
+				out.writeByte(KEY_LONG);
+				out.writeLong((Long)this.keys[i]);
+			} else if ( this.keys[i] instanceof String ) {
+				byte[] bytes=((String)this.keys[i]).getBytes(UTF8);
+				out.writeByte(KEY_STRING);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			} else {
+				throw new IOException("Unsupported item type: "+this.keys[i].getClass().getName());
+			}
+			out.writeLong(this.counts[i]);
+			out.writeLong(this.errors[i]);
+		}
+	}
+	
+	/**
+	 * Reads a sketch previously written per write
+	 * 
+	 * @param in The source
+	 * @return The sketch
+	 * @throws IOException Is thrown if the source cannot be read or is malformed
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K> SpaceSavingSketch<K> read(DataInput in) throws IOException {
+		
+		int capacity=in.readInt();
+		if ( capacity <= 0 ) throw new IOException("Invalid sketch size: "+capacity);
+		
+		SpaceSavingSketch<K> sketch=new SpaceSavingSketch<K>(capacity);
+		sketch.total=in.readLong();
+		int size=in.readInt();
+		if ( size < 0 || size > capacity ) throw new IOException("Invalid number of monitored items: "+size);
+		
+		//the items were written in heap order, so the heap is restored as it was
+		for ( int i=0; i<size; i++ ) {
+			byte type=in.readByte();
+			if ( type == KEY_LONG ) {
+				sketch.keys[i]=in.readLong();
+			} else if ( type == KEY_STRING ) {
+				byte[] bytes=new byte[in.readInt()];
+				in.readFully(bytes);
+				sketch.keys[i]=new String(bytes, UTF8);
+			} else {
+				throw new IOException("Invalid item type: "+type);
+			}
+			sketch.counts[i]=in.readLong();
+			sketch.errors[i]=in.readLong();
+			sketch.positions.put((K)sketch.keys[i], i);
+		}
+		sketch.size=size;
+		
+		return sketch;
+	}
+	
+	/**
+	 * @return The total weight of all offered items
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * @return The number of monitored items
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The maximum number of monitored items
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the upper bound for the frequency of all items not monitored,
+	 * which is the minimum count if the sketch is full and 0 otherwise.
+	 *
+	 * @return The upper bound for unmonitored items
+	 */
+	public long getUnmonitoredBound() {
+		return this.size < this.capacity ? 0 : this.counts[0];
+	}
+
+	/**
+	 * Returns the monitored items sorted by their count in descending order
+	 *
+	 * @return The monitored items
+	 */
+	public Entry[] getEntries() {
+
+		Entry[] entries=new Entry[this.size];
+
+		for ( int i=0; i<this.size; i++ ) {
+			entries[i]=new Entry(this.keys[i], this.counts[i], this.errors[i]);
+		}
+
+		Arrays.sort(entries);
+
+		return entries;
+	}
+
+	/**
+	 * Returns the upper bounds for the frequencies, i.e. the counts, of the
+	 * monitored items in descending order
+	 *
+	 * @return The upper bounds
+	 */
+	public long[] getUpperCounts() {
+
+		long[] upper=Arrays.copyOf(this.counts, this.size);
+		Arrays.sort(upper);
+		reverse(upper);
+
+		return upper;
+	}
+
+	/**
+	 * Returns the guaranteed frequencies, i.e. the counts minus the errors,
+	 * of the monitored items in descending order
+	 *
+	 * @return The lower bounds
+	 */
+	public long[] getLowerCounts() {
+
+		long[] lower=new long[this.size];
+		for ( int i=0; i<this.size; i++ ) lower[i]=this.counts[i]-this.errors[i];
+		Arrays.sort(lower);
+		reverse(lower);
+
+		return lower;
+	}
+
+	/**
+	 * Reverses an array in place
+	 *
+	 * @param a The array
+	 */
+	private static void reverse(long[] a) {
+		for ( int i=0; i<a.length/2; i++ ) {
+			long temp=a[i];
+			a[i]=a[a.length-1-i];
+			a[a.length-1-i]=temp;
+		}
+	}
+
+	/**
+	 * Moves the item at the specified heap position up until the heap is valid
+	 *
+	 * @param pos The heap position
+	 */
+	private void siftUp(int pos) {
+		while ( pos > 0 ) {
+			int parent=(pos-1)/2;
+			if ( this.counts[parent] <= this.counts[pos] ) return;
+			this.swap(pos, parent);
+			pos=parent;
+		}
+	}
+
+	/**
+	 * Moves the item at the specified heap position down until the heap is valid
+	 *
+	 * @param pos The heap position
+	 */
+	private void siftDown(int pos) {
+		while ( true ) {
+			int smallest=pos;
+			int left=2*pos+1;
+			int right=left+1;
+			if ( left < this.size && this.counts[left] < this.counts[smallest] ) smallest=left;
+			if ( right < this.size && this.counts[right] < this.counts[smallest] ) smallest=right;
+			if ( smallest == pos ) return;
+			this.swap(pos, smallest);
+			pos=smallest;
+		}
+	}
+
+	/**
+	 * Swaps two heap positions
+	 *
+	 * @param a The first position
+	 * @param b The second position
+	 */
+	@SuppressWarnings("unchecked")
+	private void swap(int a, int b) {
+
+		Object tempKey=this.keys[a];
+		this.keys[a]=this.keys[b];
+		this.keys[b]=tempKey;
+
+		long tempCount=this.counts[a];
+		this.counts[a]=this.counts[b];
+		this.counts[b]=tempCount;
+
+		long tempError=this.errors[a];
+		this.errors[a]=this.errors[b];
+		this.errors[b]=tempError;
+
+		this.positions.put((K)this.keys[a], a);
+		this.positions.put((K)this.keys[b], b);
+	}
+
+	/**
+	 * A monitored item together with its count and error
+	 */
+	public static class Entry implements Comparable<Entry> {
+
+		/**
+		 * The item
+		 */
+		public final Object key;
+
+		/**
+		 * The (over-estimated) count
+		 */
+		public final long count;
+
+		/**
+		 * The maximum over-estimation of the count
+		 */
+		public final long error;
+
+		/**
+		 * Creates a new entry
+		 *
+		 * @param key The item
+		 * @param count The count
+		 * @param error The error
+		 */
+		Entry(Object key, long count, long error) {
+			this.key=key;
+			this.count=count;
+			this.error=error;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			return this.count > o.count ? -1 : (this.count < o.count ? 1 : 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,243 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.state;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+
+/**
+ * This class holds the persistent state of an estimator supporting state,
+ * so the accumulation can be continued once new passwords have been
+ * appended to the password file. Besides the accumulator the state records
+ * the estimation method, the parameters of the password file and how many
+ * bytes of the password file have been processed.
+ * <br>
+ * The state file starts with a magic number and a format version, followed
+ * by the method, the parameters, the number of processed bytes and
+ * passwords and finally the state of the accumulator as written by the
+ * estimator. Since the accumulators can be merged, the states of several
+ * parts of a password set (e.g. shards on different hosts) can be merged
+ * to the state of the whole set.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class EstimatorState<E> {
+
+	/**
+	 * The magic number identifying state files ("EnEs")
+	 */
+	private static final int MAGIC=0x456E4573;
+
+	/**
+	 * The version of the state file format
+	 */
+	public static final int VERSION=1;
+
+	/**
+	 * The estimation method the state belongs to
+	 */
+	private final String method;
+
+	/**
+	 * The parameters as provided by the parser
+	 */
+	private final int[] parameters;
+
+	/**
+	 * The number of bytes of the password file processed, -1 if the state
+	 * was merged from several password files
+	 */
+	private final long offset;
+
+	/**
+	 * The number of passwords processed
+	 */
+	private final long passwords;
+
+	/**
+	 * The accumulated state
+	 */
+	private final AccumulatorI<E> accumulator;
+
+	/**
+	 * Creates a new state
+	 *
+	 * @param method The estimation method
+	 * @param parameters The parameters as provided by the parser
+	 * @param offset The number of bytes of the password file processed
+	 * @param passwords The number of passwords processed
+	 * @param accumulator The accumulated state
+	 */
+	public EstimatorState(String method, int[] parameters, long offset, long passwords, AccumulatorI<E> accumulator) {
+		this.method=method.toLowerCase();
+		this.parameters=parameters;
+		this.offset=offset;
+		this.passwords=passwords;
+		this.accumulator=accumulator;
+	}
+
+	/**
+	 * @return The estimation method
+	 */
+	public String getMethod() {
+		return this.method;
+	}
+
+	/**
+	 * @return The parameters as provided by the parser
+	 */
+	public int[] getParameters() {
+		return this.parameters;
+	}
+
+	/**
+	 * @return The number of bytes of the password file processed
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * @return The number of passwords processed
+	 */
+	public long getPasswords() {
+		return this.passwords;
+	}
+
+	/**
+	 * @return The accumulated state
+	 */
+	public AccumulatorI<E> getAccumulator() {
+		return this.accumulator;
+	}
+
+	/**
+	 * Writes the state to a file. The state is written to a temporary file
+	 * first, so an existing state file is only replaced once the new state
+	 * is complete.
+	 *
+	 * @param filePath The path to the state file
+	 * @param estimator The estimator the accumulator belongs to
+	 * @throws IOException Is thrown if the file cannot be written
+	 */
+	public void write(String filePath, MetricEstimatorI<E> estimator) throws IOException {
+
+		File file=new File(filePath);
+		File temp=new File(filePath+".tmp");
+
+		DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(this.method);
+			if ( this.parameters == null ) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(this.parameters.length);
+				for ( int p : this.parameters ) out.writeInt(p);
+			}
+			out.writeLong(this.offset);
+			out.writeLong(this.passwords);
+			estimator.writeState(this.accumulator, out);
+		} finally {
+			out.close();
+		}
+
+		if ( file.exists() && !file.delete() ) throw new IOException("Could not replace "+filePath);
+		if ( !temp.renameTo(file) ) throw new IOException("Could not rename "+temp.getPath());
+	}
+
+	/**
+	 * Reads the estimation method of a state file written per write, so the
+	 * matching estimator can be created before the state is read
+	 *
+	 * @param filePath The path to the state file
+	 * @return The estimation method
+	 * @throws IOException Is thrown if the file cannot be read or is malformed
+	 */
+	public static String readMethod(String filePath) throws IOException {
+
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)));
+		try {
+			return readHeader(in, filePath);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the magic number, the version and the method of a state file
+	 *
+	 * @param in The source
+	 * @param filePath The path to the state file for error messages
+	 * @return The estimation method
+	 * @throws IOException Is thrown if the source cannot be read or is malformed
+	 */
+	private static String readHeader(DataInputStream in, String filePath) throws IOException {
+
+		if ( in.readInt() != MAGIC ) throw new IOException("Not a state file: "+filePath);
+		int version=in.readInt();
+		if ( version != VERSION ) throw new IOException("Unsupported state file version: "+version);
+
+		return in.readUTF();
+	}
+
+	/**
+	 * Reads a state file written per write
+	 *
+	 * @param filePath The path to the state file
+	 * @param method The estimation method the state is expected to belong to
+	 * @param estimator The estimator restoring the accumulator
+	 * @return The state
+	 * @throws IOException Is thrown if the file cannot be read, is malformed or belongs to another method
+	 */
+	public static <E> EstimatorState<E> read(String filePath, String method, MetricEstimatorI<E> estimator) throws IOException {
+
+		DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)));
+		try {
+			String stateMethod=readHeader(in, filePath);
+			if ( !stateMethod.equalsIgnoreCase(method) ) throw new IOException("State file belongs to method "+stateMethod);
+
+			int[] parameters=null;
+			int amount=in.readInt();
+			if ( amount >= 0 ) {
+				parameters=new int[amount];
+				for ( int i=0; i<amount; i++ ) parameters[i]=in.readInt();
+			}
+
+			long offset=in.readLong();
+			long passwords=in.readLong();
+			AccumulatorI<E> accumulator=estimator.readState(in, parameters);
+
+			return new EstimatorState<E>(stateMethod, parameters, offset, passwords, accumulator);
+		} finally {
+			in.close();
+		}
+	}
+
+}
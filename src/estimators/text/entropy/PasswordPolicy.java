@@ -0,0 +1,261 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.text.entropy;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class provides a declarative password-composition policy as used by
+ * Shay et al. [1] to compare the password sets created under different
+ * requirements. A policy is given as a name followed by rules, separated by
+ * whitespace:
+ *
+ * <pre>
+ * basic8          length&gt;=8
+ * comprehensive8  length&gt;=8 digits&gt;=1 symbols&gt;=1 upper&gt;=1 lower&gt;=1 blocklist=dictionary.txt
+ * 3class12        length&gt;=12 classes&gt;=3
+ * </pre>
+ *
+ * The following rules are available:
+ * <ul>
+ * <li>length&gt;=n, length&lt;=n: the minimum and maximum length</li>
+ * <li>digits&gt;=n, symbols&gt;=n, upper&gt;=n, lower&gt;=n: the minimum number of
+ * characters of the type</li>
+ * <li>classes&gt;=n: the minimum number of different character types</li>
+ * <li>blocklist=file: a file with one forbidden password per line, the
+ * passwords are compared case-insensitively</li>
+ * </ul>
+ * A policy without rules accepts all passwords. Policy files contain one
+ * policy per line, empty lines and lines starting with # are ignored.
+ *
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>R. Shay, S. Komanduri, P. G. Kelley, P. G. Leon, M. L. Mazurek, L. Bauer, N. Christin, and L. F. Cranor. Encountering Stronger Password Requirements: User Attitudes and Behaviors. In SOUPS '10: Proceedings of the Sixth Symposium on Usable Privacy and Security. ACM, July 2010.</td>
+ * </tr>
+ * </table>
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class PasswordPolicy {
+
+	/**
+	 * The names of the character types in the order of the TextEntropyAccumulator
+	 */
+	private static final String[] TYPE_NAMES=new String[]{"digits", "symbols", "upper", "lower"};
+
+	/**
+	 * The name of the policy
+	 */
+	private final String name;
+
+	/**
+	 * The minimum length
+	 */
+	private int minLength=0;
+
+	/**
+	 * The maximum length
+	 */
+	private int maxLength=Integer.MAX_VALUE;
+
+	/**
+	 * For each character type: the minimum number of characters
+	 */
+	private final int[] minAmounts=new int[TYPE_NAMES.length];
+
+	/**
+	 * The minimum number of different character types
+	 */
+	private int minClasses=0;
+
+	/**
+	 * The forbidden passwords in lower case, null if there are none
+	 */
+	private Set<String> blocklist=null;
+
+	/**
+	 * Creates a new policy accepting all passwords
+	 *
+	 * @param name The name of the policy
+	 */
+	public PasswordPolicy(String name) {
+		this.name=name;
+	}
+
+	/**
+	 * @return The name of the policy
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Checks whether a password complies with the policy
+	 *
+	 * @param password The password
+	 * @param types The types of the code points as determined by the TextEntropyAccumulator
+	 * @return Whether the password is accepted
+	 */
+	boolean accepts(String password, byte[] types) {
+
+		//the length is measured in code points as done by the TextEntropyAccumulator
+		if ( types.length < this.minLength || types.length > this.maxLength ) return false;
+
+		int[] amounts=new int[this.minAmounts.length];
+		for ( byte t : types ) amounts[t]++;
+
+		int classes=0;
+		for ( int t=0; t<amounts.length; t++ ) {
+			if ( amounts[t] < this.minAmounts[t] ) return false;
+			if ( amounts[t] > 0 ) classes++;
+		}
+		if ( classes < this.minClasses ) return false;
+
+		//the lookup is the most expensive check, so it comes last
+		return this.blocklist == null || !this.blocklist.contains(password.toLowerCase());
+	}
+
+	/**
+	 * Reads all policies of a policy file
+	 *
+	 * @param filePath The path to the policy file
+	 * @return The policies in the order of the file
+	 * @throws IOException Is thrown if the policy file or a blocklist cannot be read
+	 * @throws IllegalArgumentException Is thrown if a policy is malformed
+	 */
+	public static List<PasswordPolicy> readPolicies(String filePath) throws IOException {
+
+		List<PasswordPolicy> policies=new ArrayList<PasswordPolicy>();
+		//policies referring to the same blocklist share it
+		HashMap<String, Set<String>> blocklists=new HashMap<String, Set<String>>();
+
+		BufferedReader reader=new BufferedReader(new InputStreamReader(new FileInputStream(filePath), "UTF-8"));
+		try {
+			String line;
+			int lineNumber=0;
+			while ( (line=reader.readLine()) != null ) {
+				lineNumber++;
+				line=line.trim();
+				if ( line.isEmpty() || line.startsWith("#") ) continue;
+				try {
+					policies.add(parsePolicy(line, blocklists));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Line "+lineNumber+": "+e.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		if ( policies.isEmpty() ) throw new IllegalArgumentException("No policies defined.");
+
+		return policies;
+	}
+
+	/**
+	 * Parses a single policy
+	 *
+	 * @param line The policy consisting of the name and the rules
+	 * @param blocklists The blocklists read so far by their path
+	 * @return The policy
+	 * @throws IOException Is thrown if a blocklist cannot be read
+	 */
+	private static PasswordPolicy parsePolicy(String line, HashMap<String, Set<String>> blocklists) throws IOException {
+
+		String[] tokens=line.split("\\s+");
+		PasswordPolicy policy=new PasswordPolicy(tokens[0]);
+
+		for ( int i=1; i<tokens.length; i++ ) {
+
+			String rule=tokens[i];
+
+			if ( rule.startsWith("blocklist=") ) {
+				String path=rule.substring("blocklist=".length());
+				if ( !blocklists.containsKey(path) ) blocklists.put(path, readBlocklist(path));
+				policy.blocklist=blocklists.get(path);
+				continue;
+			}
+
+			int op=rule.indexOf(">=");
+			boolean min=true;
+			if ( op < 0 ) {
+				op=rule.indexOf("<=");
+				min=false;
+			}
+			if ( op <= 0 ) throw new IllegalArgumentException("Invalid rule: "+rule);
+
+			String key=rule.substring(0, op);
+			int value;
+			try {
+				value=Integer.parseInt(rule.substring(op+2));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value in rule: "+rule);
+			}
+
+			if ( key.equals("length") ) {
+				if ( min ) policy.minLength=value;
+				else policy.maxLength=value;
+				continue;
+			}
+			if ( !min ) throw new IllegalArgumentException("Only minimum allowed in rule: "+rule);
+			if ( key.equals("classes") ) {
+				policy.minClasses=value;
+				continue;
+			}
+			int t=0;
+			while ( t < TYPE_NAMES.length && !TYPE_NAMES[t].equals(key) ) t++;
+			if ( t == TYPE_NAMES.length ) throw new IllegalArgumentException("Unknown rule: "+rule);
+			policy.minAmounts[t]=value;
+		}
+
+		return policy;
+	}
+
+	/**
+	 * Reads a blocklist
+	 *
+	 * @param filePath The path to the blocklist
+	 * @return The forbidden passwords in lower case
+	 * @throws IOException Is thrown if the blocklist cannot be read
+	 */
+	private static Set<String> readBlocklist(String filePath) throws IOException {
+
+		Set<String> blocklist=new HashSet<String>();
+
+		BufferedReader reader=new BufferedReader(new InputStreamReader(new FileInputStream(filePath), "UTF-8"));
+		try {
+			String line;
+			while ( (line=reader.readLine()) != null ) blocklist.add(line.toLowerCase());
+		} finally {
+			reader.close();
+		}
+
+		return blocklist;
+	}
+
+}
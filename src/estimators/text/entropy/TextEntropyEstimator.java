@@ -18,18 +18,19 @@
  *=========================================================================*/
 package estimators.text.entropy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Writer;
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.List;
 
 import main.passwords.PasswordType;
-
-import org.apache.commons.lang3.ArrayUtils;
-
+import estimators.AccumulatorI;
 import estimators.CommonHelper;
+import estimators.Histogram;
 import estimators.MetricEstimatorI;
-import estimators.ShannonEntropyHelper;
+import estimators.SparseHistogram;
 
 /**
  * This class provides an estimator for the entropy among a password list
@@ -44,6 +45,11 @@ import estimators.ShannonEntropyHelper;
  * once the other sources of entropy have been processed; it
  * adds 0 bits of entropy.  
  * <br>
+ * All sources of entropy are counted in a single pass over the passwords,
+ * so the passwords can also be streamed through an accumulator. The
+ * passwords are processed by Unicode code points, i.e. a supplementary
+ * character such as an emoji is a single symbol.
+ * <br>
  * The password file is expected to be UTF-8 encoded and to contain one
  * password in each line. No additional lines should be placed at the end
  * or the beginning of the file as to allow empty passwords to be
@@ -84,152 +90,260 @@ public class TextEntropyEstimator extends MetricEstimatorI<String> {
 	 */
 	private double[] results=new double[11];
 	
+	/**
+	 * The labels of the results, the last one belongs to the total
+	 */
+	private static final String[] LABELS=new String[]{
+		"Length",
+		"Number Amount", "Number Placement", "Number Type",
+		"Symbol Amount", "Symbol Placement", "Symbol Type",
+		"Uppercase Amount", "Uppercase Placement", "Uppercase Type",
+		"Lowercase Type",
+		"Entropy Total"};
+	
 	@Override
 	public Object calculateMetric(List<String> passwords, int[] parameters) {
 		
-		int maxLength=this.getMaxLength(passwords);
-		
-		//1. Entropy in length
-		results[0]=this.getLengthEntropy(passwords, maxLength);
+		AccumulatorI<String> accumulator=this.createAccumulator(parameters);
 		
-		//2. Entropy in digits
-		results[1]=this.getNumberEntropy(passwords, maxLength, new DigitTypeHandler());
-		results[2]=this.getPlacementEntropy(passwords, maxLength, new DigitTypeHandler());
-		results[3]=this.getInTypeEntropy(passwords, new DigitTypeHandler());
+		for ( String pwd : passwords ) accumulator.add(pwd, 1);
 		
-		//3. Entropy in symbols
-		results[4]=this.getNumberEntropy(passwords, maxLength, new SymbolTypeHandler());
-		results[5]=this.getPlacementEntropy(passwords, maxLength, new SymbolTypeHandler());
-		results[6]=this.getInTypeEntropy(passwords, new SymbolTypeHandler());
-		
-		//4. Entropy in upper case letters
-		results[7]=this.getNumberEntropy(passwords, maxLength, new UpperCaseLetterTypeHandler());
-		results[8]=this.getPlacementEntropy(passwords, maxLength, new UpperCaseLetterTypeHandler());
-		results[9]=this.getInTypeEntropy(passwords, new UpperCaseLetterTypeHandler());
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<String> createAccumulator(int[] parameters) {
+		return new TextEntropyAccumulator();
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<String> accumulator) {
 		
-		//5. Entropy in lower case letters
-		results[10]=this.getInTypeEntropy(passwords, new LowerCaseLetterTypeHandler());
+		this.results=Arrays.copyOf(this.getResults(accumulator), this.results.length);
 		
 		this.calculated=true;
 		return CommonHelper.getTotal(results);
 	}
 	
-	/**
-	 * Calculates the entropy caused by the different lengths
-	 * 
-	 * @param pwds The passwords
-	 * @param maxLen The maximum length of all passwords
-	 * @return Entropy estimate
-	 */
-	private double getLengthEntropy(List<String> pwds, int maxLen) {
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<String> accumulator, DataOutput out) throws IOException {
+		((TextEntropyAccumulator)accumulator).write(out);
+	}
+	
+	@Override
+	public AccumulatorI<String> readState(DataInput in, int[] parameters) throws IOException {
+		return TextEntropyAccumulator.read(in);
+	}
+	
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+	
+	@Override
+	public String[] getResultLabels(AccumulatorI<String> accumulator) {
+		return LABELS.clone();
+	}
+	
+	@Override
+	public double[] getResults(AccumulatorI<String> accumulator) {
 		
-		int[] lengths=new int[maxLen+1];
+		TextEntropyAccumulator acc=(TextEntropyAccumulator)accumulator;
+		double[] res=new double[LABELS.length];
 		
-		for (String pwd : pwds)	lengths[pwd.length()]++;
+		//1. Entropy in length
+		res[0]=acc.lengths.getEntropy();
 		
-		return ShannonEntropyHelper.getEntropy(lengths);
+		//2.-4. Entropy in digits, symbols and upper case letters
+		for ( int t=0; t<3; t++ ) {
+			res[1+3*t]=acc.numbers[t].getEntropy();
+			res[2+3*t]=acc.placements[t].getEntropy();
+			res[3+3*t]=acc.inTypes[t].getEntropy();
+		}
+		
+		//5. Entropy in lower case letters
+		res[10]=acc.inTypes[3].getEntropy();
+		
+		res[11]=CommonHelper.getTotal(Arrays.copyOf(res, 11));
+		
+		return res;
 	}
 	
 	/**
-	 * Calculates the maximum length of all Strings in a list
-	 * 
-	 * @param pwds The passwords (String array)
-	 * @return The maximum length
+	 * The accumulator for this estimator. Instead of processing the passwords
+	 * once for each source of entropy, all histograms needed are filled in a
+	 * single pass over each password. The entropies are calculated from the
+	 * histograms afterwards.
 	 */
-	private int getMaxLength(List<String> pwds) {
-		int maxLen=0;
+	static class TextEntropyAccumulator implements AccumulatorI<String> {
+		
+		/**
+		 * The character types in the order of the histograms
+		 */
+		static final byte DIGIT=0, SYMBOL=1, UPPER=2, LOWER=3;
+		
+		/**
+		 * The number of character types
+		 */
+		static final int TYPE_COUNT=4;
 		
-		for (String pwd : pwds) {
-			maxLen = pwd.length()>maxLen ? pwd.length() : maxLen;
+		/**
+		 * The type of each character of the Basic Multilingual Plane, so the
+		 * classification of a character is a single array access
+		 */
+		private static final byte[] BMP_TYPES=new byte[Character.MIN_SUPPLEMENTARY_CODE_POINT];
+		
+		static {
+			for ( int c=0; c<BMP_TYPES.length; c++ ) BMP_TYPES[c]=computeType(c);
 		}
 		
-		return maxLen;
-	}
-	
-	/**
-	 * Calculates the entropy caused by the number of a character type
-	 * 
-	 * @param pwds The passwords
-	 * @param maxLen The maximum length of all passwords
-	 * @param type The type of character
-	 * @return Entropy estimate
-	 */
-	private double getNumberEntropy(List<String> pwds, int maxLen, CharacterTypeHandler type) {
+		/**
+		 * The lengths of the passwords
+		 */
+		private Histogram lengths=new Histogram();
+		
+		/**
+		 * For each type but lower case letters: the number of characters of that type in the passwords
+		 */
+		private final Histogram[] numbers=new Histogram[]{new Histogram(), new Histogram(), new Histogram()};
+		
+		/**
+		 * For each type but lower case letters: the positions of the characters of that type
+		 */
+		private final Histogram[] placements=new Histogram[]{new Histogram(), new Histogram(), new Histogram()};
 		
-		int[] number=new int[maxLen+1];
+		/**
+		 * For each type: the occurrences of each character (code point) of that type
+		 */
+		private final SparseHistogram[] inTypes=new SparseHistogram[]{new SparseHistogram(), new SparseHistogram(), new SparseHistogram(), new SparseHistogram()};
 		
-		for (String pwd : pwds) {
+		/**
+		 * Determines the type of a character. Every character is of exactly
+		 * one type, since symbols are all characters which are neither digits
+		 * nor letters.
+		 * 
+		 * @param codePoint The character
+		 * @return The type
+		 */
+		private static byte computeType(int codePoint) {
+			if ( Character.isDigit(codePoint) ) return DIGIT;
+			if ( Character.isUpperCase(codePoint) ) return UPPER;
+			if ( Character.isLowerCase(codePoint) ) return LOWER;
+			return SYMBOL;
+		}
+		
+		/**
+		 * Determines the type of each character of a password. The password
+		 * is processed by code points, so supplementary characters (e.g.
+		 * emoji) count as one character instead of two surrogates.
+		 * 
+		 * @param password The password
+		 * @return The type of each code point
+		 */
+		static byte[] classify(String password) {
 			
-			int pwdNumber=0;
+			byte[] types=new byte[password.codePointCount(0, password.length())];
 			
-			for ( int i=0; i<pwd.length(); i++ ) {
-				if ( type.isOfType(pwd.charAt(i)) ) pwdNumber++;
+			for ( int i=0, offset=0; offset<password.length(); i++ ) {
+				int c=password.codePointAt(offset);
+				types[i]= c < BMP_TYPES.length ? BMP_TYPES[c] : computeType(c);
+				offset += Character.charCount(c);
 			}
 			
-			number[pwdNumber]++;
+			return types;
 		}
 		
-		return ShannonEntropyHelper.getEntropy(number);
-	}
-	
-	/**
-	 * Calculates the entropy caused by the placement of a character type
-	 * 
-	 * @param pwds The passwords
-	 * @param maxLen The maximum length of all passwords
-	 * @param type The type of character
-	 * @return Entropy estimate
-	 */
-	private double getPlacementEntropy(List<String> pwds, int maxLen, CharacterTypeHandler type) {
-		
-		int[] placements=new int[maxLen+1];
+		@Override
+		public void add(String password, int weight) {
+			this.add(password, classify(password), weight);
+		}
 		
-		for (String pwd : pwds) {
+		/**
+		 * Adds a password whose characters have already been classified, so
+		 * the classification can be shared by multiple accumulators
+		 * 
+		 * @param password The password to add
+		 * @param types The types of the code points as returned by classify
+		 * @param weight How often the password is to be counted
+		 */
+		void add(String password, byte[] types, int weight) {
+			
+			int[] amounts=new int[TYPE_COUNT];
 			
-			for ( int i=0; i<pwd.length(); i++ ) {
-				if ( type.isOfType(pwd.charAt(i)) ) {
-					placements[i]++;
-				}
+			for ( int i=0, offset=0; i<types.length; i++ ) {
+				
+				int c=password.codePointAt(offset);
+				offset += Character.charCount(c);
+				
+				int t=types[i];
+				amounts[t]++;
+				if ( t < this.placements.length ) this.placements[t].add(i, weight);
+				this.inTypes[t].add(c, weight);
 			}
 			
+			this.lengths.add(types.length, weight);
+			for ( int t=0; t<this.numbers.length; t++ ) this.numbers[t].add(amounts[t], weight);
 		}
 		
-		return ShannonEntropyHelper.getEntropy(placements);
-	}
-	
-	/**
-	 * Calculates the entropy caused by usage of different characters of a type
-	 * 
-	 * @param pwds The passwords
-	 * @param type The type of character
-	 * @return Entropy estimate
-	 */
-	private double getInTypeEntropy(List<String> pwds, CharacterTypeHandler type) {
+		@Override
+		public void merge(AccumulatorI<String> other) {
+			
+			TextEntropyAccumulator acc=(TextEntropyAccumulator)other;
+			
+			this.lengths.merge(acc.lengths);
+			for ( int t=0; t<this.numbers.length; t++ ) {
+				this.numbers[t].merge(acc.numbers[t]);
+				this.placements[t].merge(acc.placements[t]);
+			}
+			for ( int t=0; t<this.inTypes.length; t++ ) this.inTypes[t].merge(acc.inTypes[t]);
+		}
 		
-		Hashtable<Character, Integer> inTypeAmounts=new Hashtable<Character, Integer>();
+		/**
+		 * Writes all histograms to a binary sink
+		 * 
+		 * @param out The sink
+		 * @throws IOException Is thrown if the sink cannot be written
+		 */
+		void write(DataOutput out) throws IOException {
+			this.lengths.write(out);
+			for ( int t=0; t<this.numbers.length; t++ ) {
+				this.numbers[t].write(out);
+				this.placements[t].write(out);
+			}
+			for ( SparseHistogram inType : this.inTypes ) inType.write(out);
+		}
 		
-		for ( String pwd : pwds ) {
+		/**
+		 * Reads an accumulator previously written per write
+		 * 
+		 * @param in The source
+		 * @return The accumulator
+		 * @throws IOException Is thrown if the source cannot be read
+		 */
+		static TextEntropyAccumulator read(DataInput in) throws IOException {
 			
-			for ( int i=0; i<pwd.length(); i++ ) {
-				
-				if ( type.isOfType(pwd.charAt(i)) ) {
-					
-					Integer amount=inTypeAmounts.get(pwd.charAt(i));
-					
-					if ( amount == null ) {
-						amount = 1;
-					} else {
-						amount++;
-					}
-					
-					inTypeAmounts.put(pwd.charAt(i), amount);
-				}
-				
+			TextEntropyAccumulator acc=new TextEntropyAccumulator();
+			
+			acc.lengths=Histogram.read(in);
+			for ( int t=0; t<acc.numbers.length; t++ ) {
+				acc.numbers[t]=Histogram.read(in);
+				acc.placements[t]=Histogram.read(in);
 			}
+			for ( int t=0; t<acc.inTypes.length; t++ ) acc.inTypes[t]=SparseHistogram.read(in);
+			
+			return acc;
 		}
 		
-		return ShannonEntropyHelper.getEntropy(ArrayUtils.toPrimitive(inTypeAmounts.values().toArray((new Integer[1]))));
-		
 	}
 
 	@Override
@@ -240,6 +354,22 @@ public class TextEntropyEstimator extends MetricEstimatorI<String> {
 			return;
 		}
 		
+		printResults(outWriter, this.results);
+		
+		outWriter.write("Entropy Total: "+CommonHelper.getTotal(results)+"\n");
+		
+		outWriter.close();
+		
+	}
+	
+	/**
+	 * Prints the entropy of all sources and the totals of all character types
+	 * 
+	 * @param outWriter The sink to write the results to
+	 * @param results The results of all sources in the order of LABELS
+	 */
+	static void printResults(Writer outWriter, double[] results) throws IOException {
+		
 		outWriter.write("Length: "+results[0]+"\n");
 		
 		outWriter.write("-------------------------------\n");
@@ -280,69 +410,8 @@ public class TextEntropyEstimator extends MetricEstimatorI<String> {
 		
 		outWriter.write("-------------------------------\n");
 		
-		outWriter.write("Entropy Total: "+CommonHelper.getTotal(results)+"\n");
-		
-		outWriter.close();
-		
-	}
-	
-	/**
-	 * Defines a generic interface so the methods for the number of occurrences,
-	 * the placement and the different types of characters can be reused. This
-	 * interface exists only due to the lack of the function type in current
-	 * Java.
-	 */
-	private interface CharacterTypeHandler {
-		
-		/**
-		 * @return Whether the character is of the wanted type 
-		 */
-		public boolean isOfType(char c);
-		
-	}
-	
-	/**
-	 * Handler for the digit type characters
-	 */
-	private class DigitTypeHandler implements CharacterTypeHandler {
-		@Override
-		public boolean isOfType(char c) {
-			return Character.isDigit(c);
-		}
 	}
 	
-	/**
-	 * Handler for the symbol type characters
-	 */
-	private class SymbolTypeHandler implements CharacterTypeHandler {
-		@Override
-		public boolean isOfType(char c) {
-			return (!Character.isLowerCase(c) && !Character.isUpperCase(c) && !Character.isDigit(c));
-		}
-	}
-	
-	/**
-	 * Handler for the upper case letter characters
-	 */
-	private class UpperCaseLetterTypeHandler implements CharacterTypeHandler {
-		@Override
-		public boolean isOfType(char c) {
-			return Character.isUpperCase(c);
-		}
-		
-	}
-	
-	/**
-	 * Handler for the lower case letter characters
-	 */
-	private class LowerCaseLetterTypeHandler implements CharacterTypeHandler {
-		@Override
-		public boolean isOfType(char c) {
-			return Character.isLowerCase(c);
-		}
-		
-	}
-
 	@Override
 	public PasswordType getPasswordType() {
 		return PasswordType.TEXT;
@@ -0,0 +1,318 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.text.entropy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+import estimators.text.entropy.TextEntropyEstimator.TextEntropyAccumulator;
+
+/**
+ * This class provides an estimator for the entropy of the subsets of a
+ * password list complying with different password-composition policies,
+ * so the policies can be compared as done by Shay et al. [1] without
+ * filtering the password list once per policy. Each password is parsed and
+ * its characters are classified once, then it is checked against every
+ * policy and added to the histograms of all policies accepting it. The
+ * entropy of each subset is calculated as done by the TextEntropyEstimator.
+ *
+ * <table border="0">
+ * <tr>
+ * <td valign="top">[1]</td>
+ * <td>R. Shay, S. Komanduri, P. G. Kelley, P. G. Leon, M. L. Mazurek, L. Bauer, N. Christin, and L. F. Cranor. Encountering Stronger Password Requirements: User Attitudes and Behaviors. In SOUPS '10: Proceedings of the Sixth Symposium on Usable Privacy and Security. ACM, July 2010.</td>
+ * </tr>
+ * </table>
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see PasswordPolicy
+ */
+public class TextPolicyEntropyEstimator extends MetricEstimatorI<String> {
+
+	/**
+	 * Whether the calculation has finished
+	 */
+	private boolean calculated=false;
+
+	/**
+	 * The policies to evaluate
+	 */
+	private final PasswordPolicy[] policies;
+
+	/**
+	 * The estimator calculating the entropy of each subset
+	 */
+	private final TextEntropyEstimator entropyEstimator=new TextEntropyEstimator();
+
+	/**
+	 * The number of passwords processed
+	 */
+	private long total;
+
+	/**
+	 * For each policy: the number of accepted passwords
+	 */
+	private long[] accepted;
+
+	/**
+	 * For each policy: the results as returned by the TextEntropyEstimator
+	 */
+	private double[][] results;
+
+	/**
+	 * Creates a new estimator
+	 *
+	 * @param policies The policies to evaluate
+	 */
+	public TextPolicyEntropyEstimator(List<PasswordPolicy> policies) {
+		this.policies=policies.toArray(new PasswordPolicy[policies.size()]);
+	}
+
+	@Override
+	public Object calculateMetric(List<String> passwords, int[] parameters) {
+
+		AccumulatorI<String> accumulator=this.createAccumulator(parameters);
+
+		for ( String pwd : passwords ) accumulator.add(pwd, 1);
+
+		return this.calculateMetric(accumulator);
+	}
+
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+
+	@Override
+	public AccumulatorI<String> createAccumulator(int[] parameters) {
+		return new PolicyAccumulator(this.policies.length);
+	}
+
+	@Override
+	public Object calculateMetric(AccumulatorI<String> accumulator) {
+
+		PolicyAccumulator acc=(PolicyAccumulator)accumulator;
+
+		this.total=acc.total;
+		this.accepted=acc.accepted.clone();
+		this.results=new double[this.policies.length][];
+		for ( int p=0; p<this.policies.length; p++ ) {
+			this.results[p]=this.entropyEstimator.getResults(acc.accumulators[p]);
+		}
+
+		this.calculated=true;
+		return this.results;
+	}
+
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+
+	@Override
+	public void writeState(AccumulatorI<String> accumulator, DataOutput out) throws IOException {
+
+		PolicyAccumulator acc=(PolicyAccumulator)accumulator;
+
+		out.writeLong(acc.total);
+		out.writeInt(this.policies.length);
+		for ( int p=0; p<this.policies.length; p++ ) {
+			out.writeUTF(this.policies[p].getName());
+			out.writeLong(acc.accepted[p]);
+			acc.accumulators[p].write(out);
+		}
+	}
+
+	@Override
+	public AccumulatorI<String> readState(DataInput in, int[] parameters) throws IOException {
+
+		PolicyAccumulator acc=new PolicyAccumulator(this.policies.length);
+
+		acc.total=in.readLong();
+		int amount=in.readInt();
+		if ( amount != this.policies.length ) throw new IOException("State contains "+amount+" policies instead of "+this.policies.length);
+		for ( int p=0; p<amount; p++ ) {
+			String name=in.readUTF();
+			if ( !name.equals(this.policies[p].getName()) ) throw new IOException("State contains policy "+name+" instead of "+this.policies[p].getName());
+			acc.accepted[p]=in.readLong();
+			acc.accumulators[p]=TextEntropyAccumulator.read(in);
+		}
+
+		return acc;
+	}
+
+	@Override
+	public boolean supportsResultVector() {
+		return true;
+	}
+
+	@Override
+	public String[] getResultLabels(AccumulatorI<String> accumulator) {
+
+		PolicyAccumulator acc=(PolicyAccumulator)accumulator;
+		String[] labels=this.entropyEstimator.getResultLabels(acc.accumulators[0]);
+		String[] res=new String[this.policies.length*(labels.length+1)];
+
+		int n=0;
+		for ( PasswordPolicy policy : this.policies ) {
+			res[n++]=policy.getName()+": Accepted";
+			for ( String label : labels ) res[n++]=policy.getName()+": "+label;
+		}
+
+		return res;
+	}
+
+	@Override
+	public double[] getResults(AccumulatorI<String> accumulator) {
+
+		PolicyAccumulator acc=(PolicyAccumulator)accumulator;
+		double[] res=null;
+
+		int n=0;
+		for ( int p=0; p<this.policies.length; p++ ) {
+			double[] entropies=this.entropyEstimator.getResults(acc.accumulators[p]);
+			if ( res == null ) res=new double[this.policies.length*(entropies.length+1)];
+			res[n++]=acc.total == 0 ? 0 : acc.accepted[p]/(double)acc.total;
+			System.arraycopy(entropies, 0, res, n, entropies.length);
+			n+=entropies.length;
+		}
+
+		return res;
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+
+		if ( !calculated ) {
+			System.err.println("Can't print: calculation not finished.");
+			return;
+		}
+
+		for ( int p=0; p<this.policies.length; p++ ) {
+			outWriter.write("Policy: "+this.policies[p].getName()+"\n");
+			this.printAccepted(outWriter, p);
+			outWriter.write("-------------------------------\n");
+			TextEntropyEstimator.printResults(outWriter, this.results[p]);
+			outWriter.write("Entropy Total: "+this.results[p][this.results[p].length-1]+"\n");
+			outWriter.write("===============================\n");
+		}
+
+		outWriter.close();
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+
+		if ( !calculated ) {
+			System.err.println("Can't print: calculation not finished.");
+			return;
+		}
+
+		for ( int p=0; p<this.policies.length; p++ ) {
+			outWriter.write("Policy: "+this.policies[p].getName()+"\n");
+			this.printAccepted(outWriter, p);
+			outWriter.write("Entropy Total: "+this.results[p][this.results[p].length-1]+"\n");
+			outWriter.write("-------------------------------\n");
+		}
+
+		outWriter.close();
+	}
+
+	/**
+	 * Prints how many passwords a policy accepted
+	 *
+	 * @param outWriter The sink to write the results to
+	 * @param p The index of the policy
+	 */
+	private void printAccepted(Writer outWriter, int p) throws IOException {
+		double ratio=this.total == 0 ? 0 : this.accepted[p]/(double)this.total;
+		outWriter.write("Accepted passwords: "+this.accepted[p]+" of "+this.total+" ("+ratio+")\n");
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.TEXT;
+	}
+
+	/**
+	 * The accumulator for this estimator, holding the histograms of the
+	 * TextEntropyEstimator for each policy
+	 */
+	private class PolicyAccumulator implements AccumulatorI<String> {
+
+		/**
+		 * For each policy: the histograms of the accepted passwords
+		 */
+		private final TextEntropyAccumulator[] accumulators;
+
+		/**
+		 * For each policy: the number of accepted passwords
+		 */
+		private final long[] accepted;
+
+		/**
+		 * The number of passwords processed
+		 */
+		private long total=0;
+
+		/**
+		 * Creates a new accumulator
+		 *
+		 * @param amount The number of policies
+		 */
+		PolicyAccumulator(int amount) {
+			this.accumulators=new TextEntropyAccumulator[amount];
+			for ( int p=0; p<amount; p++ ) this.accumulators[p]=new TextEntropyAccumulator();
+			this.accepted=new long[amount];
+		}
+
+		@Override
+		public void add(String password, int weight) {
+
+			//the characters are classified once for all policies
+			byte[] types=TextEntropyAccumulator.classify(password);
+
+			this.total += weight;
+			for ( int p=0; p<this.accumulators.length; p++ ) {
+				if ( !TextPolicyEntropyEstimator.this.policies[p].accepts(password, types) ) continue;
+				this.accepted[p] += weight;
+				this.accumulators[p].add(password, types, weight);
+			}
+		}
+
+		@Override
+		public void merge(AccumulatorI<String> other) {
+
+			PolicyAccumulator acc=(PolicyAccumulator)other;
+
+			this.total += acc.total;
+			for ( int p=0; p<this.accumulators.length; p++ ) {
+				this.accepted[p] += acc.accepted[p];
+				this.accumulators[p].merge(acc.accumulators[p]);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package estimators.text.guesswork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.MetricEstimatorI;
+import estimators.sketch.SketchGuessworkEstimator;
+import estimators.sketch.SketchGuessworkEstimator.KeyFunction;
+import estimators.sketch.SketchGuessworkEstimator.SketchAccumulator;
+
+/**
+ * This class provides a wrapper for the estimation method implemented in
+ * SketchGuessworkEstimator for text passwords. The passwords are counted
+ * as they are.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ * @see SketchGuessworkEstimator
+ */
+public class TextSketchGuessworkEstimator extends MetricEstimatorI<String> {
+
+	/**
+	 * The actual estimator all calculations are delegated to
+	 */
+	private SketchGuessworkEstimator estimator=new SketchGuessworkEstimator();
+	
+	/**
+	 * The number of passwords monitored by the sketch
+	 */
+	private final int sketchSize;
+	
+	/**
+	 * Creates a new estimator
+	 * 
+	 * @param sketchSize The number of passwords monitored by the sketch
+	 */
+	public TextSketchGuessworkEstimator(int sketchSize) {
+		this.sketchSize=sketchSize;
+	}
+	
+	@Override
+	public Object calculateMetric(List<String> passwords, int[] parameters) {
+		
+		AccumulatorI<String> accumulator=this.createAccumulator(parameters);
+		
+		for ( String pwd : passwords ) accumulator.add(pwd, 1);
+		
+		return this.calculateMetric(accumulator);
+	}
+	
+	@Override
+	public boolean supportsAccumulation() {
+		return true;
+	}
+	
+	@Override
+	public AccumulatorI<String> createAccumulator(int[] parameters) {
+		return this.estimator.createAccumulator(this.sketchSize, this.getKeyFunction());
+	}
+	
+	/**
+	 * @return The function extracting the key of a password
+	 */
+	private KeyFunction<String> getKeyFunction() {
+		return new KeyFunction<String>() {
+			@Override
+			public Object getKey(String password) {
+				return password;
+			}
+		};
+	}
+	
+	@Override
+	public Object calculateMetric(AccumulatorI<String> accumulator) {
+		return this.estimator.calculateEstimate((SketchAccumulator<String>)accumulator);
+	}
+
+	@Override
+	public boolean supportsState() {
+		return true;
+	}
+	
+	@Override
+	public void writeState(AccumulatorI<String> accumulator, DataOutput out) throws IOException {
+		this.estimator.writeState((SketchAccumulator<String>)accumulator, out);
+	}
+	
+	@Override
+	public AccumulatorI<String> readState(DataInput in, int[] parameters) throws IOException {
+		return this.estimator.readState(in, this.getKeyFunction());
+	}
+
+	@Override
+	public void verbosePrintResult(Writer outWriter) throws IOException {
+		this.estimator.printResult(outWriter, "passwords");
+	}
+
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.TEXT;
+	}
+
+	@Override
+	public void shortPrintRestult(Writer outWriter) throws IOException {
+		this.estimator.printSummary(outWriter);
+	}
+
+}
@@ -19,19 +19,59 @@
 package main;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import main.passwords.PasswordType;
+import parsing.MalformedPasswordException;
 import parsing.PasswordFileParser;
+import estimators.AccumulatorI;
 import estimators.MetricEstimatorI;
+import estimators.bootstrap.Bootstrap;
+import estimators.groupby.GroupBy;
+import estimators.learningcurve.LearningCurve;
+import estimators.state.EstimatorState;
+import estimators.click.collision.ClickCollisionEstimator;
+import estimators.click.entropy.ClickConditionalEntropyEstimator;
 import estimators.click.entropy.ClickEntropyEstimatorDep;
 import estimators.click.entropy.ClickEntropyEstimatorIndep;
+import estimators.click.entropy.ClickKdeEntropyEstimator;
+import estimators.click.entropy.ClickMutualInformationEstimator;
 import estimators.click.guesswork.ClickAlphaGuessworkEstimator;
+import estimators.click.guesswork.ClickSketchGuessworkEstimator;
+import estimators.click.guesswork.ClickAttackEstimator;
+import estimators.click.images.ClickImageEntropyEstimator;
+import estimators.click.images.ClickImageGuessworkEstimator;
+import estimators.cognometricgrouped.entropy.CognometricGroupedEntropyEstimator;
+import estimators.cognometricgrouped.entropy.CognometricMutualInformationEstimator;
+import estimators.cognometricgrouped.guesswork.CognometricGuessworkEstimator;
+import estimators.click.spatial.ChiassonEstimator;
+import estimators.click.spatial.ClickPointPatternEstimator;
+import estimators.click.spatial.ClickSpatialEstimator;
+import estimators.click.spatial.PointPatternCreator;
+import estimators.sketch.SketchGuessworkEstimator;
+import estimators.text.entropy.PasswordPolicy;
 import estimators.text.entropy.TextEntropyEstimator;
+import estimators.text.entropy.TextPolicyEntropyEstimator;
+import estimators.text.guesswork.TextSketchGuessworkEstimator;
 
 /**
  * This application provides multiple methods to analyze the password space 
@@ -43,11 +83,16 @@ import estimators.text.entropy.TextEntropyEstimator;
  * <li>Text methods
  * <ul>
  * <li>Shanon entropy - Shay et al. [1]</li>
+ * <li>Shanon entropy per password-composition policy - Shay et al. [1]</li>
+ * <li>Approximate Alpha-guesswork - Bonneau [3]</li>
  * </ul>
  * </li>
  * <li>Graphical click-based methods
  * <ul>
  * <li>Shanon entropy - Dirik et al. [2]</li>
+ * <li>Alpha-guesswork - Bonneau [3]</li>
+ * <li>Approximate Alpha-guesswork - Bonneau [3]</li>
+ * <li>Spatial statistics (nearest neighbours, Clark-Evans ratio, Ripley's K)</li>
  * </ul>
  * </li>
  * </ul>
@@ -63,6 +108,10 @@ import estimators.text.entropy.TextEntropyEstimator;
  * <td valign="top">[2]</td>
  * <td>A. E. Dirik, N. Memon, and J.-C. Birget. Modeling user choice in the PassPoints graphical password scheme. In SOUPS '07: Proceedings of the 3rd Symposium on Usable Privacy and Security, pages 20-28. ACM, 2007.</td>
  * </tr>
+ * <tr>
+ * <td valign="top">[3]</td>
+ * <td>J. Bonneau, The Science of Guessing: Analyzing an Anonymized Corpus of 70 Million Passwords, 2012 IEEE Symposium on Security and Privacy (SP), pp. 538-552, 2012.</td>
+ * </tr>
  * </table>
  * 
  * @author Peter Mayer | peter.mayer@cased.de
@@ -85,7 +134,26 @@ public final class EnEs {
 		/*
 		 * 1. Check whether arguments present
 		 */
-		OptionSet os=(new OptionParser("hm::i::vo::l")).parse(args);
+		OptionParser optionParser=new OptionParser("hm::i::vo::l");
+		optionParser.accepts("sketch-size").withRequiredArg().ofType(Integer.class);
+		optionParser.accepts("distinct");
+		optionParser.accepts("bootstrap").withRequiredArg().ofType(Integer.class);
+		optionParser.accepts("seed").withRequiredArg().ofType(Long.class);
+		optionParser.accepts("learning-curve").withOptionalArg();
+		optionParser.accepts("policies").withRequiredArg();
+		optionParser.accepts("group-by");
+		optionParser.accepts("state").withRequiredArg();
+		optionParser.accepts("append");
+		optionParser.accepts("workers").withRequiredArg().ofType(Integer.class);
+		optionParser.accepts("worker-heap").withRequiredArg();
+		optionParser.accepts("range").withRequiredArg();
+		optionParser.accepts("pipeline").withOptionalArg().ofType(Integer.class);
+		optionParser.accepts("validate");
+		optionParser.accepts("point-format").withRequiredArg();
+		optionParser.accepts("training").withRequiredArg().ofType(Integer.class);
+		optionParser.accepts("guesses").withRequiredArg().ofType(Long.class);
+		optionParser.accepts("bandwidth").withRequiredArg().ofType(Double.class);
+		OptionSet os=optionParser.parse(args);
 		
 		if ( os.has("h") ) {
 			EnEs.printHelp();
@@ -93,6 +161,12 @@ public final class EnEs {
 		} else if ( os.has("l") ) {
 			EnEs.printLicenseInformation();
 			System.exit(0);
+		} else if ( !os.nonOptionArguments().isEmpty() && os.nonOptionArguments().get(0).toString().equalsIgnoreCase("merge") ) {
+			EnEs.merge(os);
+			return;
+		} else if ( !os.nonOptionArguments().isEmpty() && os.nonOptionArguments().get(0).toString().equalsIgnoreCase("convert") ) {
+			EnEs.convert(os);
+			return;
 		} else if ( !os.has("m") || !os.hasArgument("m") ) {
 			System.err.println("No estimation method specified.");
 			System.err.flush();
@@ -109,37 +183,218 @@ public final class EnEs {
 		/*
 		 * 2. Check whether valid estimation method
 		 */
-		MetricEstimatorI estimator=EnEs.checkMethod((String)os.valueOf("m"));
+		MetricEstimatorI estimator=EnEs.checkMethod((String)os.valueOf("m"), os);
 		if ( estimator == null ) {
 			System.err.println("Invalid estimation method: "+os.valueOf("m"));
 			System.exit(1);
 		}
 		
+		if ( os.has("bootstrap") && (!estimator.supportsResultVector() || (Integer)os.valueOf("bootstrap") <= 0) ) {
+			System.err.println("Bootstrapping requires a positive number of replicates and is not available for: "+os.valueOf("m"));
+			System.exit(1);
+		}
+		if ( os.has("learning-curve") && (!estimator.supportsResultVector() || os.has("bootstrap") || os.has("distinct")) ) {
+			System.err.println("Learning curves can not be combined with bootstrapping or distinct counting and are not available for: "+os.valueOf("m"));
+			System.exit(1);
+		}
+		if ( os.has("group-by") && (!estimator.supportsResultVector() || os.has("bootstrap") || os.has("learning-curve") || os.has("distinct")) ) {
+			System.err.println("Grouping can not be combined with bootstrapping, learning curves or distinct counting and is not available for: "+os.valueOf("m"));
+			System.exit(1);
+		}
+		if ( os.has("state") && (!estimator.supportsState() || os.has("bootstrap") || os.has("learning-curve") || os.has("group-by")) ) {
+			System.err.println("State files can not be combined with bootstrapping, learning curves or grouping and are not available for: "+os.valueOf("m"));
+			System.exit(1);
+		}
+		if ( os.has("append") && !os.has("state") ) {
+			System.err.println("No state file specified to append to.");
+			System.exit(1);
+		}
+		if ( os.has("workers") && (!estimator.supportsState() || (Integer)os.valueOf("workers") <= 0 || os.has("distinct") || os.has("bootstrap") || os.has("learning-curve") || os.has("group-by") || os.has("append")) ) {
+			System.err.println("Workers require a positive number of workers, can not be combined with distinct counting, bootstrapping, learning curves, grouping or appending and are not available for: "+os.valueOf("m"));
+			System.exit(1);
+		}
+		int threads=0;
+		if ( os.has("pipeline") ) {
+			threads=os.hasArgument("pipeline") ? (Integer)os.valueOf("pipeline") : Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+			if ( threads <= 0 || !estimator.supportsAccumulation() || os.has("bootstrap") || os.has("learning-curve") || os.has("group-by") || os.has("workers") ) {
+				System.err.println("The pipeline requires a positive number of threads, can not be combined with bootstrapping, learning curves, grouping or workers and is not available for: "+os.valueOf("m"));
+				System.exit(1);
+			}
+		}
+		if ( os.has("range") && (!os.has("state") || os.has("append") || os.has("workers")) ) {
+			System.err.println("A range can only be read into a new state file.");
+			System.exit(1);
+		}
+		//further password files may follow -i as arguments, e.g. if a glob was expanded by the shell
+		List<Object> values=new ArrayList<Object>(os.valuesOf("i"));
+		values.addAll(os.nonOptionArguments());
+		List<String> inputs=EnEs.expandInputs(values);
+		String input=inputs.size() == 1 ? inputs.get(0) : inputs.size()+" password files";
+		if ( inputs.size() > 1 ) {
+			if ( os.has("workers") || os.has("append") || os.has("range") ) {
+				System.err.println("Several password files can not be combined with workers, appending or ranges.");
+				System.exit(1);
+			}
+			//the files are read concurrently unless the passwords need to be read in order
+			if ( threads == 0 && estimator.supportsAccumulation() && !os.has("bootstrap") && !os.has("learning-curve") && !os.has("group-by") ) {
+				threads=Math.min(inputs.size(), Runtime.getRuntime().availableProcessors());
+			}
+		}
+		long seed=os.has("seed") ? (Long)os.valueOf("seed") : new Random().nextLong();
+		
 		/*
 		 * 3. Read password file, this actually takes place in the PasswordFileParser
 		 * class. The fourth step is included in the try-block for simplicity's sake.
 		 */
-		PasswordFileParser parser;
+		PasswordFileParser parser=null;
+		Bootstrap bootstrap=null;
+		LearningCurve learningCurve=null;
+		GroupBy groups=null;
+		EstimatorState state=null;
+		long appended=0;
 		Object estimate=null;
 		try {
-			parser=new PasswordFileParser((String)os.valueOf("i"));
+			parser=new PasswordFileParser(inputs, estimator.supportsAccumulation() || os.has("validate"));
+			if ( os.has("distinct") ) parser.enableDistinctCounting();
+			if ( os.has("group-by") ) {
+				//the labels are dropped when converting to a corpus
+				if ( parser.isCorpus() ) {
+					System.err.println("Corpus files do not contain labels and can not be grouped, use the labelled password file instead.");
+					System.exit(1);
+				}
+				parser.enableLabels();
+			}
 			
 			/*
 			 * 4. Check whether the parsed file is sensible for the chosen estimator 
 			 * and if yes then calculate estimate
 			 */
 			if ( !parser.setPasswordType(estimator.getPasswordType()) ) {
-				System.err.println("Malformatted password file or incompatible estimator choice!");
+				if ( parser.getRejectedFile() != null ) System.err.println("Malformatted password file, incompatible estimator choice or parameters differing from the first password file: "+parser.getRejectedFile());
+				else System.err.println("Malformatted password file or incompatible estimator choice!");
 				System.exit(1);
 			}
-			estimate=estimator.calculateMetric(parser.getPasswords(),parser.getParameters());
+			if ( os.has("validate") ) {
+				//all lines are parsed and the malformed ones are reported instead of calculating an estimate
+				BufferedWriter outWriter=EnEs.createOutputWriter(os);
+				long lines=0;
+				long malformed=0;
+				while ( true ) {
+					try {
+						if ( parser.readPassword() == null ) break;
+					} catch (MalformedPasswordException e) {
+						outWriter.write(e.getMessage()+"\n");
+						malformed++;
+					}
+					lines++;
+				}
+				outWriter.write("Malformed passwords: "+malformed+" of "+lines+"\n");
+				outWriter.close();
+				System.exit(malformed == 0 ? 0 : 1);
+			}
+			if ( os.has("bootstrap") ) {
+				//the distinct passwords are collected and resampled, the estimate stems from the original set
+				bootstrap=new Bootstrap(estimator, parser.getParameters());
+				EnEs.readPasswords(parser, bootstrap);
+				bootstrap.run((Integer)os.valueOf("bootstrap"), seed, new ForkJoinPool());
+				estimate=estimator.calculateMetric(bootstrap.createAccumulator());
+			} else if ( os.has("learning-curve") ) {
+				//the results for all nested subsets are calculated after a single pass over the file
+				double[] checkpoints=LearningCurve.DEFAULT_CHECKPOINTS;
+				//covers unparsable percentages (NumberFormatException) as well as invalid checkpoints
+				try {
+					if ( os.hasArgument("learning-curve") ) checkpoints=LearningCurve.parseCheckpoints((String)os.valueOf("learning-curve"));
+					learningCurve=new LearningCurve(estimator, parser.getParameters(), checkpoints, seed);
+				} catch (IllegalArgumentException e) {
+					System.err.println("Invalid learning curve checkpoints: "+os.valueOf("learning-curve")+" ("+e.getMessage()+")");
+					System.exit(1);
+				}
+				EnEs.readPasswords(parser, learningCurve);
+				estimate=estimator.calculateMetric(learningCurve.calculate());
+			} else if ( os.has("group-by") ) {
+				//one accumulator per label is filled in a single pass, the segments are calculated in parallel afterwards
+				groups=new GroupBy(estimator, parser.getParameters());
+				Object pwd;
+				while ( (pwd=parser.readPassword()) != null ) groups.add(parser.getLabel(), pwd, 1);
+				groups.calculate(new ForkJoinPool());
+				estimate=groups;
+			} else if ( os.has("workers") ) {
+				//the workers save the states of their ranges, which are merged afterwards
+				if ( parser.isCompressed() || parser.isCorpus() ) {
+					System.err.println("Compressed password files and corpus files can not be split among workers.");
+					System.exit(1);
+				}
+				List<String> arguments=new ArrayList<String>();
+				arguments.addAll(Arrays.asList("-m", (String)os.valueOf("m"), "-i", inputs.get(0)));
+				if ( os.has("sketch-size") ) arguments.addAll(Arrays.asList("-sketch-size", os.valueOf("sketch-size").toString()));
+				if ( os.has("policies") ) arguments.addAll(Arrays.asList("-policies", (String)os.valueOf("policies")));
+				String heap=os.has("worker-heap") ? (String)os.valueOf("worker-heap") : ShardCoordinator.DEFAULT_HEAP;
+				ShardCoordinator coordinator=new ShardCoordinator(inputs.get(0), (Integer)os.valueOf("workers"), heap, arguments);
+				List<String> states=coordinator.run(parser.getHeaderOffset());
+				try {
+					EstimatorState merged=EnEs.mergeStates(states, (String)os.valueOf("m"), estimator);
+					if ( os.has("state") ) merged.write((String)os.valueOf("state"), estimator);
+					estimate=estimator.calculateMetric(merged.getAccumulator());
+				} finally {
+					for ( String path : states ) new File(path).delete();
+				}
+			} else if ( os.has("state") ) {
+				//when appending, only the passwords after the previously processed part of the file are read
+				String statePath=(String)os.valueOf("state");
+				AccumulatorI accumulator;
+				long passwords=0;
+				if ( os.has("append") && new File(statePath).exists() ) {
+					try {
+						state=EstimatorState.read(statePath, (String)os.valueOf("m"), estimator);
+					} catch (IOException e) {
+						System.err.println("State file could not be read: "+statePath+" ("+e.getMessage()+")");
+						System.exit(1);
+					}
+					if ( state.getOffset() < 0 ) {
+						System.err.println("Can not append to a merged state file: "+statePath);
+						System.exit(1);
+					}
+					if ( !Arrays.equals(state.getParameters(), parser.getParameters()) ) {
+						System.err.println("The parameters of the password file do not match the state file: "+statePath);
+						System.exit(1);
+					}
+					accumulator=state.getAccumulator();
+					passwords=state.getPasswords();
+					parser.setStartOffset(state.getOffset());
+				} else {
+					accumulator=estimator.createAccumulator(parser.getParameters());
+				}
+				if ( os.has("range") ) {
+					long[] range=EnEs.parseRange((String)os.valueOf("range"));
+					parser.setRange(range[0], range[1]);
+				} else {
+					//an unterminated last line may still be written, it is read by the next append
+					parser.readCompleteLinesOnly();
+				}
+				appended=EnEs.readPasswords(parser, accumulator, estimator, threads);
+				state=new EstimatorState((String)os.valueOf("m"), parser.getParameters(), parser.getOffset(), passwords+appended, accumulator);
+				state.write(statePath, estimator);
+				//a worker only saves the state of its range, the coordinator prints the results
+				if ( os.has("range") ) return;
+				estimate=estimator.calculateMetric(accumulator);
+			} else if ( estimator.supportsAccumulation() ) {
+				//the passwords are streamed one by one, so the file never needs to be held in memory
+				AccumulatorI accumulator=estimator.createAccumulator(parser.getParameters());
+				EnEs.readPasswords(parser, accumulator, estimator, threads);
+				estimate=estimator.calculateMetric(accumulator);
+			} else {
+				estimate=estimator.calculateMetric(parser.getPasswords(),parser.getParameters());
+			}
 			
 		//This catch-blocks are necessary due to the operations in the constructor of PasswordFileParser	
 		} catch (FileNotFoundException e) {
-			System.err.println("File not found: "+os.valueOf("i"));
+			System.err.println("File not found: "+input);
+			System.exit(1);
+		} catch (MalformedPasswordException e) {
+			System.err.println("Malformatted password file: "+input+" ("+e.getMessage()+", use -validate to find all malformed lines)");
 			System.exit(1);
 		} catch (IOException e) {
-			System.err.println("File cloud not be read: "+os.valueOf("i"));
+			System.err.println("File cloud not be read: "+input+" ("+e.getMessage()+")");
 			System.exit(1);
 		}
 		
@@ -151,6 +406,276 @@ public final class EnEs {
 			System.err.println("Whoops, well this is embarrassing... It seems you managed to outwit the parser and the estimator! Please contact the developer with information on how you managed to do this.");
 			System.exit(1);
 		}
+		//binary point files replace the regular output and are written to a channel instead of the writer
+		if ( estimator instanceof ClickPointPatternEstimator && ((ClickPointPatternEstimator)estimator).getFormat() == PointPatternCreator.Format.BINARY ) {
+			WritableByteChannel channel=os.has("o") && os.hasArgument("o") ? new FileOutputStream((String)os.valueOf("o")).getChannel() : Channels.newChannel(System.out);
+			try {
+				((ClickPointPatternEstimator)estimator).writeBinary(channel);
+			} finally {
+				channel.close();
+			}
+			return;
+		}
+		BufferedWriter outWriter=EnEs.createOutputWriter(os);
+		//the learning curve and the grouping replace the regular output, so they can be used for plotting directly
+		if ( learningCurve != null ) {
+			learningCurve.printCSV(outWriter);
+			return;
+		}
+		if ( groups != null ) {
+			groups.printCSV(outWriter);
+			return;
+		}
+		//the estimators close the writer, so the statistics need to be printed first
+		if ( parser.getDistinctCounter() != null ) parser.getDistinctCounter().printStatistics(outWriter);
+		if ( bootstrap != null ) bootstrap.printResult(outWriter);
+		if ( state != null ) {
+			outWriter.write("Passwords in state: "+state.getPasswords()+" (appended: "+appended+")\n");
+			outWriter.write("-------------------------------\n");
+		}
+		if ( os.has("v") ) estimator.verbosePrintResult(outWriter);
+		else estimator.shortPrintRestult(outWriter);
+		
+	}
+	
+	/**
+	 * Merges the state files given as further arguments of the merge command
+	 * and prints the results for the merged state, e.g. to combine the 
+	 * states of the shards of a password set processed on different hosts.
+	 * The method is taken from the first state file unless specified. The 
+	 * merged state is saved if a state file is specified.
+	 * 
+	 * @param os The options
+	 * @throws IOException Is thrown if the output cannot be written
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static void merge(OptionSet os) throws IOException {
+		
+		List<?> files=os.nonOptionArguments().subList(1, os.nonOptionArguments().size());
+		if ( files.isEmpty() ) {
+			System.err.println("No state files specified to merge.");
+			System.exit(1);
+		}
+		
+		List<String> paths=new ArrayList<String>();
+		for ( Object file : files ) paths.add(file.toString());
+		
+		String method=null;
+		try {
+			method=os.has("m") ? (String)os.valueOf("m") : EstimatorState.readMethod(paths.get(0));
+		} catch (IOException e) {
+			System.err.println("State file could not be read: "+paths.get(0)+" ("+e.getMessage()+")");
+			System.exit(1);
+		}
+		MetricEstimatorI estimator=EnEs.checkMethod(method, os);
+		if ( estimator == null || !estimator.supportsState() ) {
+			System.err.println("Invalid estimation method for merging: "+method);
+			System.exit(1);
+		}
+		
+		EstimatorState merged=EnEs.mergeStates(paths, method, estimator);
+		long passwords=merged.getPasswords();
+		if ( os.has("state") ) merged.write((String)os.valueOf("state"), estimator);
+		
+		if ( estimator.calculateMetric(merged.getAccumulator()) == null ) {
+			System.err.println("Calculation failed for the merged state.");
+			System.exit(1);
+		}
+		
+		BufferedWriter outWriter=EnEs.createOutputWriter(os);
+		outWriter.write("Merged state files: "+files.size()+"\n");
+		outWriter.write("Passwords in state: "+passwords+"\n");
+		outWriter.write("-------------------------------\n");
+		if ( os.has("v") ) estimator.verbosePrintResult(outWriter);
+		else estimator.shortPrintRestult(outWriter);
+	}
+	
+	/**
+	 * Converts the password file into a binary corpus file, which can be used
+	 * as password file afterwards without parsing the passwords again. The 
+	 * password type is determined by the method if specified and detected
+	 * from the password file otherwise.
+	 * 
+	 * @param os The options
+	 */
+	private static void convert(OptionSet os) {
+		
+		if ( !os.has("i") || !os.hasArgument("i") ) {
+			System.err.println("No password file specified.");
+			System.exit(1);
+		} else if ( !os.has("o") || !os.hasArgument("o") ) {
+			System.err.println("No corpus file specified.");
+			System.exit(1);
+		}
+		
+		List<Object> values=new ArrayList<Object>(os.valuesOf("i"));
+		values.addAll(os.nonOptionArguments().subList(1, os.nonOptionArguments().size()));
+		List<String> inputs=EnEs.expandInputs(values);
+		String input=inputs.size() == 1 ? inputs.get(0) : inputs.size()+" password files";
+		
+		try {
+			PasswordFileParser parser=new PasswordFileParser(inputs, true);
+			
+			PasswordType type;
+			if ( os.has("m") ) {
+				MetricEstimatorI<?> estimator=EnEs.checkMethod((String)os.valueOf("m"), os);
+				if ( estimator == null ) {
+					System.err.println("Invalid estimation method: "+os.valueOf("m"));
+					System.exit(1);
+				}
+				type=parser.setPasswordType(estimator.getPasswordType()) ? estimator.getPasswordType() : null;
+			} else {
+				type=parser.detectPasswordType();
+			}
+			if ( type == null ) {
+				if ( parser.getRejectedFile() != null ) System.err.println("Malformatted password file, incompatible estimator choice or parameters differing from the first password file: "+parser.getRejectedFile());
+				else System.err.println("Malformatted password file or incompatible estimator choice!");
+				System.exit(1);
+			}
+			
+			long amount=parser.convertToCorpus((String)os.valueOf("o"));
+			System.out.println("Converted passwords: "+amount+" ("+type+")");
+		} catch (FileNotFoundException e) {
+			System.err.println("File not found: "+input);
+			System.exit(1);
+		} catch (MalformedPasswordException e) {
+			System.err.println("Malformatted password file: "+input+" ("+e.getMessage()+", use -validate to find all malformed lines)");
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Corpus could not be written: "+os.valueOf("o")+" ("+e.getMessage()+")");
+			System.exit(1);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Reads state files and merges their accumulators. The merged state does
+	 * not belong to a single password file, so it can not be appended to.
+	 * 
+	 * @param paths The paths to the state files
+	 * @param method The estimation method the states belong to
+	 * @param estimator The estimator restoring the accumulators
+	 * @return The merged state
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static EstimatorState mergeStates(List<String> paths, String method, MetricEstimatorI estimator) {
+		
+		EstimatorState merged=null;
+		long passwords=0;
+		for ( String path : paths ) {
+			try {
+				EstimatorState state=EstimatorState.read(path, method, estimator);
+				if ( merged == null ) {
+					merged=state;
+				} else if ( !Arrays.equals(merged.getParameters(), state.getParameters()) ) {
+					System.err.println("The parameters of the state files do not match: "+path);
+					System.exit(1);
+				} else {
+					merged.getAccumulator().merge(state.getAccumulator());
+				}
+				passwords += state.getPasswords();
+			} catch (IOException e) {
+				System.err.println("State file could not be read: "+path+" ("+e.getMessage()+")");
+				System.exit(1);
+			}
+		}
+		
+		return new EstimatorState(method, merged.getParameters(), -1, passwords, merged.getAccumulator());
+	}
+	
+	/**
+	 * Expands the given password files into the list of files to read. A
+	 * directory stands for the regular files in it, hidden files excluded,
+	 * and a file name containing glob characters (e.g. session-*.txt) for 
+	 * the matching regular files. The files of a directory or a glob are
+	 * sorted by name, so the order does not depend on the file system.
+	 * 
+	 * @param values The password files, directories and globs as given
+	 * @return The paths to the password files
+	 */
+	private static List<String> expandInputs(List<?> values) {
+		
+		List<String> inputs=new ArrayList<String>();
+		for ( Object value : values ) {
+			
+			String input=value.toString();
+			File file=new File(input);
+			String name=file.getName();
+			boolean glob=!file.exists() && (name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0);
+			
+			if ( !glob && !file.isDirectory() ) {
+				if ( !file.exists() ) {
+					System.err.println("File not found: "+input);
+					System.exit(1);
+				}
+				inputs.add(input);
+				continue;
+			}
+			
+			Path dir=glob ? Paths.get(input).toAbsolutePath().getParent() : Paths.get(input);
+			List<String> matches=new ArrayList<String>();
+			try {
+				//a glob in a missing directory matches no files
+				if ( Files.isDirectory(dir) ) {
+					DirectoryStream<Path> stream=glob ? Files.newDirectoryStream(dir, name) : Files.newDirectoryStream(dir);
+					try {
+						for ( Path path : stream ) {
+							if ( Files.isRegularFile(path) && !path.getFileName().toString().startsWith(".") ) matches.add(glob ? new File(file.getParentFile(), path.getFileName().toString()).getPath() : path.toString());
+						}
+					} finally {
+						stream.close();
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Directory could not be read: "+dir+" ("+e.getMessage()+")");
+				System.exit(1);
+			}
+			
+			if ( matches.isEmpty() ) {
+				System.err.println("No password files found: "+input);
+				System.exit(1);
+			}
+			Collections.sort(matches);
+			inputs.addAll(matches);
+		}
+		
+		return inputs;
+	}
+	
+	/**
+	 * Parses the byte range read by a worker
+	 * 
+	 * @param range The range given as start,end
+	 * @return The start and the end offset
+	 */
+	private static long[] parseRange(String range) {
+		
+		String[] bounds=range.split(",");
+		try {
+			if ( bounds.length == 2 ) {
+				long[] res=new long[]{Long.parseLong(bounds[0].trim()), Long.parseLong(bounds[1].trim())};
+				if ( res[0] >= 0 && res[1] >= res[0] ) return res;
+			}
+		} catch (NumberFormatException e) {
+			//handled below
+		}
+		
+		System.err.println("Invalid range: "+range);
+		System.exit(1);
+		return null;
+	}
+	
+	/**
+	 * Creates the writer for the results, which writes to the output file
+	 * if specified and to System.out otherwise
+	 * 
+	 * @param os The options
+	 * @return The writer
+	 */
+	private static BufferedWriter createOutputWriter(OptionSet os) {
+		
 		OutputStreamWriter writer=new OutputStreamWriter(System.out);
 		if ( os.has("o") ) {
 			if ( !os.hasArgument("o") ) System.err.println("No output file specified: falling back to System.out");
@@ -162,9 +687,54 @@ public final class EnEs {
 				}
 			}
 		}
-		if ( os.has("v") ) estimator.verbosePrintResult(new BufferedWriter(writer));
-		else estimator.shortPrintRestult(new BufferedWriter(writer));
 		
+		return new BufferedWriter(writer);
+	}
+	
+	/**
+	 * Streams all passwords from the parser into an accumulator
+	 * 
+	 * @param parser The parser, streaming needs to be enabled
+	 * @param accumulator The accumulator
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if the password file cannot be read
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static long readPasswords(PasswordFileParser parser, AccumulatorI accumulator) throws IOException {
+		long amount=0;
+		Object pwd;
+		while ( (pwd=parser.readPassword()) != null ) {
+			accumulator.add(pwd, 1);
+			amount++;
+		}
+		return amount;
+	}
+	
+	/**
+	 * Reads all passwords from the parser into an accumulator, either one by
+	 * one or in a pipeline. In the pipeline, the passwords are distributed 
+	 * among further accumulators, which are merged into the given one.
+	 * 
+	 * @param parser The parser, streaming needs to be enabled
+	 * @param accumulator The accumulator
+	 * @param estimator The estimator creating the further accumulators
+	 * @param threads The number of parser and accumulator threads of the pipeline, 0 to read one by one
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if the password file cannot be read
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static long readPasswords(PasswordFileParser parser, AccumulatorI accumulator, MetricEstimatorI estimator, int threads) throws IOException {
+		
+		if ( threads == 0 ) return EnEs.readPasswords(parser, accumulator);
+		
+		AccumulatorI[] accumulators=new AccumulatorI[threads];
+		accumulators[0]=accumulator;
+		for ( int i=1; i<threads; i++ ) accumulators[i]=estimator.createAccumulator(parser.getParameters());
+		
+		long amount=parser.readPasswords(accumulators, threads);
+		for ( int i=1; i<threads; i++ ) accumulator.merge(accumulators[i]);
+		
+		return amount;
 	}
 	
 	/**
@@ -172,21 +742,93 @@ public final class EnEs {
 	 * to be added here to be available.
 	 * 
 	 * @param methodArg The specified method
+	 * @param os The options, in case the estimator needs further configuration
 	 * @return If method is valid: estimator object; if not: null
 	 */
-	private static MetricEstimatorI<?> checkMethod(String methodArg) {
+	private static MetricEstimatorI<?> checkMethod(String methodArg, OptionSet os) {
+		
+		int sketchSize=SketchGuessworkEstimator.DEFAULT_SKETCH_SIZE;
+		if ( os.has("sketch-size") ) sketchSize=(Integer)os.valueOf("sketch-size");
+		if ( sketchSize <= 0 ) {
+			System.err.println("Invalid sketch size: "+sketchSize);
+			return null;
+		}
 		
 		if ( methodArg.equalsIgnoreCase("text_entropy" ) ) {
 			return new TextEntropyEstimator();
+		} else if ( methodArg.equalsIgnoreCase("text_entropy_policies" ) ) {
+			if ( !os.has("policies") ) {
+				System.err.println("No policy file specified.");
+				return null;
+			}
+			try {
+				List<PasswordPolicy> policies=PasswordPolicy.readPolicies((String)os.valueOf("policies"));
+				return new TextPolicyEntropyEstimator(policies);
+			} catch (IOException e) {
+				System.err.println("Policy file could not be read: "+e.getMessage());
+			} catch (IllegalArgumentException e) {
+				System.err.println("Malformatted policy file: "+e.getMessage());
+			}
+			return null;
 		} else if ( methodArg.equalsIgnoreCase("gp_click_entropy_dep" ) ) {
 			return new ClickEntropyEstimatorDep();
 		} else if ( methodArg.equalsIgnoreCase("gp_click_entropy_indep" ) ) {
 			return new ClickEntropyEstimatorIndep();
+		} else if ( methodArg.equalsIgnoreCase("gp_click_entropy_cond" ) ) {
+			return new ClickConditionalEntropyEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_click_entropy_kde" ) ) {
+			double bandwidth=os.has("bandwidth") ? (Double)os.valueOf("bandwidth") : 0;
+			if ( bandwidth < 0 || Double.isNaN(bandwidth) || Double.isInfinite(bandwidth) ) {
+				System.err.println("Invalid bandwidth: "+bandwidth);
+				return null;
+			}
+			return new ClickKdeEntropyEstimator(bandwidth);
+		} else if ( methodArg.equalsIgnoreCase("gp_click_mutual_information" ) ) {
+			return new ClickMutualInformationEstimator();
 		} else if ( methodArg.equalsIgnoreCase("gp_click_guesswork" ) ) {
 			return new ClickAlphaGuessworkEstimator();
-		} /*else if ( methodArg.equalsIgnoreCase("gp_chiasson_spatial" ) ) {
+		} else if ( methodArg.equalsIgnoreCase("text_guesswork_sketch" ) ) {
+			return new TextSketchGuessworkEstimator(sketchSize);
+		} else if ( methodArg.equalsIgnoreCase("gp_click_guesswork_sketch" ) ) {
+			return new ClickSketchGuessworkEstimator(sketchSize);
+		} else if ( methodArg.equalsIgnoreCase("gp_click_images_entropy" ) ) {
+			return new ClickImageEntropyEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_click_images_guesswork" ) ) {
+			return new ClickImageGuessworkEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_cognometric_entropy" ) ) {
+			return new CognometricGroupedEntropyEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_cognometric_guesswork" ) ) {
+			return new CognometricGuessworkEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_cognometric_mutual_information" ) ) {
+			return new CognometricMutualInformationEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_click_spatial" ) ) {
+			return new ClickSpatialEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_click_point_pattern" ) ) {
+			String format=os.has("point-format") ? (String)os.valueOf("point-format") : "r";
+			try {
+				return new ClickPointPatternEstimator(PointPatternCreator.Format.valueOf(format.toUpperCase()));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Invalid point format: "+format);
+				return null;
+			}
+		} else if ( methodArg.equalsIgnoreCase("gp_click_attack" ) ) {
+			int training=os.has("training") ? (Integer)os.valueOf("training") : ClickAttackEstimator.DEFAULT_TRAINING_PERCENTAGE;
+			if ( training <= 0 || training >= 100 ) {
+				System.err.println("Invalid training percentage: "+training);
+				return null;
+			}
+			long guesses=os.has("guesses") ? (Long)os.valueOf("guesses") : ClickAttackEstimator.DEFAULT_GUESSES;
+			if ( guesses <= 0 ) {
+				System.err.println("Invalid number of guesses: "+guesses);
+				return null;
+			}
+			long seed=os.has("seed") ? (Long)os.valueOf("seed") : new Random().nextLong();
+			return new ClickAttackEstimator(training, seed, guesses);
+		} else if ( methodArg.equalsIgnoreCase("gp_click_collisions" ) ) {
+			return new ClickCollisionEstimator();
+		} else if ( methodArg.equalsIgnoreCase("gp_chiasson_spatial" ) ) {
 			return new ChiassonEstimator();
-		} */else return null;
+		} else return null;
 		
 	}
 	
@@ -194,15 +836,52 @@ public final class EnEs {
 	 * Print a short summary of the needed and optional arguments
 	 */
 	private static void printHelp() {
-		System.out.println("USAGE: java -jar enes.jar -m <estimation method> -i <password file> [-o <output file>] [-v]");
+		System.out.println("USAGE: java -jar enes.jar -m <estimation method> -i <password file> [<password file> ...] [-o <output file>] [-v] [-sketch-size <size>] [-distinct] [-bootstrap <replicates> | -learning-curve [<percentages>]] [-seed <seed>] [-policies <policy file>] [-group-by] [-state <state file> [-append]] [-workers <workers> [-worker-heap <size>] | -pipeline [<threads>]] [-validate] [-point-format <r|csv|binary>] [-training <percentage>] [-guesses <guesses>] [-bandwidth <pixels>]");
+		System.out.println("       java -jar enes.jar convert [-m <estimation method>] -i <password file> [<password file> ...] -o <corpus file>");
+		System.out.println("       java -jar enes.jar merge [-m <estimation method>] [-o <output file>] [-v] [-policies <policy file>] [-state <merged state file>] <state file> <state file> ...");
 		System.out.println("-m Estimation method to use. Available stable methods:");
 		System.out.println("   * text_entropy");
+		System.out.println("   * text_entropy_policies");
+		System.out.println("   * text_guesswork_sketch");
 		System.out.println("   * gp_click_entropy_dep");
 		System.out.println("   * gp_click_entropy_indep");
+		System.out.println("   * gp_click_entropy_cond");
+		System.out.println("   * gp_click_entropy_kde");
+		System.out.println("   * gp_click_mutual_information");
 		System.out.println("   * gp_click_guesswork");
-		System.out.println("-i Path to password file");
+		System.out.println("   * gp_click_guesswork_sketch");
+		System.out.println("   * gp_click_images_entropy");
+		System.out.println("   * gp_click_images_guesswork");
+		System.out.println("   * gp_cognometric_entropy");
+		System.out.println("   * gp_cognometric_guesswork");
+		System.out.println("   * gp_cognometric_mutual_information");
+		System.out.println("   * gp_click_spatial");
+		System.out.println("   * gp_click_point_pattern");
+		System.out.println("   * gp_click_attack");
+		System.out.println("   * gp_click_collisions");
+		System.out.println("   * gp_chiasson_spatial");
+		System.out.println("-i Path to password file, may be compressed with gzip or xz. Several files, directories or globs (e.g. 'sessions/*.txt') are read concurrently as one password set, all files need the same type and parameters");
 		System.out.println("-o Path to output file (optional)");
+		System.out.println("-distinct Count the distinct passwords and print the statistics before the results (optional, not available for learning curves and grouping)");
+		System.out.println("-bootstrap Print bootstrap confidence intervals for all results before the results (optional, available for text_entropy, text_entropy_policies, gp_click_entropy_dep, gp_click_entropy_indep and gp_click_guesswork)");
+		System.out.println("-learning-curve Print the results for nested random subsets as CSV instead of the regular output (optional, comma separated percentages, default: 1,5,10,20,...,100)");
+		System.out.println("-policies Path to the policy file for text_entropy_policies, one policy per line, e.g. 'comprehensive8 length>=8 digits>=1 symbols>=1 upper>=1 lower>=1 blocklist=<file>'");
+		System.out.println("-group-by Each password line starts with a label followed by a tab, print the results for each label as CSV instead of the regular output (optional, same methods as -bootstrap)");
+		System.out.println("-state Save the accumulated state to the state file after reading the password file (optional, not available for the bootstrap, learning curves and grouping)");
+		System.out.println("-append Restore the state from the state file and only read the passwords appended to the password file since (optional, requires -state)");
+		System.out.println("-workers Split the password file into ranges and read each range in a separate JVM, the states of the ranges are merged afterwards (optional, same methods as -state, not available for -distinct)");
+		System.out.println("-worker-heap Maximum heap size of each worker JVM (optional, default: "+ShardCoordinator.DEFAULT_HEAP+")");
+		System.out.println("-pipeline Read, parse and accumulate the passwords concurrently with the number of parser and accumulator threads each (optional, default: half the number of processors, not available for the bootstrap, learning curves, grouping and workers)");
+		System.out.println("-validate Parse all passwords and print the malformed lines with their line numbers instead of the results (optional)");
+		System.out.println("-point-format Format of the click-points exported by gp_click_point_pattern: r (ppp objects for spatstat), csv or binary (optional, default: r)");
+		System.out.println("-training Percentage of the passwords gp_click_attack learns the hotspots from, the others are attacked (optional, default: "+ClickAttackEstimator.DEFAULT_TRAINING_PERCENTAGE+")");
+		System.out.println("-guesses Maximum number of guesses of gp_click_attack (optional, default: "+ClickAttackEstimator.DEFAULT_GUESSES+")");
+		System.out.println("-bandwidth Bandwidth of the Gaussian kernel of gp_click_entropy_kde in pixels (optional, default: Scott's rule for each click-point)");
+		System.out.println("-seed Seed for the random resampling and the split of gp_click_attack (optional, default: random seed)");
+		System.out.println("-sketch-size Number of passwords monitored by the *_sketch methods (optional, default: "+SketchGuessworkEstimator.DEFAULT_SKETCH_SIZE+")");
 		System.out.println("-v Enable verbose output (optional, default: print overall entropy estimate only)");
+		System.out.println("convert Convert the password file into a binary corpus file written to the output file, which can be used as password file without parsing");
+		System.out.println("merge Merge the state files, e.g. of the shards of a password set, and print the results for the merged state");
 		System.out.println("-h Print this help text");
 		System.out.println("-l Print the license information");
 	}
@@ -0,0 +1,185 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class processes a password file with several worker JVMs on the
+ * local machine, so each JVM only needs a small heap. The passwords of the
+ * file are split at line boundaries into byte ranges of about the same
+ * size. For each range a worker is started, which runs EnEs on its range
+ * only and saves the accumulated state to a temporary state file. The
+ * state files are merged afterwards.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class ShardCoordinator {
+
+	/**
+	 * The default maximum heap size of each worker
+	 */
+	static final String DEFAULT_HEAP="256m";
+
+	/**
+	 * The path to the password file
+	 */
+	private final String filePath;
+
+	/**
+	 * The number of workers
+	 */
+	private final int workers;
+
+	/**
+	 * The maximum heap size of each worker, e.g. 256m
+	 */
+	private final String heap;
+
+	/**
+	 * The arguments passed to each worker, i.e. the method and its options
+	 */
+	private final List<String> arguments;
+
+	/**
+	 * Creates a new coordinator
+	 *
+	 * @param filePath The path to the password file
+	 * @param workers The number of workers
+	 * @param heap The maximum heap size of each worker
+	 * @param arguments The arguments passed to each worker
+	 */
+	ShardCoordinator(String filePath, int workers, String heap, List<String> arguments) {
+		this.filePath=filePath;
+		this.workers=workers;
+		this.heap=heap;
+		this.arguments=arguments;
+	}
+
+	/**
+	 * Runs the workers and waits for them to finish
+	 *
+	 * @param headerOffset The offset of the first password in the file
+	 * @return The paths to the state files of the workers, which should be deleted after use
+	 * @throws IOException Is thrown if the file cannot be read, a worker fails or the waiting is interrupted
+	 */
+	List<String> run(long headerOffset) throws IOException {
+
+		long[] boundaries=getBoundaries(this.filePath, headerOffset, this.workers);
+
+		String java=System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+		String classPath=System.getProperty("java.class.path");
+
+		List<String> states=new ArrayList<String>();
+		List<Process> processes=new ArrayList<Process>();
+		boolean completed=false;
+		try {
+			for ( int i=0; i<boundaries.length-1; i++ ) {
+
+				//empty ranges occur if there are fewer lines than workers
+				if ( boundaries[i] == boundaries[i+1] ) continue;
+
+				File state=File.createTempFile("enes-worker", ".state");
+				states.add(state.getPath());
+
+				List<String> command=new ArrayList<String>();
+				command.add(java);
+				command.add("-Xmx"+this.heap);
+				command.add("-cp");
+				command.add(classPath);
+				command.add(EnEs.class.getName());
+				command.addAll(this.arguments);
+				command.add("-range");
+				command.add(boundaries[i]+","+boundaries[i+1]);
+				command.add("-state");
+				command.add(state.getPath());
+
+				ProcessBuilder builder=new ProcessBuilder(command);
+				builder.redirectOutput(Redirect.INHERIT);
+				builder.redirectError(Redirect.INHERIT);
+				processes.add(builder.start());
+			}
+
+			for ( int i=0; i<processes.size(); i++ ) {
+				int exitCode=processes.get(i).waitFor();
+				if ( exitCode != 0 ) throw new IOException("Worker "+(i+1)+" failed with exit code "+exitCode);
+			}
+			completed=true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the workers");
+		} finally {
+			//the remaining workers are stopped and no partial state files are left behind
+			if ( !completed ) {
+				for ( Process p : processes ) p.destroy();
+				for ( String state : states ) new File(state).delete();
+			}
+		}
+
+		return states;
+	}
+
+	/**
+	 * Splits the part of a file after an offset into ranges of about the
+	 * same size. Each boundary is moved to the beginning of the next line.
+	 *
+	 * @param filePath The path to the file
+	 * @param start The offset the first range begins at
+	 * @param parts The number of ranges
+	 * @return The boundaries of the ranges, i.e. parts+1 offsets starting with start and ending with the file size
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	static long[] getBoundaries(String filePath, long start, int parts) throws IOException {
+
+		long[] boundaries=new long[parts+1];
+
+		RandomAccessFile file=new RandomAccessFile(filePath, "r");
+		try {
+			long size=file.length();
+			boundaries[0]=start;
+			boundaries[parts]=size;
+
+			for ( int i=1; i<parts; i++ ) {
+
+				long position=Math.max(start+(size-start)*i/parts, boundaries[i-1]);
+
+				//the boundary lies directly after the next line break
+				if ( position > start ) {
+					file.seek(position-1);
+					int b;
+					while ( (b=file.read()) != -1 && b != '\n' ) position++;
+					position=Math.min(position, size);
+				}
+
+				boundaries[i]=position;
+			}
+		} finally {
+			file.close();
+		}
+
+		return boundaries;
+	}
+
+}
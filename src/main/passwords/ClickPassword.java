@@ -19,6 +19,7 @@
 package main.passwords;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -44,6 +45,17 @@ public class ClickPassword {
 		this.coordinates.add(new int[]{x,y});
 	}
 
+	/**
+	 * Adds a click-point on one of several images to the password
+	 * 
+	 * @param x The x-coordinate of the click-point
+	 * @param y The y-coordinate of the click-point
+	 * @param image The id of the image the click-point lies on
+	 */
+	public void addClickPoint(int x, int y, int image) {
+		this.coordinates.add(new int[]{x,y,image});
+	}
+
 	/**
 	 * Adds a click-point to the password
 	 * 
@@ -63,6 +75,17 @@ public class ClickPassword {
 		return this.coordinates.get(index);
 	}
 
+	/**
+	 * Retrieves the image a click-point lies on
+	 * 
+	 * @param index The index of the click-point in the password
+	 * @return The id of the image or 0 if the password uses a single image
+	 */
+	public int getImage(int index) {
+		int[] cp=this.coordinates.get(index);
+		return cp.length > 2 ? cp[2] : 0;
+	}
+
 	/**
 	 * Retrieves the overall number of click-points in the password
 	 * 
@@ -72,6 +95,37 @@ public class ClickPassword {
 		return this.coordinates.size();
 	}
 
+	/**
+	 * Two passwords are equal if they consist of the same click-points in the
+	 * same order
+	 */
+	@Override
+	public boolean equals(Object o) {
+		
+		if ( !(o instanceof ClickPassword) ) return false;
+		
+		ClickPassword other=(ClickPassword)o;
+		if ( other.length() != this.length() ) return false;
+		
+		for ( int i=0; i<this.length(); i++ ) {
+			if ( !Arrays.equals(this.getClickPoint(i), other.getClickPoint(i)) ) return false;
+		}
+		
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		
+		int hash=1;
+		
+		for ( int[] cp : this.coordinates ) {
+			hash = 31*hash + Arrays.hashCode(cp);
+		}
+		
+		return hash;
+	}
+
 	/**
 	 * Calculates the maximum length of all passwords in an array
 	 * 
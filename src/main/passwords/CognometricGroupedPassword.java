@@ -18,7 +18,7 @@
  *=========================================================================*/
 package main.passwords;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -26,25 +26,58 @@ import java.util.List;
  * that are grouped. A typical authentication scheme utilizing such passwords
  * is Passfaces, where each grid represents one group. Each element in the
  * password is comprised of two numbers, the first indicating the group's id
- * and the second indicating the id in the group.   
+ * and the second indicating the id in the group.
+ * 
+ * The ids are packed as unsigned shorts into a single array, so a password
+ * needs a few bytes instead of an object per element. Thus, ids up to 
+ * MAX_ID are supported.
  * 
  * @author Peter Mayer | peter.mayer@cased.de
  */
 public class CognometricGroupedPassword {
 
 	/**
-	 * Where all the password elements are stored
+	 * The largest supported group or element id
+	 */
+	public static final int MAX_ID=0xFFFF;
+	
+	/**
+	 * The group and element ids of all elements, interleaved
 	 */
-	private ArrayList<int[]> elements=new ArrayList<int[]>();
+	private short[] ids=new short[8];
+	
+	/**
+	 * The number of elements
+	 */
+	private int length=0;
 	
 	/**
 	 * Adds an element to this password
 	 * 
-	 * @param groupID The id of the group the password belongs to
+	 * @param groupID The id of the group the element belongs to
 	 * @param elementID The id of the element in the group
+	 * @throws IllegalArgumentException Is thrown if an id is negative or larger than MAX_ID
+	 */
+	public void addElement(int groupID, int elementID) {
+		
+		if ( groupID < 0 || groupID > MAX_ID || elementID < 0 || elementID > MAX_ID ) {
+			throw new IllegalArgumentException("Invalid element: "+groupID+","+elementID);
+		}
+		
+		if ( 2*this.length == this.ids.length ) this.ids=Arrays.copyOf(this.ids, 2*this.ids.length);
+		this.ids[2*this.length]=(short)groupID;
+		this.ids[2*this.length+1]=(short)elementID;
+		this.length++;
+	}
+	
+	/**
+	 * Adds an element to this password
+	 * 
+	 * @param element The element in the form [group id, element id]
+	 * @throws IllegalArgumentException Is thrown if an id is negative or larger than MAX_ID
 	 */
 	public void addElement(int[] element) {
-		this.elements.add(element);
+		this.addElement(element[0], element[1]);
 	}
 	
 	/**
@@ -52,13 +85,33 @@ public class CognometricGroupedPassword {
 	 * out of bounds.
 	 * 
 	 * @param index The index of the desired element
-	 * @return The respective element
+	 * @return The respective element in the form [group id, element id]
 	 */
 	public int[] getElement(int index) {
 		
-		if ( this.elements.size()<index || index<0 ) return null;
+		if ( index >= this.length || index<0 ) return null;
 		
-		return this.elements.get(index);
+		return new int[]{this.getGroupID(index), this.getElementID(index)};
+	}
+	
+	/**
+	 * Returns the group id of the indexth element without creating an array
+	 * 
+	 * @param index The index of the element
+	 * @return The id of the group
+	 */
+	public int getGroupID(int index) {
+		return this.ids[2*index] & MAX_ID;
+	}
+	
+	/**
+	 * Returns the id in the group of the indexth element without creating an array
+	 * 
+	 * @param index The index of the element
+	 * @return The id of the element in the group
+	 */
+	public int getElementID(int index) {
+		return this.ids[2*index+1] & MAX_ID;
 	}
 	
 	/**
@@ -67,7 +120,38 @@ public class CognometricGroupedPassword {
 	 * @return the length of this password
 	 */
 	public int length() {
-		return this.elements.size();
+		return this.length;
+	}
+
+	/**
+	 * Two passwords are equal if they consist of the same elements in the
+	 * same order
+	 */
+	@Override
+	public boolean equals(Object o) {
+		
+		if ( !(o instanceof CognometricGroupedPassword) ) return false;
+		
+		CognometricGroupedPassword other=(CognometricGroupedPassword)o;
+		if ( other.length != this.length ) return false;
+		
+		for ( int i=0; i<2*this.length; i++ ) {
+			if ( this.ids[i] != other.ids[i] ) return false;
+		}
+		
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		
+		int hash=1;
+		
+		for ( int i=0; i<2*this.length; i++ ) {
+			hash = 31*hash + this.ids[i];
+		}
+		
+		return hash;
 	}
 
 	/**
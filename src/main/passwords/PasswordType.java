@@ -37,6 +37,11 @@ public enum PasswordType {
 	 */
 	GRAPHICAL_CLICK,
 	
+	/*
+	 * The type for graphical click-based passwords with a different image for each click-point (as used in e.g. CCP and PCCP)
+	 */
+	GRAPHICAL_CLICK_IMAGES,
+	
 	/*
 	 * The type for recognition-based graphical passwords which are semantically grouped (as used in e.g. Passfaces)
 	 */
@@ -0,0 +1,527 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package parsing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.AccumulatorI;
+import estimators.sketch.DistinctCounter;
+
+/**
+ * This class provides the binary columnar corpus format of EnEs, so a
+ * password file only needs to be parsed once. The corpus is mapped into
+ * memory per FileChannel.map, so it is available instantly and its columns
+ * are not copied to the heap. The passwords are created from the columns
+ * when they are read.
+ * <br>
+ * The corpus starts with a header containing a magic number, the format
+ * version, the length of the header, the password type, the parameters,
+ * the number of passwords and the lengths of the columns. The columns
+ * follow the header, each starting at a multiple of 8 bytes:
+ * <ul>
+ * <li>Text passwords: the offsets of the passwords in the arena (n+1 longs)
+ * and the arena containing the UTF-8 encoded passwords.</li>
+ * <li>Graphical click-based passwords: the offsets of the passwords in the
+ * coordinate columns (n+1 longs), the x-coordinates and the y-coordinates
+ * of all click-points (ints).</li>
+ * </ul>
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class BinaryCorpus {
+
+	/**
+	 * The magic number identifying corpus files ("EnEC")
+	 */
+	private static final int MAGIC=0x456E4543;
+
+	/**
+	 * The version of the corpus format
+	 */
+	static final int VERSION=1;
+
+	/**
+	 * The encoding of text passwords
+	 */
+	private static final Charset UTF8=Charset.forName("UTF-8");
+
+	/**
+	 * The number of passwords per batch offered to the distinct counter
+	 */
+	private static final int BATCH_SIZE=1<<12;
+
+	/**
+	 * The password type
+	 */
+	private final PasswordType type;
+
+	/**
+	 * The parameters as provided by the delegate parser
+	 */
+	private final int[] parameters;
+
+	/**
+	 * The number of passwords
+	 */
+	private final long size;
+
+	/**
+	 * The offsets of the passwords in the arena or the coordinate columns
+	 */
+	private final MappedColumn offsets;
+
+	/**
+	 * The arena of text passwords or the x-coordinates of click passwords
+	 */
+	private final MappedColumn first;
+
+	/**
+	 * The y-coordinates of click passwords, null for text passwords
+	 */
+	private final MappedColumn second;
+
+	/**
+	 * Maps a corpus file into memory
+	 *
+	 * @param filePath The path to the corpus file
+	 * @throws IOException Is thrown if the file cannot be read or is malformed
+	 */
+	BinaryCorpus(String filePath) throws IOException {
+
+		RandomAccessFile file=new RandomAccessFile(filePath, "r");
+		try {
+			if ( file.readInt() != MAGIC ) throw new IOException("Not a corpus file: "+filePath);
+			int version=file.readInt();
+			if ( version != VERSION ) throw new IOException("Unsupported corpus version: "+version);
+			int headerLength=file.readInt();
+
+			this.type=PasswordType.valueOf(file.readUTF());
+			this.parameters=new int[file.readInt()];
+			for ( int i=0; i<this.parameters.length; i++ ) this.parameters[i]=file.readInt();
+			this.size=file.readLong();
+			long[] lengths=new long[file.readInt()];
+			for ( int i=0; i<lengths.length; i++ ) lengths[i]=file.readLong();
+
+			if ( lengths.length != columnCount(this.type) ) throw new IOException("Malformed corpus file: "+filePath);
+
+			FileChannel channel=file.getChannel();
+			long position=headerLength;
+			MappedColumn[] columns=new MappedColumn[lengths.length];
+			for ( int i=0; i<lengths.length; i++ ) {
+				if ( position+lengths[i] > channel.size() ) throw new IOException("Truncated corpus file: "+filePath);
+				columns[i]=new MappedColumn(channel, position, lengths[i]);
+				position=align(position+lengths[i]);
+			}
+			this.offsets=columns[0];
+			this.first=columns[1];
+			this.second=columns.length > 2 ? columns[2] : null;
+
+			if ( this.offsets.length() != 8*(this.size+1) ) throw new IOException("Malformed corpus file: "+filePath);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed corpus file: "+filePath);
+		} finally {
+			//the mappings stay valid after closing the file
+			file.close();
+		}
+	}
+
+	/**
+	 * Checks whether a file is a corpus file
+	 *
+	 * @param filePath The path to the file
+	 * @return Whether the file starts with the magic number of corpus files
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	static boolean isCorpus(String filePath) throws IOException {
+
+		FileInputStream file=new FileInputStream(filePath);
+		try {
+			ByteBuffer magic=ByteBuffer.allocate(4);
+			while ( magic.hasRemaining() && file.getChannel().read(magic) >= 0 );
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the number of columns of a password type
+	 *
+	 * @param type The password type
+	 * @return The number of columns
+	 * @throws IllegalArgumentException Is thrown if the type is not supported by the format
+	 */
+	private static int columnCount(PasswordType type) {
+		switch ( type ) {
+		case TEXT:
+			return 2;
+		case GRAPHICAL_CLICK:
+			return 3;
+		default:
+			throw new IllegalArgumentException("Password type not supported by the corpus format: "+type);
+		}
+	}
+
+	/**
+	 * Rounds a position up to the next multiple of 8
+	 *
+	 * @param position The position
+	 * @return The aligned position
+	 */
+	private static long align(long position) {
+		return (position+7) & ~7L;
+	}
+
+	/**
+	 * @return The password type
+	 */
+	PasswordType getPasswordType() {
+		return this.type;
+	}
+
+	/**
+	 * @return The parameters as provided by the delegate parser
+	 */
+	int[] getParameters() {
+		return this.parameters;
+	}
+
+	/**
+	 * @return The number of passwords
+	 */
+	long size() {
+		return this.size;
+	}
+
+	/**
+	 * Creates a password from the columns
+	 *
+	 * @param index The index of the password
+	 * @return The password as created by the delegate parser
+	 */
+	Object getPassword(long index) {
+
+		long start=this.offsets.getLong(index);
+		long end=this.offsets.getLong(index+1);
+
+		if ( this.type == PasswordType.TEXT ) {
+			return new String(this.first.getBytes(start, (int)(end-start)), UTF8);
+		}
+
+		ClickPassword pw=new ClickPassword();
+		for ( long i=start; i<end; i++ ) pw.addClickPoint(this.first.getInt(i), this.second.getInt(i));
+		return pw;
+	}
+
+	/**
+	 * Renders the first passwords as lines of a password file, so the type
+	 * heuristics of the delegate parsers can be applied to the corpus
+	 *
+	 * @param maxLines The maximum number of lines
+	 * @return The lines
+	 */
+	List<String> getFirstLines(int maxLines) {
+
+		List<String> lines=new ArrayList<String>();
+
+		if ( this.type == PasswordType.GRAPHICAL_CLICK ) {
+			StringBuilder sb=new StringBuilder();
+			for ( int p : this.parameters ) sb.append(sb.length() == 0 ? "" : ",").append(p);
+			lines.add(sb.toString());
+		}
+
+		for ( long i=0; i<this.size && lines.size() < maxLines; i++ ) {
+			Object pwd=this.getPassword(i);
+			if ( pwd instanceof String ) {
+				lines.add((String)pwd);
+				continue;
+			}
+			ClickPassword cpw=(ClickPassword)pwd;
+			StringBuilder sb=new StringBuilder();
+			for ( int j=0; j<cpw.length(); j++ ) {
+				sb.append(j == 0 ? "" : ";").append(cpw.getClickPoint(j)[0]).append(",").append(cpw.getClickPoint(j)[1]);
+			}
+			lines.add(sb.toString());
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Adds all passwords to the accumulators, each accumulator is filled
+	 * with a contiguous part of the corpus in its own thread
+	 *
+	 * @param p The delegate parser, needed for counting the distinct passwords
+	 * @param distinctCounter The counter for distinct passwords or null
+	 * @param accumulators The accumulators
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if reading is interrupted
+	 */
+	<E> long read(final PasswordFileParserI<E> p, final DistinctCounter distinctCounter, AccumulatorI<E>[] accumulators) throws IOException {
+
+		ExecutorService executor=Executors.newFixedThreadPool(accumulators.length);
+		List<Future<Long>> parts=new ArrayList<Future<Long>>();
+
+		for ( int t=0; t<accumulators.length; t++ ) {
+			final AccumulatorI<E> accumulator=accumulators[t];
+			final long from=this.size*t/accumulators.length;
+			final long to=this.size*(t+1)/accumulators.length;
+			parts.add(executor.submit(new Callable<Long>() {
+				@Override
+				@SuppressWarnings("unchecked")
+				public Long call() {
+					long[] hashes=new long[BATCH_SIZE];
+					int n=0;
+					for ( long i=from; i<to; i++ ) {
+						E pwd=(E)BinaryCorpus.this.getPassword(i);
+						accumulator.add(pwd, 1);
+						if ( distinctCounter == null ) continue;
+						hashes[n++]=p.hashPassword(pwd);
+						if ( n == BATCH_SIZE || i == to-1 ) {
+							synchronized ( distinctCounter ) {
+								for ( int j=0; j<n; j++ ) distinctCounter.offer(hashes[j]);
+							}
+							n=0;
+						}
+					}
+					return to-from;
+				}
+			}));
+		}
+
+		long amount=0;
+		try {
+			for ( Future<Long> part : parts ) amount += part.get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while reading the corpus");
+		} catch (ExecutionException e) {
+			if ( e.getCause() instanceof RuntimeException ) throw (RuntimeException)e.getCause();
+			if ( e.getCause() instanceof Error ) throw (Error)e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return amount;
+	}
+
+	/**
+	 * Converts a password file into a corpus file. The columns are written
+	 * to temporary files first and appended to the header afterwards.
+	 *
+	 * @param parser The parser of the password file, streaming needs to be enabled and the type needs to be set
+	 * @param type The password type
+	 * @param filePath The path to the corpus file
+	 * @return The number of passwords converted
+	 * @throws IOException Is thrown if a file cannot be read or written
+	 * @throws IllegalArgumentException Is thrown if the type is not supported by the format
+	 */
+	static long write(PasswordFileParser parser, PasswordType type, String filePath) throws IOException {
+
+		File[] temp=new File[columnCount(type)];
+		DataOutputStream[] columns=new DataOutputStream[temp.length];
+		try {
+			for ( int i=0; i<temp.length; i++ ) {
+				temp[i]=File.createTempFile("enes-column", ".bin");
+				columns[i]=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp[i]), 1<<16));
+			}
+
+			long amount=0;
+			long offset=0;
+			columns[0].writeLong(offset);
+			Object pwd;
+			while ( (pwd=parser.readPassword()) != null ) {
+				if ( type == PasswordType.TEXT ) {
+					byte[] bytes=((String)pwd).getBytes(UTF8);
+					columns[1].write(bytes);
+					offset += bytes.length;
+				} else {
+					ClickPassword cpw=(ClickPassword)pwd;
+					for ( int j=0; j<cpw.length(); j++ ) {
+						columns[1].writeInt(cpw.getClickPoint(j)[0]);
+						columns[2].writeInt(cpw.getClickPoint(j)[1]);
+					}
+					offset += cpw.length();
+				}
+				columns[0].writeLong(offset);
+				amount++;
+			}
+			for ( DataOutputStream column : columns ) column.close();
+
+			//the header is padded, so the first column is aligned
+			ByteArrayOutputStream headerBytes=new ByteArrayOutputStream();
+			DataOutputStream header=new DataOutputStream(headerBytes);
+			header.writeUTF(type.name());
+			int[] parameters=parser.getParameters();
+			header.writeInt(parameters.length);
+			for ( int p : parameters ) header.writeInt(p);
+			header.writeLong(amount);
+			header.writeInt(temp.length);
+			for ( File column : temp ) header.writeLong(column.length());
+			header.close();
+			int headerLength=(int)align(12+headerBytes.size());
+
+			File file=new File(filePath);
+			File tempFile=new File(filePath+".tmp");
+			RandomAccessFile out=new RandomAccessFile(tempFile, "rw");
+			try {
+				out.setLength(0);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(headerLength);
+				out.write(headerBytes.toByteArray());
+
+				FileChannel channel=out.getChannel();
+				long position=headerLength;
+				for ( File column : temp ) {
+					FileInputStream in=new FileInputStream(column);
+					try {
+						FileChannel source=in.getChannel();
+						long transferred=0;
+						while ( transferred < source.size() ) transferred += source.transferTo(transferred, source.size()-transferred, channel.position(position+transferred));
+					} finally {
+						in.close();
+					}
+					position=align(position+column.length());
+				}
+				out.setLength(position);
+			} finally {
+				out.close();
+			}
+
+			if ( file.exists() && !file.delete() ) throw new IOException("Could not replace "+filePath);
+			if ( !tempFile.renameTo(file) ) throw new IOException("Could not rename "+tempFile.getPath());
+
+			return amount;
+		} finally {
+			for ( int i=0; i<temp.length; i++ ) {
+				if ( columns[i] != null ) columns[i].close();
+				if ( temp[i] != null ) temp[i].delete();
+			}
+		}
+	}
+
+	/**
+	 * A column of a corpus file mapped into memory. Since a single mapping
+	 * is limited to 2 GB, larger columns are mapped in several segments.
+	 */
+	private static class MappedColumn {
+
+		/**
+		 * The size of the segments, a multiple of the sizes of all elements
+		 */
+		private static final int SEGMENT_SIZE=1<<30;
+
+		/**
+		 * The mapped segments
+		 */
+		private final MappedByteBuffer[] segments;
+
+		/**
+		 * The length of the column in bytes
+		 */
+		private final long length;
+
+		/**
+		 * Maps a column
+		 *
+		 * @param channel The channel of the corpus file
+		 * @param position The position of the column in the file
+		 * @param length The length of the column in bytes
+		 * @throws IOException Is thrown if the column cannot be mapped
+		 */
+		MappedColumn(FileChannel channel, long position, long length) throws IOException {
+			this.length=length;
+			this.segments=new MappedByteBuffer[(int)((length+SEGMENT_SIZE-1)/SEGMENT_SIZE)];
+			for ( int i=0; i<this.segments.length; i++ ) {
+				long start=(long)i*SEGMENT_SIZE;
+				this.segments[i]=channel.map(FileChannel.MapMode.READ_ONLY, position+start, Math.min(SEGMENT_SIZE, length-start));
+			}
+		}
+
+		/**
+		 * @return The length of the column in bytes
+		 */
+		long length() {
+			return this.length;
+		}
+
+		/**
+		 * @param index The index of the element
+		 * @return The int element at the index
+		 */
+		int getInt(long index) {
+			long position=4*index;
+			return this.segments[(int)(position/SEGMENT_SIZE)].getInt((int)(position%SEGMENT_SIZE));
+		}
+
+		/**
+		 * @param index The index of the element
+		 * @return The long element at the index
+		 */
+		long getLong(long index) {
+			long position=8*index;
+			return this.segments[(int)(position/SEGMENT_SIZE)].getLong((int)(position%SEGMENT_SIZE));
+		}
+
+		/**
+		 * Copies bytes from the column, which may span several segments
+		 *
+		 * @param position The position of the first byte
+		 * @param amount The number of bytes
+		 * @return The bytes
+		 */
+		byte[] getBytes(long position, int amount) {
+			byte[] b=new byte[amount];
+			int n=0;
+			while ( n < amount ) {
+				//the mapping is shared between threads, so it is accessed by absolute positions only
+				ByteBuffer segment=this.segments[(int)((position+n)/SEGMENT_SIZE)].duplicate();
+				segment.position((int)((position+n)%SEGMENT_SIZE));
+				int chunk=Math.min(amount-n, segment.remaining());
+				segment.get(b, n, chunk);
+				n += chunk;
+			}
+			return b;
+		}
+
+	}
+
+}
@@ -0,0 +1,532 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package parsing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * This class provides the decompression of compressed password files, so
+ * they can be streamed without decompressing them to disk beforehand. The
+ * format is recognized by the magic number at the beginning of the file:
+ * <ul>
+ * <li>gzip files (including files with several members) are inflated
+ * sequentially, except for block gzip (BGZF) files as written by bgzip,
+ * whose blocks are inflated in parallel.</li>
+ * <li>xz files are decompressed by the xz tool, which needs to be
+ * installed, since Java does not provide xz decompression.</li>
+ * </ul>
+ * Offsets into compressed files are not meaningful, so they can only be
+ * read from the beginning.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class CompressedInput {
+
+	/**
+	 * The supported formats
+	 */
+	enum Format { NONE, GZIP, BGZF, XZ }
+
+	/**
+	 * The magic number of gzip files
+	 */
+	private static final byte[] GZIP_MAGIC=new byte[]{0x1f, (byte)0x8b};
+
+	/**
+	 * The magic number of xz files
+	 */
+	private static final byte[] XZ_MAGIC=new byte[]{(byte)0xfd, '7', 'z', 'X', 'Z', 0x00};
+
+	/**
+	 * The message of the exception thrown for a truncated gzip file
+	 */
+	private static final String TRUNCATED="Truncated compressed file";
+
+	/**
+	 * The size of the gzip header of a BGZF block up to the extra field
+	 */
+	private static final int BGZF_HEADER_LENGTH=12;
+
+	/**
+	 * There should never be an instance of this class
+	 */
+	private CompressedInput() {};
+
+	/**
+	 * Determines the format of a file per its magic number
+	 *
+	 * @param file The file, its position is not changed
+	 * @return The format
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	static Format detect(FileInputStream file) throws IOException {
+
+		ByteBuffer header=ByteBuffer.allocate(18);
+		long position=file.getChannel().position();
+		try {
+			while ( header.hasRemaining() && file.getChannel().read(header) >= 0 );
+		} finally {
+			file.getChannel().position(position);
+		}
+		byte[] b=header.array();
+		int length=header.position();
+
+		if ( startsWith(b, length, XZ_MAGIC) ) return Format.XZ;
+		if ( !startsWith(b, length, GZIP_MAGIC) ) return Format.NONE;
+
+		//BGZF blocks are gzip members with the extra subfield BC holding the block size
+		if ( length == 18 && (b[3] & 0x04) != 0 && b[12] == 'B' && b[13] == 'C' && b[14] == 2 && b[15] == 0 ) return Format.BGZF;
+		return Format.GZIP;
+	}
+
+	/**
+	 * Checks whether an array starts with a prefix
+	 *
+	 * @param b The array
+	 * @param length The number of valid bytes in the array
+	 * @param prefix The prefix
+	 * @return Whether the array starts with the prefix
+	 */
+	private static boolean startsWith(byte[] b, int length, byte[] prefix) {
+		if ( length < prefix.length ) return false;
+		for ( int i=0; i<prefix.length; i++ ) {
+			if ( b[i] != prefix[i] ) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Opens a stream of the decompressed contents of a file
+	 *
+	 * @param file The file positioned at the beginning
+	 * @param filePath The path to the file, needed for the xz tool
+	 * @return The decompressed stream or the file itself if it is not compressed
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	static InputStream open(FileInputStream file, String filePath) throws IOException {
+
+		switch ( detect(file) ) {
+		case GZIP:
+			return new GzipInputStream(file);
+		case BGZF:
+			return new BgzfInputStream(file, Runtime.getRuntime().availableProcessors());
+		case XZ:
+			return new XzInputStream(file, filePath);
+		default:
+			return file;
+		}
+	}
+
+	/**
+	 * A stream inflating the blocks of a BGZF file in parallel. The blocks
+	 * are read sequentially, as their sizes are stored in their headers,
+	 * and inflated by a pool of threads, while the inflated blocks are
+	 * returned in order. Only a limited number of blocks is inflated in
+	 * advance.
+	 */
+	private static class BgzfInputStream extends InputStream {
+
+		/**
+		 * The compressed file
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * The threads inflating the blocks
+		 */
+		private final ExecutorService executor;
+
+		/**
+		 * The maximum number of blocks inflated in advance
+		 */
+		private final int lookahead;
+
+		/**
+		 * The blocks being inflated in the order of the file
+		 */
+		private final Queue<Future<byte[]>> blocks=new ArrayDeque<Future<byte[]>>();
+
+		/**
+		 * Whether the end of the compressed file was reached
+		 */
+		private boolean eof=false;
+
+		/**
+		 * The current inflated block
+		 */
+		private byte[] block=new byte[0];
+
+		/**
+		 * The position in the current block
+		 */
+		private int position=0;
+
+		/**
+		 * Creates a new stream
+		 *
+		 * @param in The compressed file
+		 * @param threads The number of threads inflating the blocks
+		 */
+		BgzfInputStream(InputStream in, int threads) {
+			this.in=new DataInputStream(new BufferedInputStream(in, 1<<16));
+			this.lookahead=4*threads;
+			this.executor=Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					//the threads must not keep the JVM alive if the stream is not closed
+					Thread t=new Thread(r, "bgzf-inflater");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		@Override
+		public int read() throws IOException {
+			if ( !this.fill() ) return -1;
+			return this.block[this.position++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if ( len == 0 ) return 0;
+			if ( !this.fill() ) return -1;
+			int n=Math.min(len, this.block.length-this.position);
+			System.arraycopy(this.block, this.position, b, off, n);
+			this.position += n;
+			return n;
+		}
+
+		/**
+		 * Makes sure the current block has bytes left
+		 *
+		 * @return Whether bytes are left, false at the end of the file
+		 * @throws IOException Is thrown if the file cannot be read or is malformed
+		 */
+		private boolean fill() throws IOException {
+
+			while ( this.position == this.block.length ) {
+
+				while ( !this.eof && this.blocks.size() < this.lookahead ) {
+					final byte[] compressed=this.readBlock();
+					if ( compressed == null ) {
+						this.eof=true;
+						break;
+					}
+					this.blocks.add(this.executor.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws IOException {
+							return inflateBlock(compressed);
+						}
+					}));
+				}
+
+				Future<byte[]> next=this.blocks.poll();
+				if ( next == null ) return false;
+				try {
+					this.block=next.get();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while inflating");
+				} catch (ExecutionException e) {
+					if ( e.getCause() instanceof IOException ) throw (IOException)e.getCause();
+					throw new IOException(e.getCause());
+				}
+				this.position=0;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Reads the next block from the compressed file
+		 *
+		 * @return The whole block including header and trailer, null at the end of the file
+		 * @throws IOException Is thrown if the file cannot be read or is malformed
+		 */
+		private byte[] readBlock() throws IOException {
+
+			byte[] header=new byte[BGZF_HEADER_LENGTH];
+			int first=this.in.read();
+			if ( first < 0 ) return null;
+			header[0]=(byte)first;
+			this.in.readFully(header, 1, header.length-1);
+
+			if ( header[0] != GZIP_MAGIC[0] || header[1] != GZIP_MAGIC[1] || (header[3] & 0x04) == 0 ) throw new IOException("Malformed BGZF block");
+			int extraLength=(header[10] & 0xff) | (header[11] & 0xff) << 8;
+			byte[] extra=new byte[extraLength];
+			this.in.readFully(extra);
+
+			//the block size is found in the subfield BC
+			int blockSize=-1;
+			for ( int i=0; i+4 <= extraLength; ) {
+				int subfieldLength=(extra[i+2] & 0xff) | (extra[i+3] & 0xff) << 8;
+				if ( extra[i] == 'B' && extra[i+1] == 'C' && subfieldLength == 2 && i+6 <= extraLength ) {
+					blockSize=((extra[i+4] & 0xff) | (extra[i+5] & 0xff) << 8)+1;
+				}
+				i += 4+subfieldLength;
+			}
+			if ( blockSize < BGZF_HEADER_LENGTH+extraLength+8 ) throw new IOException("Malformed BGZF block");
+
+			byte[] block=new byte[blockSize];
+			System.arraycopy(header, 0, block, 0, header.length);
+			System.arraycopy(extra, 0, block, header.length, extraLength);
+			try {
+				this.in.readFully(block, header.length+extraLength, blockSize-header.length-extraLength);
+			} catch (EOFException e) {
+				throw new IOException("Truncated BGZF block");
+			}
+
+			return block;
+		}
+
+		/**
+		 * Inflates a block and checks its checksum
+		 *
+		 * @param block The whole block including header and trailer
+		 * @return The inflated data
+		 * @throws IOException Is thrown if the block is malformed
+		 */
+		private static byte[] inflateBlock(byte[] block) throws IOException {
+
+			int extraLength=(block[10] & 0xff) | (block[11] & 0xff) << 8;
+			int start=BGZF_HEADER_LENGTH+extraLength;
+			int trailer=block.length-8;
+			long crc=readInt(block, trailer) & 0xffffffffL;
+			int size=readInt(block, trailer+4);
+
+			byte[] data=new byte[size];
+			Inflater inflater=new Inflater(true);
+			try {
+				inflater.setInput(block, start, trailer-start);
+				int n=0;
+				while ( n < size && !inflater.finished() ) {
+					int inflated=inflater.inflate(data, n, size-n);
+					if ( inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()) ) break;
+					n += inflated;
+				}
+				if ( n != size ) throw new IOException("Malformed BGZF block");
+			} catch (DataFormatException e) {
+				throw new IOException("Malformed BGZF block: "+e.getMessage());
+			} finally {
+				inflater.end();
+			}
+
+			CRC32 checksum=new CRC32();
+			checksum.update(data);
+			if ( checksum.getValue() != crc ) throw new IOException("Corrupt BGZF block");
+
+			return data;
+		}
+
+		/**
+		 * Reads a little-endian integer
+		 *
+		 * @param b The array
+		 * @param off The offset of the integer
+		 * @return The integer
+		 */
+		private static int readInt(byte[] b, int off) {
+			return (b[off] & 0xff) | (b[off+1] & 0xff) << 8 | (b[off+2] & 0xff) << 16 | (b[off+3] & 0xff) << 24;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.executor.shutdownNow();
+			this.in.close();
+		}
+
+	}
+
+	/**
+	 * A gzip stream reporting a truncated file with a clear message, as
+	 * GZIPInputStream throws an EOFException without a message if the file
+	 * ends within a header or a trailer
+	 */
+	private static class GzipInputStream extends FilterInputStream {
+
+		/**
+		 * Creates a new stream
+		 *
+		 * @param file The compressed file
+		 * @throws IOException Is thrown if the file cannot be read or its header is truncated
+		 */
+		GzipInputStream(FileInputStream file) throws IOException {
+			super(inflate(file));
+		}
+
+		/**
+		 * Opens the inflating stream, which already reads the first header
+		 *
+		 * @param file The compressed file
+		 * @return The inflating stream
+		 * @throws IOException Is thrown if the file cannot be read or its header is truncated
+		 */
+		private static InputStream inflate(FileInputStream file) throws IOException {
+			try {
+				return new GZIPInputStream(file, 1<<16);
+			} catch (EOFException e) {
+				file.close();
+				throw new IOException(TRUNCATED);
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return super.read();
+			} catch (EOFException e) {
+				throw new IOException(TRUNCATED);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return super.read(b, off, len);
+			} catch (EOFException e) {
+				throw new IOException(TRUNCATED);
+			}
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			try {
+				return super.skip(n);
+			} catch (EOFException e) {
+				throw new IOException(TRUNCATED);
+			}
+		}
+
+	}
+
+	/**
+	 * A stream decompressing an xz file with the xz tool, which also uses
+	 * several threads for files consisting of several blocks
+	 */
+	private static class XzInputStream extends FilterInputStream {
+
+		/**
+		 * The xz process
+		 */
+		private final Process process;
+
+		/**
+		 * The compressed file, only kept to be closed
+		 */
+		private final FileInputStream file;
+
+		/**
+		 * Creates a new stream
+		 *
+		 * @param file The compressed file, which is passed to the xz tool
+		 * @param filePath The path to the compressed file
+		 * @throws IOException Is thrown if the xz tool cannot be started
+		 */
+		XzInputStream(FileInputStream file, String filePath) throws IOException {
+			this(file, start(filePath));
+		}
+
+		/**
+		 * Creates a new stream
+		 *
+		 * @param file The compressed file
+		 * @param process The xz process
+		 */
+		private XzInputStream(FileInputStream file, Process process) {
+			super(process.getInputStream());
+			this.file=file;
+			this.process=process;
+		}
+
+		/**
+		 * Starts the xz tool
+		 *
+		 * @param filePath The path to the compressed file
+		 * @return The xz process
+		 * @throws IOException Is thrown if the xz tool cannot be started
+		 */
+		private static Process start(String filePath) throws IOException {
+			ProcessBuilder builder=new ProcessBuilder("xz", "--decompress", "--stdout", "--threads=0", filePath);
+			builder.redirectError(Redirect.INHERIT);
+			try {
+				return builder.start();
+			} catch (IOException e) {
+				throw new IOException("xz compressed files require the xz tool: "+e.getMessage());
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b=super.read();
+			if ( b < 0 ) this.checkExitCode();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n=super.read(b, off, len);
+			if ( n < 0 ) this.checkExitCode();
+			return n;
+		}
+
+		/**
+		 * Makes sure the end of the stream is not caused by a failure of xz
+		 *
+		 * @throws IOException Is thrown if xz failed
+		 */
+		private void checkExitCode() throws IOException {
+			try {
+				int exitCode=this.process.waitFor();
+				if ( exitCode != 0 ) throw new IOException("xz failed with exit code "+exitCode);
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting for xz");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			//closing early, e.g. after reading the first lines, stops xz
+			this.process.destroy();
+			super.close();
+			this.file.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,177 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package parsing;
+
+import java.util.List;
+
+import main.passwords.ClickPassword;
+import main.passwords.PasswordType;
+import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.ClickImageHelper;
+import estimators.CommonHelper;
+
+/**
+ * This class provides functions for parsing password files of graphical 
+ * click-based passwords where each click-point lies on one of several 
+ * images, e.g. for CCP or PCCP. The password file is expected to be UTF-8
+ * encoded and to contain one password in each line, where the format is: 
+ * "i1:x1,y1;i2:x2,y2;...;in:xn,yn" (without quotation marks) for n 
+ * click-points, with the id of the image before each click-point. The 
+ * first line has to contain the tolerance margin followed by the maximum 
+ * values of the coordinates of each image, where the format is:
+ * "tolerance;xmax0,ymax0;xmax1,ymax1;..." (without quotation marks). The 
+ * images are numbered from 0 in the order of the first line.
+ * 
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class GraphicalClickImagesFileParser implements PasswordFileParserI<ClickPassword> {
+
+	/**
+	 * The parameters as read from the password file, see ClickImageHelper
+	 */
+	private int[] parameters;
+	
+	@Override
+	public PasswordType getPasswordType() {
+		return PasswordType.GRAPHICAL_CLICK_IMAGES;
+	}
+
+	@Override
+	public boolean checkWhetherOfThisType(List<String> passwordFile) {
+
+		String firstLine=passwordFile.get(0);
+
+		//If the file was explicitly tagged we can assume soundness, the parameters follow the tag
+		if ( firstLine.equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+PasswordType.GRAPHICAL_CLICK_IMAGES.toString()) ) {
+			try {
+				this.parameters=passwordFile.size() > 1 ? parseParameters(passwordFile.get(1)) : null;
+			} catch (NumberFormatException e) {
+				this.parameters=null;
+			}
+			return this.parameters != null;
+		}
+
+		/*
+		 * Heuristic determination: The first line needs to contain the 
+		 * tolerance and the size of at least one image, all greater than 0. 
+		 * The tolerance margin can not be greater than any image. The first
+		 * password needs to be parsable and lie within its images.
+		 */
+		try {
+			this.parameters=parseParameters(firstLine);
+			if ( this.parameters == null ) return false;
+			if ( passwordFile.size() > 1 ) this.parsePassword(passwordFile.get(1));
+			return true;
+		} catch (IllegalArgumentException e) {
+			//parsing of parameters or the password failed, nothing to do here
+		}
+
+		this.parameters=null;
+		return false;
+	}
+	
+	/**
+	 * Parses the parameters from the first line
+	 * 
+	 * @param line The first line
+	 * @return The parameters or null if they do not make sense
+	 * @throws NumberFormatException Is thrown if a value is not a number
+	 */
+	private static int[] parseParameters(String line) {
+		
+		String[] parts=line.split(";");
+		if ( parts.length < 2 ) return null;
+		
+		int[] params=new int[2*parts.length];
+		params[0]=Integer.parseInt(parts[0].trim());
+		params[1]=parts.length-1;
+		if ( params[0] <= 0 ) return null;
+		
+		for ( int i=1; i<parts.length; i++ ) {
+			String[] size=parts[i].split(",");
+			if ( size.length != 2 ) return null;
+			params[2*i]=Integer.parseInt(size[0].trim());
+			params[2*i+1]=Integer.parseInt(size[1].trim());
+			if ( params[2*i] < params[0] || params[2*i+1] < params[0] ) return null;
+		}
+		
+		return params;
+	}
+
+	@Override
+	public int getHeaderLength(List<String> passwordFile) {
+		
+		//The parameters and possibly the tag at the beginning of the file need to be skipped
+		if ( passwordFile.get(0).equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+PasswordType.GRAPHICAL_CLICK_IMAGES.toString()) ) {
+			return 2;
+		}
+		
+		return 1;
+	}
+	
+	@Override
+	public ClickPassword parsePassword(String line) {
+		
+		ClickPassword cpw=new ClickPassword();
+		int images=ClickImageHelper.getImageCount(this.parameters);
+		
+		for ( String cp : line.split(";") ) {
+			int colon=cp.indexOf(':');
+			String[] coordinates=cp.substring(colon+1).split(",");
+			if ( colon < 0 || coordinates.length != 2 ) throw new IllegalArgumentException("Invalid click-point: "+cp);
+			
+			int image, x, y;
+			try {
+				image=Integer.parseInt(cp.substring(0, colon));
+				x=Integer.parseInt(coordinates[0]);
+				y=Integer.parseInt(coordinates[1]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid click-point: "+cp);
+			}
+			
+			if ( image < 0 || image >= images ) throw new IllegalArgumentException("Unknown image: "+image);
+			if ( x < 0 || y < 0 || x > this.parameters[2+2*image] || y > this.parameters[3+2*image] ) {
+				throw new IllegalArgumentException("Click-point "+x+","+y+" outside of image "+image);
+			}
+			cpw.addClickPoint(x, y, image);
+		}
+		
+		return cpw;
+	}
+	
+	@Override
+	public long hashPassword(ClickPassword password) {
+		
+		//passwords are equal if their click-points lie in the same cells of the same images
+		int[] cells=new int[2*password.length()];
+		for ( int i=0; i<password.length(); i++ ) {
+			cells[2*i]=password.getImage(i);
+			cells[2*i+1]=ClickImageHelper.getCell(password.getClickPoint(i), this.parameters);
+		}
+		
+		return CommonHelper.hash64(cells);
+	}
+	
+	@Override
+	public int[] getParameters(List<String> passwordFile) {
+		//the parameters were extracted during the validity check, see GraphicalClickPasswordFileParser
+		return this.parameters;
+	}
+	
+}
@@ -18,12 +18,13 @@
  *=========================================================================*/
 package parsing;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import main.passwords.ClickPassword;
 import main.passwords.PasswordType;
 import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.ClickGridHelper;
+import estimators.CommonHelper;
 
 /**
  * This class provides functions for parsing password files of graphical 
@@ -61,10 +62,16 @@ public class GraphicalClickPasswordFileParser implements PasswordFileParserI<Cli
 		String firstLine=passwordFile.get(0);
 
 		/*
-		 * Explicit declaration: If the file was explicitly tagged we can assume soundness (as the naive little fellows we are)
+		 * Explicit declaration: If the file was explicitly tagged we can assume soundness (as the naive little fellows we are),
+		 * the parameters follow the tag
 		 */
 		if ( firstLine.equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+PasswordType.GRAPHICAL_CLICK.toString()) ) {
-			return true;
+			try {
+				this.parameters=passwordFile.size() > 1 ? this.arrayStringToInt(passwordFile.get(1).split(",")) : null;
+			} catch (NumberFormatException e) {
+				this.parameters=null;
+			}
+			return this.checkParameters();
 		}
 
 		/*
@@ -81,19 +88,11 @@ public class GraphicalClickPasswordFileParser implements PasswordFileParserI<Cli
 			this.parameters=this.arrayStringToInt(firstLine.split(","));
 
 			//do the parameters by themselves make sense?
-			if ( this.parameters.length != 3 ||
-					this.parameters[0] <= 0 ||
-					this.parameters[1] <= 0 ||
-					this.parameters[2] <= 0 ||
-					this.parameters[2] > this.parameters[0] ||
-					this.parameters[2] > this.parameters[1] ) {
-				this.parameters=null;
-				return false;
-			}
+			if ( !this.checkParameters() ) return false;
 
 			//do the parameters make sense in context of the passwords?
 			//(only first password is actually checked, possibility to move whole parsing here left open)
-			for ( int i=1; i<2; i++) {
+			for ( int i=1; i<Math.min(2, passwordFile.size()); i++) {
 				ClickPassword pw=this.parseClickPassword(passwordFile.get(i));
 
 				//iteration over all click-points
@@ -117,24 +116,58 @@ public class GraphicalClickPasswordFileParser implements PasswordFileParserI<Cli
 		return false;
 	}
 
-	@Override
-	public List<ClickPassword> getPasswords(List<String> passwordFile) {
+	/**
+	 * Checks whether the parameters make sense by themselves and resets them if not
+	 * 
+	 * @return Whether the parameters are valid
+	 */
+	private boolean checkParameters() {
 		
-		List<ClickPassword> pwds=new ArrayList<ClickPassword>();
+		if ( this.parameters == null ||
+				this.parameters.length != 3 ||
+				this.parameters[0] <= 0 ||
+				this.parameters[1] <= 0 ||
+				this.parameters[2] <= 0 ||
+				this.parameters[2] > this.parameters[0] ||
+				this.parameters[2] > this.parameters[1] ) {
+			this.parameters=null;
+			return false;
+		}
 		
-		//We start at 1 because we need to skip the parameters
-		int startIndex=1;
+		return true;
+	}
+	
+	@Override
+	public int getHeaderLength(List<String> passwordFile) {
 		
-		//If there is a tag at the beginning of the file, we need to skip that as well
+		//The parameters and possibly the tag at the beginning of the file need to be skipped
 		if ( passwordFile.get(0).equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+PasswordType.GRAPHICAL_CLICK.toString()) ) {
-			startIndex=2;
+			return 2;
 		}
 		
-		for ( int i=startIndex; i<passwordFile.size(); i++ ) {
-			pwds.add(parseClickPassword(passwordFile.get(i)));
+		return 1;
+	}
+	
+	@Override
+	public ClickPassword parsePassword(String line) {
+		
+		ClickPassword pw=this.parseClickPassword(line);
+		
+		//only the first password was checked against the canvas by the heuristic
+		for ( int j=0; j<pw.length(); j++ ) {
+			int[] cp=pw.getClickPoint(j);
+			if ( cp[0] < 0 || cp[1] < 0 || cp[0] > this.parameters[0] || cp[1] > this.parameters[1] ) {
+				throw new IllegalArgumentException("Click-point "+cp[0]+","+cp[1]+" outside of the canvas");
+			}
 		}
 		
-		return pwds;
+		return pw;
+	}
+	
+	@Override
+	public long hashPassword(ClickPassword password) {
+		//passwords are equal if their click-points lie in the same cells of the tolerance grid
+		return CommonHelper.hash64(ClickGridHelper.getCells(password, this.parameters));
 	}
 	
 	@Override
@@ -175,7 +208,14 @@ public class GraphicalClickPasswordFileParser implements PasswordFileParserI<Cli
 		ClickPassword cpw=new ClickPassword();
 		
 		for ( String cp : pwd.split(";") ) {
-			cpw.addClickPoint(arrayStringToInt(cp.split(",")));
+			int[] coordinates;
+			try {
+				coordinates=arrayStringToInt(cp.split(","));
+			} catch (NumberFormatException e) {
+				throw new NumberFormatException("Invalid click-point: "+cp);
+			}
+			if ( coordinates.length != 2 ) throw new NumberFormatException("Invalid click-point: "+cp);
+			cpw.addClickPoint(coordinates);
 		}
 		
 		return cpw;	
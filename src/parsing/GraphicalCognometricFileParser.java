@@ -18,12 +18,13 @@
  *=========================================================================*/
 package parsing;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import main.passwords.CognometricGroupedPassword;
 import main.passwords.PasswordType;
 import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.CognometricGroupedHelper;
+import estimators.CommonHelper;
 
 /**
  * This class provides functions for parsing password files of graphical 
@@ -34,7 +35,7 @@ import parsing.PasswordFileParser.PasswordFileParserI;
  * number of different groups and the number of elements in one group. If the
  * groups have differ in size, the largest size should be specified. The format
  * for the two parameters is: "#groups,#elements in group" (without quotation 
- * marks).
+ * marks). The ids of the groups and elements start at 0.
  * 
  * @author Peter Mayer | peter.mayer@cased.de
  */
@@ -54,10 +55,16 @@ public class GraphicalCognometricFileParser implements PasswordFileParserI<Cogno
 		String firstLine=passwordFile.get(0);
 
 		/*
-		 * Explicit declaration: If the file was explicitly tagged we can assume soundness (as the naive little fellows we are)
+		 * Explicit declaration: If the file was explicitly tagged we can assume soundness (as the naive little fellows we are),
+		 * the parameters follow the tag
 		 */
 		if ( firstLine.equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+this.getPasswordType().toString()) ) {
-			return true;
+			try {
+				this.parameters=passwordFile.size() > 1 ? this.arrayStringToInt(passwordFile.get(1).split(",")) : new int[0];
+			} catch (NumberFormatException e) {
+				this.parameters=new int[0];
+			}
+			return this.checkParameters();
 		}
 		
 		/*
@@ -66,50 +73,51 @@ public class GraphicalCognometricFileParser implements PasswordFileParserI<Cogno
 		 * first line of the password file: the number of groups and the amount
 		 * of elements in each group. Both of these values need to be present
 		 * (and no others) and they need to be grater than 0. The passwords 
-		 * need to be parsable by "parseCognometricGroupedPassword". Currently 
-		 * only the first password is checked at this point.
+		 * need to be parsable by "parsePassword". Currently only the first 
+		 * password is checked at this point.
 		 */
 		try {
-			//if the type is actually correct we can store the parameters directly, if not we will set them to null
+			//if the type is actually correct we can store the parameters directly, if not we will reset them
 			this.parameters=this.arrayStringToInt(firstLine.split(","));
 
 			//do the parameters by themselves make sense?
-			if ( this.parameters.length != 2 ||
-					this.parameters[0] <= 0 ||
-					this.parameters[1] <= 0 ||
-					this.parameters[2] <= 0 ) {
-				this.parameters=null;
-				return false;
-			}
+			if ( !this.checkParameters() ) return false;
 
 			//do the parameters make sense in context of the passwords?
-			//(only first password is actually checked, possibility to move whole parsing here left open)
-			for ( int i=1; i<2; i++) {
-				CognometricGroupedPassword pw=this.parseCognometricGroupedPassword(passwordFile.get(i));
-
-				//iteration over all click-points
-				for ( int j=0; j<pw.length(); j++ ) {
-					int[] cp=pw.getElement(j);
-					if ( cp[0]>this.parameters[0] || cp[1]>this.parameters[1] ) {
-						this.parameters=null;
-						return false;
-					}
-				}
-			}
+			if ( passwordFile.size() > 1 ) this.parsePassword(passwordFile.get(1));
 
 			//It seems all went well, we can set the type now
 			return true;
 
-		} catch (NumberFormatException e) {
-			//parsing of parameters failed, nothing to do here
+		} catch (IllegalArgumentException e) {
+			//parsing of parameters or the password failed, nothing to do here
 		}
 		
+		this.parameters=new int[0];
 		return false;
 	}
 	
+	/**
+	 * Checks whether the parameters make sense by themselves and resets them if not
+	 * 
+	 * @return Whether the parameters are valid
+	 */
+	private boolean checkParameters() {
+		
+		if ( this.parameters.length != 2 ||
+				this.parameters[0] <= 0 ||
+				this.parameters[1] <= 0 ||
+				this.parameters[0] > CognometricGroupedPassword.MAX_ID+1 ||
+				this.parameters[1] > CognometricGroupedPassword.MAX_ID+1 ) {
+			this.parameters=new int[0];
+			return false;
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * Converts an array of Strings into an array of Integer primitives
-	 * TODO This method is an exact duplicate and needs to be removed
 	 * 
 	 * @param a The array to convert
 	 * @return The new array with the converted values
@@ -124,50 +132,46 @@ public class GraphicalCognometricFileParser implements PasswordFileParserI<Cogno
 		
 		return b;
 	}
-	
-	/**
-	 * Parses a string containing a cognometric grouped password
-	 * 
-	 * @param pwd The string containing the password
-	 * @return The parsed password
-	 */
-	private CognometricGroupedPassword parseCognometricGroupedPassword(String pwd) {
-		
-		CognometricGroupedPassword pw=new CognometricGroupedPassword();
+
+	@Override
+	public int getHeaderLength(List<String> passwordFile) {
 		
-		for ( String cp : pwd.split(";") ) {
-			pw.addElement(arrayStringToInt(cp.split(",")));
+		//The parameters and possibly the tag at the beginning of the file need to be skipped
+		if ( passwordFile.get(0).equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+this.getPasswordType().toString()) ) {
+			return 2;
 		}
 		
-		return pw;
+		return 1;
 	}
-
+	
 	@Override
-	public List<CognometricGroupedPassword> getPasswords(List<String> passwordFile) {
+	public CognometricGroupedPassword parsePassword(String line) {
 		
-		List<CognometricGroupedPassword> pwds=new ArrayList<CognometricGroupedPassword>();
+		CognometricGroupedPassword pw=new CognometricGroupedPassword();
 		
-		/*
-		 * If the parameters have not yet been read, the password file has not yet been
-		 * checked to be valid. In this case we simply return the empty list
-		 */
-		if( this.parameters.length==0 && !this.checkWhetherOfThisType(passwordFile)) {
-			return pwds;
+		for ( String element : line.split(";") ) {
+			int[] ids;
+			try {
+				ids=this.arrayStringToInt(element.split(","));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid element: "+element);
+			}
+			if ( ids.length != 2 ) throw new IllegalArgumentException("Invalid element: "+element);
+			
+			//the ids need to lie within the declared groups
+			if ( ids[0] < 0 || ids[1] < 0 || ids[0] >= this.parameters[0] || ids[1] >= this.parameters[1] ) {
+				throw new IllegalArgumentException("Element "+element+" outside of the groups");
+			}
+			pw.addElement(ids[0], ids[1]);
 		}
 		
-		//Skipping the parameter line
-		int startIndex=1;
+		return pw;
+	}
 
-		//If there is a tag at the beginning of the file, we need to skip that as well
-		if ( passwordFile.get(0).equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+this.getPasswordType().toString()) ) {
-			startIndex=2;
-		}
-		
-		for ( int i=startIndex; i<passwordFile.size(); i++ ) {
-			pwds.add(parseCognometricGroupedPassword(passwordFile.get(i)));
-		}
-		
-		return pwds;
+	@Override
+	public long hashPassword(CognometricGroupedPassword password) {
+		//packed tuples are unique, so they only need to be mixed
+		return CommonHelper.mix64(CognometricGroupedHelper.getTupleKey(password, this.parameters));
 	}
 
 	@Override
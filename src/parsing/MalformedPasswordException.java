@@ -0,0 +1,98 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package parsing;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown if a line of the password file cannot be parsed
+ * by the delegate parser. It carries the number of the line, so malformed
+ * lines can be found in large password files, and the password file if
+ * several password files are read.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+public class MalformedPasswordException extends IOException {
+
+	private static final long serialVersionUID=1L;
+
+	/**
+	 * The number of the malformed line
+	 */
+	private final long lineNumber;
+
+	/**
+	 * The path to the password file, null if only one file is read
+	 */
+	private final String filePath;
+
+	/**
+	 * The description of the problem as provided by the delegate parser
+	 */
+	private final String reason;
+
+	/**
+	 * Creates a new exception
+	 *
+	 * @param lineNumber The number of the malformed line
+	 * @param reason The description of the problem
+	 */
+	public MalformedPasswordException(long lineNumber, String reason) {
+		super("Line "+lineNumber+": "+reason);
+		this.filePath=null;
+		this.lineNumber=lineNumber;
+		this.reason=reason;
+	}
+
+	/**
+	 * Creates a new exception for one of several password files
+	 *
+	 * @param filePath The path to the password file
+	 * @param lineNumber The number of the malformed line
+	 * @param reason The description of the problem
+	 */
+	public MalformedPasswordException(String filePath, long lineNumber, String reason) {
+		super(filePath+", line "+lineNumber+": "+reason);
+		this.filePath=filePath;
+		this.lineNumber=lineNumber;
+		this.reason=reason;
+	}
+
+	/**
+	 * @return The number of the malformed line
+	 */
+	public long getLineNumber() {
+		return this.lineNumber;
+	}
+
+	/**
+	 * @return The path to the password file or null if only one file is read
+	 */
+	public String getFilePath() {
+		return this.filePath;
+	}
+
+	/**
+	 * @return The description of the problem
+	 */
+	public String getReason() {
+		return this.reason;
+	}
+
+}
@@ -18,19 +18,38 @@
  *=========================================================================*/
 package parsing;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import main.passwords.PasswordType;
+import estimators.AccumulatorI;
+import estimators.sketch.DistinctCounter;
 
 /**
  * This class provides parsing functionality for the different kinds of password
  * lists. This class's only direct responsibility is reading the password file. 
  * The actual parsing of the read information is delegated to specific parsers. 
+ * Several password files of the same type and with the same parameters can
+ * be read as one password set, e.g. one file per participant of a study.
  * 
  * @author Peter Mayer | peter.mayer@cased.de
  */
@@ -43,7 +62,20 @@ public final class PasswordFileParser {
 	static final String PWT_PREFIX="password type:";
 	
 	/**
-	 * In this list, the contents from the supplied password file are stored.
+	 * The number of lines read in advance, so the type of the password file
+	 * can be determined without reading the whole file. The heuristics of 
+	 * the parsers need to make do with these lines.
+	 */
+	static final int SNIFF_LINES=3;
+	
+	/**
+	 * The character separating the label from the password in labelled
+	 * password files
+	 */
+	static final char LABEL_SEPARATOR='\t';
+	
+	/**
+	 * In this list, the first lines of the supplied password file are stored.
 	 */
 	private final List<String> passwordFile;
 	
@@ -57,23 +89,178 @@ public final class PasswordFileParser {
 	 */
 	private PasswordFileParserI<?> parser;
 	
+	/**
+	 * The path to the password file
+	 */
+	private final String filePath;
+	
+	/**
+	 * Whether the passwords are streamed from the file instead of being read at once
+	 */
+	private final boolean streaming;
+	
+	/**
+	 * The reader used for streaming the passwords
+	 */
+	private BufferedReader streamReader;
+	
+	/**
+	 * The stream underlying the streamReader, used to determine the offset
+	 */
+	private FileInputStream streamInput;
+	
+	/**
+	 * Whether the password file is compressed, see CompressedInput
+	 */
+	private final boolean compressed;
+	
+	/**
+	 * The mapped corpus if the password file is a binary corpus, null otherwise
+	 */
+	private final BinaryCorpus corpus;
+	
+	/**
+	 * The parsers of the single files if several password files are read as
+	 * one password set, null otherwise
+	 */
+	private final List<PasswordFileParser> files;
+	
+	/**
+	 * The index of the file currently streamed if several files are read
+	 */
+	private int fileIndex=0;
+	
+	/**
+	 * The path to the file for which setting the password type failed if
+	 * several files are read
+	 */
+	private String rejectedFile;
+	
+	/**
+	 * The index of the next password of the corpus
+	 */
+	private long corpusIndex=0;
+	
+	/**
+	 * The number of bytes at the beginning of the file to skip when streaming
+	 */
+	private long startOffset=0;
+	
+	/**
+	 * The number of bytes at which streaming stops, -1 to read the whole file
+	 */
+	private long endOffset=-1;
+	
+	/**
+	 * Whether streaming stops after the last line break of the file, so an
+	 * unterminated last line is left for a later run
+	 */
+	private boolean completeLinesOnly=false;
+	
+	/**
+	 * The number of the line read last, counted from the processed part 
+	 * of the file if streaming starts after it
+	 */
+	private long lineNumber=0;
+	
+	/**
+	 * The number of bytes of the file processed when streaming
+	 */
+	private long offset=0;
+	
+	/**
+	 * The counter for distinct passwords, null if counting is disabled
+	 */
+	private DistinctCounter distinctCounter;
+	
+	/**
+	 * Whether the password lines are preceded by a label
+	 */
+	private boolean labelled=false;
+	
+	/**
+	 * The label of the password last returned by readPassword
+	 */
+	private String label;
+	
 	/**
 	 * The list of available parsers. All parsers need to added here to be 
 	 * automatically used. 
 	 */
 	private PasswordFileParserI<?>[] parsers=new PasswordFileParserI[]{
 			new GraphicalClickPasswordFileParser(),
+			new GraphicalClickImagesFileParser(),
+			new GraphicalCognometricFileParser(),
 			new TextPasswordFileParser()};
 	
 	/**
-	 * Constructor of the Parser. The password file is read during instantiation
-	 * of this class.
+	 * Constructor of the Parser. The first lines of the password file are read
+	 * during instantiation of this class, the passwords are later obtained 
+	 * per getPasswords.
 	 * 
 	 * @param filePath The path to the password file
 	 * @throws IOException Is thrown if the file path is incorrect or the file cannot be accessed.
 	 */
 	public PasswordFileParser(String filePath) throws IOException {
-		this.passwordFile=this.readPasswordFile(filePath);
+		this(filePath, false);
+	}
+	
+	/**
+	 * Constructor of the Parser. Only the first lines of the password file are
+	 * read during instantiation, so the type can be determined quickly. If 
+	 * streaming is enabled the passwords are later obtained one by one per
+	 * readPassword, otherwise all at once per getPasswords.
+	 * 
+	 * @param filePath The path to the password file
+	 * @param streaming Whether the passwords are to be streamed
+	 * @throws IOException Is thrown if the file path is incorrect or the file cannot be accessed.
+	 */
+	public PasswordFileParser(String filePath, boolean streaming) throws IOException {
+		this(Collections.singletonList(filePath), streaming);
+	}
+	
+	/**
+	 * Constructor of the Parser for several password files, which are read
+	 * as one password set in the given order. The first lines of each file
+	 * are read during instantiation, so the type can be checked for each 
+	 * file. A single file is read as by the other constructors.
+	 * 
+	 * @param filePaths The paths to the password files
+	 * @param streaming Whether the passwords are to be streamed
+	 * @throws IOException Is thrown if a file path is incorrect or a file cannot be accessed.
+	 */
+	public PasswordFileParser(List<String> filePaths, boolean streaming) throws IOException {
+		
+		if ( filePaths.isEmpty() ) throw new IllegalArgumentException("No password files specified.");
+		
+		this.filePath=filePaths.get(0);
+		this.streaming=streaming;
+		
+		//the files are parsed by their own parsers, the type heuristics are applied per file
+		if ( filePaths.size() > 1 ) {
+			this.files=new ArrayList<PasswordFileParser>(filePaths.size());
+			for ( String path : filePaths ) this.files.add(new PasswordFileParser(path, streaming));
+			this.compressed=false;
+			this.corpus=null;
+			this.passwordFile=this.files.get(0).passwordFile;
+			return;
+		}
+		
+		this.files=null;
+		FileInputStream file=new FileInputStream(this.filePath);
+		try {
+			this.compressed=CompressedInput.detect(file) != CompressedInput.Format.NONE;
+		} finally {
+			file.close();
+		}
+		//the type heuristics are applied to the first passwords of a corpus rendered as lines
+		if ( BinaryCorpus.isCorpus(this.filePath) ) {
+			this.corpus=new BinaryCorpus(this.filePath);
+			this.passwordFile=this.corpus.getFirstLines(SNIFF_LINES);
+		} else {
+			this.corpus=null;
+			this.passwordFile=this.readPasswordFile(this.filePath, SNIFF_LINES);
+		}
 	}
 	
 	/**
@@ -81,14 +268,15 @@ public final class PasswordFileParser {
 	 * password file
 	 * 
 	 * @param filePath The path to the password file 
+	 * @param maxLines The maximum number of lines to read
 	 * @return The contents of the password file as list, where each list item corresponds to one line in the file
 	 * @throws IOException Is thrown if the file path is incorrect or the file cannot be accessed.
 	 */
-	private List<String> readPasswordFile(String filePath) throws IOException {
+	private List<String> readPasswordFile(String filePath, int maxLines) throws IOException {
 		List<String> pwds=new ArrayList<String>();
-		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath),"UTF8"));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(CompressedInput.open(new FileInputStream(filePath), filePath),"UTF8"));
 		String line;
-		while ( (line=reader.readLine()) != null ) {
+		while ( pwds.size() < maxLines && (line=reader.readLine()) != null ) {
 			pwds.add(line);
 		}
 		reader.close();
@@ -100,10 +288,13 @@ public final class PasswordFileParser {
 	 * This attempts to set the password type for the later processing and 
 	 * selects the right parser. This will only succeed if the supplied
 	 * file actually is compatible with the specified password type (as
-	 * determined by the respective parser).
+	 * determined by the respective parser). If several files are read, the
+	 * type is set for each file and the parameters of all files need to be
+	 * equal to the parameters of the first file.
 	 * 
 	 * @param type The type of passwords in the supplied password file
 	 * @return Whether setting the type was successful
+	 * @see #getRejectedFile()
 	 */
 	public boolean setPasswordType(PasswordType type) {
 		
@@ -113,6 +304,26 @@ public final class PasswordFileParser {
 		//check whether the new expected type conflicts with a previously set type
 		if ( this.type != null && this.type != type ) return false;
 		
+		if ( this.files != null ) {
+			int[] parameters=null;
+			for ( PasswordFileParser file : this.files ) {
+				if ( !file.setPasswordType(type) ) {
+					this.rejectedFile=file.filePath;
+					return false;
+				}
+				if ( parameters == null ) parameters=file.getParameters();
+				else if ( !Arrays.equals(parameters, file.getParameters()) ) {
+					this.rejectedFile=file.filePath;
+					return false;
+				}
+			}
+			this.parser=this.files.get(0).parser;
+			return this.setPwType(type);
+		}
+		
+		//the type of a corpus is known
+		if ( this.corpus != null && this.corpus.getPasswordType() != type ) return false;
+		
 		//check whether the type is sensible for the provided password file
 		for ( PasswordFileParserI<?> p : this.parsers ) {
 			if ( type == p.getPasswordType() ) {
@@ -132,6 +343,17 @@ public final class PasswordFileParser {
 		
 	}
 	
+	/**
+	 * This method returns the password file for which setting the password
+	 * type failed, because the type does not fit the file or its parameters
+	 * differ from the first file. 
+	 * 
+	 * @return The path to the file or null if only one file is read or no file was rejected
+	 */
+	public String getRejectedFile() {
+		return this.rejectedFile;
+	}
+	
 	/**
 	 * Internal method used to set the internal password type field. The
 	 * method also checks whether the type was set before and returns
@@ -152,13 +374,608 @@ public final class PasswordFileParser {
 	}
 	
 	/**
-	 * This method returns the passwords as provided by the respective 
-	 * delegate parser
+	 * This method reads all passwords from the file as provided by the
+	 * respective delegate parser. It is only available if streaming was
+	 * not enabled during instantiation.
 	 * 
 	 * @return The list of passwords
+	 * @throws IOException Is thrown if the file cannot be read
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 */
+	public List<?> getPasswords() throws IOException {
+		
+		if ( this.streaming ) throw new IllegalStateException("Passwords are streamed, use readPassword instead.");
+		
+		List<Object> pwds=new ArrayList<Object>();
+		Object pwd;
+		while ( (pwd=this.nextPassword()) != null ) pwds.add(pwd);
+		
+		return pwds;
+	}
+	
+	/**
+	 * This method returns the next password from the file as provided by the
+	 * respective delegate parser. It is only available if streaming was
+	 * enabled during instantiation. After a MalformedPasswordException the
+	 * next password can be read, e.g. to report all malformed lines.
+	 * 
+	 * @return The next password or null if the end of the file was reached
+	 * @throws IOException Is thrown if the file cannot be read
+	 * @throws MalformedPasswordException Is thrown if the password cannot be parsed
+	 */
+	public Object readPassword() throws IOException {
+		if ( !this.streaming ) throw new IllegalStateException("Passwords are not streamed, use getPasswords instead.");
+		return this.nextPassword();
+	}
+	
+	/**
+	 * Reads and parses the next line of the file
+	 * 
+	 * @return The next password or null if the end of the file was reached
+	 * @throws IOException Is thrown if the file cannot be read
+	 * @throws MalformedPasswordException Is thrown if the password cannot be parsed
+	 */
+	private Object nextPassword() throws IOException {
+		
+		//the files are streamed one after the other, the passwords are counted here
+		if ( this.files != null ) {
+			while ( this.fileIndex < this.files.size() ) {
+				PasswordFileParser file=this.files.get(this.fileIndex);
+				Object pwd=file.nextPasswordOfSet();
+				if ( pwd != null ) {
+					if ( this.labelled ) this.label=file.label;
+					return this.countPassword(this.parser, pwd);
+				}
+				this.fileIndex++;
+			}
+			return null;
+		}
+		
+		if ( this.corpus != null ) {
+			this.checkCorpusAccess();
+			if ( this.corpusIndex == this.corpus.size() ) {
+				this.offset=new File(this.filePath).length();
+				return null;
+			}
+			if ( this.labelled ) this.label="";
+			return this.countPassword(this.parser, this.corpus.getPassword(this.corpusIndex++));
+		}
+		
+		//on first access the file is opened and the header (or the already processed part) is skipped
+		if ( this.streamReader == null ) {
+			if ( this.streamInput != null ) throw new IllegalStateException("Passwords have already been read.");
+			this.streamReader=new BufferedReader(new InputStreamReader(this.openStream(this.startOffset),"UTF8"));
+			if ( this.startOffset == 0 ) {
+				for ( int i=0; i<this.parser.getHeaderLength(this.passwordFile); i++ ) this.streamReader.readLine();
+				this.lineNumber=this.parser.getHeaderLength(this.passwordFile);
+			}
+		}
+		
+		String line=this.streamReader.readLine();
+		this.lineNumber++;
+		
+		if ( line == null ) {
+			//at the end of the file all bytes have been consumed by the reader
+			this.offset=this.getStreamPosition();
+			this.streamReader.close();
+			return null;
+		}
+		
+		if ( this.labelled ) {
+			int separator=line.indexOf(LABEL_SEPARATOR);
+			this.label=separator < 0 ? "" : line.substring(0, separator);
+			line=line.substring(separator+1);
+		}
+		
+		try {
+			return this.parsePassword(this.parser, line);
+		} catch (IllegalArgumentException e) {
+			throw new MalformedPasswordException(this.lineNumber, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Reads the next password of one of several files, malformed passwords
+	 * are reported with the path to the file
+	 * 
+	 * @return The next password or null if the end of the file was reached
+	 * @throws IOException Is thrown if the file cannot be read
+	 * @throws MalformedPasswordException Is thrown if the password cannot be parsed
+	 */
+	private Object nextPasswordOfSet() throws IOException {
+		try {
+			return this.nextPassword();
+		} catch (MalformedPasswordException e) {
+			throw new MalformedPasswordException(this.filePath, e.getLineNumber(), e.getReason());
+		}
+	}
+	
+	/**
+	 * This method reads all passwords from the file in a pipeline and adds
+	 * them to the accumulators. A reader thread fills buffers with whole 
+	 * lines of the file, a pool of parser threads decodes the buffers into
+	 * batches of passwords and each accumulator consumes batches in its own
+	 * thread. The stages are connected by bounded queues, so the memory
+	 * needed is constant. The passwords are distributed arbitrarily among
+	 * the accumulators, which need to be merged afterwards. If several 
+	 * files are read, the files are read concurrently instead, each thread
+	 * reading whole files into its own accumulator. It is only available 
+	 * if streaming was enabled during instantiation and labels are not 
+	 * enabled.
+	 * 
+	 * @param accumulators The accumulators, each is used by a single thread
+	 * @param parserThreads The number of parser threads
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if the file cannot be read
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 */
+	public long readPasswords(AccumulatorI<?>[] accumulators, int parserThreads) throws IOException {
+		
+		if ( !this.streaming ) throw new IllegalStateException("Passwords are not streamed, use getPasswords instead.");
+		if ( this.labelled ) throw new IllegalStateException("Labels are not available when reading in a pipeline.");
+		if ( this.streamInput != null || this.fileIndex > 0 ) throw new IllegalStateException("Passwords have already been read.");
+		
+		if ( this.files != null ) {
+			long amount=this.readFiles(accumulators);
+			this.fileIndex=this.files.size();
+			return amount;
+		}
+		
+		//the passwords of a corpus do not need to be parsed, so the accumulators read it directly
+		if ( this.corpus != null ) {
+			this.checkCorpusAccess();
+			long amount=this.readCorpus(this.parser, accumulators);
+			this.corpusIndex=this.corpus.size();
+			this.offset=new File(this.filePath).length();
+			return amount;
+		}
+		
+		//the header is skipped in bytes, so the buffers only contain passwords
+		long start=this.startOffset > 0 ? this.startOffset : this.getHeaderOffset();
+		long firstLine=this.startOffset > 0 ? 1 : this.parser.getHeaderLength(this.passwordFile)+1;
+		InputStream input=this.openStream(start);
+		try {
+			long amount=this.readPasswords(this.parser, input, firstLine, accumulators, parserThreads);
+			this.offset=this.getStreamPosition();
+			return amount;
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Reads several files concurrently. The number of threads is bounded by
+	 * the number of accumulators, each thread takes the next file not read
+	 * yet and adds its passwords to the accumulator of the thread. The 
+	 * distinct passwords are counted per file and merged afterwards.
+	 * 
+	 * @param accumulators The accumulators, each is used by a single thread
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if a file cannot be read
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private long readFiles(AccumulatorI<?>[] accumulators) throws IOException {
+		
+		final AtomicInteger next=new AtomicInteger(0);
+		int threads=Math.min(accumulators.length, this.files.size());
+		
+		ExecutorService executor=Executors.newFixedThreadPool(threads);
+		CompletionService<Long> completion=new ExecutorCompletionService<Long>(executor);
+		
+		for ( int t=0; t<threads; t++ ) {
+			final AccumulatorI accumulator=accumulators[t];
+			completion.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					long amount=0;
+					int i;
+					while ( (i=next.getAndIncrement()) < PasswordFileParser.this.files.size() ) {
+						PasswordFileParser file=PasswordFileParser.this.files.get(i);
+						if ( PasswordFileParser.this.distinctCounter != null ) file.enableDistinctCounting();
+						Object pwd;
+						while ( (pwd=file.nextPasswordOfSet()) != null ) {
+							accumulator.add(pwd, 1);
+							amount++;
+						}
+						if ( file.distinctCounter != null ) {
+							synchronized ( PasswordFileParser.this.distinctCounter ) {
+								PasswordFileParser.this.distinctCounter.merge(file.distinctCounter);
+							}
+							file.distinctCounter=null;
+						}
+					}
+					return amount;
+				}
+			});
+		}
+		
+		long amount=0;
+		try {
+			for ( int t=0; t<threads; t++ ) amount += completion.take().get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while reading the passwords");
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if ( cause instanceof IOException ) throw (IOException)cause;
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			if ( cause instanceof Error ) throw (Error)cause;
+			throw new IOException(cause);
+		} finally {
+			//stops the remaining threads if one has failed
+			executor.shutdownNow();
+		}
+		
+		return amount;
+	}
+	
+	/**
+	 * Helper method for readPasswords, as the type of the delegate parser
+	 * needs to be captured for the pipeline
+	 * 
+	 * @param p The delegate parser
+	 * @param input The stream positioned at the first password
+	 * @param firstLine The line number of the first password
+	 * @param accumulators The accumulators
+	 * @param parserThreads The number of parser threads
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> long readPasswords(PasswordFileParserI<E> p, InputStream input, long firstLine, AccumulatorI<?>[] accumulators, int parserThreads) throws IOException {
+		PasswordPipeline<E> pipeline=new PasswordPipeline<E>(p, this.distinctCounter, parserThreads);
+		return pipeline.run(input, firstLine, (AccumulatorI<E>[])accumulators);
+	}
+	
+	/**
+	 * Opens the file for streaming, positioned at an offset and limited to
+	 * the end of the range if set
+	 * 
+	 * @param start The offset to start at
+	 * @return The stream
+	 * @throws IOException Is thrown if the file cannot be read or is shorter than the offset
+	 */
+	private InputStream openStream(long start) throws IOException {
+		
+		this.streamInput=new FileInputStream(this.filePath);
+		
+		if ( this.compressed ) {
+			if ( this.startOffset > 0 || this.endOffset >= 0 ) {
+				this.streamInput.close();
+				throw new IOException("Compressed password files can only be read from the beginning: "+this.filePath);
+			}
+			//the header is skipped in the decompressed contents
+			InputStream input=CompressedInput.open(this.streamInput, this.filePath);
+			long skipped=0;
+			while ( skipped < start ) {
+				long n=input.skip(start-skipped);
+				if ( n <= 0 ) {
+					if ( input.read() < 0 ) break;
+					n=1;
+				}
+				skipped += n;
+			}
+			return input;
+		}
+		
+		if ( start > 0 ) {
+			if ( start > this.streamInput.getChannel().size() ) {
+				this.streamInput.close();
+				throw new IOException("Password file is shorter than the processed part: "+this.filePath);
+			}
+			this.streamInput.getChannel().position(start);
+		}
+		
+		long end=this.endOffset;
+		if ( end < 0 && this.completeLinesOnly ) end=this.getCompleteLinesEnd(start);
+		
+		InputStream input=this.streamInput;
+		if ( end >= 0 ) input=new LimitedInputStream(input, end-start);
+		return input;
+	}
+	
+	/**
+	 * Determines the end of the last complete line of the file being
+	 * streamed, searching backwards from the end of the file
+	 * 
+	 * @param start The offset streaming starts at
+	 * @return The offset after the last line break or start if there is none after it
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	private long getCompleteLinesEnd(long start) throws IOException {
+		
+		FileChannel channel=this.streamInput.getChannel();
+		ByteBuffer buffer=ByteBuffer.allocate(8192);
+		long end=channel.size();
+		
+		while ( end > start ) {
+			int length=(int)Math.min(buffer.capacity(), end-start);
+			buffer.clear();
+			buffer.limit(length);
+			//positional reads do not move the channel, which is streamed afterwards
+			while ( buffer.hasRemaining() ) {
+				if ( channel.read(buffer, end-length+buffer.position()) < 0 ) throw new IOException("Password file was truncated: "+this.filePath);
+			}
+			for ( int i=length-1; i>=0; i-- ) {
+				if ( buffer.get(i) == '\n' ) return end-length+i+1;
+			}
+			end -= length;
+		}
+		
+		return start;
+	}
+	
+	/**
+	 * @return The position in the file being streamed, the whole file for compressed files
+	 * @throws IOException Is thrown if the file cannot be accessed
+	 */
+	private long getStreamPosition() throws IOException {
+		if ( this.compressed ) return this.streamInput.getChannel().size();
+		return this.streamInput.getChannel().position();
+	}
+	
+	/**
+	 * Helper method for readPassword, as the type of the delegate parser needs
+	 * to be captured in order to count the distinct passwords.
+	 * 
+	 * @param p The delegate parser
+	 * @param line The line of the password file
+	 * @return The password
+	 */
+	private <E> E parsePassword(PasswordFileParserI<E> p, String line) {
+		return this.countPassword(p, p.parsePassword(line));
+	}
+	
+	/**
+	 * Offers a password to the distinct counter, if counting is enabled
+	 * 
+	 * @param p The delegate parser
+	 * @param password The password as provided by the delegate parser or the corpus
+	 * @return The password
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> E countPassword(PasswordFileParserI<E> p, Object password) {
+		
+		E pwd=(E)password;
+		
+		if ( this.distinctCounter != null ) this.distinctCounter.offer(p.hashPassword(pwd));
+		
+		return pwd;
+	}
+	
+	/**
+	 * Helper method for readPasswords, as the type of the delegate parser
+	 * needs to be captured for reading the corpus
+	 * 
+	 * @param p The delegate parser
+	 * @param accumulators The accumulators
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if reading is interrupted
+	 */
+	@SuppressWarnings("unchecked")
+	private <E> long readCorpus(PasswordFileParserI<E> p, AccumulatorI<?>[] accumulators) throws IOException {
+		return this.corpus.read(p, this.distinctCounter, (AccumulatorI<E>[])accumulators);
+	}
+	
+	/**
+	 * Makes sure a corpus is read as a whole, as offsets into a corpus are
+	 * not meaningful
+	 * 
+	 * @throws IOException Is thrown if an offset or a range was set
+	 */
+	private void checkCorpusAccess() throws IOException {
+		if ( this.startOffset > 0 || this.endOffset >= 0 ) throw new IOException("Corpus files can only be read as a whole: "+this.filePath);
+	}
+	
+	/**
+	 * Sets the number of bytes at the beginning of the file which have
+	 * already been processed, e.g. in a previous run before new passwords
+	 * were appended. Streaming continues after these bytes instead of
+	 * after the header. This needs to be called before the first password
+	 * is read.
+	 * 
+	 * @param startOffset The number of bytes to skip, as returned by getOffset
+	 */
+	public void setStartOffset(long startOffset) {
+		if ( this.files != null ) throw new IllegalStateException("Offsets are not available for several password files.");
+		if ( this.streamInput != null ) throw new IllegalStateException("Streaming has already started.");
+		this.startOffset=startOffset;
+	}
+	
+	/**
+	 * Restricts streaming to a range of bytes of the file, e.g. to process
+	 * the file in several parts. The range has to start and end at line 
+	 * boundaries and must not contain the header unless it starts at 0.
+	 * This needs to be called before the first password is read.
+	 * 
+	 * @param start The first byte of the range
+	 * @param end The byte after the last byte of the range
+	 */
+	public void setRange(long start, long end) {
+		if ( start < 0 || end < start ) throw new IllegalArgumentException("Invalid range: "+start+"-"+end);
+		this.setStartOffset(start);
+		this.endOffset=end;
+	}
+	
+	/**
+	 * This method returns the number of bytes taken by the header lines of
+	 * the file, i.e. the offset of the first password. For compressed 
+	 * files the offset refers to the decompressed contents. The password
+	 * type needs to be set beforehand.
+	 * 
+	 * @return The offset of the first password
+	 * @throws IOException Is thrown if the file cannot be read
+	 */
+	public long getHeaderOffset() throws IOException {
+		
+		if ( this.files != null ) throw new IllegalStateException("Offsets are not available for several password files.");
+		
+		int lines=this.parser.getHeaderLength(this.passwordFile);
+		long offset=0;
+		
+		InputStream in=new BufferedInputStream(CompressedInput.open(new FileInputStream(this.filePath), this.filePath));
+		try {
+			int b;
+			while ( lines > 0 && (b=in.read()) != -1 ) {
+				offset++;
+				if ( b == '\n' ) lines--;
+			}
+		} finally {
+			in.close();
+		}
+		
+		return offset;
+	}
+	
+	/**
+	 * This method returns whether the password file is compressed. Compressed
+	 * files can only be streamed from the beginning, so offsets and ranges
+	 * are not available.
+	 * 
+	 * @return Whether the password file is compressed
+	 */
+	public boolean isCompressed() {
+		return this.compressed;
+	}
+	
+	/**
+	 * This method returns whether the password file is a binary corpus as
+	 * written per convertToCorpus. Corpora can only be read as a whole, so
+	 * offsets and ranges are not available, and they do not contain labels.
+	 * 
+	 * @return Whether the password file or one of several files is a corpus
+	 */
+	public boolean isCorpus() {
+		
+		if ( this.files != null ) {
+			for ( PasswordFileParser file : this.files ) {
+				if ( file.isCorpus() ) return true;
+			}
+		}
+		
+		return this.corpus != null;
+	}
+	
+	/**
+	 * This method determines the type of the password file by applying the
+	 * heuristics of all parsers to the first lines of the file and sets the
+	 * type, e.g. if the file is to be converted without knowing the estimator.
+	 * 
+	 * @return The password type or null if no parser accepts the file
+	 */
+	public PasswordType detectPasswordType() {
+		
+		if ( this.type != null ) return this.type;
+		
+		//the type of the first file needs to fit all other files
+		if ( this.files != null ) {
+			PasswordType first=this.files.get(0).detectPasswordType();
+			return first != null && this.setPasswordType(first) ? first : null;
+		}
+		
+		//the parsers with specific heuristics come first, text passwords are always accepted
+		for ( PasswordFileParserI<?> p : this.parsers ) {
+			if ( this.setPasswordType(p.getPasswordType()) ) return this.type;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * This method converts the password file into a binary corpus, which can
+	 * later be read instead of the password file without parsing. It is 
+	 * only available if streaming was enabled during instantiation and the
+	 * password type needs to be set beforehand.
+	 * 
+	 * @param corpusPath The path to the corpus file
+	 * @return The number of passwords converted
+	 * @throws IOException Is thrown if a file cannot be read or written
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 * @throws IllegalArgumentException Is thrown if the password type is not supported by the corpus format
+	 */
+	public long convertToCorpus(String corpusPath) throws IOException {
+		if ( !this.streaming ) throw new IllegalStateException("Passwords are not streamed.");
+		return BinaryCorpus.write(this, this.type, corpusPath);
+	}
+	
+	/**
+	 * This method returns the number of bytes of the file processed when
+	 * streaming, which is the length of the file once readPassword 
+	 * returned null. Offsets are not available for several files.
+	 * 
+	 * @return The number of processed bytes or -1 if several files are read
+	 */
+	public long getOffset() {
+		if ( this.files != null ) return -1;
+		return this.offset;
+	}
+	
+	/**
+	 * Declares that streaming stops after the last line break of the file.
+	 * An unterminated last line may still be written, so it is neither read
+	 * nor included in getOffset and a later run appending from the offset
+	 * reads it once it is complete. Ranges and compressed files are not 
+	 * affected. This needs to be called before the first password is read.
 	 */
-	public List<?> getPasswords() {
-		return this.parser.getPasswords(this.passwordFile);
+	public void readCompleteLinesOnly() {
+		if ( this.streamInput != null ) throw new IllegalStateException("Streaming has already started.");
+		this.completeLinesOnly=true;
+	}
+	
+	/**
+	 * Declares that each password line of the file starts with a label,
+	 * separated from the password by a tab, e.g. the site or cohort the
+	 * password belongs to. Lines without a tab get the empty label. The 
+	 * header lines (type tag and parameters) are not labelled. This needs
+	 * to be called before setting the password type and is only available
+	 * if streaming was enabled during instantiation and no corpus is read.
+	 */
+	public void enableLabels() {
+		
+		if ( !this.streaming ) throw new IllegalStateException("Labels are only available when streaming.");
+		if ( this.isCorpus() ) throw new IllegalStateException("Corpus files do not contain labels.");
+		if ( this.type != null ) throw new IllegalStateException("Labels need to be enabled before setting the password type.");
+		
+		this.labelled=true;
+		
+		if ( this.files != null ) {
+			for ( PasswordFileParser file : this.files ) file.enableLabels();
+			return;
+		}
+		
+		//the type heuristics of the delegate parsers only see the passwords
+		for ( int i=0; i<this.passwordFile.size(); i++ ) {
+			String line=this.passwordFile.get(i);
+			this.passwordFile.set(i, line.substring(line.indexOf(LABEL_SEPARATOR)+1));
+		}
+	}
+	
+	/**
+	 * This method returns the label of the password last returned by
+	 * readPassword
+	 * 
+	 * @return The label or null if labels were not enabled
+	 */
+	public String getLabel() {
+		return this.label;
+	}
+	
+	/**
+	 * Enables counting the distinct passwords while they are obtained per
+	 * getPasswords or readPassword. Passwords are considered equal as
+	 * determined by the respective delegate parser.
+	 */
+	public void enableDistinctCounting() {
+		if ( this.distinctCounter == null ) this.distinctCounter=new DistinctCounter();
+	}
+	
+	/**
+	 * This method returns the counter for the distinct passwords
+	 * 
+	 * @return The counter or null if counting was not enabled
+	 */
+	public DistinctCounter getDistinctCounter() {
+		return this.distinctCounter;
 	}
 	
 	/**
@@ -168,6 +985,8 @@ public final class PasswordFileParser {
 	 * @return The array of parameters
 	 */
 	public int[] getParameters() {
+		if ( this.files != null ) return this.files.get(0).getParameters();
+		if ( this.corpus != null ) return this.corpus.getParameters();
 		return this.parser.getParameters(passwordFile);
 	}
 	
@@ -176,8 +995,9 @@ public final class PasswordFileParser {
 	 * of password files. Each type should implement a class with this interface
 	 * and hook it into PasswordListParser.
 	 * 
-	 * The password file is handed to the parser as a List of Strings, where each
-	 * list element represents a line in the file.  
+	 * The first lines of the password file are handed to the parser as a List
+	 * of Strings, where each list element represents a line in the file. The
+	 * passwords are parsed line by line.
 	 * 
 	 * @author Peter Mayer | peter.mayer@cased.de
 	 */
@@ -192,7 +1012,8 @@ public final class PasswordFileParser {
 		
 		/**
 		 * This function is called in order to check whether the  supplied password
-		 * file is contains information applicable to this type.
+		 * file is contains information applicable to this type. Only the first
+		 * lines of the file are supplied, see SNIFF_LINES.
 		 * 
 		 * @return Whether the password file is of the type specified by the parser
 		 */
@@ -200,15 +1021,39 @@ public final class PasswordFileParser {
 		
 		
 		/**
-		 * This function is called in order to actually obtain the list with all
-		 * passwords as specified in the file. Only the parsing functionality needs
-		 * to be implemented in this file. Sanity checks (per functions above) are
-		 * performed in PasswordParser. The returned Objects in the List can be
-		 * freely chosen to be appropriate for the estimators of this password type.
-		 *  
-		 * @return A list with all the passwords in the file 
+		 * This function is called in order to determine how many lines at the
+		 * beginning of the file do not contain passwords (e.g. the type tag and
+		 * the parameters).
+		 * 
+		 * @param passwordFile The first lines of the password file
+		 * @return The number of lines to skip
 		 */
-		public List<E> getPasswords(List<String> passwordFile);
+		public int getHeaderLength(List<String> passwordFile);
+		
+		
+		/**
+		 * This function is called in order to parse a single line of the 
+		 * password file. The returned Objects can be freely chosen to be 
+		 * appropriate for the estimators of this password type. As only the
+		 * first lines are checked by checkWhetherOfThisType, each line needs 
+		 * to be validated here. This function may be called concurrently.
+		 * 
+		 * @param line The line of the password file
+		 * @return The password
+		 * @throws IllegalArgumentException Is thrown if the line is malformed, the message describes the problem
+		 */
+		public E parsePassword(String line);
+		
+		
+		/**
+		 * This function is called when counting the distinct passwords in the
+		 * password file. Passwords which are equal for the purpose of the
+		 * estimators of this type need to have the same hash.
+		 * 
+		 * @param password The password
+		 * @return A 64 bit hash of the password
+		 */
+		public long hashPassword(E password);
 		
 		
 		/**
@@ -222,4 +1067,61 @@ public final class PasswordFileParser {
 		
 	}
 
+	/**
+	 * A stream which ends after a maximum number of bytes of the underlying
+	 * stream, used to stream a range of the password file
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		
+		/**
+		 * The number of bytes left to read
+		 */
+		private long remaining;
+		
+		/**
+		 * Creates a new stream
+		 * 
+		 * @param in The underlying stream
+		 * @param limit The maximum number of bytes to read
+		 */
+		LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining=limit;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if ( this.remaining <= 0 ) return -1;
+			int b=super.read();
+			if ( b != -1 ) this.remaining--;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if ( this.remaining <= 0 ) return -1;
+			int n=super.read(b, off, (int)Math.min(len, this.remaining));
+			if ( n > 0 ) this.remaining -= n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped=super.skip(Math.min(n, this.remaining));
+			this.remaining -= skipped;
+			return skipped;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(super.available(), this.remaining);
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+	}
+
 }
@@ -0,0 +1,360 @@
+/*=========================================================================
+ * EnEs is a little tool for calculating multiple different metrics to
+ * analyze the distribution of password sets.
+ * Copyright (C) 2013 Peter Mayer
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *=========================================================================*/
+package parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.AccumulatorI;
+import estimators.sketch.DistinctCounter;
+
+/**
+ * This class reads passwords from a stream in three stages running
+ * concurrently, so reading, decoding and accumulating overlap:
+ * <ol>
+ * <li>A reader thread fills buffers with whole lines of the stream.</li>
+ * <li>A pool of parser threads decodes the buffers into lines and parses
+ * them into batches of passwords using the delegate parser.</li>
+ * <li>Each accumulator consumes batches in its own thread.</li>
+ * </ol>
+ * The stages are connected by bounded queues, so a fast stage blocks once
+ * the next stage falls behind and the memory needed does not depend on
+ * the size of the stream. If a stage fails, all others are stopped and
+ * the failure is rethrown.
+ *
+ * @author Peter Mayer | peter.mayer@cased.de
+ */
+final class PasswordPipeline<E> {
+
+	/**
+	 * The size of the buffers filled by the reader thread, a buffer is only
+	 * enlarged for lines longer than this
+	 */
+	static final int BUFFER_SIZE=1<<20;
+
+	/**
+	 * The number of queued buffers or batches per consuming thread
+	 */
+	private static final int QUEUE_CAPACITY=2;
+
+	/**
+	 * The encoding of the password file
+	 */
+	private static final Charset UTF8=Charset.forName("UTF-8");
+
+	/**
+	 * Marks the end of the buffers
+	 */
+	private static final Buffer END_OF_BUFFERS=new Buffer(new byte[0], 0, 0);
+
+	/**
+	 * Marks the end of the batches
+	 */
+	private final List<E> endOfBatches=new ArrayList<E>(0);
+
+	/**
+	 * The delegate parser
+	 */
+	private final PasswordFileParserI<E> parser;
+
+	/**
+	 * The counter for distinct passwords, null if counting is disabled
+	 */
+	private final DistinctCounter distinctCounter;
+
+	/**
+	 * The number of parser threads
+	 */
+	private final int parserThreads;
+
+	/**
+	 * Creates a new pipeline
+	 *
+	 * @param parser The delegate parser, which needs to parse lines concurrently
+	 * @param distinctCounter The counter for distinct passwords or null
+	 * @param parserThreads The number of parser threads
+	 */
+	PasswordPipeline(PasswordFileParserI<E> parser, DistinctCounter distinctCounter, int parserThreads) {
+		if ( parserThreads <= 0 ) throw new IllegalArgumentException("At least one parser thread is needed.");
+		this.parser=parser;
+		this.distinctCounter=distinctCounter;
+		this.parserThreads=parserThreads;
+	}
+
+	/**
+	 * Reads all passwords from a stream and adds them to the accumulators
+	 *
+	 * @param input The stream positioned at the first password
+	 * @param firstLine The line number of the first password, used to report malformed lines
+	 * @param accumulators The accumulators, each is used by a single thread
+	 * @return The number of passwords read
+	 * @throws IOException Is thrown if the stream cannot be read
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 */
+	long run(final InputStream input, final long firstLine, AccumulatorI<E>[] accumulators) throws IOException {
+
+		final BlockingQueue<Buffer> buffers=new ArrayBlockingQueue<Buffer>(QUEUE_CAPACITY*this.parserThreads);
+		final BlockingQueue<List<E>> batches=new ArrayBlockingQueue<List<E>>(QUEUE_CAPACITY*accumulators.length);
+		final AtomicInteger activeParsers=new AtomicInteger(this.parserThreads);
+		final int consumers=accumulators.length;
+
+		int tasks=1+this.parserThreads+consumers;
+		ExecutorService executor=Executors.newFixedThreadPool(tasks);
+		CompletionService<Long> completion=new ExecutorCompletionService<Long>(executor);
+
+		completion.submit(new Callable<Long>() {
+			@Override
+			public Long call() throws IOException, InterruptedException {
+				PasswordPipeline.this.read(input, firstLine, buffers);
+				return 0L;
+			}
+		});
+		for ( int i=0; i<this.parserThreads; i++ ) {
+			completion.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws MalformedPasswordException, InterruptedException {
+					PasswordPipeline.this.parse(buffers, batches);
+					//the last parser signals the end to all consumers
+					if ( activeParsers.decrementAndGet() == 0 ) {
+						for ( int j=0; j<consumers; j++ ) batches.put(PasswordPipeline.this.endOfBatches);
+					}
+					return 0L;
+				}
+			});
+		}
+		for ( final AccumulatorI<E> accumulator : accumulators ) {
+			completion.submit(new Callable<Long>() {
+				@Override
+				public Long call() throws InterruptedException {
+					return PasswordPipeline.this.consume(batches, accumulator);
+				}
+			});
+		}
+
+		long amount=0;
+		try {
+			for ( int i=0; i<tasks; i++ ) amount += completion.take().get();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while reading the passwords");
+		} catch (ExecutionException e) {
+			Throwable cause=e.getCause();
+			if ( cause instanceof IOException ) throw (IOException)cause;
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			if ( cause instanceof Error ) throw (Error)cause;
+			throw new IOException(cause);
+		} finally {
+			//stops the remaining stages if one has failed
+			executor.shutdownNow();
+		}
+
+		return amount;
+	}
+
+	/**
+	 * The reader stage: fills buffers with whole lines, only the last buffer
+	 * may end without a line break
+	 *
+	 * @param input The stream
+	 * @param firstLine The line number of the first password
+	 * @param buffers The queue to the parser stage
+	 * @throws IOException Is thrown if the stream cannot be read
+	 * @throws InterruptedException Is thrown if the pipeline is stopped
+	 */
+	private void read(InputStream input, long firstLine, BlockingQueue<Buffer> buffers) throws IOException, InterruptedException {
+
+		byte[] data=new byte[BUFFER_SIZE];
+		int length=0;
+		boolean eof=false;
+		long line=firstLine;
+
+		while ( !eof ) {
+
+			//a line longer than the buffer enlarges it
+			if ( length == data.length ) data=Arrays.copyOf(data, 2*data.length);
+
+			while ( length < data.length ) {
+				int n=input.read(data, length, data.length-length);
+				if ( n < 0 ) {
+					eof=true;
+					break;
+				}
+				length += n;
+			}
+
+			int end=length;
+			if ( !eof ) {
+				while ( end > 0 && data[end-1] != '\n' ) end--;
+				if ( end == 0 ) continue;
+			}
+			if ( end == 0 ) break;
+
+			//the incomplete line at the end is moved to the next buffer
+			byte[] next=new byte[Math.max(BUFFER_SIZE, length-end)];
+			System.arraycopy(data, end, next, 0, length-end);
+			buffers.put(new Buffer(data, end, line));
+			line += countLines(data, end);
+			data=next;
+			length -= end;
+		}
+
+		for ( int i=0; i<this.parserThreads; i++ ) buffers.put(END_OF_BUFFERS);
+	}
+
+	/**
+	 * Counts the lines in a buffer as done by the parser stage
+	 *
+	 * @param data The buffer
+	 * @param length The number of valid bytes
+	 * @return The number of lines
+	 */
+	private static int countLines(byte[] data, int length) {
+		int lines=0;
+		for ( int i=0; i<length; i++ ) {
+			if ( data[i] == '\n' || (data[i] == '\r' && (i+1 == length || data[i+1] != '\n')) ) lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * The parser stage: decodes the buffers into lines and parses them as
+	 * done by readPassword of the PasswordFileParser
+	 *
+	 * @param buffers The queue from the reader stage
+	 * @param batches The queue to the accumulator stage
+	 * @throws MalformedPasswordException Is thrown if a password cannot be parsed
+	 * @throws InterruptedException Is thrown if the pipeline is stopped
+	 */
+	private void parse(BlockingQueue<Buffer> buffers, BlockingQueue<List<E>> batches) throws MalformedPasswordException, InterruptedException {
+
+		Buffer buffer;
+		while ( (buffer=buffers.take()) != END_OF_BUFFERS ) {
+
+			byte[] data=buffer.data;
+			List<E> batch=new ArrayList<E>();
+
+			//lines end with \n, \r or \r\n as for BufferedReader.readLine
+			int start=0;
+			for ( int i=0; i<buffer.length; i++ ) {
+				if ( data[i] != '\n' && data[i] != '\r' ) continue;
+				batch.add(this.parsePassword(data, start, i, buffer.firstLine+batch.size()));
+				if ( data[i] == '\r' && i+1 < buffer.length && data[i+1] == '\n' ) i++;
+				start=i+1;
+			}
+			if ( start < buffer.length ) batch.add(this.parsePassword(data, start, buffer.length, buffer.firstLine+batch.size()));
+
+			if ( this.distinctCounter != null ) {
+				long[] hashes=new long[batch.size()];
+				for ( int i=0; i<hashes.length; i++ ) hashes[i]=this.parser.hashPassword(batch.get(i));
+				synchronized ( this.distinctCounter ) {
+					for ( long hash : hashes ) this.distinctCounter.offer(hash);
+				}
+			}
+
+			batches.put(batch);
+		}
+	}
+
+	/**
+	 * Decodes and parses a single line
+	 *
+	 * @param data The buffer
+	 * @param start The beginning of the line
+	 * @param end The end of the line without the line break
+	 * @param lineNumber The number of the line
+	 * @return The password
+	 * @throws MalformedPasswordException Is thrown if the password cannot be parsed
+	 */
+	private E parsePassword(byte[] data, int start, int end, long lineNumber) throws MalformedPasswordException {
+		try {
+			return this.parser.parsePassword(new String(data, start, end-start, UTF8));
+		} catch (IllegalArgumentException e) {
+			throw new MalformedPasswordException(lineNumber, e.getMessage());
+		}
+	}
+
+	/**
+	 * The accumulator stage: adds the passwords of the batches to an accumulator
+	 *
+	 * @param batches The queue from the parser stage
+	 * @param accumulator The accumulator
+	 * @return The number of passwords added
+	 * @throws InterruptedException Is thrown if the pipeline is stopped
+	 */
+	private long consume(BlockingQueue<List<E>> batches, AccumulatorI<E> accumulator) throws InterruptedException {
+
+		long amount=0;
+		List<E> batch;
+		while ( (batch=batches.take()) != this.endOfBatches ) {
+			for ( E pwd : batch ) accumulator.add(pwd, 1);
+			amount += batch.size();
+		}
+
+		return amount;
+	}
+
+	/**
+	 * A buffer filled by the reader stage
+	 */
+	private static class Buffer {
+
+		/**
+		 * The bytes read
+		 */
+		final byte[] data;
+
+		/**
+		 * The number of valid bytes
+		 */
+		final int length;
+
+		/**
+		 * The line number of the first line in the buffer
+		 */
+		final long firstLine;
+
+		/**
+		 * Creates a new buffer
+		 *
+		 * @param data The bytes read
+		 * @param length The number of valid bytes
+		 * @param firstLine The line number of the first line in the buffer
+		 */
+		Buffer(byte[] data, int length, long firstLine) {
+			this.data=data;
+			this.length=length;
+			this.firstLine=firstLine;
+		}
+
+	}
+
+}
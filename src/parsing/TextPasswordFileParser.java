@@ -18,11 +18,11 @@
  *=========================================================================*/
 package parsing;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import main.passwords.PasswordType;
 import parsing.PasswordFileParser.PasswordFileParserI;
+import estimators.CommonHelper;
 
 /**
  * This class provides the parser functionality for text passwords.
@@ -53,20 +53,25 @@ public class TextPasswordFileParser implements PasswordFileParserI<String> {
 	}
 
 	@Override
-	public List<String> getPasswords(List<String> passwordFile) {
+	public int getHeaderLength(List<String> passwordFile) {
 		
-		/*
-		 * The only thing we possibly need to do is remove the first element if the
-		 * file is explicitly tagged.
-		 */
+		//Only the tag at the beginning of the file needs to be skipped, if present
 		if ( passwordFile.get(0).equalsIgnoreCase(PasswordFileParser.PWT_PREFIX+PasswordType.TEXT.toString()) ) {
-			List<String> newList=new ArrayList<String>(passwordFile);
-			newList.remove(0);
-			return newList;
+			return 1;
 		}
 		
-		return passwordFile;
-		
+		return 0;
+	}
+	
+	@Override
+	public String parsePassword(String line) {
+		//text passwords are used as they are
+		return line;
+	}
+
+	@Override
+	public long hashPassword(String password) {
+		return CommonHelper.hash64(password);
 	}
 
 	@Override